@@ -0,0 +1,22 @@
+package rmontag.jsfexample.benchmark;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * End of the filter chain, does nothing but count its invocations.
+ */
+public class BenchmarkFilterChain implements FilterChain {
+
+	private long invocations;
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response) {
+		invocations++;
+	}
+
+	public long getInvocations() {
+		return invocations;
+	}
+}
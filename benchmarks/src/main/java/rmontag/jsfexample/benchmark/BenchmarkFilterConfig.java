@@ -0,0 +1,42 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * In-memory FilterConfig holding the init params of a benchmarked filter.
+ */
+public class BenchmarkFilterConfig implements FilterConfig {
+
+	private final Map<String, String> initParams = new LinkedHashMap<String, String>();
+
+	public BenchmarkFilterConfig param(String name, Object value) {
+		initParams.put(name, String.valueOf(value));
+		return this;
+	}
+
+	@Override
+	public String getFilterName() {
+		return "benchmark";
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return initParams.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		return Collections.enumeration(initParams.keySet());
+	}
+}
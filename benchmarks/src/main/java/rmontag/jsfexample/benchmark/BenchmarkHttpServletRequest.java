@@ -0,0 +1,393 @@
+package rmontag.jsfexample.benchmark;
+
+import java.io.BufferedReader;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.Part;
+
+/**
+ * Lightweight in-memory GET request. Only the parts read by the filters are backed by fields,
+ * everything else returns a neutral value.
+ */
+public class BenchmarkHttpServletRequest implements HttpServletRequest {
+
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+	// case-insensitive lookup without allocating a lower case copy of the name
+	private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+	private boolean secure;
+	private String contextPath = "/JavaServerFaces";
+	private String servletPath = "/faces";
+	private String pathInfo = "/hello.xhtml";
+	private String remoteAddr = "127.0.0.1";
+
+	public BenchmarkHttpServletRequest secure(boolean secure) {
+		this.secure = secure;
+		return this;
+	}
+
+	public BenchmarkHttpServletRequest path(String servletPath, String pathInfo) {
+		this.servletPath = servletPath;
+		this.pathInfo = pathInfo;
+		return this;
+	}
+
+	public BenchmarkHttpServletRequest header(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+	public BenchmarkHttpServletRequest remoteAddr(String remoteAddr) {
+		this.remoteAddr = remoteAddr;
+		return this;
+	}
+
+	@Override
+	public boolean isSecure() {
+		return secure;
+	}
+
+	@Override
+	public String getScheme() {
+		return secure ? "https" : "http";
+	}
+
+	@Override
+	public int getServerPort() {
+		return secure ? 443 : 80;
+	}
+
+	@Override
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	@Override
+	public String getServletPath() {
+		return servletPath;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return pathInfo;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return pathInfo == null ? contextPath + servletPath : contextPath + servletPath + pathInfo;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		return new StringBuffer(getScheme()).append("://localhost").append(getRequestURI());
+	}
+
+	@Override
+	public String getMethod() {
+		return "GET";
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		String value = getHeader(name);
+		return value == null ? Collections.<String>emptyEnumeration() : Collections.enumeration(Collections.singleton(value));
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(headers.keySet());
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		String value = getHeader(name);
+		return value == null ? -1 : Long.parseLong(value);
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		String value = getHeader(name);
+		return value == null ? -1 : Integer.parseInt(value);
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	@Override
+	public void setAttribute(String name, Object o) {
+		attributes.put(name, o);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return remoteAddr;
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return remoteAddr;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return 50000;
+	}
+
+	@Override
+	public String getLocalName() {
+		return "localhost";
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public int getLocalPort() {
+		return getServerPort();
+	}
+
+	@Override
+	public String getServerName() {
+		return "localhost";
+	}
+
+	@Override
+	public String getProtocol() {
+		return "HTTP/1.1";
+	}
+
+	@Override
+	public String getAuthType() {
+		return null;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return null;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+
+	@Override
+	public String getQueryString() {
+		return null;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return null;
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return null;
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+
+	@Override
+	public boolean authenticate(HttpServletResponse response) {
+		return false;
+	}
+
+	@Override
+	public void login(String username, String password) {
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public Collection<Part> getParts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Part getPart(String name) {
+		return null;
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return "UTF-8";
+	}
+
+	@Override
+	public void setCharacterEncoding(String env) {
+	}
+
+	@Override
+	public int getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getParameter(String name) {
+		return null;
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.emptyEnumeration();
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		return null;
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ROOT;
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singleton(Locale.ROOT));
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public String getRealPath(String path) {
+		return null;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("async not supported");
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		throw new IllegalStateException("async not supported");
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		return null;
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+}
@@ -0,0 +1,308 @@
+package rmontag.jsfexample.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Lightweight in-memory response. Headers are kept in fixed arrays, so setting a header
+ * does not allocate and the measured allocation is the one of the code under test.
+ * The body written to the output stream is only counted, unless capturing is enabled.
+ */
+public class BenchmarkHttpServletResponse implements HttpServletResponse {
+
+	private static final int MAX_HEADERS = 32;
+
+	private final String[] headerNames = new String[MAX_HEADERS];
+	private final String[] headerValues = new String[MAX_HEADERS];
+	private int headerCount;
+	private int status = SC_OK;
+	private boolean committed;
+	private String contentType;
+	private long bodyLength;
+	private ByteArrayOutputStream capturedBody;
+	private PrintWriter writer;
+
+	private final ServletOutputStream outputStream = new ServletOutputStream() {
+		@Override
+		public void write(int b) {
+			bodyLength++;
+			if (capturedBody != null) {
+				capturedBody.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			bodyLength += len;
+			if (capturedBody != null) {
+				capturedBody.write(b, off, len);
+			}
+		}
+	};
+
+	/**
+	 * Clears headers and status, call between two requests if the header set varies.
+	 */
+	public void recycle() {
+		for (int i = 0; i < headerCount; i++) {
+			headerNames[i] = null;
+			headerValues[i] = null;
+		}
+		headerCount = 0;
+		status = SC_OK;
+		committed = false;
+		contentType = null;
+		bodyLength = 0;
+		if (capturedBody != null) {
+			capturedBody.reset();
+		}
+	}
+
+	/**
+	 * Keeps the body written from now on, see {@link #getBody()}.
+	 */
+	public BenchmarkHttpServletResponse capture() {
+		capturedBody = new ByteArrayOutputStream();
+		return this;
+	}
+
+	public byte[] getBody() {
+		return capturedBody.toByteArray();
+	}
+
+	public long getBodyLength() {
+		return bodyLength;
+	}
+
+	public int getHeaderCount() {
+		return headerCount;
+	}
+
+	public void setCommitted(boolean committed) {
+		this.committed = committed;
+	}
+
+	private int indexOf(String name) {
+		for (int i = 0; i < headerCount; i++) {
+			String headerName = headerNames[i];
+			if (headerName == name || headerName.equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		int index = indexOf(name);
+		if (index < 0) {
+			addHeader(name, value);
+		} else {
+			headerValues[index] = value;
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if (headerCount == MAX_HEADERS) {
+			throw new IllegalStateException("too many headers");
+		}
+		headerNames[headerCount] = name;
+		headerValues[headerCount] = value;
+		headerCount++;
+	}
+
+	@Override
+	public boolean containsHeader(String name) {
+		return indexOf(name) >= 0;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : headerValues[index];
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		List<String> values = new ArrayList<String>();
+		for (int i = 0; i < headerCount; i++) {
+			if (headerNames[i].equalsIgnoreCase(name)) {
+				values.add(headerValues[i]);
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		List<String> names = new ArrayList<String>(headerCount);
+		for (int i = 0; i < headerCount; i++) {
+			names.add(headerNames[i]);
+		}
+		return names;
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		setHeader(name, String.valueOf(date));
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		addHeader(name, String.valueOf(date));
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		addHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		status = sc;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(int sc, String sm) {
+		status = sc;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) {
+		status = sc;
+		committed = true;
+	}
+
+	@Override
+	public void sendError(int sc) {
+		sendError(sc, null);
+	}
+
+	@Override
+	public void sendRedirect(String location) {
+		status = SC_FOUND;
+		committed = true;
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(String url) {
+		return url;
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return "UTF-8";
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		if (writer == null) {
+			writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		}
+		return writer;
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+	}
+
+	@Override
+	public void setContentLength(int len) {
+	}
+
+	@Override
+	public void setContentType(String type) {
+		contentType = type;
+	}
+
+	@Override
+	public void setBufferSize(int size) {
+	}
+
+	@Override
+	public int getBufferSize() {
+		return 0;
+	}
+
+	@Override
+	public void flushBuffer() {
+		committed = true;
+	}
+
+	@Override
+	public void resetBuffer() {
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	@Override
+	public void reset() {
+		recycle();
+	}
+
+	@Override
+	public void setLocale(Locale loc) {
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ROOT;
+	}
+}
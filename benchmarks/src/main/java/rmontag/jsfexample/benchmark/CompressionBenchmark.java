@@ -0,0 +1,162 @@
+package rmontag.jsfexample.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.CompressionCounters;
+import rmontag.jsfexample.common.CompressionFilter;
+import rmontag.jsfexample.common.RequestMetrics;
+
+/**
+ * Rendering a Facelets page of pageLength bytes through the {@link CompressionFilter} against no
+ * compression and against a filter creating a new GZIPOutputStream per response.
+ * The view's {@link CompressionCounters} are printed as "bytes saved per CPU ms" after the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+	@Param({ "none", "filter", "unpooled" })
+	public String compression;
+
+	@Param({ "1", "6" })
+	public int level;
+
+	@Param({ "800", "4000", "40000" })
+	public int pageLength;
+
+	private CompressionFilter filter;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private FilterChain chain;
+	private String page;
+
+	@Setup(Level.Trial)
+	public void setup() throws ServletException {
+		filter = new CompressionFilter();
+		filter.init(new BenchmarkFilterConfig().param(CompressionFilter.INIT_PARAM_COMPRESSION_LEVEL, level));
+		request = new BenchmarkHttpServletRequest().header("Accept-Encoding", "gzip, deflate, br");
+		request.path("/faces", "/hello" + pageLength + "-" + level + ".xhtml");
+		response = new BenchmarkHttpServletResponse();
+		page = page(pageLength);
+		chain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("text/html;charset=UTF-8");
+				PrintWriter writer = response.getWriter();
+				// Facelets writes in chunks of a few hundred characters
+				for (int i = 0; i < page.length(); i += 256) {
+					writer.write(page, i, Math.min(256, page.length() - i));
+				}
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * @return HTML like the one rendered for hello.xhtml, repeated up to the length
+	 */
+	static String page(int length) {
+		StringBuilder html = new StringBuilder(length + 512);
+		html.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n")
+				.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>JSF 2.0 Hello World</title></head><body>\n");
+		for (int row = 0; html.length() < length - 20; row++) {
+			html.append("<h2>JSF 2.0 Hello World Example - hello.xhtml</h2>\n<form id=\"j_idt").append(row)
+					.append("\" name=\"j_idt").append(row).append("\" method=\"post\" action=\"/JavaServerFaces/faces/hello.xhtml\" ")
+					.append("enctype=\"application/x-www-form-urlencoded\">\n<input type=\"text\" name=\"j_idt").append(row)
+					.append(":j_idt").append(row + 1).append("\" value=\"name ").append(row * 7919 % 1000)
+					.append("\" /><input type=\"submit\" value=\"Welcome Me\" /></form>\n");
+		}
+		html.setLength(Math.min(html.length(), length - 15));
+		return html.append("</body></html>\n").toString();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CompressionCounters counters = RequestMetrics.getInstance().compression(request.getServletPath() + request.getPathInfo());
+		System.out.println();
+		System.out.println("page " + pageLength + " bytes -> " + (counters.getCompressed() == 0 ? "-"
+				: String.valueOf(counters.getBytesOut() / counters.getCompressed())) + " bytes, "
+				+ counters.getBytesSavedPerCpuMilli() + " bytes saved per CPU ms");
+		filter.destroy();
+	}
+
+	@Benchmark
+	public long render() throws IOException, ServletException {
+		response.recycle();
+		switch (compression) {
+		case "filter":
+			filter.doFilter(request, response, chain);
+			break;
+		case "unpooled":
+			UnpooledGzipResponse gzipResponse = new UnpooledGzipResponse(response, level);
+			chain.doFilter(request, gzipResponse);
+			gzipResponse.finish();
+			break;
+		default:
+			chain.doFilter(request, response);
+		}
+		return response.getBodyLength();
+	}
+
+	/**
+	 * Response of a compression filter without pooling and threshold: every response gets a new
+	 * GZIPOutputStream (and with it a new native Deflater).
+	 */
+	static class UnpooledGzipResponse extends HttpServletResponseWrapper {
+
+		private final GZIPOutputStream gzip;
+		private final PrintWriter writer;
+
+		UnpooledGzipResponse(HttpServletResponse response, final int level) throws IOException {
+			super(response);
+			response.setHeader("Content-Encoding", "gzip");
+			gzip = new GZIPOutputStream(response.getOutputStream(), 8192) {
+				{
+					def.setLevel(level);
+				}
+			};
+			writer = new PrintWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			return writer;
+		}
+
+		void finish() throws IOException {
+			writer.flush();
+			gzip.finish();
+			gzip.close();
+		}
+	}
+}
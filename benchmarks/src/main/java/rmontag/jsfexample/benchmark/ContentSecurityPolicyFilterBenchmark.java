@@ -0,0 +1,79 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.ContentSecurityPolicyFilter;
+
+/**
+ * doFilter of {@link ContentSecurityPolicyFilter} for every enabled/disabled header combination,
+ * on secure and plain requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentSecurityPolicyFilterBenchmark {
+
+	/**
+	 * Policy as configured in web.xml
+	 */
+	static final String POLICY = "frame-ancestors 'self' *.com; default-src 'self'; "
+			+ "script-src 'self' 'unsafe-inline' 'unsafe-eval'; frame-src *; style-src 'self' 'unsafe-inline'; img-src 'self' data:;";
+
+	@Param({ "true", "false" })
+	public boolean secure;
+
+	@Param({ "true", "false" })
+	public boolean contentSecurityPolicyEnabled;
+
+	@Param({ "true", "false" })
+	public boolean contentSecurityPolicyReportOnlyEnabled;
+
+	@Param({ "true", "false" })
+	public boolean headerXcontentSecurityPolicyEnabled;
+
+	@Param({ "true", "false" })
+	public boolean headerXwebkitCSPEnabled;
+
+	private ContentSecurityPolicyFilter filter;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private BenchmarkFilterChain chain;
+
+	@Setup
+	public void setup() throws ServletException {
+		filter = new ContentSecurityPolicyFilter();
+		filter.init(new BenchmarkFilterConfig()
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_ENABLED, contentSecurityPolicyEnabled)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY, POLICY)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY_ENABLED, contentSecurityPolicyReportOnlyEnabled)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY, POLICY)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_HEADER_X_CONTENT_SECURITY_POLICY_ENABLED, headerXcontentSecurityPolicyEnabled)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_HEADER_X_WEBKIT_CSP_ENABLED, headerXwebkitCSPEnabled));
+		request = new BenchmarkHttpServletRequest().secure(secure);
+		response = new BenchmarkHttpServletResponse();
+		chain = new BenchmarkFilterChain();
+	}
+
+	@Benchmark
+	public BenchmarkHttpServletResponse doFilter() throws Exception {
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+}
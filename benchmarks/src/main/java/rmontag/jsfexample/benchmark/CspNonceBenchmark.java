@@ -0,0 +1,93 @@
+package rmontag.jsfexample.benchmark;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.ContentSecurityPolicyFilter;
+import rmontag.jsfexample.common.CspNonceGenerator;
+import rmontag.jsfexample.common.SecurityHeaderFilter;
+
+/**
+ * Cost of issuing a CSP nonce at 1 and 64 threads: the striped {@link CspNonceGenerator} against
+ * one shared SecureRandom, and the complete {@link SecurityHeaderFilter} with a nonce policy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CspNonceBenchmark {
+
+	static final String NONCE_POLICY = "default-src 'self'; script-src 'self' 'nonce-{nonce}'; style-src 'self' 'nonce-{nonce}'; img-src 'self' data:;";
+
+	private CspNonceGenerator generator;
+	private SecureRandom sharedRandom;
+	private SecurityHeaderFilter filter;
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		final BenchmarkHttpServletRequest request = new BenchmarkHttpServletRequest();
+		final BenchmarkHttpServletResponse response = new BenchmarkHttpServletResponse();
+		final BenchmarkFilterChain chain = new BenchmarkFilterChain();
+		final byte[] bytes = new byte[18];
+	}
+
+	@Setup
+	public void setup() throws ServletException {
+		generator = new CspNonceGenerator();
+		sharedRandom = new SecureRandom();
+		filter = new SecurityHeaderFilter();
+		filter.init(SecurityHeaderFilterBenchmark.httpHeaderSecurityConfig(new BenchmarkFilterConfig())
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY, NONCE_POLICY)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY_ENABLED, false));
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String stripedNonce1Thread() {
+		return generator.nextNonce();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public String stripedNonce64Threads() {
+		return generator.nextNonce();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String sharedSecureRandom1Thread(ThreadState state) {
+		sharedRandom.nextBytes(state.bytes);
+		return Base64.getEncoder().encodeToString(state.bytes);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public String sharedSecureRandom64Threads(ThreadState state) {
+		sharedRandom.nextBytes(state.bytes);
+		return Base64.getEncoder().encodeToString(state.bytes);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public BenchmarkHttpServletResponse filterWithNonce64Threads(ThreadState state) throws Exception {
+		filter.doFilter(state.request, state.response, state.chain);
+		return state.response;
+	}
+}
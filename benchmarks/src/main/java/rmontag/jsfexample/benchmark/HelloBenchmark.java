@@ -0,0 +1,48 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.Hello;
+
+/**
+ * Creation and property access of the session scoped {@link Hello} bean, without the CDI container.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelloBenchmark {
+
+	private Hello hello;
+	private String name;
+
+	@Setup
+	public void setup() {
+		hello = new Hello();
+		name = "benchmark";
+	}
+
+	@Benchmark
+	public Hello create() {
+		return new Hello();
+	}
+
+	@Benchmark
+	public String setAndGetName() {
+		hello.setName(name);
+		return hello.getName();
+	}
+}
@@ -0,0 +1,73 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.HttpHeaderSecurityFilter;
+
+/**
+ * doFilter of {@link HttpHeaderSecurityFilter} for every enabled/disabled header combination,
+ * on secure and plain requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpHeaderSecurityFilterBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean secure;
+
+	@Param({ "true", "false" })
+	public boolean hstsEnabled;
+
+	@Param({ "true", "false" })
+	public boolean antiClickJackingEnabled;
+
+	@Param({ "true", "false" })
+	public boolean blockContentTypeSniffingEnabled;
+
+	@Param({ "true", "false" })
+	public boolean xssProtectionEnabled;
+
+	private HttpHeaderSecurityFilter filter;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private BenchmarkFilterChain chain;
+
+	@Setup
+	public void setup() throws ServletException {
+		filter = new HttpHeaderSecurityFilter();
+		filter.init(new BenchmarkFilterConfig()
+				.param("hstsEnabled", hstsEnabled)
+				.param("hstsMaxAgeSeconds", 31536000)
+				.param("antiClickJackingEnabled", antiClickJackingEnabled)
+				.param("antiClickJackingOption", "SAMEORIGIN")
+				.param("blockContentTypeSniffingEnabled", blockContentTypeSniffingEnabled)
+				.param("xssProtectionEnabled", xssProtectionEnabled));
+		request = new BenchmarkHttpServletRequest().secure(secure);
+		response = new BenchmarkHttpServletResponse();
+		chain = new BenchmarkFilterChain();
+	}
+
+	@Benchmark
+	public BenchmarkHttpServletResponse doFilter() throws Exception {
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+}
@@ -0,0 +1,80 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.LatencyHistogram;
+import rmontag.jsfexample.common.MetricsFilter;
+
+/**
+ * Overhead of the request metrics per request, in nanoseconds: the bare chain against the chain
+ * behind {@link MetricsFilter} for a prefix, an extension and an unmapped path, and a single
+ * {@link LatencyHistogram#record(long)}. Run with -prof gc to check the recording path does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+	@Param({ "/faces/hello.xhtml", "/hello.xhtml", "/resources/style.css" })
+	public String path;
+
+	private MetricsFilter filter;
+	private LatencyHistogram histogram;
+	private long value;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private BenchmarkFilterChain chain;
+
+	@Setup
+	public void setup() throws ServletException {
+		filter = new MetricsFilter();
+		filter.init(new BenchmarkFilterConfig()
+				.param(MetricsFilter.INIT_PARAM_URL_PATTERNS, "/faces/*,*.jsf,*.faces,*.xhtml,/csp-report"));
+		histogram = new LatencyHistogram();
+		request = new BenchmarkHttpServletRequest();
+		if (path.startsWith("/faces/")) {
+			request.path("/faces", path.substring("/faces".length()));
+		} else {
+			request.path(path, null);
+		}
+		response = new BenchmarkHttpServletResponse();
+		chain = new BenchmarkFilterChain();
+	}
+
+	@Benchmark
+	public BenchmarkFilterChain baseline() throws Exception {
+		chain.doFilter(request, response);
+		return chain;
+	}
+
+	@Benchmark
+	public BenchmarkFilterChain doFilter() throws Exception {
+		filter.doFilter(request, response, chain);
+		return chain;
+	}
+
+	@Benchmark
+	public LatencyHistogram record() {
+		// spread over the buckets like real latencies would
+		value = value * 6364136223846793005L + 1442695040888963407L;
+		histogram.record((value >>> 40) & 0xfffff);
+		return histogram;
+	}
+}
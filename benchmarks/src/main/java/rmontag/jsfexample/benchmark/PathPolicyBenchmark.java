@@ -0,0 +1,67 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.ContentSecurityPolicyFilter;
+import rmontag.jsfexample.common.SecurityHeaderFilter;
+
+/**
+ * {@link SecurityHeaderFilter} with path specific policies (contentSecurityPolicyPaths), for paths
+ * matching a short prefix, a long prefix and no prefix at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathPolicyBenchmark {
+
+	static final String PATH_POLICIES = "/faces/javax.faces.resource/ default-src 'self';\n"
+			+ "/javax.faces.resource/ default-src 'self';\n"
+			+ "/frames/ frame-ancestors *; default-src 'self';";
+
+	/**
+	 * servlet path and path info, separated by '|'
+	 */
+	@Param({ "/faces|/hello.xhtml", "/faces|/javax.faces.resource/jsf.js", "/frames|/embedded.xhtml", "/hello.xhtml|" })
+	public String path;
+
+	private SecurityHeaderFilter filter;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private BenchmarkFilterChain chain;
+
+	@Setup
+	public void setup() throws ServletException {
+		filter = new SecurityHeaderFilter();
+		filter.init(SecurityHeaderFilterBenchmark.contentSecurityPolicyConfig(
+				SecurityHeaderFilterBenchmark.httpHeaderSecurityConfig(new BenchmarkFilterConfig()))
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_PATHS, PATH_POLICIES));
+		int separator = path.indexOf('|');
+		String pathInfo = path.substring(separator + 1);
+		request = new BenchmarkHttpServletRequest().path(path.substring(0, separator), pathInfo.isEmpty() ? null : pathInfo);
+		response = new BenchmarkHttpServletResponse();
+		chain = new BenchmarkFilterChain();
+	}
+
+	@Benchmark
+	public BenchmarkHttpServletResponse doFilter() throws Exception {
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+}
@@ -0,0 +1,103 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.ContentSecurityPolicyFilter;
+import rmontag.jsfexample.common.HttpHeaderSecurityFilter;
+import rmontag.jsfexample.common.SecurityHeaderFilter;
+
+/**
+ * The web.xml configuration, once as the combined {@link SecurityHeaderFilter} and once as the
+ * former chain of {@link HttpHeaderSecurityFilter} and {@link ContentSecurityPolicyFilter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityHeaderFilterBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean secure;
+
+	private SecurityHeaderFilter securityHeaderFilter;
+	private FilterChain twoFilterChain;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private BenchmarkFilterChain chain;
+
+	static BenchmarkFilterConfig httpHeaderSecurityConfig(BenchmarkFilterConfig config) {
+		return config
+				.param("antiClickJackingEnabled", true)
+				.param("antiClickJackingOption", "SAMEORIGIN")
+				.param("xssProtectionEnabled", true)
+				.param("blockContentTypeSniffingEnabled", true);
+	}
+
+	static BenchmarkFilterConfig contentSecurityPolicyConfig(BenchmarkFilterConfig config) {
+		return config
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_ENABLED, true)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY, ContentSecurityPolicyFilterBenchmark.POLICY)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY_ENABLED, false)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY, ContentSecurityPolicyFilterBenchmark.POLICY)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_HEADER_X_CONTENT_SECURITY_POLICY_ENABLED, true)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_HEADER_X_WEBKIT_CSP_ENABLED, true);
+	}
+
+	@Setup
+	public void setup() throws ServletException {
+		request = new BenchmarkHttpServletRequest().secure(secure);
+		response = new BenchmarkHttpServletResponse();
+		chain = new BenchmarkFilterChain();
+
+		securityHeaderFilter = new SecurityHeaderFilter();
+		securityHeaderFilter.init(contentSecurityPolicyConfig(httpHeaderSecurityConfig(new BenchmarkFilterConfig())));
+
+		final HttpHeaderSecurityFilter httpHeaderSecurityFilter = new HttpHeaderSecurityFilter();
+		httpHeaderSecurityFilter.init(httpHeaderSecurityConfig(new BenchmarkFilterConfig()));
+		final ContentSecurityPolicyFilter contentSecurityPolicyFilter = new ContentSecurityPolicyFilter();
+		contentSecurityPolicyFilter.init(contentSecurityPolicyConfig(new BenchmarkFilterConfig()));
+		final FilterChain cspChain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws java.io.IOException, ServletException {
+				contentSecurityPolicyFilter.doFilter(request, response, chain);
+			}
+		};
+		twoFilterChain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws java.io.IOException, ServletException {
+				httpHeaderSecurityFilter.doFilter(request, response, cspChain);
+			}
+		};
+	}
+
+	@Benchmark
+	public BenchmarkHttpServletResponse securityHeaderFilter() throws Exception {
+		securityHeaderFilter.doFilter(request, response, chain);
+		return response;
+	}
+
+	@Benchmark
+	public BenchmarkHttpServletResponse twoFilterChain() throws Exception {
+		twoFilterChain.doFilter(request, response);
+		return response;
+	}
+}
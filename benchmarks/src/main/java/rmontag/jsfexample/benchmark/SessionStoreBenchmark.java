@@ -0,0 +1,182 @@
+package rmontag.jsfexample.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.session.ManagerBase;
+import org.apache.catalina.session.PersistentManagerBase;
+import org.apache.catalina.session.StandardManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.Hello;
+import rmontag.jsfexample.session.MappedFileStore;
+
+/**
+ * Session access with the default StandardManager (all sessions on heap) against the
+ * PersistentManager with {@link MappedFileStore}, where only the active sessions stay on heap.
+ *
+ * Each session holds a {@link Hello} bean and about 3 KB of view state. Of the sessions, activePercent
+ * are active and stay on heap; coldPercent of the accesses hit an idle session, which the
+ * PersistentManager has to swap in from the arena (and which is swapped out again after each
+ * iteration). SampleTime mode reports the latency percentiles including p0.99; the heap in use
+ * after setup is printed as "heap used".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SessionStoreBenchmark {
+
+	static final String VIEW_STATE_ATTRIBUTE = "com.sun.faces.renderkit.ServerSideStateHelper.LogicalViewMap";
+
+	@Param({ "standard", "mapped" })
+	public String manager;
+
+	@Param({ "100000" })
+	public int sessions;
+
+	@Param({ "1" })
+	public int activePercent;
+
+	@Param({ "1" })
+	public int coldPercent;
+
+	private ManagerBase sessionManager;
+	private File arenaFile;
+	private String[] ids;
+	private int activeCount;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		StandardHost host = new StandardHost();
+		host.setName("localhost");
+		StandardContext context = new StandardContext();
+		context.setName("benchmark");
+		context.setPath("/benchmark");
+		context.setParent(host);
+		if ("mapped".equals(manager)) {
+			arenaFile = File.createTempFile("sessions", ".arena");
+			MappedFileStore store = new MappedFileStore();
+			store.setFile(arenaFile.getAbsolutePath());
+			store.setCapacityMegabytes(1024);
+			SwappingPersistentManager persistentManager = new SwappingPersistentManager();
+			persistentManager.setStore(store);
+			sessionManager = persistentManager;
+		} else {
+			StandardManager standardManager = new StandardManager();
+			standardManager.setPathname(null);
+			sessionManager = standardManager;
+		}
+		sessionManager.setContainer(context);
+		sessionManager.setMaxActiveSessions(-1);
+		sessionManager.start();
+
+		ids = new String[sessions];
+		for (int i = 0; i < sessions; i++) {
+			Session session = sessionManager.createSession(null);
+			Hello hello = new Hello();
+			hello.setName("name " + i);
+			session.getSession().setAttribute("hello", hello);
+			session.getSession().setAttribute(VIEW_STATE_ATTRIBUTE, viewState(i));
+			ids[i] = session.getIdInternal();
+		}
+		activeCount = Math.max(1, sessions * activePercent / 100);
+		swapOutIdle();
+		random = new Random(42);
+
+		System.gc();
+		System.gc();
+		long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		System.out.println();
+		System.out.println("heap used: " + heapUsed / (1024 * 1024) + " MB with " + sessions + " sessions, "
+				+ sessionManager.getActiveSessions() + " on heap");
+	}
+
+	/**
+	 * @return about 3 KB of distinct view state per session, like the logical view map of Mojarra
+	 */
+	private static Map<String, Object[]> viewState(int session) {
+		Map<String, Object[]> views = new HashMap<String, Object[]>();
+		for (int view = 0; view < 15; view++) {
+			views.put("-" + session + ":" + view, new Object[] {
+					"j_id" + view, "/hello.xhtml", "form:name:" + session, Integer.valueOf(view),
+					new String(new char[40]).replace('\0', (char) ('a' + view)) + session });
+		}
+		return views;
+	}
+
+	private void swapOutIdle() throws IOException {
+		if (sessionManager instanceof SwappingPersistentManager) {
+			Set<String> active = new HashSet<String>();
+			for (int i = 0; i < activeCount; i++) {
+				active.add(ids[i]);
+			}
+			for (Session session : sessionManager.findSessions()) {
+				if (!active.contains(session.getIdInternal())) {
+					((SwappingPersistentManager) sessionManager).swapOut(session);
+				}
+			}
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void swapOutSwappedIn() throws IOException {
+		swapOutIdle();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		sessionManager.stop();
+		if (arenaFile != null) {
+			arenaFile.delete();
+		}
+	}
+
+	@Benchmark
+	public Object access() throws IOException {
+		int index = random.nextInt(100) < coldPercent
+				? activeCount + random.nextInt(sessions - activeCount)
+				: random.nextInt(activeCount);
+		Session session = sessionManager.findSession(ids[index]);
+		session.access();
+		Object hello = session.getSession().getAttribute("hello");
+		session.endAccess();
+		return hello;
+	}
+
+	/**
+	 * PersistentManager exposing swapOut, so idle sessions can be swapped out without waiting for maxIdleSwap.
+	 */
+	static class SwappingPersistentManager extends PersistentManagerBase {
+
+		@Override
+		protected void swapOut(Session session) throws IOException {
+			super.swapOut(session);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package rmontag.jsfexample.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.ContentSecurityPolicyFilter;
+import rmontag.jsfexample.common.SecurityHeaderFilter;
+
+/**
+ * {@link SecurityHeaderFilter} with the legacy CSP headers always on ("true") against "auto",
+ * for a modern and a legacy User-Agent. The User-Agent string is copied per invocation, like a
+ * container parsing a fresh request would do, so the classification cache has to hash and compare it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserAgentBenchmark {
+
+	static final String CHROME = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+	static final String IE11 = "Mozilla/5.0 (Windows NT 6.1; WOW64; Trident/7.0; rv:11.0) like Gecko";
+
+	@Param({ "true", "auto" })
+	public String legacyHeaders;
+
+	@Param({ "chrome", "ie11" })
+	public String userAgent;
+
+	private SecurityHeaderFilter filter;
+	private char[] userAgentChars;
+	private BenchmarkHttpServletRequest request;
+	private BenchmarkHttpServletResponse response;
+	private BenchmarkFilterChain chain;
+
+	@Setup
+	public void setup() throws ServletException {
+		filter = new SecurityHeaderFilter();
+		filter.init(SecurityHeaderFilterBenchmark.contentSecurityPolicyConfig(
+				SecurityHeaderFilterBenchmark.httpHeaderSecurityConfig(new BenchmarkFilterConfig()))
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_HEADER_X_CONTENT_SECURITY_POLICY_ENABLED, legacyHeaders)
+				.param(ContentSecurityPolicyFilter.INIT_PARAM_HEADER_X_WEBKIT_CSP_ENABLED, legacyHeaders));
+		userAgentChars = ("ie11".equals(userAgent) ? IE11 : CHROME).toCharArray();
+		request = new BenchmarkHttpServletRequest();
+		response = new BenchmarkHttpServletResponse();
+		chain = new BenchmarkFilterChain();
+	}
+
+	@Benchmark
+	public BenchmarkHttpServletResponse doFilter() throws Exception {
+		request.header("User-Agent", new String(userAgentChars));
+		response.recycle();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+}
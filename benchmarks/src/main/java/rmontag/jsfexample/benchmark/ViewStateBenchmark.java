@@ -0,0 +1,180 @@
+package rmontag.jsfexample.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmontag.jsfexample.common.ClientStateCodec;
+import rmontag.jsfexample.common.ViewStateMode;
+
+/**
+ * View state handling of one render and postback of the hello form, for the {@link ViewStateMode}s,
+ * with concurrent sessions:
+ * <ul>
+ * <li>server - the state is kept in the session, 15 logical views per session like Mojarra</li>
+ * <li>stateless - transient view, nothing is kept</li>
+ * <li>client - {@link ClientStateCodec}: compact encoding, deflate, AES-GCM</li>
+ * <li>client-serialized - Java serialization, gzip, AES-GCM, the way the stock client state saving works</li>
+ * </ul>
+ * Creating the state (the saveView part) is included in all modes. The heap retained by the sessions
+ * and the size of the encoded state are printed as "heap used" and "state size".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ViewStateBenchmark {
+
+	static final String VIEW_ID = "/hello.xhtml";
+	static final int LOGICAL_VIEWS = 15;
+
+	@Param({ "server", "stateless", "client", "client-serialized" })
+	public String mode;
+
+	@Param({ "10000" })
+	public int sessions;
+
+	private List<Map<String, Object>> sessionViews;
+	private ClientStateCodec codec;
+	private SecretKey key;
+	private long heapBefore;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		sessionViews = new ArrayList<Map<String, Object>>(sessions);
+		for (int i = 0; i < sessions; i++) {
+			sessionViews.add(new LinkedHashMap<String, Object>());
+		}
+		key = ClientStateCodec.newKey();
+		codec = new ClientStateCodec(key);
+		if (mode.startsWith("client")) {
+			String encoded = "client".equals(mode) ? codec.encode(state(0), VIEW_ID) : encodeSerialized(state(0));
+			System.out.println();
+			System.out.println("state size: " + encoded.length() + " characters");
+		}
+		heapBefore = heapUsed();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.println();
+		System.out.println("heap used by " + sessions + " sessions: " + (heapUsed() - heapBefore) / 1024 + " KB");
+	}
+
+	private static long heapUsed() {
+		System.gc();
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * @return state shaped like the one JSF saves for hello.xhtml: tree structure and component states
+	 */
+	static Object state(int session) {
+		String[] types = { "javax.faces.component.UIViewRoot", "javax.faces.component.UIOutput",
+				"javax.faces.component.html.HtmlBody", "javax.faces.component.html.HtmlForm",
+				"javax.faces.component.html.HtmlInputText", "javax.faces.component.html.HtmlCommandButton" };
+		Object[] structure = new Object[types.length * 3];
+		Map<String, Object> componentStates = new HashMap<String, Object>();
+		for (int i = 0; i < types.length; i++) {
+			String id = "j_idt" + (i + 2);
+			structure[i * 3] = types[i];
+			structure[i * 3 + 1] = id;
+			structure[i * 3 + 2] = Integer.valueOf(i - 1);
+			componentStates.put(id, new Object[] {
+					new Object[] { "javax.faces.component.UIComponentBase.attributesThatAreSet", new Object[] { "value", "id" } },
+					Boolean.FALSE, null, id, i == 4 ? "name " + session : null, Integer.valueOf(i) });
+		}
+		return new Object[] { structure, componentStates };
+	}
+
+	@Benchmark
+	public Object renderAndPostback() throws Exception {
+		int session = ThreadLocalRandom.current().nextInt(sessions);
+		Object state = state(session);
+		switch (mode) {
+		case "server":
+			return server(session, state);
+		case "client":
+			return codec.decode(codec.encode(state, VIEW_ID), VIEW_ID);
+		case "client-serialized":
+			return decodeSerialized(encodeSerialized(state));
+		default:
+			return state;
+		}
+	}
+
+	private Object server(int session, Object state) {
+		Map<String, Object> views = sessionViews.get(session);
+		synchronized (views) {
+			String id = Long.toString(ThreadLocalRandom.current().nextLong());
+			views.put(id, state);
+			if (views.size() > LOGICAL_VIEWS) {
+				Iterator<String> eldest = views.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+			return views.get(id);
+		}
+	}
+
+	private String encodeSerialized(Object state) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes));
+		out.writeObject(state);
+		out.close();
+		byte[] iv = new byte[12];
+		ThreadLocalRandom.current().nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+		byte[] encrypted = cipher.doFinal(bytes.toByteArray());
+		byte[] encoded = new byte[iv.length + encrypted.length];
+		System.arraycopy(iv, 0, encoded, 0, iv.length);
+		System.arraycopy(encrypted, 0, encoded, iv.length, encrypted.length);
+		return Base64.getEncoder().encodeToString(encoded);
+	}
+
+	private Object decodeSerialized(String encoded) throws Exception {
+		byte[] bytes = Base64.getDecoder().decode(encoded);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, bytes, 0, 12));
+		byte[] plain = cipher.doFinal(bytes, 12, bytes.length - 12);
+		ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(plain)));
+		return in.readObject();
+	}
+}
@@ -0,0 +1,171 @@
+package rmontag.jsfexample.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and request threads of the blocking and the async path of the application's
+ * BackendServlet: the WAR is deployed with its web.xml, so every request passes the async-supported
+ * filters mapped to /* (metrics, audit, security headers), and concurrency clients send requests to
+ * /backend/blocking, then to /backend/async, until requests are done per mode.
+ *
+ * java -cp launcher.jar rmontag.jsfexample.launcher.AsyncComparison
+ *
+ * Settings (system properties):
+ * <ul>
+ * <li>comparison.war - WAR file or exploded directory to deploy instead of the packaged one (Default: none).</li>
+ * <li>comparison.contextPath - Context path (Default: /JavaServerFaces).</li>
+ * <li>comparison.modes - Comma separated paths below /backend/ to compare (Default: blocking,async).</li>
+ * <li>comparison.concurrency - Concurrent clients (Default: 1000).</li>
+ * <li>comparison.requests - Requests per mode (Default: 10000).</li>
+ * <li>comparison.maxThreads - Size of the request thread pool (Default: 200).</li>
+ * </ul>
+ * The wait per request is the init param delayMillis of the BackendServlet in web.xml.
+ *
+ * Busy request threads are sampled every 20 ms. Every response must be a 200 with the security
+ * headers; exits with 1 otherwise.
+ */
+public class AsyncComparison {
+
+	private static final List<String> REQUIRED_HEADERS = Arrays.asList("X-Frame-Options", "Content-Security-Policy");
+
+	public static void main(String[] args) throws Exception {
+		String war = System.getProperty("comparison.war");
+		String contextPath = System.getProperty("comparison.contextPath", "/JavaServerFaces");
+		List<String> modes = Arrays.asList(System.getProperty("comparison.modes", "blocking,async").split("\\s*,\\s*"));
+		int concurrency = Integer.getInteger("comparison.concurrency", 1000);
+		int requests = Integer.getInteger("comparison.requests", 10000);
+		int maxThreads = Integer.getInteger("comparison.maxThreads", 200);
+
+		File baseDir = Files.createTempDirectory("async-comparison").toFile();
+		EmbeddedServer server = new EmbeddedServer(baseDir, 0, RequestThreads.PLATFORM, maxThreads, concurrency * 2);
+		server.addWebapp(contextPath, war != null ? new File(war) : Launcher.extractWar(baseDir));
+		boolean failed = false;
+		try {
+			server.start();
+			String backendUrl = "http://localhost:" + server.getPort() + contextPath + "/backend/";
+			System.out.println(String.format(Locale.ROOT, "%d requests, %d concurrent clients, %d request threads, Java %s",
+					requests, concurrency, maxThreads, System.getProperty("java.version")));
+			for (String mode : modes) {
+				URL url = new URL(backendUrl + mode);
+				// warmup: connections, JIT and the lazily initialized parts of the filters
+				run(server, url, concurrency, Math.min(requests, concurrency), null);
+				failed |= !run(server, url, concurrency, requests, mode);
+			}
+		} finally {
+			server.stop();
+			Launcher.delete(baseDir.toPath());
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+	/**
+	 * @param mode name printed with the results, null for a warmup without output
+	 * @return false, if a request failed or lacked a security header
+	 */
+	private static boolean run(final EmbeddedServer server, final URL url, int concurrency, final int requests, String mode)
+			throws InterruptedException {
+		final AtomicLong busySum = new AtomicLong();
+		final AtomicInteger busyPeak = new AtomicInteger();
+		final AtomicInteger samples = new AtomicInteger();
+		Thread sampler = new Thread("comparison-sampler") {
+			@Override
+			public void run() {
+				while (!isInterrupted()) {
+					int busy = server.getBusyThreads();
+					busySum.addAndGet(busy);
+					samples.incrementAndGet();
+					if (busy > busyPeak.get()) {
+						busyPeak.set(busy);
+					}
+					try {
+						Thread.sleep(20);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		sampler.setDaemon(true);
+		sampler.start();
+
+		final long[] latencies = new long[requests];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		final AtomicInteger missingHeaders = new AtomicInteger();
+		ExecutorService clients = RequestThreads.isVirtualSupported() ? RequestThreads.newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		for (int i = 0; i < concurrency; i++) {
+			clients.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int request; (request = next.getAndIncrement()) < requests;) {
+						long requestStart = System.nanoTime();
+						int result = get(url);
+						if (result < 0) {
+							errors.incrementAndGet();
+						} else if (result > 0) {
+							missingHeaders.incrementAndGet();
+						}
+						latencies[request] = System.nanoTime() - requestStart;
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		clients.awaitTermination(1, TimeUnit.HOURS);
+		long nanos = System.nanoTime() - start;
+		sampler.interrupt();
+		sampler.join();
+
+		if (mode != null) {
+			Arrays.sort(latencies);
+			System.out.println(String.format(Locale.ROOT,
+					"%-8s %8.1f requests/s, p50 %6.1f ms, p99 %7.1f ms, %d errors, %d missing headers, request threads busy avg %.1f, peak %d",
+					mode, requests * 1e9 / nanos, latencies[requests / 2] / 1e6, latencies[(int) Math.ceil(requests * 0.99) - 1] / 1e6,
+					errors.get(), missingHeaders.get(), samples.get() == 0 ? 0 : (double) busySum.get() / samples.get(),
+					busyPeak.get()));
+		}
+		return errors.get() == 0 && missingHeaders.get() == 0;
+	}
+
+	/**
+	 * @return 0 for a 200 with all {@link #REQUIRED_HEADERS}, 1 for a 200 lacking one, -1 for an error
+	 */
+	private static int get(URL url) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(60000);
+			connection.setReadTimeout(60000);
+			try (InputStream in = connection.getInputStream()) {
+				while (in.read() >= 0) {
+					// drain, so the connection can be reused
+				}
+			}
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				return -1;
+			}
+			for (String header : REQUIRED_HEADERS) {
+				if (connection.getHeaderField(header) == null) {
+					return 1;
+				}
+			}
+			return 0;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+}
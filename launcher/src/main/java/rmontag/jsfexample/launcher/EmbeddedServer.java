@@ -0,0 +1,123 @@
+package rmontag.jsfexample.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipFile;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+
+/**
+ * Embedded Tomcat 9 (NIO connector) with its request threads configured for the {@link RequestThreads}.
+ *
+ * With {@link RequestThreads#PLATFORM} requests are handled by Tomcat's pool of maxThreads threads.
+ * With {@link RequestThreads#VIRTUAL} every request gets a new virtual thread; maxConnections
+ * limits the connections served at once in both modes.
+ */
+public final class EmbeddedServer {
+
+	private final Tomcat tomcat = new Tomcat();
+	private final File appBase;
+	private ExecutorService virtualThreads;
+
+	/**
+	 * @param baseDir working directory of Tomcat, the WAR is expanded into baseDir/webapps
+	 */
+	public EmbeddedServer(File baseDir, int port, RequestThreads threads, int maxThreads, int maxConnections) {
+		appBase = new File(baseDir, "webapps");
+		appBase.mkdirs();
+		tomcat.setBaseDir(baseDir.getAbsolutePath());
+		tomcat.setPort(port);
+		tomcat.getHost().setAutoDeploy(false);
+
+		AbstractProtocol<?> protocol = (AbstractProtocol<?>) tomcat.getConnector().getProtocolHandler();
+		// waiting connections are queued by the OS instead of refused
+		protocol.setAcceptCount(maxConnections);
+		if (threads == RequestThreads.VIRTUAL) {
+			virtualThreads = RequestThreads.newVirtualThreadPerTaskExecutor();
+			protocol.setExecutor(virtualThreads);
+		} else {
+			protocol.setMaxThreads(maxThreads);
+		}
+		protocol.setMaxConnections(maxConnections);
+	}
+
+	/**
+	 * Deploys the WAR like a standalone Tomcat: naming enabled, META-INF/context.xml applied.
+	 * Only the WAR's own jars are scanned for TLDs and fragments, not the launcher's class path.
+	 * @param war WAR file or exploded directory
+	 */
+	public Context addWebapp(String contextPath, File war) throws IOException {
+		tomcat.enableNaming();
+		Context context = tomcat.addWebapp(contextPath, war.getAbsolutePath());
+		URL contextXml = contextXml(war);
+		if (contextXml != null) {
+			context.setConfigFile(contextXml);
+		}
+		StandardJarScanner jarScanner = new StandardJarScanner();
+		jarScanner.setScanClassPath(false);
+		context.setJarScanner(jarScanner);
+		return context;
+	}
+
+	/**
+	 * Adds a context without web.xml, for servlets added programmatically.
+	 */
+	public Context addContext(String contextPath) {
+		return tomcat.addContext(contextPath, appBase.getAbsolutePath());
+	}
+
+	private static URL contextXml(File war) throws IOException {
+		if (war.isDirectory()) {
+			File contextXml = new File(war, "META-INF/context.xml");
+			return contextXml.isFile() ? contextXml.toURI().toURL() : null;
+		}
+		try (ZipFile zip = new ZipFile(war)) {
+			if (zip.getEntry("META-INF/context.xml") == null) {
+				return null;
+			}
+		}
+		return new URL("jar:" + war.toURI() + "!/META-INF/context.xml");
+	}
+
+	public void start() throws LifecycleException {
+		tomcat.start();
+	}
+
+	/**
+	 * @return the port listened on, the actual one if started with port 0
+	 */
+	public int getPort() {
+		return tomcat.getConnector().getLocalPort();
+	}
+
+	/**
+	 * @return request threads of the pool currently serving a request, -1 with virtual threads
+	 */
+	public int getBusyThreads() {
+		Executor executor = tomcat.getConnector().getProtocolHandler().getExecutor();
+		return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getActiveCount() : -1;
+	}
+
+	/**
+	 * Blocks until the server is stopped, e.g. by the shutdown hook.
+	 */
+	public void await() {
+		tomcat.getServer().await();
+	}
+
+	public void stop() throws LifecycleException {
+		tomcat.stop();
+		tomcat.destroy();
+		if (virtualThreads != null) {
+			virtualThreads.shutdownNow();
+		}
+	}
+}
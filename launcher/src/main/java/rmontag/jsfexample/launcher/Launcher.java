@@ -0,0 +1,98 @@
+package rmontag.jsfexample.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Runs the application on an {@link EmbeddedServer}: java -jar launcher.jar.
+ *
+ * The WAR packaged into the launcher jar is deployed with its web.xml and META-INF/context.xml, so
+ * the Faces Servlet, Weld and the security filters are configured as on a standalone Tomcat.
+ *
+ * Settings (system properties):
+ * <ul>
+ * <li>launcher.port - HTTP port (Default: 8080).</li>
+ * <li>launcher.contextPath - Context path (Default: /JavaServerFaces).</li>
+ * <li>launcher.threads - platform or virtual, see {@link RequestThreads} (Default: platform).</li>
+ * <li>launcher.maxThreads - Size of the platform thread pool (Default: 200).</li>
+ * <li>launcher.maxConnections - Connections served at once (Default: 10000).</li>
+ * <li>launcher.war - WAR file or exploded directory to deploy instead of the packaged one (Default: none).</li>
+ * </ul>
+ * Tomcat works in a temporary directory, deleted on shutdown.
+ */
+public class Launcher {
+
+	private static final Log LOG = LogFactory.getLog(Launcher.class);
+
+	static final String WAR_RESOURCE = "/JavaServerFaces.war";
+
+	public static void main(String[] args) throws Exception {
+		long start = System.nanoTime();
+		int port = Integer.getInteger("launcher.port", 8080);
+		String contextPath = System.getProperty("launcher.contextPath", "/JavaServerFaces");
+		RequestThreads threads = RequestThreads.parse(System.getProperty("launcher.threads", "platform"));
+		int maxThreads = Integer.getInteger("launcher.maxThreads", 200);
+		int maxConnections = Integer.getInteger("launcher.maxConnections", 10000);
+		String war = System.getProperty("launcher.war");
+
+		final File baseDir = Files.createTempDirectory("jsfexample-launcher").toFile();
+		final EmbeddedServer server = new EmbeddedServer(baseDir, port, threads, maxThreads, maxConnections);
+		server.addWebapp(contextPath, war != null ? new File(war) : extractWar(baseDir));
+		Runtime.getRuntime().addShutdownHook(new Thread("launcher-shutdown") {
+			@Override
+			public void run() {
+				try {
+					server.stop();
+				} catch (Exception e) {
+					LOG.warn("Stopping the server failed", e);
+				}
+				delete(baseDir.toPath());
+			}
+		});
+		server.start();
+		LOG.info("http://localhost:" + server.getPort() + contextPath + "/ started in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, " + threads.name().toLowerCase() + " request threads");
+		server.await();
+	}
+
+	static File extractWar(File baseDir) throws IOException {
+		File war = new File(baseDir, WAR_RESOURCE.substring(1));
+		try (InputStream in = Launcher.class.getResourceAsStream(WAR_RESOURCE)) {
+			if (in == null) {
+				throw new IllegalStateException("No " + WAR_RESOURCE + " in the class path, specify launcher.war");
+			}
+			Files.copy(in, war.toPath());
+		}
+		return war;
+	}
+
+	static void delete(Path directory) {
+		try {
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+					Files.delete(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			LOG.warn("Deleting " + directory + " failed", e);
+		}
+	}
+}
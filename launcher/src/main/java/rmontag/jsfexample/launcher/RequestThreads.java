@@ -0,0 +1,61 @@
+package rmontag.jsfexample.launcher;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Threads requests are handled on, selected by the system property launcher.threads.
+ */
+public enum RequestThreads {
+
+	/**
+	 * Tomcat's bounded pool of platform threads, a blocked request holds its thread (Default).
+	 */
+	PLATFORM,
+
+	/**
+	 * A new virtual thread per request (Java 21+), a blocked request releases its carrier thread.
+	 */
+	VIRTUAL;
+
+	/**
+	 * @return the mode for the value "platform" or "virtual"
+	 */
+	public static RequestThreads parse(String value) {
+		for (RequestThreads threads : values()) {
+			if (threads.name().equalsIgnoreCase(value.trim())) {
+				return threads;
+			}
+		}
+		throw new IllegalArgumentException("An invalid value [" + value + "] was specified for launcher.threads");
+	}
+
+	/**
+	 * @return whether the JVM supports virtual threads
+	 */
+	public static boolean isVirtualSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor(), called by reflection as the code is compiled for Java 8.
+	 * @throws IllegalStateException if the JVM does not support virtual threads
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (!isVirtualSupported()) {
+			throw new IllegalStateException("Virtual threads require Java 21, running on " + System.getProperty("java.version"));
+		}
+		try {
+			return (ExecutorService) Class.forName("java.util.concurrent.Executors").getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
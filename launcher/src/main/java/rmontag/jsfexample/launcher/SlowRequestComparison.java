@@ -0,0 +1,212 @@
+package rmontag.jsfexample.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Throughput and memory of the {@link RequestThreads} when many slow requests run at once: every
+ * request waits delayMillis for a simulated backend, concurrency clients send requests until
+ * requests are done.
+ *
+ * java -cp launcher.jar rmontag.jsfexample.launcher.SlowRequestComparison
+ *
+ * Settings (system properties):
+ * <ul>
+ * <li>comparison.threads - Comma separated modes to compare (Default: platform,virtual).</li>
+ * <li>comparison.concurrency - Concurrent clients (Default: 2000).</li>
+ * <li>comparison.requests - Requests per mode (Default: 20000).</li>
+ * <li>comparison.delayMillis - Wait per request (Default: 100).</li>
+ * <li>comparison.maxThreads - Size of the platform thread pool (Default: 200).</li>
+ * </ul>
+ *
+ * The clients run in the same JVM, on virtual threads if supported, so their share of threads and
+ * memory is the same for both modes. Peak values are sampled every 20 ms; heap includes the stacks
+ * of virtual threads, resident memory (Linux only) the stacks of platform threads.
+ */
+public class SlowRequestComparison {
+
+	public static void main(String[] args) throws Exception {
+		List<String> modes = Arrays.asList(System.getProperty("comparison.threads", "platform,virtual").split("\\s*,\\s*"));
+		int concurrency = Integer.getInteger("comparison.concurrency", 2000);
+		int requests = Integer.getInteger("comparison.requests", 20000);
+		int delayMillis = Integer.getInteger("comparison.delayMillis", 100);
+		int maxThreads = Integer.getInteger("comparison.maxThreads", 200);
+
+		System.out.println(String.format(Locale.ROOT, "%d requests of %d ms, %d concurrent clients, %d platform threads, Java %s",
+				requests, delayMillis, concurrency, maxThreads, System.getProperty("java.version")));
+		for (String mode : modes) {
+			RequestThreads threads = RequestThreads.parse(mode);
+			if (threads == RequestThreads.VIRTUAL && !RequestThreads.isVirtualSupported()) {
+				System.out.println(String.format(Locale.ROOT, "%-8s not supported by this JVM", mode));
+				continue;
+			}
+			System.gc();
+			run(threads, concurrency, requests, delayMillis, maxThreads);
+		}
+	}
+
+	private static void run(RequestThreads threads, int concurrency, final int requests, final int delayMillis, int maxThreads)
+			throws Exception {
+		File baseDir = Files.createTempDirectory("slow-request-comparison").toFile();
+		EmbeddedServer server = new EmbeddedServer(baseDir, 0, threads, maxThreads, concurrency * 2);
+		Context context = server.addContext("");
+		Tomcat.addServlet(context, "slow", new SlowServlet(delayMillis));
+		context.addServletMapping("/slow", "slow");
+		server.start();
+		final URL url = new URL("http://localhost:" + server.getPort() + "/slow");
+
+		final Peaks peaks = new Peaks();
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		threadBean.resetPeakThreadCount();
+		Thread sampler = new Thread("comparison-sampler") {
+			@Override
+			public void run() {
+				while (!isInterrupted()) {
+					peaks.sample();
+					try {
+						Thread.sleep(20);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		sampler.setDaemon(true);
+		sampler.start();
+
+		final long[] latencies = new long[requests];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		ExecutorService clients = RequestThreads.isVirtualSupported() ? RequestThreads.newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		for (int i = 0; i < concurrency; i++) {
+			clients.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int request; (request = next.getAndIncrement()) < requests;) {
+						long requestStart = System.nanoTime();
+						if (!get(url)) {
+							errors.incrementAndGet();
+						}
+						latencies[request] = System.nanoTime() - requestStart;
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		clients.awaitTermination(1, TimeUnit.HOURS);
+		long nanos = System.nanoTime() - start;
+		sampler.interrupt();
+		sampler.join();
+		server.stop();
+
+		Arrays.sort(latencies);
+		System.out.println(String.format(Locale.ROOT,
+				"%-8s %8.1f requests/s, p50 %6.1f ms, p99 %7.1f ms, %d errors, peak %d platform threads, peak heap %d MB, peak resident %s MB",
+				threads.name().toLowerCase(), requests * 1e9 / nanos, latencies[requests / 2] / 1e6,
+				latencies[(int) Math.ceil(requests * 0.99) - 1] / 1e6, errors.get(), threadBean.getPeakThreadCount(),
+				peaks.heap.get() >> 20, peaks.resident.get() < 0 ? "-" : String.valueOf(peaks.resident.get() >> 20)));
+	}
+
+	private static boolean get(URL url) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(60000);
+			connection.setReadTimeout(60000);
+			try (InputStream in = connection.getInputStream()) {
+				while (in.read() >= 0) {
+					// drain, so the connection can be reused
+				}
+			}
+			return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Waits like a request calling a slow backend.
+	 */
+	static final class SlowServlet extends HttpServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int delayMillis;
+
+		SlowServlet(int delayMillis) {
+			this.delayMillis = delayMillis;
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServletException(e);
+			}
+			response.setContentType("text/plain");
+			response.getWriter().write("ok");
+		}
+	}
+
+	private static final class Peaks {
+
+		private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		private final AtomicLong heap = new AtomicLong();
+		private final AtomicLong resident = new AtomicLong(-1);
+
+		void sample() {
+			max(heap, memory.getHeapMemoryUsage().getUsed());
+			max(resident, resident());
+		}
+
+		private static void max(AtomicLong peak, long value) {
+			if (value > peak.get()) {
+				peak.set(value);
+			}
+		}
+
+		/**
+		 * @return resident set size in bytes, -1 if unknown
+		 */
+		private static long resident() {
+			try {
+				for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+					if (line.startsWith("VmRSS:")) {
+						return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				// not Linux
+			}
+			return -1;
+		}
+	}
+}
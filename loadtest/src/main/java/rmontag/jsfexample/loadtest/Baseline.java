@@ -0,0 +1,89 @@
+package rmontag.jsfexample.loadtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Stored results of a load test: flows per second and the p50/p99 latencies per step in
+ * milliseconds, e.g. "flowsPerSecond=850.0", "welcome.p99Millis=12.5".
+ *
+ * A result regresses if its throughput is lower or one of its latencies is higher than the
+ * baseline by more than the tolerance. The baseline is only valid for the machine and settings
+ * it was measured with.
+ */
+final class Baseline {
+
+	static final String FLOWS_PER_SECOND = "flowsPerSecond";
+
+	private static final double[] QUANTILES = { 0.5, 0.99 };
+
+	private final Properties values;
+
+	private Baseline(Properties values) {
+		this.values = values;
+	}
+
+	static Baseline of(LoadTestResult result) {
+		Properties values = new Properties();
+		values.setProperty(FLOWS_PER_SECOND, format(result.getFlowsPerSecond()));
+		for (int step = 0; step < LoadTestResult.STEPS.length; step++) {
+			for (double quantile : QUANTILES) {
+				values.setProperty(latencyKey(step, quantile), format(result.getLatencyMillis(step, quantile)));
+			}
+		}
+		return new Baseline(values);
+	}
+
+	static Baseline load(File file) throws IOException {
+		Properties values = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			values.load(in);
+		}
+		return new Baseline(values);
+	}
+
+	void store(File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			values.store(out, "load test baseline, see LoadTestMain");
+		}
+	}
+
+	/**
+	 * @return the regressions of the result, empty if none
+	 */
+	List<String> compare(LoadTestResult result, int tolerancePercent) {
+		List<String> regressions = new ArrayList<String>();
+		double tolerance = tolerancePercent / 100.0;
+		String flowsPerSecond = values.getProperty(FLOWS_PER_SECOND);
+		if (flowsPerSecond != null && result.getFlowsPerSecond() < Double.parseDouble(flowsPerSecond) * (1 - tolerance)) {
+			regressions.add(FLOWS_PER_SECOND + " " + format(result.getFlowsPerSecond()) + " < baseline " + flowsPerSecond);
+		}
+		for (int step = 0; step < LoadTestResult.STEPS.length; step++) {
+			for (double quantile : QUANTILES) {
+				String key = latencyKey(step, quantile);
+				String millis = values.getProperty(key);
+				double actual = result.getLatencyMillis(step, quantile);
+				if (millis != null && actual > Double.parseDouble(millis) * (1 + tolerance)) {
+					regressions.add(key + " " + format(actual) + " > baseline " + millis);
+				}
+			}
+		}
+		return regressions;
+	}
+
+	private static String latencyKey(int step, double quantile) {
+		return LoadTestResult.STEPS[step] + ".p" + LoadTestResult.quantileName(quantile) + "Millis";
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+}
@@ -0,0 +1,157 @@
+package rmontag.jsfexample.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.deploy.ApplicationParameter;
+import org.apache.catalina.deploy.ContextEnvironment;
+import org.apache.catalina.deploy.FilterDef;
+import org.apache.catalina.deploy.FilterMap;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.naming.factory.ResourceLinkFactory;
+
+/**
+ * Tomcat on a free port of localhost with the application deployed like by a standalone Tomcat:
+ * naming enabled and META-INF/context.xml of the WAR applied (the BeanManager resource).
+ *
+ * Session replication is a measurement tool not registered by the application's web.xml; with
+ * replicateSessions its listener and filter are added to the deployment here.
+ */
+final class EmbeddedTomcat {
+
+	static final String REPLICATION_LISTENER = "rmontag.jsfexample.common.SessionReplicationListener";
+	static final String REPLICATION_FILTER = "rmontag.jsfexample.common.SessionReplicationFilter";
+	static final String FACES_SERVLET = "Faces Servlet";
+
+	/** The engine name scopes the naming contexts and MBeans, so several instances must not share it. */
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	private final Tomcat tomcat;
+
+	private EmbeddedTomcat(Tomcat tomcat) {
+		this.tomcat = tomcat;
+	}
+
+	/**
+	 * @param war WAR file or exploded directory
+	 * @param filterParams init params overriding those of web.xml, keyed by "filter name.param name"
+	 * @param contextParams context params overriding those of web.xml
+	 * @param envEntries String env-entries below java:comp/env overriding those of web.xml
+	 * @param replicateSessions whether to add the session replication listener and filter
+	 */
+	static EmbeddedTomcat start(File war, String contextPath, final Map<String, String> filterParams,
+			Map<String, String> contextParams, Map<String, String> envEntries, final boolean replicateSessions)
+			throws IOException, LifecycleException {
+		if (!war.exists()) {
+			throw new IllegalArgumentException("An invalid value [" + war + "] was specified for loadtest.war");
+		}
+		File baseDir = Files.createTempDirectory("loadtest-tomcat").toFile();
+		new File(baseDir, "webapps").mkdir();
+
+		Tomcat tomcat = new Tomcat();
+		tomcat.setBaseDir(baseDir.getAbsolutePath());
+		tomcat.setPort(0);
+		int instance = INSTANCES.getAndIncrement();
+		if (instance > 0) {
+			tomcat.getEngine().setName("Tomcat-" + instance);
+		}
+		tomcat.enableNaming();
+		final Context context = tomcat.addWebapp(contextPath, war.getAbsolutePath());
+		for (Map.Entry<String, String> param : contextParams.entrySet()) {
+			ApplicationParameter parameter = new ApplicationParameter();
+			parameter.setName(param.getKey());
+			parameter.setValue(param.getValue());
+			// not overridable by web.xml
+			parameter.setOverride(false);
+			context.addApplicationParameter(parameter);
+		}
+		for (Map.Entry<String, String> entry : envEntries.entrySet()) {
+			ContextEnvironment environment = new ContextEnvironment();
+			environment.setName(entry.getKey());
+			environment.setType(String.class.getName());
+			environment.setValue(entry.getValue());
+			environment.setOverride(false);
+			context.getNamingResources().addEnvironment(environment);
+		}
+		URL contextXml = contextXml(war);
+		if (contextXml != null) {
+			context.setConfigFile(contextXml);
+		}
+		// added after the ContextConfig, so web.xml is already parsed, and before the filters are initialized
+		context.addLifecycleListener(new LifecycleListener() {
+			@Override
+			public void lifecycleEvent(LifecycleEvent event) {
+				if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+					if (replicateSessions) {
+						addReplication(context);
+					}
+					overrideFilterParams(context, filterParams);
+				}
+			}
+		});
+		tomcat.start();
+		return new EmbeddedTomcat(tomcat);
+	}
+
+	/**
+	 * Adds the replication listener after those of web.xml, it is started before the filters, and
+	 * the filter as the last one in front of the Faces Servlet.
+	 */
+	private static void addReplication(Context context) {
+		context.addApplicationListener(REPLICATION_LISTENER);
+		FilterDef filterDef = new FilterDef();
+		filterDef.setFilterName("SessionReplicationFilter");
+		filterDef.setFilterClass(REPLICATION_FILTER);
+		context.addFilterDef(filterDef);
+		FilterMap filterMap = new FilterMap();
+		filterMap.setFilterName(filterDef.getFilterName());
+		filterMap.addServletName(FACES_SERVLET);
+		context.addFilterMap(filterMap);
+	}
+
+	private static void overrideFilterParams(Context context, Map<String, String> filterParams) {
+		for (Map.Entry<String, String> param : filterParams.entrySet()) {
+			int dot = param.getKey().indexOf('.');
+			FilterDef filterDef = dot < 0 ? null : context.findFilterDef(param.getKey().substring(0, dot));
+			if (filterDef == null) {
+				throw new IllegalArgumentException("An invalid value [" + param.getKey() + "] was specified for loadtest.filterParams");
+			}
+			// addInitParameter keeps the first value of a param
+			filterDef.getParameterMap().put(param.getKey().substring(dot + 1), param.getValue());
+		}
+	}
+
+	private static URL contextXml(File war) throws IOException {
+		if (war.isDirectory()) {
+			File contextXml = new File(war, "META-INF/context.xml");
+			return contextXml.isFile() ? contextXml.toURI().toURL() : null;
+		}
+		try (ZipFile zip = new ZipFile(war)) {
+			if (zip.getEntry("META-INF/context.xml") == null) {
+				return null;
+			}
+		}
+		return new URL("jar:" + war.toURI() + "!/META-INF/context.xml");
+	}
+
+	int getPort() {
+		return tomcat.getConnector().getLocalPort();
+	}
+
+	void stop() throws LifecycleException {
+		// the global naming context is static and checked on stop, it is the one of the instance started last
+		ResourceLinkFactory.setGlobalContext(tomcat.getServer().getGlobalNamingContext());
+		tomcat.stop();
+		tomcat.destroy();
+	}
+}
@@ -0,0 +1,120 @@
+package rmontag.jsfexample.loadtest;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The first form of a page rendered by h:form, i.e. with a javax.faces.ViewState field, submitted
+ * like a browser does: hidden and text inputs and the first submit button.
+ */
+final class HtmlForm {
+
+	static final String VIEW_STATE = "javax.faces.ViewState";
+
+	private static final Pattern FORM = Pattern.compile("<form\\b([^>]*)>(.*?)</form>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+	private static final Pattern INPUT = Pattern.compile("<input\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ATTRIBUTE = Pattern.compile("([\\w:.-]+)\\s*=\\s*\"([^\"]*)\"");
+
+	private final URL action;
+	private final Map<String, String> fields = new LinkedHashMap<String, String>();
+	private final List<String> textFields = new ArrayList<String>();
+
+	private HtmlForm(URL action) {
+		this.action = action;
+	}
+
+	/**
+	 * @param page URL of the page, the form action is resolved against
+	 * @return the form, or null if the page has no form with a view state
+	 */
+	static HtmlForm parse(String html, URL page) throws MalformedURLException {
+		Matcher form = FORM.matcher(html);
+		while (form.find()) {
+			Map<String, String> formAttributes = attributes(form.group(1));
+			HtmlForm htmlForm = new HtmlForm(new URL(page, formAttributes.containsKey("action") ? formAttributes.get("action") : ""));
+			boolean submit = false;
+			Matcher input = INPUT.matcher(form.group(2));
+			while (input.find()) {
+				Map<String, String> attributes = attributes(input.group(1));
+				String type = attributes.containsKey("type") ? attributes.get("type").toLowerCase() : "text";
+				String name = attributes.get("name");
+				String value = attributes.containsKey("value") ? attributes.get("value") : "";
+				if (name == null || type.equals("submit") && submit) {
+					continue;
+				}
+				if (type.equals("hidden") || type.equals("text") || type.equals("submit")) {
+					htmlForm.fields.put(name, value);
+					if (type.equals("text")) {
+						htmlForm.textFields.add(name);
+					}
+					submit |= type.equals("submit");
+				}
+			}
+			if (htmlForm.fields.containsKey(VIEW_STATE)) {
+				return htmlForm;
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, String> attributes(String tag) {
+		Map<String, String> attributes = new LinkedHashMap<String, String>();
+		Matcher attribute = ATTRIBUTE.matcher(tag);
+		while (attribute.find()) {
+			attributes.put(attribute.group(1).toLowerCase(), unescape(attribute.group(2)));
+		}
+		return attributes;
+	}
+
+	private static String unescape(String value) {
+		if (value.indexOf('&') < 0) {
+			return value;
+		}
+		return value.replace("&quot;", "\"").replace("&#39;", "'").replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+	}
+
+	URL getAction() {
+		return action;
+	}
+
+	String getViewState() {
+		return fields.get(VIEW_STATE);
+	}
+
+	/**
+	 * Types the value into all text inputs.
+	 * @return false if the form has no text input
+	 */
+	boolean fillText(String value) {
+		for (String name : textFields) {
+			fields.put(name, value);
+		}
+		return !textFields.isEmpty();
+	}
+
+	/**
+	 * @return the fields as application/x-www-form-urlencoded body
+	 */
+	String encode() {
+		StringBuilder body = new StringBuilder(256);
+		try {
+			for (Map.Entry<String, String> field : fields.entrySet()) {
+				if (body.length() > 0) {
+					body.append('&');
+				}
+				body.append(URLEncoder.encode(field.getKey(), "UTF-8")).append('=').append(URLEncoder.encode(field.getValue(), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return body.toString();
+	}
+}
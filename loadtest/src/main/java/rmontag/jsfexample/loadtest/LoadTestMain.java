@@ -0,0 +1,243 @@
+package rmontag.jsfexample.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deploys the WAR into an {@link EmbeddedTomcat} on localhost (or uses a running server), runs
+ * {@link VirtualUser}s through the hello -> welcome flow, prints throughput and latency
+ * percentiles and compares them with the {@link Baseline}.
+ *
+ * With loadtest.nodes &gt; 1 the WAR is deployed into that many Tomcats replicating their sessions
+ * to each other over loopback (see SessionReplicator, added to the deployments here), the users are spread over the nodes and the
+ * replication metrics of each node are printed: bytes per request of the deltas and of full-session
+ * replication.
+ *
+ * Settings (system properties):
+ * <ul>
+ * <li>loadtest.war - WAR file or exploded directory to deploy (Default: ../target/JavaServerFaces.war).</li>
+ * <li>loadtest.contextPath - Context path of the application (Default: /JavaServerFaces).</li>
+ * <li>loadtest.url - URL of an application already running, nothing is deployed if set (Default: none).</li>
+ * <li>loadtest.filterParams - Comma separated "filter name.param name=value" overriding the init params of the
+ * deployed web.xml (Default: AdmissionControlFilter.ratePerSecond=0, as all users share the address of localhost).</li>
+ * <li>loadtest.nodes - Number of Tomcats replicating their sessions to each other, not with loadtest.url (Default: 1).</li>
+ * <li>loadtest.users - Number of concurrent users (Default: 50).</li>
+ * <li>loadtest.flowsPerSession - Flows of a user before it drops its cookies and starts a new session (Default: 10).</li>
+ * <li>loadtest.warmupSeconds - Duration of the unmeasured warmup (Default: 10).</li>
+ * <li>loadtest.durationSeconds - Duration of the measurement (Default: 30).</li>
+ * <li>loadtest.headers - Comma separated headers every response must have
+ * (Default: X-Frame-Options,X-Content-Type-Options,X-XSS-Protection,Content-Security-Policy).</li>
+ * <li>loadtest.baseline - Baseline properties file (Default: baseline.properties).</li>
+ * <li>loadtest.tolerancePercent - Regression allowed against the baseline (Default: 10).</li>
+ * <li>loadtest.updateBaseline - Store the results as baseline instead of comparing them (Default: false).</li>
+ * </ul>
+ *
+ * Exits with 1 if a flow failed, a header was missing, a node received no replicas or the results regressed.
+ */
+public class LoadTestMain {
+
+	static final String DEFAULT_FILTER_PARAMS = "AdmissionControlFilter.ratePerSecond=0";
+
+	static final String REPLICATION_METRICS_PREFIX = "session_replication_";
+	static final String REPLICATION_LISTEN = "rmontag.jsfexample.SESSION_REPLICATION_LISTEN";
+	static final String REPLICATION_PEERS = "rmontag.jsfexample.SESSION_REPLICATION_PEERS";
+	static final String REPLICATION_KEY = "rmontag.jsfexample/SessionReplicationKey";
+
+	static final String DEFAULT_HEADERS = "X-Frame-Options,X-Content-Type-Options,X-XSS-Protection,Content-Security-Policy";
+
+	public static void main(String[] args) throws Exception {
+		String war = System.getProperty("loadtest.war", "../target/JavaServerFaces.war");
+		String contextPath = System.getProperty("loadtest.contextPath", "/JavaServerFaces");
+		String url = System.getProperty("loadtest.url");
+		Map<String, String> filterParams = parseParams(System.getProperty("loadtest.filterParams", DEFAULT_FILTER_PARAMS));
+		int nodes = Integer.getInteger("loadtest.nodes", 1);
+		int users = Integer.getInteger("loadtest.users", 50);
+		int flowsPerSession = Integer.getInteger("loadtest.flowsPerSession", 10);
+		int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 10);
+		int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 30);
+		List<String> headers = Arrays.asList(System.getProperty("loadtest.headers", DEFAULT_HEADERS).split("\\s*,\\s*"));
+		File baselineFile = new File(System.getProperty("loadtest.baseline", "baseline.properties"));
+		int tolerancePercent = Integer.getInteger("loadtest.tolerancePercent", 10);
+		boolean updateBaseline = Boolean.getBoolean("loadtest.updateBaseline");
+
+		if (nodes < 1 || nodes > 1 && url != null) {
+			throw new IllegalArgumentException("An invalid value [" + nodes + "] was specified for loadtest.nodes");
+		}
+
+		List<EmbeddedTomcat> tomcats = new ArrayList<EmbeddedTomcat>();
+		List<String> urls = new ArrayList<String>();
+		LoadTestResult result;
+		List<List<String>> replicationMetrics = new ArrayList<List<String>>();
+		try {
+			if (url == null) {
+				List<Map<String, String>> nodeParams = replicationParams(nodes);
+				Map<String, String> envEntries = replicationEnvEntries(nodes);
+				for (int i = 0; i < nodes; i++) {
+					EmbeddedTomcat tomcat = EmbeddedTomcat.start(new File(war), contextPath, filterParams, nodeParams.get(i),
+							envEntries, nodes > 1);
+					tomcats.add(tomcat);
+					urls.add("http://localhost:" + tomcat.getPort() + contextPath);
+				}
+			} else {
+				urls.add(url);
+			}
+			result = run(urls, users, flowsPerSession, headers, warmupSeconds, durationSeconds);
+			if (nodes > 1) {
+				// let the last batches arrive
+				TimeUnit.SECONDS.sleep(1);
+				for (String nodeUrl : urls) {
+					replicationMetrics.add(metrics(nodeUrl, REPLICATION_METRICS_PREFIX));
+				}
+			}
+		} finally {
+			for (EmbeddedTomcat tomcat : tomcats) {
+				tomcat.stop();
+			}
+		}
+
+		System.out.println();
+		System.out.println(urls + ", " + users + " users, " + durationSeconds + " s");
+		result.print(System.out);
+
+		boolean failed = result.getFailures() > 0 || result.getMissingHeaders() > 0;
+		for (int i = 0; i < replicationMetrics.size(); i++) {
+			System.out.println("node " + i + " " + urls.get(i));
+			boolean received = false;
+			for (String metric : replicationMetrics.get(i)) {
+				System.out.println("  " + metric);
+				received |= metric.startsWith(REPLICATION_METRICS_PREFIX + "frames_total{direction=\"received\"}")
+						&& !metric.endsWith(" 0");
+			}
+			if (!received) {
+				System.out.println("NO REPLICAS received by node " + i);
+				failed = true;
+			}
+		}
+		if (updateBaseline) {
+			if (!failed) {
+				Baseline.of(result).store(baselineFile);
+				System.out.println("baseline stored in " + baselineFile);
+			}
+		} else if (baselineFile.isFile()) {
+			List<String> regressions = Baseline.load(baselineFile).compare(result, tolerancePercent);
+			for (String regression : regressions) {
+				System.out.println("REGRESSION " + regression);
+			}
+			failed |= !regressions.isEmpty();
+		} else {
+			System.out.println("no baseline " + baselineFile + ", store one with -Dloadtest.updateBaseline=true");
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+	private static Map<String, String> parseParams(String value) {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for (String param : value.split("\\s*,\\s*")) {
+			if (param.isEmpty()) {
+				continue;
+			}
+			int equals = param.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("An invalid value [" + param + "] was specified for loadtest.filterParams");
+			}
+			params.put(param.substring(0, equals).trim(), param.substring(equals + 1).trim());
+		}
+		return params;
+	}
+
+	/**
+	 * @return context params per node: each node listens on a free port of localhost and replicates to all others
+	 */
+	private static List<Map<String, String>> replicationParams(int nodes) throws IOException {
+		if (nodes == 1) {
+			return Collections.singletonList(Collections.<String, String> emptyMap());
+		}
+		List<String> addresses = new ArrayList<String>();
+		for (int i = 0; i < nodes; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				addresses.add("127.0.0.1:" + socket.getLocalPort());
+			}
+		}
+		List<Map<String, String>> params = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < nodes; i++) {
+			List<String> peers = new ArrayList<String>(addresses);
+			peers.remove(i);
+			Map<String, String> nodeParams = new LinkedHashMap<String, String>();
+			nodeParams.put(REPLICATION_LISTEN, addresses.get(i));
+			nodeParams.put(REPLICATION_PEERS, String.join(",", peers));
+			params.add(nodeParams);
+		}
+		return params;
+	}
+
+	/**
+	 * @return env-entries of all nodes: the key authenticating the replication frames, random per run
+	 */
+	private static Map<String, String> replicationEnvEntries(int nodes) {
+		if (nodes == 1) {
+			return Collections.emptyMap();
+		}
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return Collections.singletonMap(REPLICATION_KEY, Base64.getEncoder().encodeToString(key));
+	}
+
+	/**
+	 * @return the lines of /metrics of the application starting with the prefix
+	 */
+	private static List<String> metrics(String url, String prefix) throws IOException {
+		List<String> metrics = new ArrayList<String>();
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(new URL(url + "/metrics").openStream(), StandardCharsets.UTF_8))) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (line.startsWith(prefix)) {
+					metrics.add(line);
+				}
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Runs the users for the warmup and the measurement and stops them; user i uses urls[i % urls.size()].
+	 */
+	static LoadTestResult run(List<String> urls, int users, int flowsPerSession, List<String> headers, int warmupSeconds,
+			int durationSeconds) throws InterruptedException {
+		LoadTestResult result = new LoadTestResult(headers);
+		List<VirtualUser> virtualUsers = new ArrayList<VirtualUser>(users);
+		List<Thread> threads = new ArrayList<Thread>(users);
+		for (int i = 0; i < users; i++) {
+			VirtualUser user = new VirtualUser(urls.get(i % urls.size()), "user" + i, flowsPerSession, result);
+			Thread thread = new Thread(user, "loadtest-" + i);
+			thread.setDaemon(true);
+			virtualUsers.add(user);
+			threads.add(thread);
+			thread.start();
+		}
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		result.startMeasurement();
+		TimeUnit.SECONDS.sleep(durationSeconds);
+		result.endMeasurement();
+		for (VirtualUser user : virtualUsers) {
+			user.stop();
+		}
+		for (Thread thread : threads) {
+			thread.join(TimeUnit.SECONDS.toMillis(30));
+		}
+		return result;
+	}
+}
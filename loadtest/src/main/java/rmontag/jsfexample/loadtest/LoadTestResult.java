@@ -0,0 +1,196 @@
+package rmontag.jsfexample.loadtest;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of a load test. Latencies and flows are only counted between
+ * {@link #startMeasurement()} and {@link #endMeasurement()}, failures and missing headers always.
+ *
+ * Every user records into its own {@link Recorder}, the latencies are merged and sorted for the
+ * exact percentiles when the test has ended.
+ */
+final class LoadTestResult {
+
+	static final String[] STEPS = { "hello", "welcome" };
+	static final int HELLO = 0;
+	static final int WELCOME = 1;
+
+	static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private static final int MAX_FAILURE_MESSAGES = 10;
+
+	private final List<String> headers;
+	private final Map<String, LongAdder> missingHeaders = new LinkedHashMap<String, LongAdder>();
+	private final List<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+	private final LongAdder flows = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final List<String> failureMessages = new ArrayList<String>();
+
+	private volatile boolean measuring;
+	private long measurementStart;
+	private long measurementNanos;
+	private long[][] latencies;
+
+	LoadTestResult(List<String> headers) {
+		this.headers = headers;
+		for (String header : headers) {
+			missingHeaders.put(header, new LongAdder());
+		}
+	}
+
+	List<String> getHeaders() {
+		return headers;
+	}
+
+	Recorder newRecorder() {
+		Recorder recorder = new Recorder();
+		recorders.add(recorder);
+		return recorder;
+	}
+
+	void startMeasurement() {
+		measurementStart = System.nanoTime();
+		measuring = true;
+	}
+
+	void endMeasurement() {
+		measuring = false;
+		measurementNanos = System.nanoTime() - measurementStart;
+	}
+
+	void flowCompleted() {
+		if (measuring) {
+			flows.increment();
+		}
+	}
+
+	void failed(String message) {
+		failures.increment();
+		synchronized (failureMessages) {
+			if (failureMessages.size() < MAX_FAILURE_MESSAGES && !failureMessages.contains(message)) {
+				failureMessages.add(message);
+			}
+		}
+	}
+
+	void headerMissing(String header) {
+		missingHeaders.get(header).increment();
+	}
+
+	long getFlows() {
+		return flows.sum();
+	}
+
+	double getFlowsPerSecond() {
+		return measurementNanos == 0 ? 0 : flows.sum() * 1e9 / measurementNanos;
+	}
+
+	long getFailures() {
+		return failures.sum();
+	}
+
+	long getMissingHeaders() {
+		long missing = 0;
+		for (LongAdder count : missingHeaders.values()) {
+			missing += count.sum();
+		}
+		return missing;
+	}
+
+	/**
+	 * @return latency in milliseconds of the step at the quantile, 0 without requests
+	 */
+	double getLatencyMillis(int step, double quantile) {
+		long[] sorted = latencies()[step];
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	private synchronized long[][] latencies() {
+		if (latencies == null) {
+			latencies = new long[STEPS.length][];
+			for (int step = 0; step < STEPS.length; step++) {
+				int count = 0;
+				for (Recorder recorder : recorders) {
+					count += recorder.counts[step];
+				}
+				long[] merged = new long[count];
+				int offset = 0;
+				for (Recorder recorder : recorders) {
+					System.arraycopy(recorder.nanos[step], 0, merged, offset, recorder.counts[step]);
+					offset += recorder.counts[step];
+				}
+				Arrays.sort(merged);
+				latencies[step] = merged;
+			}
+		}
+		return latencies;
+	}
+
+	void print(PrintStream out) {
+		long requests = 0;
+		for (long[] step : latencies()) {
+			requests += step.length;
+		}
+		double seconds = measurementNanos / 1e9;
+		out.println(String.format(Locale.ROOT, "flows %d (%.1f/s), requests %d (%.1f/s), failures %d, missing headers %d",
+				getFlows(), getFlowsPerSecond(), requests, seconds == 0 ? 0 : requests / seconds, getFailures(),
+				getMissingHeaders()));
+		for (int step = 0; step < STEPS.length; step++) {
+			StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-8s", STEPS[step]));
+			for (double quantile : QUANTILES) {
+				line.append(String.format(Locale.ROOT, " p%s %.2f ms,", quantileName(quantile), getLatencyMillis(step, quantile)));
+			}
+			line.append(String.format(Locale.ROOT, " max %.2f ms", getLatencyMillis(step, 1)));
+			out.println(line);
+		}
+		for (Map.Entry<String, LongAdder> missing : missingHeaders.entrySet()) {
+			if (missing.getValue().sum() > 0) {
+				out.println("missing header " + missing.getKey() + ": " + missing.getValue().sum() + " responses");
+			}
+		}
+		synchronized (failureMessages) {
+			for (String message : failureMessages) {
+				out.println("failure: " + message);
+			}
+		}
+	}
+
+	/**
+	 * @return e.g. "99.9" for 0.999
+	 */
+	static String quantileName(double quantile) {
+		String name = String.valueOf(quantile * 100);
+		return name.endsWith(".0") ? name.substring(0, name.length() - 2) : name;
+	}
+
+	/**
+	 * Latencies of one user, written by its thread only.
+	 */
+	final class Recorder {
+
+		private final long[][] nanos = new long[STEPS.length][1024];
+		private final int[] counts = new int[STEPS.length];
+
+		void record(int step, long latencyNanos) {
+			if (!measuring) {
+				return;
+			}
+			if (counts[step] == nanos[step].length) {
+				nanos[step] = Arrays.copyOf(nanos[step], counts[step] * 2);
+			}
+			nanos[step][counts[step]++] = latencyNanos;
+		}
+	}
+}
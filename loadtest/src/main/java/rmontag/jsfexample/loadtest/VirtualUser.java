@@ -0,0 +1,188 @@
+package rmontag.jsfexample.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A simulated user repeating the flow of a browser: GET hello.xhtml, POST its form with a name
+ * and the javax.faces.ViewState, follow redirects to welcome.xhtml and check the greeting.
+ *
+ * The user keeps its cookies like a browser, so the session and with it the server side view
+ * state survive between the requests, and starts a new session every flowsPerSession flows.
+ * Every response is checked for the required headers; gzip responses are decoded.
+ */
+final class VirtualUser implements Runnable {
+
+	private static final int MAX_REDIRECTS = 5;
+
+	private final URL helloUrl;
+	private final String name;
+	private final int flowsPerSession;
+	private final LoadTestResult result;
+	private final LoadTestResult.Recorder recorder;
+	private final Map<String, String> cookies = new LinkedHashMap<String, String>();
+
+	private volatile boolean running = true;
+
+	VirtualUser(String url, String name, int flowsPerSession, LoadTestResult result) {
+		try {
+			this.helloUrl = new URL(url + "/faces/hello.xhtml");
+		} catch (IOException e) {
+			throw new IllegalArgumentException("An invalid value [" + url + "] was specified for loadtest.url", e);
+		}
+		this.name = name;
+		this.flowsPerSession = Math.max(1, flowsPerSession);
+		this.result = result;
+		this.recorder = result.newRecorder();
+	}
+
+	void stop() {
+		running = false;
+	}
+
+	@Override
+	public void run() {
+		for (int flow = 0; running; flow++) {
+			if (flow % flowsPerSession == 0) {
+				cookies.clear();
+			}
+			try {
+				flow(name + "-" + flow % flowsPerSession);
+			} catch (IOException e) {
+				result.failed(e.toString());
+				cookies.clear();
+			}
+		}
+	}
+
+	private void flow(String userName) throws IOException {
+		long start = System.nanoTime();
+		Response hello = request("GET", helloUrl, null);
+		recorder.record(LoadTestResult.HELLO, System.nanoTime() - start);
+		if (hello.status != HttpURLConnection.HTTP_OK) {
+			result.failed("GET " + helloUrl.getPath() + ": status " + hello.status);
+			return;
+		}
+		HtmlForm form = HtmlForm.parse(hello.body, helloUrl);
+		if (form == null) {
+			result.failed("GET " + helloUrl.getPath() + ": no form with " + HtmlForm.VIEW_STATE);
+			return;
+		}
+		if (!form.fillText(userName)) {
+			result.failed("GET " + helloUrl.getPath() + ": no text input");
+			return;
+		}
+
+		start = System.nanoTime();
+		Response welcome = request("POST", form.getAction(), form.encode());
+		for (int redirects = 0; welcome.status / 100 == 3 && welcome.location != null && redirects < MAX_REDIRECTS; redirects++) {
+			welcome = request("GET", new URL(form.getAction(), welcome.location), null);
+		}
+		recorder.record(LoadTestResult.WELCOME, System.nanoTime() - start);
+		if (welcome.status != HttpURLConnection.HTTP_OK) {
+			result.failed("POST " + form.getAction().getPath() + ": status " + welcome.status);
+		} else if (!welcome.body.contains("welcome.xhtml") || !welcome.body.contains("Welcome " + userName)) {
+			result.failed("POST " + form.getAction().getPath() + ": welcome page without the name");
+		} else {
+			result.flowCompleted();
+		}
+	}
+
+	private Response request(String method, URL url, String form) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setInstanceFollowRedirects(false);
+		connection.setUseCaches(false);
+		connection.setRequestMethod(method);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (!cookies.isEmpty()) {
+			connection.setRequestProperty("Cookie", cookieHeader());
+		}
+		if (form != null) {
+			byte[] body = form.getBytes(StandardCharsets.UTF_8);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+
+		int status = connection.getResponseCode();
+		for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+			if ("Set-Cookie".equalsIgnoreCase(header.getKey())) {
+				storeCookies(header.getValue());
+			}
+		}
+		for (String header : result.getHeaders()) {
+			if (connection.getHeaderField(header) == null) {
+				result.headerMissing(header);
+			}
+		}
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		String body = "";
+		if (in != null) {
+			if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+				in = new GZIPInputStream(in);
+			}
+			body = read(in);
+		}
+		return new Response(status, connection.getHeaderField("Location"), body);
+	}
+
+	private String cookieHeader() {
+		StringBuilder header = new StringBuilder(64);
+		for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+			if (header.length() > 0) {
+				header.append("; ");
+			}
+			header.append(cookie.getKey()).append('=').append(cookie.getValue());
+		}
+		return header.toString();
+	}
+
+	private void storeCookies(List<String> setCookies) {
+		for (String setCookie : setCookies) {
+			int end = setCookie.indexOf(';');
+			String cookie = end < 0 ? setCookie : setCookie.substring(0, end);
+			int separator = cookie.indexOf('=');
+			if (separator > 0) {
+				cookies.put(cookie.substring(0, separator).trim(), cookie.substring(separator + 1).trim());
+			}
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+			byte[] buffer = new byte[4096];
+			for (int n; (n = in.read(buffer)) >= 0;) {
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static final class Response {
+
+		private final int status;
+		private final String location;
+		private final String body;
+
+		private Response(int status, String location, String body) {
+			this.status = status;
+			this.location = location;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,507 @@
+package rmontag.jsfexample.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.session.StandardSession;
+import org.apache.catalina.session.StoreBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Tomcat session {@link org.apache.catalina.Store} keeping the serialized sessions off-heap in a
+ * memory-mapped file arena. Used with the PersistentManager, which keeps the active sessions on
+ * heap, swaps idle ones out (maxIdleSwap, maxActiveSessions) and swaps them back in lazily on the
+ * first access; see META-INF/context.xml of the web application.
+ *
+ * The arena is an append-only log of records; saving a session appends a record and removing one
+ * appends a tombstone, so the file can be replayed after a restart. Only a small index entry per
+ * session (offset, length, last access) stays on heap, expired sessions are found from the index
+ * without deserializing the others. Space of replaced and removed records is reclaimed by
+ * compaction, run in the background processing of the manager once the garbage exceeds
+ * compactionPercent, or at once when the arena is full.
+ *
+ * Supported attributes:
+ * <ul>
+ * <li>file - Arena file, relative paths are resolved against the work directory of the context (Default: sessions.arena).</li>
+ * <li>capacityMegabytes - Size of the arena, at most 2047 (Default: 256).</li>
+ * <li>compactionPercent - Share of garbage in the used part of the arena that triggers a background compaction (Default: 50).</li>
+ * </ul>
+ * The arena is a cache of swapped-out sessions: it is forced to disk only when the store stops,
+ * and incomplete or corrupt records found when the file is replayed after a crash are dropped
+ * together with all records behind them. A crash during compaction may lose or resurrect swapped-out sessions.
+ */
+public class MappedFileStore extends StoreBase {
+
+	private static final Log LOG = LogFactory.getLog(MappedFileStore.class);
+
+	private static final String INFO = "MappedFileStore/1.0";
+	private static final String STORE_NAME = "mappedFileStore";
+
+	// record: int recordLength, byte type, short idLength, id, long thisAccessedTime, int maxInactiveInterval, data
+	private static final int RECORD_HEADER_LENGTH = 4 + 1 + 2;
+	private static final int SESSION_HEADER_LENGTH = 8 + 4;
+	private static final byte TYPE_SESSION = 1;
+	private static final byte TYPE_TOMBSTONE = 2;
+
+	// compactions below this amount of garbage are not worth a background pass
+	private static final int MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+	private String file = "sessions.arena";
+	private int capacityMegabytes = 256;
+	private int compactionPercent = 50;
+
+	private RandomAccessFile randomAccessFile;
+	private MappedByteBuffer arena;
+	// all fields below are guarded by this
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private int end;
+	private int liveBytes;
+	private byte[] copyBuffer = new byte[8192];
+
+	public String getFile() {
+		return file;
+	}
+
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	public int getCapacityMegabytes() {
+		return capacityMegabytes;
+	}
+
+	public void setCapacityMegabytes(int capacityMegabytes) {
+		if (capacityMegabytes <= 0 || capacityMegabytes > 2047) {
+			throw new IllegalArgumentException("An invalid value [" + capacityMegabytes + "] was specified for capacityMegabytes");
+		}
+		this.capacityMegabytes = capacityMegabytes;
+	}
+
+	public int getCompactionPercent() {
+		return compactionPercent;
+	}
+
+	public void setCompactionPercent(int compactionPercent) {
+		if (compactionPercent <= 0 || compactionPercent > 100) {
+			throw new IllegalArgumentException("An invalid value [" + compactionPercent + "] was specified for compactionPercent");
+		}
+		this.compactionPercent = compactionPercent;
+	}
+
+	@Override
+	public String getInfo() {
+		return INFO;
+	}
+
+	@Override
+	public String getStoreName() {
+		return STORE_NAME;
+	}
+
+	/**
+	 * @return bytes of the arena in use, including garbage not yet compacted
+	 */
+	public synchronized int getUsedBytes() {
+		return end;
+	}
+
+	/**
+	 * @return bytes of the arena holding current session records
+	 */
+	public synchronized int getLiveBytes() {
+		return liveBytes;
+	}
+
+	@Override
+	protected synchronized void startInternal() throws LifecycleException {
+		File arenaFile = resolveFile();
+		try {
+			randomAccessFile = new RandomAccessFile(arenaFile, "rw");
+			long capacity = capacityMegabytes * 1024L * 1024L;
+			randomAccessFile.setLength(capacity);
+			arena = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			throw new LifecycleException("Unable to map the session arena " + arenaFile, e);
+		}
+		replay();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(getStoreName() + ": mapped " + arenaFile + " with " + entries.size() + " sessions");
+		}
+		super.startInternal();
+	}
+
+	private File resolveFile() {
+		File arenaFile = new File(file);
+		if (!arenaFile.isAbsolute()) {
+			Context context = (Context) manager.getContainer();
+			File workDir = (File) context.getServletContext().getAttribute(ServletContext.TEMPDIR);
+			arenaFile = new File(workDir, file);
+		}
+		return arenaFile;
+	}
+
+	/**
+	 * Rebuilds the index from the records of the arena, the last record of an id wins.
+	 */
+	private void replay() {
+		entries.clear();
+		liveBytes = 0;
+		int position = 0;
+		int capacity = arena.capacity();
+		boolean clean = true;
+		while (position + RECORD_HEADER_LENGTH <= capacity) {
+			int recordLength = arena.getInt(position);
+			if (recordLength == 0) {
+				break;
+			}
+			if (recordLength < 0) {
+				LOG.warn(getStoreName() + ": dropping incomplete record at offset " + position);
+				clean = false;
+				break;
+			}
+			byte type = arena.get(position + 4);
+			int idLength = arena.getShort(position + 5);
+			int minLength = RECORD_HEADER_LENGTH + idLength + (type == TYPE_SESSION ? SESSION_HEADER_LENGTH : 0);
+			if ((type != TYPE_SESSION && type != TYPE_TOMBSTONE) || idLength <= 0
+					|| recordLength < minLength || recordLength > capacity - position) {
+				LOG.warn(getStoreName() + ": dropping corrupt records from offset " + position);
+				clean = false;
+				break;
+			}
+			byte[] id = new byte[idLength];
+			ByteBuffer buffer = arena.duplicate();
+			buffer.position(position + RECORD_HEADER_LENGTH);
+			buffer.get(id);
+			String sessionId = new String(id, StandardCharsets.ISO_8859_1);
+			Entry previous;
+			if (type == TYPE_SESSION) {
+				previous = entries.put(sessionId, new Entry(position, recordLength, idLength,
+						buffer.getLong(), buffer.getInt()));
+				liveBytes += recordLength;
+			} else {
+				previous = entries.remove(sessionId);
+			}
+			if (previous != null) {
+				liveBytes -= previous.recordLength;
+			}
+			position += recordLength;
+		}
+		end = position;
+		if (!clean) {
+			zero(end, capacity - end);
+		}
+	}
+
+	@Override
+	protected synchronized void stopInternal() throws LifecycleException {
+		super.stopInternal();
+		entries.clear();
+		if (arena != null) {
+			// the PersistentManager swaps all sessions out on stop, they have to be replayed after the restart
+			arena.force();
+		}
+		arena = null;
+		try {
+			randomAccessFile.close();
+		} catch (IOException e) {
+			LOG.warn(getStoreName() + ": unable to close the session arena", e);
+		}
+		randomAccessFile = null;
+	}
+
+	@Override
+	public synchronized int getSize() throws IOException {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String[] keys() throws IOException {
+		return entries.keySet().toArray(new String[entries.size()]);
+	}
+
+	/**
+	 * Only sessions whose indexed last access is older than their max inactive interval are
+	 * loaded by {@link #processExpires()}, so their listeners can be notified.
+	 */
+	@Override
+	public synchronized String[] expiredKeys() throws IOException {
+		long now = System.currentTimeMillis();
+		List<String> expired = new ArrayList<String>();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			int maxInactiveInterval = entry.getValue().maxInactiveInterval;
+			if (maxInactiveInterval > 0 && (int) ((now - entry.getValue().thisAccessedTime) / 1000L) >= maxInactiveInterval) {
+				expired.add(entry.getKey());
+			}
+		}
+		return expired.toArray(new String[expired.size()]);
+	}
+
+	@Override
+	public Session load(String id) throws ClassNotFoundException, IOException {
+		byte[] data;
+		synchronized (this) {
+			Entry entry = entries.get(id);
+			if (entry == null) {
+				return null;
+			}
+			data = new byte[entry.getDataLength()];
+			ByteBuffer buffer = arena.duplicate();
+			buffer.position(entry.getDataOffset());
+			buffer.get(data);
+		}
+
+		Context context = (Context) manager.getContainer();
+		Loader loader = context.getLoader();
+		Thread thread = Thread.currentThread();
+		ClassLoader oldClassLoader = thread.getContextClassLoader();
+		if (loader != null) {
+			thread.setContextClassLoader(loader.getClassLoader());
+		}
+		ObjectInputStream ois = null;
+		try {
+			ois = getObjectInputStream(new ByteArrayInputStream(data));
+			StandardSession session = (StandardSession) manager.createEmptySession();
+			session.readObjectData(ois);
+			session.setManager(manager);
+			return session;
+		} finally {
+			if (ois != null) {
+				ois.close();
+			}
+			thread.setContextClassLoader(oldClassLoader);
+		}
+	}
+
+	@Override
+	public void save(Session session) throws IOException {
+		RecordOutputStream data = new RecordOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(data);
+		((StandardSession) session).writeObjectData(oos);
+		oos.close();
+
+		String sessionId = session.getIdInternal();
+		byte[] id = sessionId.getBytes(StandardCharsets.ISO_8859_1);
+		long thisAccessedTime = ((StandardSession) session).getThisAccessedTimeInternal();
+		int maxInactiveInterval = session.getMaxInactiveInterval();
+		int recordLength = RECORD_HEADER_LENGTH + id.length + SESSION_HEADER_LENGTH + data.size();
+
+		synchronized (this) {
+			checkAvailable();
+			reserve(recordLength, sessionId);
+			int position = end;
+			writeRecordHeader(position, recordLength, TYPE_SESSION, id);
+			ByteBuffer buffer = arena.duplicate();
+			buffer.position(position + RECORD_HEADER_LENGTH + id.length);
+			buffer.putLong(thisAccessedTime);
+			buffer.putInt(maxInactiveInterval);
+			data.writeTo(buffer);
+			arena.putInt(position, recordLength);
+			Entry previous = entries.put(sessionId, new Entry(position, recordLength, id.length, thisAccessedTime, maxInactiveInterval));
+			if (previous != null) {
+				liveBytes -= previous.recordLength;
+			}
+			liveBytes += recordLength;
+			end = position + recordLength;
+		}
+	}
+
+	@Override
+	public synchronized void remove(String id) throws IOException {
+		checkAvailable();
+		Entry previous = entries.remove(id);
+		if (previous == null) {
+			return;
+		}
+		liveBytes -= previous.recordLength;
+		byte[] idBytes = id.getBytes(StandardCharsets.ISO_8859_1);
+		int recordLength = RECORD_HEADER_LENGTH + idBytes.length;
+		if (end + recordLength > arena.capacity()) {
+			// the removed record is dropped by the compaction, no tombstone needed
+			compact();
+			return;
+		}
+		writeRecordHeader(end, recordLength, TYPE_TOMBSTONE, idBytes);
+		arena.putInt(end, recordLength);
+		end += recordLength;
+	}
+
+	@Override
+	public synchronized void clear() throws IOException {
+		checkAvailable();
+		entries.clear();
+		zero(0, end);
+		end = 0;
+		liveBytes = 0;
+	}
+
+	/**
+	 * Expires sessions and compacts the arena if the garbage exceeds compactionPercent, called by
+	 * the background processing of the manager.
+	 */
+	@Override
+	public void processExpires() {
+		super.processExpires();
+		synchronized (this) {
+			if (!getState().isAvailable()) {
+				return;
+			}
+			int garbage = end - liveBytes;
+			if (garbage >= MIN_COMPACTION_GARBAGE && garbage * 100L >= (long) end * compactionPercent) {
+				compact();
+			}
+		}
+	}
+
+	private void checkAvailable() throws IOException {
+		if (getState() != LifecycleState.STARTED && getState() != LifecycleState.STARTING) {
+			throw new IOException(getStoreName() + " is not started");
+		}
+	}
+
+	/**
+	 * Makes room for a record at the end of the arena, compacting if needed. The current record of
+	 * the session counts as reclaimable, but is only dropped from the index once the new record is
+	 * known to fit; if it does not, the session keeps its current record.
+	 */
+	private void reserve(int recordLength, String sessionId) throws IOException {
+		if (end + recordLength <= arena.capacity()) {
+			return;
+		}
+		compact();
+		if (end + recordLength <= arena.capacity()) {
+			return;
+		}
+		Entry previous = entries.get(sessionId);
+		if (previous != null && end - previous.recordLength + recordLength <= arena.capacity()) {
+			entries.remove(sessionId);
+			liveBytes -= previous.recordLength;
+			compact();
+		} else {
+			throw new IOException(getStoreName() + ": no space left for a session of " + recordLength
+					+ " bytes, " + liveBytes + " of " + arena.capacity() + " bytes in use");
+		}
+	}
+
+	private void writeRecordHeader(int position, int recordLength, byte type, byte[] id) {
+		// a negative length marks the record as incomplete until the caller writes the real length
+		arena.putInt(position, -recordLength);
+		arena.put(position + 4, type);
+		arena.putShort(position + 5, (short) id.length);
+		ByteBuffer buffer = arena.duplicate();
+		buffer.position(position + RECORD_HEADER_LENGTH);
+		buffer.put(id);
+	}
+
+	/**
+	 * Moves all live records to the start of the arena, in their current order.
+	 */
+	private void compact() {
+		long start = System.nanoTime();
+		int usedBefore = end;
+		List<Entry> live = new ArrayList<Entry>(entries.values());
+		Collections.sort(live, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Integer.compare(a.offset, b.offset);
+			}
+		});
+		int position = 0;
+		for (Entry entry : live) {
+			if (entry.offset != position) {
+				if (copyBuffer.length < entry.recordLength) {
+					copyBuffer = new byte[Math.max(entry.recordLength, copyBuffer.length * 2)];
+				}
+				ByteBuffer source = arena.duplicate();
+				source.position(entry.offset);
+				source.get(copyBuffer, 0, entry.recordLength);
+				ByteBuffer target = arena.duplicate();
+				target.position(position);
+				target.put(copyBuffer, 0, entry.recordLength);
+				entry.offset = position;
+			}
+			position += entry.recordLength;
+		}
+		zero(position, end - position);
+		end = position;
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(getStoreName() + ": compacted " + usedBefore + " to " + end + " bytes in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		}
+	}
+
+	private void zero(int position, int length) {
+		byte[] zeros = new byte[Math.min(length, 64 * 1024)];
+		ByteBuffer buffer = arena.duplicate();
+		buffer.position(position);
+		while (length > 0) {
+			int chunk = Math.min(length, zeros.length);
+			buffer.put(zeros, 0, chunk);
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Index entry of a session record.
+	 */
+	private static final class Entry {
+
+		private int offset;
+		private final int recordLength;
+		private final int idLength;
+		private final long thisAccessedTime;
+		private final int maxInactiveInterval;
+
+		private Entry(int offset, int recordLength, int idLength, long thisAccessedTime, int maxInactiveInterval) {
+			this.offset = offset;
+			this.recordLength = recordLength;
+			this.idLength = idLength;
+			this.thisAccessedTime = thisAccessedTime;
+			this.maxInactiveInterval = maxInactiveInterval;
+		}
+
+		private int getDataOffset() {
+			return offset + RECORD_HEADER_LENGTH + idLength + SESSION_HEADER_LENGTH;
+		}
+
+		private int getDataLength() {
+			return recordLength - RECORD_HEADER_LENGTH - idLength - SESSION_HEADER_LENGTH;
+		}
+	}
+
+	/**
+	 * Exposes the buffer, so the serialized session is copied into the arena without another copy on heap.
+	 */
+	private static final class RecordOutputStream extends ByteArrayOutputStream {
+
+		private RecordOutputStream() {
+			super(2048);
+		}
+
+		private void writeTo(ByteBuffer buffer) {
+			buffer.put(buf, 0, count);
+		}
+	}
+}
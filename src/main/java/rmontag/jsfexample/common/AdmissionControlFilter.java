@@ -0,0 +1,180 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control in front of the Faces Servlet: every client (remote address) gets a token bucket
+ * in a {@link ClientRateLimiter}, and at most maxConcurrentRequests requests are processed at once.
+ * A request over either limit is rejected at once with 429 Too Many Requests and a Retry-After
+ * header, before a session or view is touched, instead of queueing for a request thread.
+ *
+ * Both checks are a few compareAndSet operations without locks; the memory is fixed by the clients
+ * init param. Behind a reverse proxy the remote address is the proxy's and all clients would share
+ * one bucket: either let the container report the client address (e.g. with Tomcat's
+ * RemoteIpValve), or list the proxies in trustedProxies, then the client is the last address of
+ * X-Forwarded-For not sent by a trusted proxy. The header is ignored for requests from any other
+ * address, so clients cannot pick their bucket.
+ *
+ * Admitted and rejected requests are counted in {@link RequestMetrics#admission()}, published by the
+ * {@link MetricsServlet}.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>ratePerSecond - Requests per second a client may send in the long run, 0 for no limit per client (Default: 20).</li>
+ * <li>burst - Requests a client may send at once above its rate (Default: 40).</li>
+ * <li>clients - Number of client buckets, rounded up to a power of 2, 8 bytes each (Default: 65536).</li>
+ * <li>maxConcurrentRequests - Requests processed at once by all clients, 0 for no limit (Default: 0).</li>
+ * <li>trustedProxies - Regular expression matching the addresses of reverse proxies whose X-Forwarded-For is used (Default: none).</li>
+ * </ul>
+ */
+public class AdmissionControlFilter implements Filter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+	public static final String INIT_PARAM_RATE_PER_SECOND = "ratePerSecond";
+	public static final String INIT_PARAM_BURST = "burst";
+	public static final String INIT_PARAM_CLIENTS = "clients";
+	public static final String INIT_PARAM_MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+	public static final String INIT_PARAM_TRUSTED_PROXIES = "trustedProxies";
+
+	private static final int DEFAULT_RATE_PER_SECOND = 20;
+	private static final int DEFAULT_BURST = 40;
+	private static final int DEFAULT_CLIENTS = 65536;
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+	private static final String RETRY_AFTER_CONCURRENCY = "1";
+	private static final String HEADER_X_FORWARDED_FOR = "X-Forwarded-For";
+
+	private final AtomicInteger inProgress = new AtomicInteger();
+	private ClientRateLimiter rateLimiter;
+	private int maxConcurrentRequests;
+	private Pattern trustedProxies;
+	private AdmissionCounters counters;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		int ratePerSecond = InitParams.intParam(filterConfig, INIT_PARAM_RATE_PER_SECOND, DEFAULT_RATE_PER_SECOND, 0, 1000000);
+		int burst = InitParams.intParam(filterConfig, INIT_PARAM_BURST, DEFAULT_BURST, 1, 1000000);
+		int clients = InitParams.intParam(filterConfig, INIT_PARAM_CLIENTS, DEFAULT_CLIENTS, 2, 1 << 30);
+		maxConcurrentRequests = InitParams.intParam(filterConfig, INIT_PARAM_MAX_CONCURRENT_REQUESTS, 0, 0, Integer.MAX_VALUE);
+		trustedProxies = InitParams.patternParam(filterConfig, INIT_PARAM_TRUSTED_PROXIES);
+		rateLimiter = ratePerSecond == 0 ? null : new ClientRateLimiter(ratePerSecond, burst, clients);
+		counters = RequestMetrics.getInstance().admission();
+
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		if (!(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+		if (rateLimiter != null) {
+			String client = getClient(request);
+			long waitNanos = rateLimiter.acquire(client == null ? "" : client, System.nanoTime());
+			if (waitNanos > 0) {
+				counters.recordRejectedRate();
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Rejected request of " + client + ", rate exceeded");
+				}
+				reject(httpResponse, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999999999))));
+				return;
+			}
+		}
+
+		if (maxConcurrentRequests == 0) {
+			counters.recordAdmitted();
+			chain.doFilter(request, response);
+			return;
+		}
+		if (!enter()) {
+			counters.recordRejectedConcurrency();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Rejected request of " + getClient(request) + ", " + maxConcurrentRequests + " requests in progress");
+			}
+			reject(httpResponse, RETRY_AFTER_CONCURRENCY);
+			return;
+		}
+		counters.recordAdmitted();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			inProgress.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the remote address, or for a request of a trusted proxy the last address of
+	 *         X-Forwarded-For not added by a trusted proxy
+	 */
+	private String getClient(ServletRequest request) {
+		String client = request.getRemoteAddr();
+		if (trustedProxies == null || client == null || !(request instanceof HttpServletRequest)
+				|| !trustedProxies.matcher(client).matches()) {
+			return client;
+		}
+		String forwardedFor = ((HttpServletRequest) request).getHeader(HEADER_X_FORWARDED_FOR);
+		if (forwardedFor == null) {
+			return client;
+		}
+		// right to left: each hop was added by the one behind it, only trusted proxies are believed
+		String[] hops = forwardedFor.split(",");
+		for (int i = hops.length - 1; i >= 0; i--) {
+			String hop = hops[i].trim();
+			if (hop.isEmpty()) {
+				continue;
+			}
+			client = hop;
+			if (!trustedProxies.matcher(hop).matches()) {
+				break;
+			}
+		}
+		return client;
+	}
+
+	private boolean enter() {
+		for (;;) {
+			int current = inProgress.get();
+			if (current >= maxConcurrentRequests) {
+				return false;
+			}
+			if (inProgress.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private static void reject(HttpServletResponse response, String retryAfterSeconds) throws IOException {
+		if (response.isCommitted()) {
+			return;
+		}
+		response.setHeader("Retry-After", retryAfterSeconds);
+		response.sendError(SC_TOO_MANY_REQUESTS);
+	}
+
+	@Override
+	public void destroy() {
+		LOG.info("Admitted " + counters.getAdmitted() + " requests, rejected " + counters.getRejectedRate()
+				+ " over the client rate and " + counters.getRejectedConcurrency() + " over the concurrency limit");
+	}
+}
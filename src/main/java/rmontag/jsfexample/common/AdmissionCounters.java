@@ -0,0 +1,38 @@
+package rmontag.jsfexample.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the {@link AdmissionControlFilter}: requests admitted and requests rejected, either
+ * because the client exceeded its rate or because too many requests were in progress.
+ */
+public final class AdmissionCounters {
+
+	private final LongAdder admitted = new LongAdder();
+	private final LongAdder rejectedRate = new LongAdder();
+	private final LongAdder rejectedConcurrency = new LongAdder();
+
+	void recordAdmitted() {
+		admitted.increment();
+	}
+
+	void recordRejectedRate() {
+		rejectedRate.increment();
+	}
+
+	void recordRejectedConcurrency() {
+		rejectedConcurrency.increment();
+	}
+
+	public long getAdmitted() {
+		return admitted.sum();
+	}
+
+	public long getRejectedRate() {
+		return rejectedRate.sum();
+	}
+
+	public long getRejectedConcurrency() {
+		return rejectedConcurrency.sum();
+	}
+}
@@ -0,0 +1,54 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletRequest;
+
+/**
+ * Completion of a request in async mode for filters measuring the rest of the chain: once the
+ * chain returns with request.isAsyncStarted(), the response is not complete yet and the filter
+ * registers this listener instead of recording right away.
+ *
+ * {@link #completed(boolean)} is called exactly once, when the AsyncContext completes, also after
+ * a timeout or an error; a new startAsync() of a dispatch keeps the listener registered.
+ */
+abstract class AsyncCompletionListener implements AsyncListener {
+
+	// set by the thread reporting the error, read by the one completing
+	private volatile boolean failed;
+
+	/**
+	 * @param request request in async mode, request.isAsyncStarted() is true
+	 */
+	final void register(ServletRequest request) {
+		request.getAsyncContext().addListener(this);
+	}
+
+	/**
+	 * @param failed true, if an error occurred in async mode
+	 */
+	abstract void completed(boolean failed);
+
+	@Override
+	public void onComplete(AsyncEvent event) throws IOException {
+		completed(failed);
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) throws IOException {
+		// completed by the listener of the servlet or by the container, onComplete follows
+	}
+
+	@Override
+	public void onError(AsyncEvent event) throws IOException {
+		failed = true;
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) throws IOException {
+		// listeners are removed by a new startAsync()
+		event.getAsyncContext().addListener(this);
+	}
+}
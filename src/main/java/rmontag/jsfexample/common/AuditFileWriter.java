@@ -0,0 +1,83 @@
+package rmontag.jsfexample.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends batches of bytes to a file through a FileChannel and rolls it once it reaches
+ * maxFileBytes: file is renamed to file.1, file.1 to file.2 and so on, file.maxFiles is deleted.
+ * A batch is never split across two files. Used by the consumer thread of the {@link AuditLog} only.
+ */
+final class AuditFileWriter implements Closeable {
+
+	private final Path file;
+	private final long maxFileBytes;
+	private final int maxFiles;
+	private FileChannel channel;
+	private long size;
+
+	AuditFileWriter(Path file, long maxFileBytes, int maxFiles) throws IOException {
+		if (maxFileBytes < 1) {
+			throw new IllegalArgumentException("An invalid value [" + maxFileBytes + "] was specified for maxFileBytes");
+		}
+		if (maxFiles < 0) {
+			throw new IllegalArgumentException("An invalid value [" + maxFiles + "] was specified for maxFiles");
+		}
+		this.file = file;
+		this.maxFileBytes = maxFileBytes;
+		this.maxFiles = maxFiles;
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		open();
+	}
+
+	private void open() throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		size = channel.size();
+	}
+
+	/**
+	 * Writes all remaining bytes of the batch.
+	 */
+	void write(ByteBuffer batch) throws IOException {
+		if (size > 0 && size + batch.remaining() > maxFileBytes) {
+			roll();
+		}
+		while (batch.hasRemaining()) {
+			size += channel.write(batch);
+		}
+	}
+
+	private void roll() throws IOException {
+		channel.close();
+		if (maxFiles == 0) {
+			Files.delete(file);
+		} else {
+			Files.deleteIfExists(rolled(maxFiles));
+			for (int i = maxFiles - 1; i >= 1; i--) {
+				if (Files.exists(rolled(i))) {
+					Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+		}
+		open();
+	}
+
+	private Path rolled(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
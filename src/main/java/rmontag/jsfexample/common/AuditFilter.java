@@ -0,0 +1,88 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records every request in the {@link AuditLog} published by the {@link AuditLogListener}: method,
+ * servlet path and path info, status, the {@link AuditLog#SECURITY_HEADERS} sent and the duration
+ * of the rest of the filter chain. Mapped before the security header filters, so it sees their
+ * headers. Passes requests through unchanged if no audit log is configured.
+ *
+ * Async-supported: a request continued in async mode is recorded when it completes (see
+ * {@link AsyncCompletionListener}), with the final status and the full duration.
+ *
+ * The request thread only reads the response headers and claims a slot in the ring of the audit
+ * log; it never formats, allocates or waits for the file.
+ */
+public class AuditFilter implements Filter {
+
+	private static final int SC_INTERNAL_SERVER_ERROR = 500;
+
+	private AuditLog auditLog;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		Object attribute = filterConfig.getServletContext().getAttribute(AuditLog.CONTEXT_ATTRIBUTE);
+		auditLog = attribute instanceof AuditLog ? (AuditLog) attribute : null;
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		if (auditLog == null || !(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		final HttpServletRequest httpRequest = (HttpServletRequest) request;
+		final HttpServletResponse httpResponse = (HttpServletResponse) response;
+		final long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			chain.doFilter(request, response);
+			failed = false;
+		} finally {
+			if (!failed && request.isAsyncStarted()) {
+				new AsyncCompletionListener() {
+					@Override
+					void completed(boolean asyncFailed) {
+						record(httpRequest, httpResponse, asyncFailed, start);
+					}
+				}.register(request);
+			} else {
+				record(httpRequest, httpResponse, failed, start);
+			}
+		}
+	}
+
+	private void record(HttpServletRequest request, HttpServletResponse response, boolean failed, long start) {
+		long nanos = System.nanoTime() - start;
+		auditLog.request(request.getMethod(), request.getServletPath(), request.getPathInfo(),
+				failed ? SC_INTERNAL_SERVER_ERROR : response.getStatus(), securityHeaders(response), nanos);
+	}
+
+	private static int securityHeaders(HttpServletResponse response) {
+		int mask = 0;
+		for (int i = 0; i < AuditLog.SECURITY_HEADERS.length; i++) {
+			if (response.containsHeader(AuditLog.SECURITY_HEADERS[i])) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+
+	@Override
+	public void destroy() {
+	}
+}
@@ -0,0 +1,344 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audit log of requests (method, path, status, security headers sent, duration) and events such as
+ * created sessions, written to a rolling file in the background.
+ *
+ * The records are preallocated in a ring (sequence per slot, like {@link BoundedRingQueue}): a
+ * request thread claims a slot with one compareAndSet, fills in references and numbers and
+ * publishes it, nothing is allocated or formatted on the request thread. If the ring is full the
+ * record is dropped and counted, a request thread never blocks. A single daemon thread formats the
+ * published records and writes them in batches through an {@link AuditFileWriter}, one write per
+ * batch of up to {@link #BATCH_BYTES}.
+ *
+ * The file has one tab separated line per record, e.g.
+ * "2026-10-16T08:15:30.123Z request GET /faces/hello.xhtml 200 12.345 X-Frame-Options,Content-Security-Policy"
+ * or "2026-10-16T08:15:30.125Z session-created". Control characters in the method, path and detail
+ * are written as Unicode escapes and backslashes doubled.
+ */
+public final class AuditLog {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AuditLog.class);
+
+	public static final String CONTEXT_ATTRIBUTE = AuditLog.class.getName();
+
+	/**
+	 * Security headers whose presence is recorded per request, bit i of the mask is header i
+	 */
+	public static final String[] SECURITY_HEADERS = { "Strict-Transport-Security", "X-Frame-Options",
+			"X-Content-Type-Options", "X-XSS-Protection", "Content-Security-Policy", "Content-Security-Policy-Report-Only",
+			"X-Content-Security-Policy", "X-Webkit-CSP" };
+
+	public static final String TYPE_REQUEST = "request";
+	public static final String TYPE_SESSION_CREATED = "session-created";
+	public static final String TYPE_SESSION_DESTROYED = "session-destroyed";
+	public static final String TYPE_BEAN_CREATED = "bean-created";
+	public static final String TYPE_SESSIONS_EVICTED = "sessions-evicted";
+
+	static final int BATCH_BYTES = 64 * 1024;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+	private final Record[] records;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong claimPosition = new AtomicLong();
+	// owned by the consumer thread
+	private long consumePosition;
+	private final StringBuilder line = new StringBuilder(256);
+	private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+	private final AuditFileWriter writer;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+
+	private final Thread consumer;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates the log and starts its consumer thread.
+	 * @param file file written to, rolled to file.1 ... file.maxFiles
+	 * @param capacity minimum number of records in the ring, rounded up to a power of two
+	 * @param maxFileBytes size a file is rolled at
+	 * @param maxFiles number of rolled files kept
+	 */
+	public AuditLog(Path file, int capacity, long maxFileBytes, int maxFiles) throws IOException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("An invalid capacity [" + capacity + "] was specified");
+		}
+		int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		records = new Record[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			records[i] = new Record();
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		writer = new AuditFileWriter(file, maxFileBytes, maxFiles);
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "audit-log-writer");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Records a request without blocking.
+	 * @param securityHeaders bit mask of the {@link #SECURITY_HEADERS} sent
+	 * @return false, if the ring was full and the record has been dropped
+	 */
+	public boolean request(String method, String servletPath, String pathInfo, int status, int securityHeaders,
+			long durationNanos) {
+		long position = claim();
+		if (position < 0) {
+			return false;
+		}
+		Record record = records[(int) position & mask];
+		record.timeMillis = System.currentTimeMillis();
+		record.type = TYPE_REQUEST;
+		record.method = method;
+		record.servletPath = servletPath;
+		record.pathInfo = pathInfo;
+		record.status = status;
+		record.securityHeaders = securityHeaders;
+		record.durationNanos = durationNanos;
+		publish(position);
+		return true;
+	}
+
+	/**
+	 * Records an event without blocking.
+	 * @param type type of the event, e.g. {@link #TYPE_SESSION_CREATED}
+	 * @param detail detail of the event, or null
+	 * @return false, if the ring was full and the record has been dropped
+	 */
+	public boolean event(String type, String detail) {
+		long position = claim();
+		if (position < 0) {
+			return false;
+		}
+		Record record = records[(int) position & mask];
+		record.timeMillis = System.currentTimeMillis();
+		record.type = type;
+		record.detail = detail;
+		publish(position);
+		return true;
+	}
+
+	/**
+	 * @return the claimed position, -1 if the ring is full
+	 */
+	private long claim() {
+		long position = claimPosition.get();
+		for (;;) {
+			long difference = sequences.get((int) position & mask) - position;
+			if (difference == 0) {
+				if (claimPosition.compareAndSet(position, position + 1)) {
+					return position;
+				}
+				position = claimPosition.get();
+			} else if (difference < 0) {
+				dropped.incrementAndGet();
+				return -1;
+			} else {
+				position = claimPosition.get();
+			}
+		}
+	}
+
+	private void publish(long position) {
+		sequences.lazySet((int) position & mask, position + 1);
+	}
+
+	private void consume() {
+		while (running) {
+			if (drain() == 0) {
+				LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+			}
+		}
+		drain();
+		try {
+			writer.close();
+		} catch (IOException e) {
+			LOG.warn("Closing the audit log failed", e);
+		}
+	}
+
+	/**
+	 * Writes all published records.
+	 * @return number of records written
+	 */
+	private int drain() {
+		int count = 0;
+		int batched = 0;
+		for (;;) {
+			int index = (int) consumePosition & mask;
+			if (sequences.get(index) != consumePosition + 1) {
+				break;
+			}
+			Record record = records[index];
+			format(record);
+			record.clear();
+			sequences.lazySet(index, consumePosition + mask + 1);
+			consumePosition++;
+			count++;
+
+			byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > batch.remaining()) {
+				flush(batched);
+				batched = 0;
+			}
+			if (bytes.length > batch.capacity()) {
+				write(ByteBuffer.wrap(bytes), 1);
+			} else {
+				batch.put(bytes);
+				batched++;
+			}
+		}
+		flush(batched);
+		return count;
+	}
+
+	private void flush(int batched) {
+		batch.flip();
+		write(batch, batched);
+		batch.clear();
+	}
+
+	private void write(ByteBuffer bytes, int records) {
+		if (records == 0) {
+			return;
+		}
+		try {
+			writer.write(bytes);
+			written.addAndGet(records);
+		} catch (IOException e) {
+			dropped.addAndGet(records);
+			LOG.warn("Writing " + records + " audit records failed", e);
+		}
+	}
+
+	private void format(Record record) {
+		line.setLength(0);
+		line.append(Instant.ofEpochMilli(record.timeMillis)).append('\t').append(record.type);
+		if (TYPE_REQUEST.equals(record.type)) {
+			line.append('\t');
+			appendEscaped(record.method);
+			line.append('\t');
+			appendEscaped(record.servletPath);
+			if (record.pathInfo != null) {
+				appendEscaped(record.pathInfo);
+			}
+			line.append('\t').append(record.status).append('\t');
+			long micros = TimeUnit.NANOSECONDS.toMicros(record.durationNanos);
+			line.append(micros / 1000).append('.');
+			for (long digit = 100; digit > 0; digit /= 10) {
+				line.append((char) ('0' + micros / digit % 10));
+			}
+			line.append('\t');
+			if (record.securityHeaders == 0) {
+				line.append('-');
+			}
+			for (int i = 0; i < SECURITY_HEADERS.length; i++) {
+				if ((record.securityHeaders & 1 << i) != 0) {
+					line.append(SECURITY_HEADERS[i]).append(record.securityHeaders >>> i + 1 == 0 ? "" : ",");
+				}
+			}
+		} else if (record.detail != null) {
+			line.append('\t');
+			appendEscaped(record.detail);
+		}
+		line.append('\n');
+	}
+
+	/**
+	 * Appends a value taken from the request, with control characters as Unicode escapes and
+	 * backslashes doubled, so a decoded path cannot add a field or a line.
+	 */
+	private void appendEscaped(String value) {
+		if (value == null) {
+			line.append(value);
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\') {
+				line.append("\\\\");
+			} else if (Character.isISOControl(c)) {
+				line.append("\\u").append(HEX_DIGITS[c >> 12 & 0xf]).append(HEX_DIGITS[c >> 8 & 0xf])
+						.append(HEX_DIGITS[c >> 4 & 0xf]).append(HEX_DIGITS[c & 0xf]);
+			} else {
+				line.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Stops the consumer thread after writing the records published so far.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(consumer);
+		try {
+			consumer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of records dropped because the ring was full or writing failed
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of records written
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * A slot of the ring, written by the thread that claimed it, read by the consumer once published.
+	 */
+	private static final class Record {
+
+		long timeMillis;
+		String type;
+		String detail;
+		String method;
+		String servletPath;
+		String pathInfo;
+		int status;
+		int securityHeaders;
+		long durationNanos;
+
+		void clear() {
+			type = null;
+			detail = null;
+			method = null;
+			servletPath = null;
+			pathInfo = null;
+		}
+	}
+}
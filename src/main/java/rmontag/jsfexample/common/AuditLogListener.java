@@ -0,0 +1,102 @@
+package rmontag.jsfexample.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link AuditLog} from the context params below, publishes it as context attribute
+ * {@link AuditLog#CONTEXT_ATTRIBUTE} for the {@link AuditFilter} and records created and destroyed
+ * sessions. Without rmontag.jsfexample.AUDIT_LOG_FILE nothing is audited.
+ *
+ * Supported context params:
+ * <ul>
+ * <li>rmontag.jsfexample.AUDIT_LOG_FILE - File written to, relative paths are resolved against catalina.base, else the working directory (Default: none).</li>
+ * <li>rmontag.jsfexample.AUDIT_LOG_CAPACITY - Records buffered between request threads and the writer (Default: 65536).</li>
+ * <li>rmontag.jsfexample.AUDIT_LOG_MAX_FILE_BYTES - Size the file is rolled at (Default: 16777216).</li>
+ * <li>rmontag.jsfexample.AUDIT_LOG_MAX_FILES - Number of rolled files kept (Default: 5).</li>
+ * </ul>
+ */
+public class AuditLogListener implements ServletContextListener, HttpSessionListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AuditLogListener.class);
+
+	public static final String CONTEXT_PARAM_FILE = "rmontag.jsfexample.AUDIT_LOG_FILE";
+	public static final String CONTEXT_PARAM_CAPACITY = "rmontag.jsfexample.AUDIT_LOG_CAPACITY";
+	public static final String CONTEXT_PARAM_MAX_FILE_BYTES = "rmontag.jsfexample.AUDIT_LOG_MAX_FILE_BYTES";
+	public static final String CONTEXT_PARAM_MAX_FILES = "rmontag.jsfexample.AUDIT_LOG_MAX_FILES";
+
+	private static final int DEFAULT_CAPACITY = 65536;
+	private static final long DEFAULT_MAX_FILE_BYTES = 16 * 1024 * 1024;
+	private static final int DEFAULT_MAX_FILES = 5;
+
+	private volatile AuditLog auditLog;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		long start = System.nanoTime();
+		ServletContext context = event.getServletContext();
+		String fileName = context.getInitParameter(CONTEXT_PARAM_FILE);
+		if (fileName == null || fileName.trim().isEmpty()) {
+			LOG.info("No " + CONTEXT_PARAM_FILE + " configured, requests are not audited");
+			return;
+		}
+		int capacity = InitParams.intParam(context, CONTEXT_PARAM_CAPACITY, DEFAULT_CAPACITY, 1, 1 << 24);
+		long maxFileBytes = InitParams.longParam(context, CONTEXT_PARAM_MAX_FILE_BYTES, DEFAULT_MAX_FILE_BYTES, AuditLog.BATCH_BYTES, Long.MAX_VALUE);
+		int maxFiles = InitParams.intParam(context, CONTEXT_PARAM_MAX_FILES, DEFAULT_MAX_FILES, 0, 1000);
+
+		Path file = resolve(fileName.trim());
+		try {
+			auditLog = new AuditLog(file, capacity, maxFileBytes, maxFiles);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open the audit log " + file, e);
+		}
+		context.setAttribute(AuditLog.CONTEXT_ATTRIBUTE, auditLog);
+		LOG.info("Auditing requests to " + file);
+		StartupTiming.getInstance().record("audit log init", start);
+	}
+
+	private static Path resolve(String fileName) {
+		File file = new File(fileName);
+		String catalinaBase = System.getProperty("catalina.base");
+		if (!file.isAbsolute() && catalinaBase != null) {
+			file = new File(catalinaBase, fileName);
+		}
+		return file.toPath();
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		AuditLog log = auditLog;
+		if (log != null) {
+			event.getServletContext().removeAttribute(AuditLog.CONTEXT_ATTRIBUTE);
+			log.shutdown();
+			LOG.info("Audit log closed, " + log.getWrittenCount() + " records written, " + log.getDroppedCount() + " dropped");
+		}
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+		AuditLog log = auditLog;
+		if (log != null) {
+			log.event(AuditLog.TYPE_SESSION_CREATED, null);
+		}
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+		AuditLog log = auditLog;
+		if (log != null) {
+			log.event(AuditLog.TYPE_SESSION_DESTROYED, null);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-running request waiting delayMillis for a simulated backend, once holding the container
+ * thread and once without, to compare both under load (see AsyncComparison of the launcher module).
+ *
+ * <ul>
+ * <li>/backend/blocking - The container thread sleeps for the wait, like a blocking client call.</li>
+ * <li>/backend/async - The request is put into async mode and the container thread returns to the
+ * pool at once. The wait is a task scheduled on a single timer thread, like the callback of a
+ * non-blocking client; it writes the short response and completes the request.</li>
+ * </ul>
+ * Both go through the same filters mapped to /*, which are declared async-supported in web.xml; the
+ * security headers are set before the servlet starts async processing.
+ *
+ * Requests and the requests waiting per mode are published on /metrics, the servlet is the
+ * context attribute {@link #CONTEXT_ATTRIBUTE}.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>delayMillis - Duration of the simulated backend call (Default: 200).</li>
+ * <li>timeoutMillis - Timeout of the async mode, answered with 503 (Default: 10000).</li>
+ * </ul>
+ * The servlet must be mapped to /backend/* (or another path pattern ending with /*) and declared async-supported.
+ */
+public class BackendServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOG = LoggerFactory.getLogger(BackendServlet.class);
+
+	public static final String CONTEXT_ATTRIBUTE = BackendServlet.class.getName();
+
+	public static final String INIT_PARAM_DELAY_MILLIS = "delayMillis";
+	public static final String INIT_PARAM_TIMEOUT_MILLIS = "timeoutMillis";
+
+	private static final int DEFAULT_DELAY_MILLIS = 200;
+	private static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private static final String BLOCKING = "/blocking";
+	private static final String ASYNC = "/async";
+
+	private int delayMillis;
+	private int timeoutMillis;
+	private transient ScheduledExecutorService timer;
+
+	private final LongAdder blockingRequests = new LongAdder();
+	private final LongAdder asyncRequests = new LongAdder();
+	private final AtomicInteger blockingWaiting = new AtomicInteger();
+	private final AtomicInteger asyncWaiting = new AtomicInteger();
+	private final LongAdder timeouts = new LongAdder();
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		delayMillis = InitParams.intParam(config, INIT_PARAM_DELAY_MILLIS, DEFAULT_DELAY_MILLIS, 0, 600000);
+		timeoutMillis = InitParams.intParam(config, INIT_PARAM_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS, 1, Integer.MAX_VALUE);
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "backend-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		getServletContext().setAttribute(CONTEXT_ATTRIBUTE, this);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String mode = request.getPathInfo();
+		if (BLOCKING.equals(mode)) {
+			blocking(response);
+		} else if (ASYNC.equals(mode)) {
+			if (!request.isAsyncSupported()) {
+				throw new ServletException("Async processing is not supported by all filters in front of " + getServletName());
+			}
+			async(request);
+		} else {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	private void blocking(HttpServletResponse response) throws IOException {
+		blockingRequests.increment();
+		blockingWaiting.incrementAndGet();
+		try {
+			TimeUnit.MILLISECONDS.sleep(delayMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
+		} finally {
+			blockingWaiting.decrementAndGet();
+		}
+		write(response, "blocking");
+	}
+
+	private void async(HttpServletRequest request) {
+		asyncRequests.increment();
+		asyncWaiting.incrementAndGet();
+		final AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(timeoutMillis);
+		// whoever comes first, the backend or the timeout, completes the request
+		final AtomicBoolean done = new AtomicBoolean();
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if (done.compareAndSet(false, true)) {
+					asyncWaiting.decrementAndGet();
+					timeouts.increment();
+					((HttpServletResponse) event.getAsyncContext().getResponse()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					event.getAsyncContext().complete();
+				}
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				if (done.compareAndSet(false, true)) {
+					asyncWaiting.decrementAndGet();
+				}
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+		});
+		timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (!done.compareAndSet(false, true)) {
+					return;
+				}
+				asyncWaiting.decrementAndGet();
+				try {
+					write(asyncContext.getResponse(), "async");
+				} catch (IOException e) {
+					// client gone, nothing to answer
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Unable to write the async response", e);
+					}
+				} finally {
+					asyncContext.complete();
+				}
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void write(ServletResponse response, String mode) throws IOException {
+		byte[] body = (mode + " " + delayMillis + " ms\n").getBytes(StandardCharsets.US_ASCII);
+		response.setContentType("text/plain;charset=US-ASCII");
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	/**
+	 * @param async true for /backend/async, false for /backend/blocking
+	 * @return number of requests received
+	 */
+	public long getRequestCount(boolean async) {
+		return async ? asyncRequests.sum() : blockingRequests.sum();
+	}
+
+	/**
+	 * @param async true for /backend/async, false for /backend/blocking
+	 * @return number of requests waiting for the backend, each holding a container thread if blocking
+	 */
+	public int getWaitingCount(boolean async) {
+		return async ? asyncWaiting.get() : blockingWaiting.get();
+	}
+
+	/**
+	 * @return number of async requests answered with 503 after timeoutMillis
+	 */
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public void destroy() {
+		getServletContext().removeAttribute(CONTEXT_ATTRIBUTE);
+		timer.shutdownNow();
+	}
+}
@@ -0,0 +1,106 @@
+package rmontag.jsfexample.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer/multi-consumer queue on a preallocated ring buffer
+ * (sequence per slot, after Dmitry Vyukov's bounded MPMC queue).
+ *
+ * {@link #offer(Object)} never blocks: if the ring is full it returns false immediately, so
+ * request threads can drop and count instead of waiting for the consumer.
+ *
+ * @param <E> element type
+ */
+public final class BoundedRingQueue<E> {
+
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong enqueuePosition = new AtomicLong();
+	private final AtomicLong dequeuePosition = new AtomicLong();
+
+	/**
+	 * @param capacity minimum capacity, rounded up to a power of two
+	 */
+	public BoundedRingQueue(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("An invalid capacity [" + capacity + "] was specified");
+		}
+		int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		elements = new AtomicReferenceArray<E>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * @param element element to add, not null
+	 * @return false, if the queue is full
+	 */
+	public boolean offer(E element) {
+		long position = enqueuePosition.get();
+		int index;
+		for (;;) {
+			index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (enqueuePosition.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = enqueuePosition.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = enqueuePosition.get();
+			}
+		}
+		elements.lazySet(index, element);
+		sequences.lazySet(index, position + 1);
+		return true;
+	}
+
+	/**
+	 * @return the oldest element, or null if the queue is empty
+	 */
+	public E poll() {
+		long position = dequeuePosition.get();
+		int index;
+		for (;;) {
+			index = (int) position & mask;
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (dequeuePosition.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = dequeuePosition.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = dequeuePosition.get();
+			}
+		}
+		E element = elements.get(index);
+		elements.lazySet(index, null);
+		sequences.lazySet(index, position + mask + 1);
+		return element;
+	}
+
+	/**
+	 * @return the capacity of the ring
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return approximate number of elements, exact only if no thread modifies the queue
+	 */
+	public int size() {
+		long size = enqueuePosition.get() - dequeuePosition.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+}
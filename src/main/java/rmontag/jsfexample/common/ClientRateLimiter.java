@@ -0,0 +1,136 @@
+package rmontag.jsfexample.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets per client in a fixed amount of memory: one long per bucket, updated by
+ * compareAndSet, so clients never wait for each other and nothing is allocated per request.
+ *
+ * A bucket holds burst tokens and is refilled with ratePerSecond tokens per second. It is stored as
+ * the time its tokens are used up (the "theoretical arrival time" of the generic cell rate
+ * algorithm): every request moves that time one interval (1 / ratePerSecond) into the future, a
+ * request that would move it more than burst intervals ahead of now is rejected.
+ *
+ * A long packs a 20 bit fingerprint of the client with that time in microseconds (44 bits, modulo
+ * about 200 days). The client's hash selects a pair of adjacent buckets; a client without bucket
+ * takes over the one of the pair whose tokens are refilled the most, so an idle client is forgotten
+ * first. When the table is full of active clients, two clients may share a bucket or a client may
+ * lose its bucket and start with a full one, the limiter then errs on the side of admitting.
+ */
+public final class ClientRateLimiter {
+
+	private static final int TIME_BITS = 44;
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+	private static final int FINGERPRINT_MASK = (1 << (Long.SIZE - TIME_BITS)) - 1;
+
+	private final AtomicLongArray buckets;
+	private final int mask;
+	private final long intervalMicros;
+	private final long burstMicros;
+	private final long baseNanos = System.nanoTime();
+
+	/**
+	 * @param ratePerSecond requests per second a client may send in the long run, 1 to 1000000
+	 * @param burst requests a client may send at once, at least 1
+	 * @param clients number of buckets, rounded up to a power of 2, at least 2
+	 */
+	public ClientRateLimiter(int ratePerSecond, int burst, int clients) {
+		if (ratePerSecond < 1 || ratePerSecond > 1000000) {
+			throw new IllegalArgumentException("An invalid value [" + ratePerSecond + "] was specified for ratePerSecond");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("An invalid value [" + burst + "] was specified for burst");
+		}
+		if (clients < 2 || clients > 1 << 30) {
+			throw new IllegalArgumentException("An invalid value [" + clients + "] was specified for clients");
+		}
+		int size = Integer.highestOneBit(clients - 1) << 1;
+		buckets = new AtomicLongArray(size);
+		mask = size - 1;
+		intervalMicros = 1000000 / ratePerSecond;
+		burstMicros = intervalMicros * burst;
+	}
+
+	/**
+	 * Takes a token from the client's bucket.
+	 * @param client client identifier, e.g. the remote address
+	 * @param nowNanos System.nanoTime()
+	 * @return 0 if the request is admitted, else the nanoseconds until the client gets a token
+	 */
+	public long acquire(CharSequence client, long nowNanos) {
+		long hash = hash(client);
+		int first = (int) hash & mask & ~1;
+		int fingerprint = (int) (hash >>> TIME_BITS) & FINGERPRINT_MASK;
+		if (fingerprint == 0) {
+			fingerprint = 1;
+		}
+		long now = TimeUnit.NANOSECONDS.toMicros(nowNanos - baseNanos) & TIME_MASK;
+
+		for (;;) {
+			int index = first;
+			long bucket = buckets.get(first);
+			long other = buckets.get(first + 1);
+			long debt;
+			if (fingerprint(bucket) == fingerprint) {
+				debt = debt(bucket, now);
+			} else if (fingerprint(other) == fingerprint) {
+				index = first + 1;
+				bucket = other;
+				debt = debt(bucket, now);
+			} else {
+				if (debt(other, now) < debt(bucket, now)) {
+					index = first + 1;
+					bucket = other;
+				}
+				debt = 0;
+			}
+
+			debt += intervalMicros;
+			if (debt > burstMicros) {
+				return TimeUnit.MICROSECONDS.toNanos(debt - burstMicros);
+			}
+			long updated = (long) fingerprint << TIME_BITS | (now + debt) & TIME_MASK;
+			if (buckets.compareAndSet(index, bucket, updated)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * @return microseconds the bucket's tokens are used up ahead of now, 0 if it is full or its time
+	 *         is out of range after having been idle for a wrap-around of the 44 bit time
+	 */
+	private long debt(long bucket, long now) {
+		long debt = ((bucket & TIME_MASK) - now) << (Long.SIZE - TIME_BITS) >> (Long.SIZE - TIME_BITS);
+		return debt > 0 && debt <= burstMicros ? debt : 0;
+	}
+
+	private static int fingerprint(long bucket) {
+		return (int) (bucket >>> TIME_BITS);
+	}
+
+	/**
+	 * FNV-1a over the chars, followed by the finalizer of MurmurHash3 so all bits depend on all chars.
+	 */
+	private static long hash(CharSequence client) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < client.length(); i++) {
+			hash ^= client.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * @return the number of buckets
+	 */
+	public int getClients() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,313 @@
+package rmontag.jsfexample.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encodes JSF view state for the page: compact binary encoding, deflate, AES-GCM.
+ *
+ * The state tree of JSF consists mostly of Object arrays, HashMaps and repeated strings (client ids,
+ * class names), so these are written with one byte tags, variable length integers and a string table
+ * instead of Java serialization class descriptors; other objects fall back to Java serialization in
+ * the same stream. The result is deflated, encrypted with AES-GCM and base64url encoded. The GCM tag
+ * signs the ciphertext together with the view id, so a state is only accepted for the view it was
+ * written for and tampered states are rejected before anything is deserialized.
+ *
+ * Encoded: version (1 byte) | IV (12 bytes) | ciphertext and tag, base64url without padding.
+ */
+public final class ClientStateCodec {
+
+	private static final byte VERSION = 1;
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final int KEY_BITS = 128;
+
+	private static final int TAG_NULL = 0;
+	private static final int TAG_STRING = 1;
+	private static final int TAG_STRING_REF = 2;
+	private static final int TAG_INTEGER = 3;
+	private static final int TAG_TRUE = 4;
+	private static final int TAG_FALSE = 5;
+	private static final int TAG_OBJECT_ARRAY = 6;
+	private static final int TAG_HASH_MAP = 7;
+	private static final int TAG_ARRAY_LIST = 8;
+	private static final int TAG_SERIALIZED = 9;
+
+	// writeUTF is limited to 65535 bytes, longer strings are serialized
+	private static final int MAX_UTF_CHARS = 65535 / 3;
+
+	private final SecretKey key;
+	private final SecureRandom random = new SecureRandom();
+	private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>();
+
+	/**
+	 * @param key AES key, see {@link #newKey()} and {@link #key(byte[])}
+	 */
+	public ClientStateCodec(SecretKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return a random AES key; states encoded with it become invalid on restart
+	 */
+	public static SecretKey newKey() {
+		try {
+			KeyGenerator generator = KeyGenerator.getInstance("AES");
+			generator.init(KEY_BITS);
+			return generator.generateKey();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("AES is not available", e);
+		}
+	}
+
+	/**
+	 * @param bytes 16, 24 or 32 bytes
+	 * @return AES key of the given bytes, e.g. shared by all nodes of a cluster
+	 */
+	public static SecretKey key(byte[] bytes) {
+		if (bytes.length != 16 && bytes.length != 24 && bytes.length != 32) {
+			throw new IllegalArgumentException("An invalid key length [" + bytes.length + "] was specified, 16, 24 or 32 bytes are supported");
+		}
+		return new SecretKeySpec(bytes, "AES");
+	}
+
+	/**
+	 * @param state view state as passed to the ResponseStateManager
+	 * @param viewId view the state belongs to
+	 * @return the encoded state, safe for HTML attributes and URLs
+	 */
+	public String encode(Object state, String viewId) throws IOException {
+		ByteArrayOutputStream plain = new ByteArrayOutputStream(1024);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(plain, deflater, 512));
+			new Writer(out).write(state);
+			out.close();
+		} finally {
+			deflater.end();
+		}
+
+		byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(iv);
+		byte[] encoded;
+		try {
+			Cipher cipher = cipher(Cipher.ENCRYPT_MODE, iv, viewId);
+			byte[] plainBytes = plain.toByteArray();
+			encoded = new byte[1 + IV_LENGTH + cipher.getOutputSize(plainBytes.length)];
+			encoded[0] = VERSION;
+			System.arraycopy(iv, 0, encoded, 1, IV_LENGTH);
+			cipher.doFinal(plainBytes, 0, plainBytes.length, encoded, 1 + IV_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to encrypt the view state", e);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(encoded);
+	}
+
+	/**
+	 * @param encoded result of {@link #encode(Object, String)}
+	 * @param viewId view the state is restored for
+	 * @return the view state
+	 * @throws IOException if the state is malformed, was tampered with, written for another view or with another key
+	 */
+	public Object decode(String encoded, String viewId) throws IOException {
+		byte[] bytes;
+		try {
+			bytes = Base64.getUrlDecoder().decode(encoded);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("The view state is not base64url encoded", e);
+		}
+		if (bytes.length < 1 + IV_LENGTH + TAG_BITS / 8 || bytes[0] != VERSION) {
+			throw new IOException("The view state has an unknown format");
+		}
+		byte[] plain;
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			System.arraycopy(bytes, 1, iv, 0, IV_LENGTH);
+			plain = cipher(Cipher.DECRYPT_MODE, iv, viewId).doFinal(bytes, 1 + IV_LENGTH, bytes.length - 1 - IV_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("The view state is not valid for view " + viewId, e);
+		}
+
+		Inflater inflater = new Inflater(true);
+		try {
+			ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(plain), inflater, 512));
+			return new Reader(in).read();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("The view state references an unknown class", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private Cipher cipher(int mode, byte[] iv, String viewId) throws GeneralSecurityException {
+		Cipher cipher = ciphers.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(CIPHER);
+			ciphers.set(cipher);
+		}
+		cipher.init(mode, key, new GCMParameterSpec(TAG_BITS, iv));
+		if (viewId != null) {
+			cipher.updateAAD(viewId.getBytes(StandardCharsets.UTF_8));
+		}
+		return cipher;
+	}
+
+	private static final class Writer {
+
+		private final ObjectOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		private Writer(ObjectOutputStream out) {
+			this.out = out;
+		}
+
+		private void write(Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(TAG_NULL);
+			} else if (value instanceof String && ((String) value).length() <= MAX_UTF_CHARS) {
+				Integer index = strings.get(value);
+				if (index != null) {
+					out.writeByte(TAG_STRING_REF);
+					writeVarInt(index.intValue());
+				} else {
+					strings.put((String) value, Integer.valueOf(strings.size()));
+					out.writeByte(TAG_STRING);
+					out.writeUTF((String) value);
+				}
+			} else if (value instanceof Integer) {
+				int i = ((Integer) value).intValue();
+				out.writeByte(TAG_INTEGER);
+				writeVarInt((i << 1) ^ (i >> 31));
+			} else if (value instanceof Boolean) {
+				out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+			} else if (value.getClass() == Object[].class) {
+				Object[] array = (Object[]) value;
+				out.writeByte(TAG_OBJECT_ARRAY);
+				writeVarInt(array.length);
+				for (Object element : array) {
+					write(element);
+				}
+			} else if (value.getClass() == HashMap.class) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				out.writeByte(TAG_HASH_MAP);
+				writeVarInt(map.size());
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					write(entry.getKey());
+					write(entry.getValue());
+				}
+			} else if (value.getClass() == ArrayList.class) {
+				List<?> list = (List<?>) value;
+				out.writeByte(TAG_ARRAY_LIST);
+				writeVarInt(list.size());
+				for (Object element : list) {
+					write(element);
+				}
+			} else {
+				out.writeByte(TAG_SERIALIZED);
+				out.writeObject(value);
+			}
+		}
+
+		private void writeVarInt(int value) throws IOException {
+			while ((value & ~0x7f) != 0) {
+				out.writeByte((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+	}
+
+	private static final class Reader {
+
+		private final ObjectInputStream in;
+		private final List<String> strings = new ArrayList<String>();
+
+		private Reader(ObjectInputStream in) {
+			this.in = in;
+		}
+
+		private Object read() throws IOException, ClassNotFoundException {
+			int tag = in.readByte();
+			switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_STRING:
+				String string = in.readUTF();
+				strings.add(string);
+				return string;
+			case TAG_STRING_REF:
+				int index = readVarInt();
+				if (index >= strings.size()) {
+					throw new IOException("Invalid string reference " + index);
+				}
+				return strings.get(index);
+			case TAG_INTEGER:
+				int i = readVarInt();
+				return Integer.valueOf((i >>> 1) ^ -(i & 1));
+			case TAG_TRUE:
+				return Boolean.TRUE;
+			case TAG_FALSE:
+				return Boolean.FALSE;
+			case TAG_OBJECT_ARRAY:
+				Object[] array = new Object[readVarInt()];
+				for (int j = 0; j < array.length; j++) {
+					array[j] = read();
+				}
+				return array;
+			case TAG_HASH_MAP:
+				int size = readVarInt();
+				HashMap<Object, Object> map = new HashMap<Object, Object>(size * 4 / 3 + 1);
+				for (int j = 0; j < size; j++) {
+					Object key = read();
+					map.put(key, read());
+				}
+				return map;
+			case TAG_ARRAY_LIST:
+				int length = readVarInt();
+				ArrayList<Object> list = new ArrayList<Object>(length);
+				for (int j = 0; j < length; j++) {
+					list.add(read());
+				}
+				return list;
+			case TAG_SERIALIZED:
+				return in.readObject();
+			default:
+				throw new IOException("Invalid tag " + tag);
+			}
+		}
+
+		private int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = in.readByte();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Invalid variable length integer");
+		}
+	}
+}
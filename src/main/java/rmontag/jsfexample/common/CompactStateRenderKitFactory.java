@@ -0,0 +1,75 @@
+package rmontag.jsfexample.common;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.faces.context.FacesContext;
+import javax.faces.render.RenderKit;
+import javax.faces.render.RenderKitFactory;
+import javax.faces.render.RenderKitWrapper;
+import javax.faces.render.ResponseStateManager;
+
+/**
+ * Decorates the render kits with the {@link CompactStateResponseStateManager}, registered in
+ * faces-config.xml.
+ */
+public class CompactStateRenderKitFactory extends RenderKitFactory {
+
+	private final RenderKitFactory wrapped;
+	private final ConcurrentMap<RenderKit, RenderKit> renderKits = new ConcurrentHashMap<RenderKit, RenderKit>();
+
+	public CompactStateRenderKitFactory(RenderKitFactory wrapped) {
+		this.wrapped = wrapped;
+	}
+
+	@Override
+	public RenderKitFactory getWrapped() {
+		return wrapped;
+	}
+
+	@Override
+	public void addRenderKit(String renderKitId, RenderKit renderKit) {
+		wrapped.addRenderKit(renderKitId, renderKit);
+	}
+
+	@Override
+	public RenderKit getRenderKit(FacesContext context, String renderKitId) {
+		RenderKit renderKit = wrapped.getRenderKit(context, renderKitId);
+		if (renderKit == null) {
+			return null;
+		}
+		RenderKit decorated = renderKits.get(renderKit);
+		if (decorated == null) {
+			renderKits.putIfAbsent(renderKit, new CompactStateRenderKit(renderKit));
+			decorated = renderKits.get(renderKit);
+		}
+		return decorated;
+	}
+
+	@Override
+	public Iterator<String> getRenderKitIds() {
+		return wrapped.getRenderKitIds();
+	}
+
+	private static final class CompactStateRenderKit extends RenderKitWrapper {
+
+		private final RenderKit wrapped;
+		private final ResponseStateManager responseStateManager;
+
+		private CompactStateRenderKit(RenderKit wrapped) {
+			this.wrapped = wrapped;
+			this.responseStateManager = new CompactStateResponseStateManager(wrapped.getResponseStateManager());
+		}
+
+		@Override
+		public RenderKit getWrapped() {
+			return wrapped;
+		}
+
+		@Override
+		public ResponseStateManager getResponseStateManager() {
+			return responseStateManager;
+		}
+	}
+}
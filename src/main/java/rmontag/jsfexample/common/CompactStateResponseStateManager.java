@@ -0,0 +1,183 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.faces.FacesException;
+import javax.faces.application.StateManager;
+import javax.faces.component.UINamingContainer;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+import javax.faces.lifecycle.ClientWindow;
+import javax.faces.render.ResponseStateManager;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ResponseStateManager keeping the view state in the page, encoded by the {@link ClientStateCodec},
+ * if the {@link ViewStateMode} says so. Transient views, stateless postbacks and the server mode
+ * are left to the ResponseStateManager of the render kit.
+ *
+ * The AES key is read from the env-entry {@link #KEY_ENV_ENTRY} (base64, 16, 24 or 32 bytes, the same
+ * on all nodes of a cluster); without it a random key is generated, and states written before a
+ * restart are rejected (ViewExpiredException).
+ */
+public class CompactStateResponseStateManager extends ResponseStateManager {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CompactStateResponseStateManager.class);
+
+	public static final String KEY_ENV_ENTRY = "java:comp/env/rmontag.jsfexample/ClientStateKey";
+
+	private static final String STATELESS = "stateless";
+	private static final String STATE_FIELD_COUNTER = CompactStateResponseStateManager.class.getName() + ".counter";
+
+	private final ResponseStateManager wrapped;
+	private volatile ClientStateCodec codec;
+
+	public CompactStateResponseStateManager(ResponseStateManager wrapped) {
+		this.wrapped = wrapped;
+	}
+
+	private boolean isClientState(FacesContext context) {
+		UIViewRoot viewRoot = context.getViewRoot();
+		return ViewStateMode.get(context).isClientState() && (viewRoot == null || !viewRoot.isTransient());
+	}
+
+	private ClientStateCodec getCodec() {
+		ClientStateCodec result = codec;
+		if (result == null) {
+			synchronized (this) {
+				result = codec;
+				if (result == null) {
+					result = new ClientStateCodec(lookupKey());
+					codec = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static SecretKey lookupKey() {
+		try {
+			Object value = new InitialContext().lookup(KEY_ENV_ENTRY);
+			if (value != null) {
+				return ClientStateCodec.key(Base64.getDecoder().decode(value.toString().trim()));
+			}
+		} catch (NamingException e) {
+			// no env-entry, handled below
+		}
+		LOG.info("No key found at " + KEY_ENV_ENTRY + ", client side view states are encrypted with a random key"
+				+ " and become invalid on restart");
+		return ClientStateCodec.newKey();
+	}
+
+	@Override
+	public void writeState(FacesContext context, Object state) throws IOException {
+		if (!isClientState(context)) {
+			wrapped.writeState(context, state);
+			return;
+		}
+		ResponseWriter writer = context.getResponseWriter();
+		char separator = UINamingContainer.getSeparatorChar(context);
+		String idPrefix = context.getViewRoot().getContainerClientId(context) + separator;
+		int index = nextStateFieldIndex(context);
+
+		writer.startElement("input", null);
+		writer.writeAttribute("type", "hidden", null);
+		writer.writeAttribute("name", VIEW_STATE_PARAM, null);
+		writer.writeAttribute("id", idPrefix + VIEW_STATE_PARAM + separator + index, null);
+		writer.writeAttribute("value", getViewState(context, state), null);
+		writer.writeAttribute("autocomplete", "off", null);
+		writer.endElement("input");
+
+		ClientWindow clientWindow = context.getExternalContext().getClientWindow();
+		if (clientWindow != null) {
+			writer.startElement("input", null);
+			writer.writeAttribute("type", "hidden", null);
+			writer.writeAttribute("name", CLIENT_WINDOW_PARAM, null);
+			writer.writeAttribute("id", idPrefix + CLIENT_WINDOW_PARAM + separator + index, null);
+			writer.writeAttribute("value", clientWindow.getId(), null);
+			writer.writeAttribute("autocomplete", "off", null);
+			writer.endElement("input");
+		}
+	}
+
+	/**
+	 * @return index making the ids of the state fields of several forms in one page unique
+	 */
+	private static int nextStateFieldIndex(FacesContext context) {
+		Map<Object, Object> attributes = context.getAttributes();
+		Integer index = (Integer) attributes.get(STATE_FIELD_COUNTER);
+		int next = index == null ? 0 : index.intValue() + 1;
+		attributes.put(STATE_FIELD_COUNTER, Integer.valueOf(next));
+		return next;
+	}
+
+	@Override
+	public String getViewState(FacesContext context, Object state) {
+		if (!isClientState(context)) {
+			return wrapped.getViewState(context, state);
+		}
+		try {
+			return getCodec().encode(state, context.getViewRoot().getViewId());
+		} catch (IOException e) {
+			throw new FacesException("Unable to encode the view state", e);
+		}
+	}
+
+	@Override
+	public Object getState(FacesContext context, String viewId) {
+		String viewState = context.getExternalContext().getRequestParameterMap().get(VIEW_STATE_PARAM);
+		if (!ViewStateMode.get(context).isClientState() || viewState == null || STATELESS.equals(viewState)) {
+			return wrapped.getState(context, viewId);
+		}
+		try {
+			return getCodec().decode(viewState, viewId);
+		} catch (IOException e) {
+			// restoring no state ends in a ViewExpiredException
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("rejected view state for " + viewId + ": " + e.getMessage());
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isStateless(FacesContext context, String viewId) {
+		return wrapped.isStateless(context, viewId);
+	}
+
+	@Override
+	public boolean isPostback(FacesContext context) {
+		return wrapped.isPostback(context);
+	}
+
+	@Override
+	public String getCryptographicallyStrongTokenFromSession(FacesContext context) {
+		return wrapped.getCryptographicallyStrongTokenFromSession(context);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public void writeState(FacesContext context, StateManager.SerializedView state) throws IOException {
+		wrapped.writeState(context, state);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Object getTreeStructureToRestore(FacesContext context, String viewId) {
+		return wrapped.getTreeStructureToRestore(context, viewId);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Object getComponentStateToRestore(FacesContext context) {
+		return wrapped.getComponentStateToRestore(context);
+	}
+}
@@ -0,0 +1,62 @@
+package rmontag.jsfexample.common;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The precompiled security headers of a filter: one {@link SecurityHeaders} table per path prefix,
+ * plus the nonce generator for tables with nonce templates.
+ *
+ * If the headers depend on the browser (legacy CSP headers in 'auto' mode), each path prefix maps to
+ * one table per {@link UserAgentClass}, selected by the cached {@link UserAgentClassifier}; such a
+ * response carries "Vary: User-Agent", so shared caches do not replay one browser's headers to another.
+ */
+public final class CompiledSecurityHeaders {
+
+	private static final String USER_AGENT_HEADER = "User-Agent";
+	private static final String VARY_HEADER = "Vary";
+
+	// one table, or one table per UserAgentClass (index ordinal())
+	private final PathPrefixMatcher<SecurityHeaders[]> tables;
+	private final CspNonceGenerator nonceGenerator;
+	private final UserAgentClassifier userAgentClassifier;
+
+	CompiledSecurityHeaders(PathPrefixMatcher<SecurityHeaders[]> tables, CspNonceGenerator nonceGenerator,
+			UserAgentClassifier userAgentClassifier) {
+		this.tables = tables;
+		this.nonceGenerator = nonceGenerator;
+		this.userAgentClassifier = userAgentClassifier;
+	}
+
+	/**
+	 * Sets the headers of the table matching the request path. If the table contains a nonce template,
+	 * a fresh nonce is issued and stored in the request attribute
+	 * {@link ContentSecurityPolicyFilter#NONCE_REQUEST_ATTRIBUTE}.
+	 * @param request current request
+	 * @param response response to set the headers on
+	 */
+	public void apply(HttpServletRequest request, HttpServletResponse response) {
+		SecurityHeaders[] candidates = tables.match(request.getServletPath(), request.getPathInfo());
+		SecurityHeaders headers;
+		if (candidates.length == 1) {
+			headers = candidates[0];
+		} else {
+			headers = candidates[userAgentClassifier.classify(request.getHeader(USER_AGENT_HEADER)).ordinal()];
+			// added, Vary: Accept-Encoding of the compression may follow
+			response.addHeader(VARY_HEADER, USER_AGENT_HEADER);
+		}
+		String nonce = null;
+		if (headers.isNonceRequired()) {
+			nonce = nonceGenerator.nextNonce();
+			request.setAttribute(ContentSecurityPolicyFilter.NONCE_REQUEST_ATTRIBUTE, nonce);
+		}
+		headers.apply(response, request.isSecure(), nonce);
+	}
+
+	/**
+	 * @return the table used for paths without path specific policy
+	 */
+	public SecurityHeaders getDefaultHeaders() {
+		return tables.getDefaultValue()[0];
+	}
+}
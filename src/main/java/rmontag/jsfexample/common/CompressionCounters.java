@@ -0,0 +1,64 @@
+package rmontag.jsfexample.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the {@link CompressionFilter} for one view: responses sent compressed and
+ * uncompressed, bytes before and after compression and the time spent compressing.
+ *
+ * Compression is CPU bound, so the time measured around the Deflater calls is the CPU time spent
+ * on it; {@link #getBytesSavedPerCpuMilli()} relates the two.
+ */
+public final class CompressionCounters {
+
+	private final LongAdder compressed = new LongAdder();
+	private final LongAdder uncompressed = new LongAdder();
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	void recordCompressed(long uncompressedLength, long compressedLength, long compressionNanos) {
+		compressed.increment();
+		bytesIn.add(uncompressedLength);
+		bytesOut.add(compressedLength);
+		nanos.add(compressionNanos);
+	}
+
+	void recordUncompressed(long length) {
+		uncompressed.increment();
+		bytesIn.add(length);
+		bytesOut.add(length);
+	}
+
+	public long getCompressed() {
+		return compressed.sum();
+	}
+
+	public long getUncompressed() {
+		return uncompressed.sum();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	public long getBytesSaved() {
+		return bytesIn.sum() - bytesOut.sum();
+	}
+
+	public long getCpuNanos() {
+		return nanos.sum();
+	}
+
+	/**
+	 * @return bytes saved per millisecond of CPU spent compressing, 0 if nothing was compressed
+	 */
+	public long getBytesSavedPerCpuMilli() {
+		long cpuNanos = nanos.sum();
+		return cpuNanos == 0 ? 0 : getBytesSaved() * 1000000 / cpuNanos;
+	}
+}
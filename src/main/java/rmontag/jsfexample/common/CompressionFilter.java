@@ -0,0 +1,170 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gzip compression of dynamic responses, e.g. the Facelets views, while they are rendered (see
+ * {@link CompressionResponseWrapper}). Responses below minLength and content types already
+ * compressed are sent unchanged.
+ *
+ * The Deflaters and buffers are pooled in a lock-free {@link BoundedRingQueue}; if all are in use,
+ * a new one is created and ended after the response instead of being pooled.
+ *
+ * Bytes before and after compression and the CPU time spent on it are counted per view in
+ * {@link RequestMetrics#compression(String)}, published by the {@link MetricsServlet} and logged
+ * when the filter is destroyed.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>minLength - Minimum response length in bytes to be compressed (Default: 1024).</li>
+ * <li>compressionLevel - Deflate level, 1 (fastest) to 9 (smallest) (Default: 6).</li>
+ * <li>excludedContentTypes - Comma separated content type prefixes never compressed (Default: image/png,image/jpeg,image/gif,image/webp,audio/,video/,font/woff,application/font-woff,application/zip,application/gzip,application/x-gzip,application/pdf,application/octet-stream).</li>
+ * <li>poolSize - Maximum number of pooled Deflaters (Default: 2 x available processors).</li>
+ * </ul>
+ */
+public class CompressionFilter implements Filter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CompressionFilter.class);
+
+	public static final String INIT_PARAM_MIN_LENGTH = "minLength";
+	public static final String INIT_PARAM_COMPRESSION_LEVEL = "compressionLevel";
+	public static final String INIT_PARAM_EXCLUDED_CONTENT_TYPES = "excludedContentTypes";
+	public static final String INIT_PARAM_POOL_SIZE = "poolSize";
+
+	private static final int DEFAULT_MIN_LENGTH = 1024;
+	private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+	private static final String DEFAULT_EXCLUDED_CONTENT_TYPES = "image/png,image/jpeg,image/gif,image/webp,audio/,video/,"
+			+ "font/woff,application/font-woff,application/zip,application/gzip,application/x-gzip,application/pdf,"
+			+ "application/octet-stream";
+	private static final int OUTPUT_BUFFER_LENGTH = 8192;
+
+	private int minLength;
+	private int compressionLevel;
+	private String[] excludedContentTypes;
+	private BoundedRingQueue<GzipDeflater> pool;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		minLength = InitParams.intParam(filterConfig, INIT_PARAM_MIN_LENGTH, DEFAULT_MIN_LENGTH, 0, Integer.MAX_VALUE);
+		compressionLevel = InitParams.intParam(filterConfig, INIT_PARAM_COMPRESSION_LEVEL, DEFAULT_COMPRESSION_LEVEL,
+				Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION);
+		int poolSize = InitParams.intParam(filterConfig, INIT_PARAM_POOL_SIZE, 2 * Runtime.getRuntime().availableProcessors(), 1, 65536);
+
+		String excluded = filterConfig.getInitParameter(INIT_PARAM_EXCLUDED_CONTENT_TYPES);
+		if (excluded == null) {
+			excluded = DEFAULT_EXCLUDED_CONTENT_TYPES;
+		}
+		List<String> types = new ArrayList<String>();
+		for (String type : excluded.split(",")) {
+			type = type.trim().toLowerCase(Locale.ENGLISH);
+			if (!type.isEmpty()) {
+				types.add(type);
+			}
+		}
+		excludedContentTypes = types.toArray(new String[types.size()]);
+		pool = new BoundedRingQueue<GzipDeflater>(poolSize);
+
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse) || response.isCommitted()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+		httpResponse.addHeader("Vary", "Accept-Encoding");
+		if ("HEAD".equals(httpRequest.getMethod()) || httpRequest.getHeader("Range") != null
+				|| !ResourceCacheServlet.accepts(httpRequest.getHeader("Accept-Encoding"), "gzip")) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		CompressionResponseWrapper wrapper = new CompressionResponseWrapper(httpResponse, this,
+				RequestMetrics.getInstance().compression(view(httpRequest)));
+		boolean completed = false;
+		try {
+			chain.doFilter(request, wrapper);
+			completed = true;
+		} finally {
+			if (completed) {
+				wrapper.finish();
+			} else {
+				wrapper.abort();
+			}
+		}
+	}
+
+	private static String view(HttpServletRequest request) {
+		String pathInfo = request.getPathInfo();
+		return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+	}
+
+	int getMinLength() {
+		return minLength;
+	}
+
+	/**
+	 * @return false, if the content type is unknown or starts with one of the excludedContentTypes
+	 */
+	boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		for (String excluded : excludedContentTypes) {
+			if (contentType.regionMatches(true, 0, excluded, 0, excluded.length())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	GzipDeflater acquire() {
+		GzipDeflater gzip = pool.poll();
+		return gzip != null ? gzip : new GzipDeflater(compressionLevel, minLength, OUTPUT_BUFFER_LENGTH);
+	}
+
+	void release(GzipDeflater gzip) {
+		gzip.reset();
+		if (!pool.offer(gzip)) {
+			gzip.end();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		GzipDeflater gzip;
+		while ((gzip = pool.poll()) != null) {
+			gzip.end();
+		}
+		for (Map.Entry<String, CompressionCounters> compression : RequestMetrics.getInstance().getCompressionCounters().entrySet()) {
+			CompressionCounters counters = compression.getValue();
+			LOG.info("compression of " + compression.getKey() + ": " + counters.getCompressed() + " responses compressed, "
+					+ counters.getUncompressed() + " uncompressed, " + counters.getBytesIn() + " -> " + counters.getBytesOut()
+					+ " bytes, " + counters.getCpuNanos() / 1000 + " us CPU, " + counters.getBytesSavedPerCpuMilli()
+					+ " bytes saved per CPU ms");
+		}
+	}
+}
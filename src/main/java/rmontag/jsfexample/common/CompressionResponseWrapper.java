@@ -0,0 +1,408 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response of the {@link CompressionFilter}, gzip encoding the body while it is written.
+ *
+ * The first minLength bytes are held back until the decision is made: a response completed within
+ * them, or with a declared Content-Length below it, is sent unchanged with its Content-Length. A
+ * response reaching minLength is compressed if its content type is compressible and nothing set a
+ * Content-Encoding, otherwise it is passed through.
+ *
+ * Nothing is written to the wrapped response before the decision, so {@link #isCommitted()} (not
+ * overridden) stays false as long as headers can be set, and filters behind this one, like the
+ * committed check of the {@link SecurityHeaderFilter}, see the same state as without compression.
+ * {@link #flushBuffer()} commits as required and decides for compression, since the final length
+ * is unknown; a flush of the stream or writer before the decision is deferred.
+ *
+ * If the filter chain fails, {@link #abort()} takes the place of {@link #finish()}, so a truncated gzip
+ * body is never sent as a complete response.
+ */
+final class CompressionResponseWrapper extends HttpServletResponseWrapper {
+
+	private static final String GZIP_ETAG_SUFFIX = "-gzip\"";
+
+	private enum State {
+		UNDECIDED, IDENTITY, GZIP, FINISHED
+	}
+
+	private final CompressionFilter filter;
+	private final CompressionCounters counters;
+
+	private State state = State.UNDECIDED;
+	private GzipDeflater gzip;
+	private int buffered;
+	private long contentLength = -1;
+	private long identityLength;
+	private long compressionNanos;
+	private boolean finishing;
+
+	private CompressionOutputStream stream;
+	private PrintWriter writer;
+
+	CompressionResponseWrapper(HttpServletResponse response, CompressionFilter filter, CompressionCounters counters) {
+		super(response);
+		this.filter = filter;
+		this.counters = counters;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (writer != null) {
+			throw new IllegalStateException("getWriter() has already been called for this response");
+		}
+		if (stream == null) {
+			stream = new CompressionOutputStream();
+		}
+		return stream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			if (stream != null) {
+				throw new IllegalStateException("getOutputStream() has already been called for this response");
+			}
+			stream = new CompressionOutputStream();
+			writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+		}
+		return writer;
+	}
+
+	@Override
+	public void setContentLength(int length) {
+		setContentLength((long) length);
+	}
+
+	private void setContentLength(long length) {
+		if (state == State.UNDECIDED) {
+			contentLength = length;
+			if (length >= 0 && length < filter.getMinLength()) {
+				// too small to be compressed, no reason to hold it back
+				try {
+					decide(false);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		} else if (state == State.IDENTITY) {
+			super.setContentLength((int) length);
+		}
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if ("Content-Length".equalsIgnoreCase(name)) {
+			setContentLength(value == null ? -1 : Long.parseLong(value.trim()));
+		} else {
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if ("Content-Length".equalsIgnoreCase(name)) {
+			setContentLength(value == null ? -1 : Long.parseLong(value.trim()));
+		} else {
+			super.addHeader(name, value);
+		}
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		if ("Content-Length".equalsIgnoreCase(name)) {
+			setContentLength(value);
+		} else {
+			super.setIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		if ("Content-Length".equalsIgnoreCase(name)) {
+			setContentLength(value);
+		} else {
+			super.addIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		if (state == State.UNDECIDED) {
+			decide(contentLength < 0 || contentLength >= filter.getMinLength());
+		}
+		if (state == State.GZIP) {
+			flushGzip();
+		}
+		super.flushBuffer();
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		restart();
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		super.addHeader("Vary", "Accept-Encoding");
+		contentLength = -1;
+		restart();
+	}
+
+	/**
+	 * After a reset of the wrapped response (which throws if it is committed) the body starts over.
+	 */
+	private void restart() {
+		if (state != State.UNDECIDED) {
+			release();
+			state = State.UNDECIDED;
+		}
+		buffered = 0;
+		identityLength = 0;
+		compressionNanos = 0;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		discard();
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		discard();
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		discard();
+		super.sendRedirect(location);
+	}
+
+	/**
+	 * The body is replaced by the container, nothing written so far is sent.
+	 */
+	private void discard() {
+		release();
+		state = State.FINISHED;
+	}
+
+	/**
+	 * Completes the response after the filter chain returned normally: sends held back bytes or
+	 * the gzip trailer and records the counters.
+	 */
+	void finish() throws IOException {
+		finishing = true;
+		try {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (state == State.UNDECIDED) {
+				// complete below minLength
+				decide(false);
+			}
+			if (state == State.GZIP) {
+				long start = System.nanoTime();
+				gzip.finish(getResponse().getOutputStream());
+				compressionNanos += System.nanoTime() - start;
+				counters.recordCompressed(gzip.getBytesRead(), gzip.getBytesWritten(), compressionNanos);
+			} else if (state == State.IDENTITY) {
+				counters.recordUncompressed(identityLength);
+			}
+		} finally {
+			release();
+			state = State.FINISHED;
+		}
+	}
+
+	/**
+	 * Completes the response after the filter chain threw. An uncommitted gzip body is discarded
+	 * together with its Content-Encoding, so the container sends its error response unencoded. A
+	 * committed one is left without the gzip trailer and its deflater ended instead of pooled; the
+	 * exception reaches the container, which closes the connection after a committed response (as
+	 * Tomcat 7 and 9 do), and the client sees a failed transfer instead of a truncated body declared as complete.
+	 */
+	void abort() {
+		if (state == State.GZIP) {
+			if (getResponse().isCommitted()) {
+				gzip.end();
+				gzip = null;
+			} else {
+				removeContentEncoding();
+			}
+		}
+		release();
+		state = State.FINISHED;
+	}
+
+	/**
+	 * The Servlet API cannot remove a header: resets the wrapped response, discarding the body, and
+	 * restores status, content type and all headers but Content-Encoding and Content-Length, the ETag
+	 * without the suffix added by {@link #decide(boolean)}.
+	 */
+	private void removeContentEncoding() {
+		HttpServletResponse response = (HttpServletResponse) getResponse();
+		int status = response.getStatus();
+		String contentType = response.getContentType();
+		Map<String, Collection<String>> headers = new LinkedHashMap<String, Collection<String>>();
+		for (String name : response.getHeaderNames()) {
+			if (!"Content-Encoding".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)
+					&& !"Content-Type".equalsIgnoreCase(name)) {
+				headers.put(name, new ArrayList<String>(response.getHeaders(name)));
+			}
+		}
+		response.reset();
+		response.setStatus(status);
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+		for (Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+			for (String value : header.getValue()) {
+				if ("ETag".equalsIgnoreCase(header.getKey()) && value.endsWith(GZIP_ETAG_SUFFIX)) {
+					value = value.substring(0, value.length() - GZIP_ETAG_SUFFIX.length()) + "\"";
+				}
+				response.addHeader(header.getKey(), value);
+			}
+		}
+	}
+
+	/**
+	 * Returns the pooled deflater.
+	 */
+	private void release() {
+		if (gzip != null) {
+			filter.release(gzip);
+			gzip = null;
+		}
+	}
+
+	/**
+	 * @param large true if the response reaches minLength or may still do so, false if it is
+	 * complete with the held back bytes or declared a smaller Content-Length
+	 */
+	private void decide(boolean large) throws IOException {
+		boolean compress = large && filter.isCompressible(getContentType()) && !containsHeader("Content-Encoding")
+				&& getStatus() != SC_NO_CONTENT && getStatus() != SC_NOT_MODIFIED;
+		if (compress) {
+			state = State.GZIP;
+			super.setHeader("Content-Encoding", "gzip");
+			// a strong validator belongs to one representation, see ResourceCache
+			String etag = getHeader("ETag");
+			if (etag != null && !etag.startsWith("W/") && etag.endsWith("\"")) {
+				super.setHeader("ETag", etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX);
+			}
+			if (gzip == null) {
+				gzip = filter.acquire();
+			}
+			long start = System.nanoTime();
+			gzip.start(getResponse().getOutputStream());
+			if (buffered > 0) {
+				gzip.write(gzip.buffer, 0, buffered, getResponse().getOutputStream());
+			}
+			compressionNanos += System.nanoTime() - start;
+		} else {
+			state = State.IDENTITY;
+			if (contentLength >= 0) {
+				super.setContentLength((int) contentLength);
+			} else if (!large && getStatus() != SC_NOT_MODIFIED) {
+				// a 304 has no body, its Content-Length would be the one of the representation
+				super.setContentLength(buffered);
+			}
+			if (buffered > 0) {
+				getResponse().getOutputStream().write(gzip.buffer, 0, buffered);
+				identityLength = buffered;
+			}
+			release();
+		}
+		buffered = 0;
+	}
+
+	private void flushGzip() throws IOException {
+		long start = System.nanoTime();
+		gzip.flush(getResponse().getOutputStream());
+		compressionNanos += System.nanoTime() - start;
+	}
+
+	private void write(byte[] bytes, int offset, int length) throws IOException {
+		switch (state) {
+		case UNDECIDED:
+			if (gzip == null) {
+				gzip = filter.acquire();
+			}
+			if (buffered + length < filter.getMinLength()) {
+				System.arraycopy(bytes, offset, gzip.buffer, buffered, length);
+				buffered += length;
+			} else {
+				decide(true);
+				write(bytes, offset, length);
+			}
+			break;
+		case GZIP:
+			long start = System.nanoTime();
+			gzip.write(bytes, offset, length, getResponse().getOutputStream());
+			compressionNanos += System.nanoTime() - start;
+			break;
+		case IDENTITY:
+			getResponse().getOutputStream().write(bytes, offset, length);
+			identityLength += length;
+			break;
+		default:
+			// after sendError or finish, like a closed container stream
+			break;
+		}
+	}
+
+	private final class CompressionOutputStream extends ServletOutputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(int b) throws IOException {
+			single[0] = (byte) b;
+			CompressionResponseWrapper.this.write(single, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			CompressionResponseWrapper.this.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (finishing) {
+				return;
+			}
+			if (state == State.GZIP) {
+				flushGzip();
+				getResponse().getOutputStream().flush();
+			} else if (state == State.IDENTITY) {
+				getResponse().getOutputStream().flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!finishing) {
+				finish();
+				getResponse().getOutputStream().close();
+			}
+		}
+	}
+}
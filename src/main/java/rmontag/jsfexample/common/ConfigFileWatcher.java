@@ -0,0 +1,187 @@
+package rmontag.jsfexample.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads filter settings from an external properties file and reloads them when the file changes.
+ *
+ * The file is named by the init param 'configFile'; its keys are the init param names of the filter
+ * and override the values of web.xml. Unknown keys are rejected. Every load hands the merged settings
+ * to {@link Reloadable#reload(FilterConfig)}, which validates them like init does and publishes a new
+ * immutable snapshot. If a changed file is invalid, the error is logged and the previous snapshot stays
+ * active. The file is watched by a daemon thread using a {@link WatchService} on its directory.
+ */
+public class ConfigFileWatcher implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ConfigFileWatcher.class);
+
+	/**
+	 * Init param naming the properties file, supported by all security header filters
+	 */
+	public static final String INIT_PARAM_CONFIG_FILE = "configFile";
+
+	// editors often write a file in several steps, wait for them to finish
+	private static final long SETTLE_MILLIS = 200;
+
+	/**
+	 * Builds and publishes a new snapshot from the merged settings.
+	 */
+	public interface Reloadable {
+
+		/**
+		 * @param config web.xml init params overridden by the properties file
+		 * @throws ServletException if the settings are invalid; the previous snapshot stays active
+		 */
+		void reload(FilterConfig config) throws ServletException;
+	}
+
+	private final FilterConfig filterConfig;
+	private final Path file;
+	private final Set<String> supportedParams;
+	private final Reloadable reloadable;
+	private final WatchService watchService;
+	private final Thread watcher;
+
+	private ConfigFileWatcher(FilterConfig filterConfig, Path file, Set<String> supportedParams, Reloadable reloadable)
+			throws IOException {
+		this.filterConfig = filterConfig;
+		this.file = file;
+		this.supportedParams = supportedParams;
+		this.reloadable = reloadable;
+		this.watchService = file.getFileSystem().newWatchService();
+		file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "config-file-watcher-" + filterConfig.getFilterName());
+		watcher.setDaemon(true);
+	}
+
+	/**
+	 * Loads the file named by the init param 'configFile' and starts watching it.
+	 * @param filterConfig web.xml configuration of the filter
+	 * @param supportedParams init params the file may contain
+	 * @param reloadable called with the merged settings, now and on every change
+	 * @return the running watcher, or null if no config file is configured
+	 * @throws ServletException if the file cannot be read or its settings are invalid
+	 */
+	public static ConfigFileWatcher start(FilterConfig filterConfig, Set<String> supportedParams, Reloadable reloadable)
+			throws ServletException {
+		String configFile = filterConfig.getInitParameter(INIT_PARAM_CONFIG_FILE);
+		if (configFile == null) {
+			return null;
+		}
+		Path file = Paths.get(configFile.trim()).toAbsolutePath();
+		ConfigFileWatcher configFileWatcher;
+		try {
+			configFileWatcher = new ConfigFileWatcher(filterConfig, file, supportedParams, reloadable);
+		} catch (IOException e) {
+			throw new ServletException("Unable to watch the config file " + file, e);
+		}
+		try {
+			configFileWatcher.load();
+		} catch (ServletException e) {
+			configFileWatcher.close();
+			throw e;
+		}
+		configFileWatcher.watcher.start();
+		return configFileWatcher;
+	}
+
+	private void load() throws ServletException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			throw new ServletException("Unable to read the config file " + file, e);
+		}
+		for (String name : properties.stringPropertyNames()) {
+			if (!supportedParams.contains(name) || INIT_PARAM_CONFIG_FILE.equals(name)) {
+				throw new ServletException("The property " + name + " in " + file + " is not defined for the filter "
+						+ filterConfig.getFilterName());
+			}
+		}
+		try {
+			reloadable.reload(new PropertiesFilterConfig(filterConfig, properties));
+		} catch (RuntimeException e) {
+			// invalid values, e.g. NumberFormatException or IllegalArgumentException of the setters
+			throw new ServletException("Invalid value in the config file " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private void watch() {
+		try {
+			for (;;) {
+				WatchKey key = watchService.take();
+				boolean changed = containsFile(key);
+				key.reset();
+				if (changed) {
+					Thread.sleep(SETTLE_MILLIS);
+					// swallow the events of the remaining write steps
+					WatchKey pending;
+					while ((pending = watchService.poll()) != null) {
+						containsFile(pending);
+						pending.reset();
+					}
+					reload();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed by destroy
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean containsFile(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private void reload() {
+		try {
+			load();
+			LOG.info("reloaded " + file + " for the filter " + filterConfig.getFilterName());
+		} catch (ServletException e) {
+			LOG.error("keeping the previous configuration of the filter " + filterConfig.getFilterName(), e);
+		}
+	}
+
+	/**
+	 * Stops watching the file.
+	 */
+	@Override
+	public void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			LOG.warn("Unable to close the watch service for " + file, e);
+		}
+	}
+}
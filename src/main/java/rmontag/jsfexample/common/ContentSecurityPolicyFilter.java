@@ -1,13 +1,27 @@
 package rmontag.jsfexample.common;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
@@ -29,10 +43,12 @@ import org.slf4j.LoggerFactory;
  * Supported init params:
  * <ul>
  * <li>contentSecurityPolicyEnabled: Value: [true|false] Description: Should Response-Header 'Content-Security-Policy' be set or not (Default: true).</li>
- * <li>headerXcontentSecurityPolicyEnabled: Value: [true|false] Description: Should Response-Header 'X-Content-Security-Policy' additionally be set or not. 
- * If contentSecurityPolicyEnabled is set to false, then this Response-Header is not set, even if this property is set to true (Default: true).</li>
- * <li>headerXwebkitCSPEnabled: Value: [true|false] Description: Should Response-Header 'X-Webkit-CSP' additionally be set or not.
- * If contentSecurityPolicyEnabled is set to false, then this Response-Header is not set, even if this property is set to true (Default: true).</li>
+ * <li>headerXcontentSecurityPolicyEnabled: Value: [true|false|auto] Description: Should Response-Header 'X-Content-Security-Policy' additionally be set or not. 
+ * If contentSecurityPolicyEnabled is set to false, then this Response-Header is not set, even if this property is set to true.
+ * With 'auto' the header is only set for Internet Explorer 10/11, classified by the User-Agent (Default: true).</li>
+ * <li>headerXwebkitCSPEnabled: Value: [true|false|auto] Description: Should Response-Header 'X-Webkit-CSP' additionally be set or not.
+ * If contentSecurityPolicyEnabled is set to false, then this Response-Header is not set, even if this property is set to true.
+ * With 'auto' the header is only set for Safari 5.1/6 and Chrome 14-24, classified by the User-Agent (Default: true).</li>
  * <li>contentSecurityPolicyReportOnlyEnabled: Value: [true|false] Description: Should Response-Header 'Content-Security-Policy-Report-Only' be set or not (Default: true).</li>
  * 
  * <li>contentSecurityPolicy: In case of contentSecurityPolicyEnabled=true the Header value to set for
@@ -42,7 +58,30 @@ import org.slf4j.LoggerFactory;
  * (Default: "default-src 'self';").
  * </li>
  * <li>contentSecurityPolicyReportOnly: In case of contentSecurityPolicyEnabled=true the Header value to set for 'Content-Security-Policy' (Default: "default-src 'self';").</li>
+ * <li>contentSecurityPolicyPaths: Optional table of path specific policies, one entry per line in the form "&lt;path-prefix&gt; &lt;policy&gt;",
+ * e.g. "/faces/javax.faces.resource/ default-src 'self';". The path prefix is relative to the context root and must start with '/'.
+ * A prefix matches whole path segments, /admin matches /admin and /admin/users but not /administration.
+ * For a request the entry with the longest matching prefix replaces contentSecurityPolicy in 'Content-Security-Policy',
+ * 'X-Content-Security-Policy' and 'X-Webkit-CSP'; requests without matching entry get contentSecurityPolicy.
+ * The table is compiled into a {@link PathPrefixMatcher} at init (Default: no path specific policies).</li>
+ * <li>contentSecurityPolicyHashes: Class path resource of the {@link CspHashManifest} generated at build time with the hashes
+ * of the static inline scripts and styles per view, empty to ignore it. At init the hashes of each view are merged into
+ * script-src and style-src of its policy and its report-only policy, for every request path of the view under the
+ * mappings of the Faces Servlet, e.g. /faces/hello.xhtml and /hello.xhtml (Default: META-INF/csp-hashes.properties,
+ * no hashes if it does not exist).</li>
+ * <li>reportingEndpoints: Value of Response-Header 'Reporting-Endpoints', naming the endpoints that 'report-to' in the policies refers to,
+ * e.g. "csp=\"{contextPath}/csp-report\"" for "report-to csp;". Set with the policies, if contentSecurityPolicyEnabled or
+ * contentSecurityPolicyReportOnlyEnabled is true (Default: no header).</li>
+ * <li>configFile: Optional path of a properties file with the init params above, overriding the values of web.xml.
+ * The file is watched and reloaded on change; unknown keys and invalid files are logged and ignored, see {@link ConfigFileWatcher}.</li>
  * </ul>
+ * Policies may contain the placeholder {contextPath} ({@link #CONTEXT_PATH_PLACEHOLDER}), replaced by the context path
+ * at init, e.g. "report-uri {contextPath}/csp-report;" for the {@link CspReportServlet} under any context path;
+ * the same in reportingEndpoints.
+ * Policies may contain the placeholder {nonce} (see {@link SecurityHeaders#NONCE_PLACEHOLDER}), e.g.
+ * "script-src 'self' 'nonce-{nonce}'". For requests whose policy contains the placeholder a fresh nonce is issued
+ * by a {@link CspNonceGenerator}, spliced into the precompiled header values and stored in the request attribute
+ * 'cspNonce', so Facelets pages can use it as #{cspNonce}, e.g. &lt;script nonce="#{cspNonce}"&gt;.
  * If no values are provided, but enabled is set to 'true', then the (strict) default value "default-src 'self';" is used. 
  * Using this default value will result in a LOT of errors regarding "inline styles" and "inline scripts"!
  * 
@@ -62,33 +101,135 @@ public class ContentSecurityPolicyFilter implements Filter {
 	private static final String X_CONTENT_SECURITY_POLICY_HEADER = "X-Content-Security-Policy";
 	// For iOS, Safari
 	private static final String X_WEBKIT_CSP_HEADER = "X-Webkit-CSP";
+	// Reporting API, names the endpoints of 'report-to'
+	private static final String REPORTING_ENDPOINTS_HEADER = "Reporting-Endpoints";
 
 	// init params for Filter to set in web.xml
 	public static final String INIT_PARAM_CONTENT_SECURITY_POLICY = "contentSecurityPolicy";
 	public static final String INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY = "contentSecurityPolicyReportOnly";
+	public static final String INIT_PARAM_CONTENT_SECURITY_POLICY_PATHS = "contentSecurityPolicyPaths";
+	public static final String INIT_PARAM_CONTENT_SECURITY_POLICY_HASHES = "contentSecurityPolicyHashes";
+	public static final String INIT_PARAM_REPORTING_ENDPOINTS = "reportingEndpoints";
 
 	public static final String INIT_PARAM_CONTENT_SECURITY_POLICY_ENABLED = "contentSecurityPolicyEnabled";
 	public static final String INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY_ENABLED = "contentSecurityPolicyReportOnlyEnabled";
 	public static final String INIT_PARAM_HEADER_X_CONTENT_SECURITY_POLICY_ENABLED = "headerXcontentSecurityPolicyEnabled";
 	public static final String INIT_PARAM_HEADER_X_WEBKIT_CSP_ENABLED = "headerXwebkitCSPEnabled";
 
+	/**
+	 * Platzhalter fuer den Context-Pfad in Policies, beim Init ersetzt
+	 */
+	public static final String CONTEXT_PATH_PLACEHOLDER = "{contextPath}";
+
+	/**
+	 * Request-Attribut mit der Nonce des Requests, in Facelets als #{cspNonce}
+	 */
+	public static final String NONCE_REQUEST_ATTRIBUTE = "cspNonce";
+
+	/**
+	 * Alle von diesem Filter unterstuetzten init params
+	 */
+	static final Set<String> INIT_PARAMS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			INIT_PARAM_CONTENT_SECURITY_POLICY, INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY, INIT_PARAM_CONTENT_SECURITY_POLICY_PATHS,
+			INIT_PARAM_CONTENT_SECURITY_POLICY_HASHES, INIT_PARAM_REPORTING_ENDPOINTS,
+			INIT_PARAM_CONTENT_SECURITY_POLICY_ENABLED, INIT_PARAM_CONTENT_SECURITY_POLICY_REPORT_ONLY_ENABLED,
+			INIT_PARAM_HEADER_X_CONTENT_SECURITY_POLICY_ENABLED, INIT_PARAM_HEADER_X_WEBKIT_CSP_ENABLED,
+			ConfigFileWatcher.INIT_PARAM_CONFIG_FILE)));
+
+	// Wert fuer headerXcontentSecurityPolicyEnabled/headerXwebkitCSPEnabled: nur fuer alte Browser setzen
+	private static final String AUTO = "auto";
+
 	// default values
 	private static final String DEFAULT_VALUE = "default-src 'self';";
 	private static final String CONTENT_SECURITY_POLICY_DEFAULT_VALUE = DEFAULT_VALUE;
 	private static final String CONTENT_SECURITY_POLICY_REPORT_ONLY_DEFAULT_VALUE = DEFAULT_VALUE;
 
+	// Mappings des Faces Servlet, falls es nicht ermittelt werden kann
+	private static final String FACES_SERVLET_CLASS = "javax.faces.webapp.FacesServlet";
+	private static final List<String> DEFAULT_FACES_MAPPINGS = Arrays.asList("/faces/*", "*.jsf", "*.faces", "*.xhtml");
+
 	private String valueContentSecurityPolicyHeader = CONTENT_SECURITY_POLICY_DEFAULT_VALUE;
 	private String valueContentSecurityPolicyReportOnlyHeader = CONTENT_SECURITY_POLICY_REPORT_ONLY_DEFAULT_VALUE;
 	private String valueXWebkitCSPHeader = CONTENT_SECURITY_POLICY_DEFAULT_VALUE;
 	private String valueXContentSecurityPolicyHeader = CONTENT_SECURITY_POLICY_DEFAULT_VALUE;
+	private String valueReportingEndpointsHeader;
 
 	private boolean contentSecurityPolicyEnabled = true;
 	private boolean contentSecurityPolicyReportOnlyEnabled = true;
 	private boolean headerXcontentSecurityPolicyEnabled = true;
 	private boolean headerXwebkitCSPEnabled = true;
+	private boolean headerXcontentSecurityPolicyAuto = false;
+	private boolean headerXwebkitCSPAuto = false;
+
+	/**
+	 * Pfadspezifische Policies (Pfad-Praefix -&gt; Policy) in Reihenfolge der Konfiguration
+	 */
+	private final Map<String, String> pathPolicies = new LinkedHashMap<String, String>();
+
+	/**
+	 * Hashes der Inline-Bloecke je View, aus contentSecurityPolicyHashes
+	 */
+	private CspHashManifest hashManifest;
+
+	/**
+	 * Request-Pfade der Views mit Hashes (Request-Pfad -&gt; View-Id), je Mapping des Faces Servlet
+	 */
+	private final Map<String, String> viewPaths = new LinkedHashMap<String, String>();
+
+	/**
+	 * Erzeugt die Nonces fuer Policies mit Platzhalter {nonce}
+	 */
+	private final CspNonceGenerator nonceGenerator;
+
+	/**
+	 * Klassifiziert die User-Agents, wenn ein Legacy-Header auf 'auto' steht
+	 */
+	private final UserAgentClassifier userAgentClassifier;
+
+	/**
+	 * Beim init vorberechnete Header-Tabellen je Pfad-Praefix, wird beim Reload der configFile als Ganzes ersetzt
+	 */
+	private final AtomicReference<CompiledSecurityHeaders> headers = new AtomicReference<CompiledSecurityHeaders>();
+
+	private ConfigFileWatcher configFileWatcher;
+
+	public ContentSecurityPolicyFilter() {
+		this(new CspNonceGenerator(), new UserAgentClassifier());
+	}
+
+	/**
+	 * @param nonceGenerator Nonce-Generator, den auch neu geladene Konfigurationen verwenden
+	 * @param userAgentClassifier User-Agent-Cache, den auch neu geladene Konfigurationen verwenden
+	 */
+	ContentSecurityPolicyFilter(CspNonceGenerator nonceGenerator, UserAgentClassifier userAgentClassifier) {
+		this.nonceGenerator = nonceGenerator;
+		this.userAgentClassifier = userAgentClassifier;
+	}
 
 	@Override
 	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		configure(filterConfig);
+		headers.set(compileHeaders(SecurityHeaders.builder().build()));
+
+		configFileWatcher = ConfigFileWatcher.start(filterConfig, INIT_PARAMS, new ConfigFileWatcher.Reloadable() {
+			@Override
+			public void reload(FilterConfig config) throws ServletException {
+				ContentSecurityPolicyFilter reloaded = new ContentSecurityPolicyFilter(nonceGenerator, userAgentClassifier);
+				reloaded.configure(config);
+				headers.set(reloaded.compileHeaders(SecurityHeaders.builder().build()));
+			}
+		});
+
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	/**
+	 * Liest die init params, ohne die Header-Tabellen zu berechnen und ohne configFile zu beobachten.
+	 * @param filterConfig
+	 * @throws ServletException bei ungueltigen Werten
+	 */
+	void configure(FilterConfig filterConfig) throws ServletException {
 		// Content-Security-Policy
 		initContentSecurityPolicy(filterConfig);
 		// Content-Security-Policy-Report-Only
@@ -97,6 +238,189 @@ public class ContentSecurityPolicyFilter implements Filter {
 		initXContentSecurityPolicy(filterConfig);
 		// X-Webkit-CSP
 		initXWebkitCSP(filterConfig);
+		// pfadspezifische Policies
+		initPathPolicies(filterConfig);
+		// Hashes der Inline-Bloecke je View
+		initHashes(filterConfig);
+		// Reporting-Endpoints
+		initReportingEndpoints(filterConfig);
+		// Context-Pfad in allen Policies
+		initContextPath(filterConfig);
+	}
+
+	/**
+	 * Ersetzt {@link #CONTEXT_PATH_PLACEHOLDER} in allen Policies durch den Context-Pfad (ohne ServletContext durch "")
+	 * @param filterConfig
+	 */
+	private void initContextPath(FilterConfig filterConfig) {
+		ServletContext servletContext = filterConfig.getServletContext();
+		String contextPath = servletContext == null ? "" : servletContext.getContextPath();
+		valueContentSecurityPolicyHeader = valueContentSecurityPolicyHeader.replace(CONTEXT_PATH_PLACEHOLDER, contextPath);
+		valueContentSecurityPolicyReportOnlyHeader = valueContentSecurityPolicyReportOnlyHeader.replace(CONTEXT_PATH_PLACEHOLDER,
+				contextPath);
+		for (Map.Entry<String, String> pathPolicy : pathPolicies.entrySet()) {
+			pathPolicy.setValue(pathPolicy.getValue().replace(CONTEXT_PATH_PLACEHOLDER, contextPath));
+		}
+		if (valueReportingEndpointsHeader != null) {
+			valueReportingEndpointsHeader = valueReportingEndpointsHeader.replace(CONTEXT_PATH_PLACEHOLDER, contextPath);
+		}
+	}
+
+	/**
+	 * Berechnet je Pfad-Praefix die Header-Tabelle aus den Headern von base und den aktivierten CSP-Headern.
+	 * Setzt einen vorherigen Aufruf von {@link #configure(FilterConfig)} voraus.
+	 * @param base Header, die jede Tabelle zusaetzlich enthalten soll
+	 * @return Header-Tabellen je Pfad-Praefix, Default ist die Tabelle mit contentSecurityPolicy
+	 */
+	CompiledSecurityHeaders compileHeaders(SecurityHeaders base) {
+		PathPrefixMatcher.Builder<SecurityHeaders[]> builder = PathPrefixMatcher.builder();
+		for (Map.Entry<String, String> pathPolicy : pathPolicies.entrySet()) {
+			builder.add(pathPolicy.getKey(), compileHeaders(base, pathPolicy.getValue(), valueContentSecurityPolicyReportOnlyHeader));
+		}
+		// die Views mit Hashes bekommen ihre Policy (Default oder pfadspezifisch) samt Hashes als eigenen Eintrag
+		for (Map.Entry<String, String> viewPath : viewPaths.entrySet()) {
+			String viewId = viewPath.getValue();
+			builder.add(viewPath.getKey(), compileHeaders(base, hashManifest.merge(policy(viewPath.getKey()), viewId),
+					hashManifest.merge(valueContentSecurityPolicyReportOnlyHeader, viewId)));
+		}
+		return new CompiledSecurityHeaders(builder.build(compileHeaders(base, valueContentSecurityPolicyHeader,
+				valueContentSecurityPolicyReportOnlyHeader)), nonceGenerator, userAgentClassifier);
+	}
+
+	/**
+	 * @return die Policy des laengsten passenden Pfad-Praefix, sonst contentSecurityPolicy
+	 */
+	private String policy(String path) {
+		String policy = valueContentSecurityPolicyHeader;
+		int longest = -1;
+		for (Map.Entry<String, String> pathPolicy : pathPolicies.entrySet()) {
+			if (PathPrefixMatcher.matches(pathPolicy.getKey(), path) && pathPolicy.getKey().length() > longest) {
+				policy = pathPolicy.getValue();
+				longest = pathPolicy.getKey().length();
+			}
+		}
+		return policy;
+	}
+
+	/**
+	 * @return eine Tabelle, oder bei 'auto' eine Tabelle je {@link UserAgentClass} (Index ordinal())
+	 */
+	private SecurityHeaders[] compileHeaders(SecurityHeaders base, String policy, String reportOnlyPolicy) {
+		if (!headerXcontentSecurityPolicyAuto && !headerXwebkitCSPAuto) {
+			return new SecurityHeaders[] { compileHeaders(base, policy, reportOnlyPolicy, UserAgentClass.MODERN) };
+		}
+		UserAgentClass[] userAgentClasses = UserAgentClass.values();
+		SecurityHeaders[] headersByUserAgent = new SecurityHeaders[userAgentClasses.length];
+		for (UserAgentClass userAgentClass : userAgentClasses) {
+			headersByUserAgent[userAgentClass.ordinal()] = compileHeaders(base, policy, reportOnlyPolicy, userAgentClass);
+		}
+		return headersByUserAgent;
+	}
+
+	private SecurityHeaders compileHeaders(SecurityHeaders base, String policy, String reportOnlyPolicy, UserAgentClass userAgentClass) {
+		SecurityHeaders.Builder builder = SecurityHeaders.builder(base);
+		if (contentSecurityPolicyEnabled) {
+			builder.add(CONTENT_SECURITY_POLICY_HEADER, policy);
+		}
+		if (contentSecurityPolicyReportOnlyEnabled) {
+			builder.add(CONTENT_SECURITY_POLICY_HEADER_REPORT_ONLY, reportOnlyPolicy);
+		}
+		if (valueReportingEndpointsHeader != null && (contentSecurityPolicyEnabled || contentSecurityPolicyReportOnlyEnabled)) {
+			builder.add(REPORTING_ENDPOINTS_HEADER, valueReportingEndpointsHeader);
+		}
+		if (contentSecurityPolicyEnabled && headerXcontentSecurityPolicyEnabled
+				&& (!headerXcontentSecurityPolicyAuto || userAgentClass == UserAgentClass.LEGACY_IE)) {
+			builder.add(X_CONTENT_SECURITY_POLICY_HEADER, policy);
+		}
+		if (contentSecurityPolicyEnabled && headerXwebkitCSPEnabled
+				&& (!headerXwebkitCSPAuto || userAgentClass == UserAgentClass.LEGACY_WEBKIT)) {
+			builder.add(X_WEBKIT_CSP_HEADER, policy);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Liest die Tabelle der pfadspezifischen Policies, eine Zeile je Eintrag: "&lt;path-prefix&gt; &lt;policy&gt;"
+	 * @param filterConfig
+	 * @throws ServletException bei ungueltigen Eintraegen
+	 */
+	private void initPathPolicies(FilterConfig filterConfig) throws ServletException {
+		String valuePathPolicies = filterConfig.getInitParameter(INIT_PARAM_CONTENT_SECURITY_POLICY_PATHS);
+		if (valuePathPolicies == null) {
+			return;
+		}
+		for (String line : valuePathPolicies.split("\\r?\\n")) {
+			String entry = line.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			int separator = indexOfWhitespace(entry);
+			if (separator < 0 || !entry.startsWith("/")) {
+				throw new ServletException("An invalid entry [" + entry + "] was specified for " + INIT_PARAM_CONTENT_SECURITY_POLICY_PATHS
+						+ ", expected \"<path-prefix> <policy>\"");
+			}
+			String pathPrefix = entry.substring(0, separator);
+			String policy = entry.substring(separator + 1).trim();
+			pathPolicies.put(pathPrefix, policy);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("using policy " + policy + " for path prefix " + pathPrefix);
+			}
+		}
+	}
+
+	/**
+	 * Laedt das Manifest der Hashes und ermittelt die Request-Pfade seiner Views
+	 * @param filterConfig
+	 * @throws ServletException wenn das Manifest nicht gelesen werden kann
+	 */
+	private void initHashes(FilterConfig filterConfig) throws ServletException {
+		String resource = filterConfig.getInitParameter(INIT_PARAM_CONTENT_SECURITY_POLICY_HASHES);
+		if (resource == null) {
+			resource = CspHashManifest.DEFAULT_RESOURCE;
+		}
+		if (resource.trim().isEmpty()) {
+			return;
+		}
+		try {
+			hashManifest = CspHashManifest.load(ContentSecurityPolicyFilter.class.getClassLoader(), resource.trim());
+		} catch (IOException e) {
+			throw new ServletException("Unable to read " + resource + " specified for " + INIT_PARAM_CONTENT_SECURITY_POLICY_HASHES, e);
+		}
+		Collection<String> mappings = facesMappings(filterConfig.getServletContext());
+		for (String viewId : hashManifest.getViewIds()) {
+			for (String mapping : mappings) {
+				if (mapping.endsWith("/*")) {
+					viewPaths.put(mapping.substring(0, mapping.length() - 2) + viewId, viewId);
+				} else if (mapping.startsWith("*.")) {
+					int extension = viewId.lastIndexOf('.');
+					viewPaths.put((extension < 0 ? viewId : viewId.substring(0, extension)) + mapping.substring(1), viewId);
+				}
+			}
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("using the hashes of " + resource + " for " + viewPaths.keySet());
+		}
+	}
+
+	private static Collection<String> facesMappings(ServletContext servletContext) {
+		List<String> mappings = new ArrayList<String>();
+		if (servletContext != null) {
+			for (ServletRegistration registration : servletContext.getServletRegistrations().values()) {
+				if (FACES_SERVLET_CLASS.equals(registration.getClassName())) {
+					mappings.addAll(registration.getMappings());
+				}
+			}
+		}
+		return mappings.isEmpty() ? DEFAULT_FACES_MAPPINGS : mappings;
+	}
+
+	private static int indexOfWhitespace(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (Character.isWhitespace(value.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	private void initContentSecurityPolicy(FilterConfig filterConfig) {
@@ -155,15 +479,31 @@ public class ContentSecurityPolicyFilter implements Filter {
 		}
 	}
 
+	/**
+	 * Sets valueReportingEndpointsHeader, null (kein Header) ohne Wert
+	 * @param filterConfig
+	 */
+	private void initReportingEndpoints(FilterConfig filterConfig) {
+		String valueReportingEndpoints = filterConfig.getInitParameter(INIT_PARAM_REPORTING_ENDPOINTS);
+		if (valueReportingEndpoints != null && !valueReportingEndpoints.trim().isEmpty()) {
+			// set output variable
+			valueReportingEndpointsHeader = valueReportingEndpoints.trim();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("using init value " + valueReportingEndpointsHeader + " for header " + REPORTING_ENDPOINTS_HEADER);
+			}
+		}
+	}
+
 	private void initXWebkitCSP(FilterConfig filterConfig) {
 		// CSP && xwebkitCSP enabled?
 		String valueHeaderXwebkitCSPEnabled = filterConfig.getInitParameter(INIT_PARAM_HEADER_X_WEBKIT_CSP_ENABLED);
 		if (valueHeaderXwebkitCSPEnabled != null) {
 			// set output variable
-			headerXwebkitCSPEnabled = Boolean.parseBoolean(valueHeaderXwebkitCSPEnabled);
+			headerXwebkitCSPAuto = AUTO.equalsIgnoreCase(valueHeaderXwebkitCSPEnabled.trim());
+			headerXwebkitCSPEnabled = headerXwebkitCSPAuto || Boolean.parseBoolean(valueHeaderXwebkitCSPEnabled);
 		}
 		if (LOG.isDebugEnabled()) {
-			LOG.debug("headerXwebkitCSPEnabled is " + headerXwebkitCSPEnabled
+			LOG.debug("headerXwebkitCSPEnabled is " + (headerXwebkitCSPAuto ? AUTO : String.valueOf(headerXwebkitCSPEnabled))
 					+ (valueHeaderXwebkitCSPEnabled != null ? "." : "by default."));
 		}
 		
@@ -181,10 +521,13 @@ public class ContentSecurityPolicyFilter implements Filter {
 		String valueHeaderXcontentSecurityPolicyEnabled = filterConfig.getInitParameter(INIT_PARAM_HEADER_X_CONTENT_SECURITY_POLICY_ENABLED);
 		if (valueHeaderXcontentSecurityPolicyEnabled != null) {
 			// set output variable
-			headerXcontentSecurityPolicyEnabled = Boolean.parseBoolean(valueHeaderXcontentSecurityPolicyEnabled);
+			headerXcontentSecurityPolicyAuto = AUTO.equalsIgnoreCase(valueHeaderXcontentSecurityPolicyEnabled.trim());
+			headerXcontentSecurityPolicyEnabled = headerXcontentSecurityPolicyAuto
+					|| Boolean.parseBoolean(valueHeaderXcontentSecurityPolicyEnabled);
 		}
 		if (LOG.isDebugEnabled()) {
-			LOG.debug("headerXcontentSecurityPolicyEnabled is " + headerXcontentSecurityPolicyEnabled
+			LOG.debug("headerXcontentSecurityPolicyEnabled is "
+					+ (headerXcontentSecurityPolicyAuto ? AUTO : String.valueOf(headerXcontentSecurityPolicyEnabled))
 					+ (valueHeaderXcontentSecurityPolicyEnabled != null ? "." : "by default."));
 		}
 		
@@ -200,19 +543,12 @@ public class ContentSecurityPolicyFilter implements Filter {
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
 			throws IOException, ServletException {
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
 		HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-		if (contentSecurityPolicyEnabled) {
-			httpResponse.setHeader(CONTENT_SECURITY_POLICY_HEADER, valueContentSecurityPolicyHeader);
-		}
-		if (contentSecurityPolicyReportOnlyEnabled) {
-			httpResponse.setHeader(CONTENT_SECURITY_POLICY_HEADER_REPORT_ONLY, valueContentSecurityPolicyReportOnlyHeader); 
-		}
-		if (contentSecurityPolicyEnabled && headerXcontentSecurityPolicyEnabled) {
-			httpResponse.setHeader(X_CONTENT_SECURITY_POLICY_HEADER, valueXContentSecurityPolicyHeader);
-		}
-		if (contentSecurityPolicyEnabled && headerXwebkitCSPEnabled) {
-			httpResponse.setHeader(X_WEBKIT_CSP_HEADER, valueXWebkitCSPHeader);
+		// ein ASYNC-Dispatch setzt die Antwort des Requests fort: Header und Nonce sind schon gesetzt
+		if (request.getDispatcherType() != DispatcherType.ASYNC) {
+			headers.get().apply(httpRequest, httpResponse);
 		}
 
 		chain.doFilter(request, response);
@@ -220,6 +556,9 @@ public class ContentSecurityPolicyFilter implements Filter {
 
 	@Override
 	public void destroy() {
+		if (configFileWatcher != null) {
+			configFileWatcher.close();
+		}
 	}
 
 }
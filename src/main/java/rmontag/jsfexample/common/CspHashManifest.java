@@ -0,0 +1,148 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Hashes of the static inline &lt;script&gt; and &lt;style&gt; blocks per Facelets view, generated at
+ * build time by {@link CspHashManifestGenerator} and merged into the policies by the
+ * {@link ContentSecurityPolicyFilter} at init, so nothing is hashed per request.
+ *
+ * The manifest is a properties file, one key per view and directive with the space separated
+ * sources, e.g. "/hello.xhtml.script-src='sha256-...' 'sha256-...'".
+ */
+public final class CspHashManifest {
+
+	/**
+	 * Class path resource the build writes the manifest to
+	 */
+	public static final String DEFAULT_RESOURCE = "META-INF/csp-hashes.properties";
+
+	public static final String SCRIPT_SRC = "script-src";
+	public static final String STYLE_SRC = "style-src";
+
+	static final String[] DIRECTIVES = { SCRIPT_SRC, STYLE_SRC };
+
+	private static final String DEFAULT_SRC = "default-src";
+	private static final String NONE = "'none'";
+
+	private final Properties hashes;
+
+	private CspHashManifest(Properties hashes) {
+		this.hashes = hashes;
+	}
+
+	/**
+	 * @param classLoader class loader of the web application
+	 * @param resource class path resource of the manifest
+	 * @return the manifest, empty if the resource does not exist
+	 */
+	public static CspHashManifest load(ClassLoader classLoader, String resource) throws IOException {
+		Properties hashes = new Properties();
+		try (InputStream in = classLoader.getResourceAsStream(resource)) {
+			if (in != null) {
+				hashes.load(in);
+			}
+		}
+		return new CspHashManifest(hashes);
+	}
+
+	static String key(String viewId, String directive) {
+		return viewId + "." + directive;
+	}
+
+	/**
+	 * @return the ids of all views with hashes, e.g. "/hello.xhtml", sorted
+	 */
+	public Set<String> getViewIds() {
+		Set<String> viewIds = new TreeSet<String>();
+		for (String key : hashes.stringPropertyNames()) {
+			for (String directive : DIRECTIVES) {
+				if (key.endsWith("." + directive)) {
+					viewIds.add(key.substring(0, key.length() - directive.length() - 1));
+				}
+			}
+		}
+		return Collections.unmodifiableSet(viewIds);
+	}
+
+	/**
+	 * @return the policy with the hashes of the view added to script-src and style-src
+	 */
+	public String merge(String policy, String viewId) {
+		for (String directive : DIRECTIVES) {
+			String sources = hashes.getProperty(key(viewId, directive));
+			if (sources != null && !sources.trim().isEmpty()) {
+				policy = merge(policy, directive, sources.trim());
+			}
+		}
+		return policy;
+	}
+
+	/**
+	 * Adds sources to a directive of the policy. Without the directive, it is added with the sources
+	 * of default-src, which applied to it before; without default-src as well, the policy does not
+	 * restrict the directive and is returned unchanged.
+	 * @param policy e.g. "default-src 'self'; script-src 'self';"
+	 * @param directive e.g. "script-src"
+	 * @param sources e.g. "'sha256-...'"
+	 */
+	static String merge(String policy, String directive, String sources) {
+		List<String> directives = new ArrayList<String>();
+		int index = -1;
+		int defaultIndex = -1;
+		for (String part : policy.split(";")) {
+			String trimmed = part.trim();
+			if (trimmed.isEmpty()) {
+				continue;
+			}
+			String name = name(trimmed);
+			if (name.equals(directive)) {
+				index = directives.size();
+			} else if (name.equals(DEFAULT_SRC)) {
+				defaultIndex = directives.size();
+			}
+			directives.add(trimmed);
+		}
+		if (index >= 0) {
+			directives.set(index, addSources(directives.get(index), sources));
+		} else if (defaultIndex >= 0) {
+			directives.add(addSources(directive + directives.get(defaultIndex).substring(DEFAULT_SRC.length()), sources));
+		} else {
+			return policy;
+		}
+
+		StringBuilder merged = new StringBuilder(policy.length() + sources.length() + 16);
+		for (String part : directives) {
+			if (merged.length() > 0) {
+				merged.append(' ');
+			}
+			merged.append(part).append(';');
+		}
+		return merged.toString();
+	}
+
+	private static String name(String directive) {
+		int end = 0;
+		while (end < directive.length() && !Character.isWhitespace(directive.charAt(end))) {
+			end++;
+		}
+		return directive.substring(0, end).toLowerCase(Locale.ENGLISH);
+	}
+
+	private static String addSources(String directive, String sources) {
+		String name = name(directive);
+		// 'none' must be the only source
+		if (directive.substring(name.length()).trim().equalsIgnoreCase(NONE)) {
+			return name + " " + sources;
+		}
+		return directive + " " + sources;
+	}
+}
@@ -0,0 +1,181 @@
+package rmontag.jsfexample.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Build step writing the {@link CspHashManifest}: scans the Facelets views (*.xhtml) of the web
+ * application directory and hashes the content of their static inline &lt;script&gt; and
+ * &lt;style&gt; blocks with SHA-256, e.g. "'sha256-...'".
+ *
+ * Blocks with a src attribute, EL expressions (#{...} or ${...}), entity references or CDATA
+ * sections are skipped with a warning: their rendered content differs from the source, so they
+ * need 'nonce-{nonce}' instead. Files below WEB-INF are templates, not views, and are skipped.
+ *
+ * The hashes are cached per file together with the SHA-256 of its content, so unchanged files are
+ * not parsed again, and the manifest is only rewritten if it changes.
+ *
+ * java rmontag.jsfexample.common.CspHashManifestGenerator &lt;webapp dir&gt; &lt;manifest&gt; &lt;cache&gt;
+ * (run by the exec-maven-plugin in the process-classes phase, see pom.xml)
+ */
+public class CspHashManifestGenerator {
+
+	private static final Pattern INLINE_BLOCK = Pattern.compile("<(script|style)\\b([^>]*)>(.*?)</\\1\\s*>",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private static final Pattern SRC_ATTRIBUTE = Pattern.compile("\\ssrc\\s*=", Pattern.CASE_INSENSITIVE);
+
+	private final Properties cache;
+	private int parsed;
+	private int cached;
+
+	CspHashManifestGenerator(Properties cache) {
+		this.cache = cache;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: java " + CspHashManifestGenerator.class.getName() + " <webapp dir> <manifest> <cache>");
+			System.exit(2);
+		}
+		final Path webapp = new File(args[0]).toPath();
+		File manifestFile = new File(args[1]);
+		File cacheFile = new File(args[2]);
+
+		final CspHashManifestGenerator generator = new CspHashManifestGenerator(load(cacheFile));
+		final Properties manifest = new Properties();
+		final Map<String, String> cacheEntries = new TreeMap<String, String>();
+		Files.walkFileTree(webapp, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				return dir.endsWith("WEB-INF") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				if (file.getFileName().toString().endsWith(".xhtml")) {
+					String viewId = "/" + webapp.relativize(file).toString().replace(File.separatorChar, '/');
+					String[] sources = generator.hash(viewId, Files.readAllBytes(file));
+					for (int i = 0; i < CspHashManifest.DIRECTIVES.length; i++) {
+						if (!sources[i].isEmpty()) {
+							manifest.setProperty(CspHashManifest.key(viewId, CspHashManifest.DIRECTIVES[i]), sources[i]);
+						}
+					}
+					cacheEntries.put(viewId, generator.cache.getProperty(viewId));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		// entries of deleted views are dropped
+		Properties cache = new Properties();
+		cache.putAll(cacheEntries);
+		store(cache, cacheFile, "CSP hash cache, see " + CspHashManifestGenerator.class.getName());
+		boolean changed = !manifest.equals(load(manifestFile));
+		if (changed) {
+			store(manifest, manifestFile, "CSP hashes of the inline blocks per view, see " + CspHashManifestGenerator.class.getName());
+		}
+		System.out.println("CSP hashes of " + (generator.parsed + generator.cached) + " views (" + generator.parsed
+				+ " parsed, " + generator.cached + " cached), " + manifestFile + (changed ? " written" : " unchanged"));
+	}
+
+	/**
+	 * @return the space separated hash sources of the view per {@link CspHashManifest#DIRECTIVES}, empty if none
+	 */
+	String[] hash(String viewId, byte[] content) {
+		String contentHash = Base64.getEncoder().encodeToString(sha256(content));
+		String entry = cache.getProperty(viewId);
+		if (entry != null && entry.startsWith(contentHash + "|")) {
+			cached++;
+			return entry.substring(contentHash.length() + 1).split("\\|", -1);
+		}
+		parsed++;
+		StringBuilder[] sources = new StringBuilder[CspHashManifest.DIRECTIVES.length];
+		for (int i = 0; i < sources.length; i++) {
+			sources[i] = new StringBuilder();
+		}
+		Matcher block = INLINE_BLOCK.matcher(new String(content, StandardCharsets.UTF_8));
+		while (block.find()) {
+			String element = block.group(1).toLowerCase(Locale.ENGLISH);
+			String text = block.group(3);
+			String skipped = skipReason(block.group(2), text);
+			if (skipped != null) {
+				if (skipped.length() > 0) {
+					System.err.println("WARNING " + viewId + ": <" + element + "> not hashed, " + skipped);
+				}
+				continue;
+			}
+			StringBuilder directive = sources["script".equals(element) ? 0 : 1];
+			if (directive.length() > 0) {
+				directive.append(' ');
+			}
+			directive.append("'sha256-").append(Base64.getEncoder().encodeToString(sha256(text.getBytes(StandardCharsets.UTF_8))))
+					.append('\'');
+		}
+		String[] result = { sources[0].toString(), sources[1].toString() };
+		cache.setProperty(viewId, contentHash + "|" + result[0] + "|" + result[1]);
+		return result;
+	}
+
+	/**
+	 * @return null if the block is hashed, else the reason it is not, empty for blocks without content
+	 */
+	private static String skipReason(String attributes, String text) {
+		if (SRC_ATTRIBUTE.matcher(attributes).find() || text.trim().isEmpty()) {
+			return "";
+		}
+		if (text.contains("#{") || text.contains("${")) {
+			return "it contains EL";
+		}
+		if (text.contains("&") || text.contains("<![CDATA[")) {
+			return "it contains entity references or CDATA";
+		}
+		return null;
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		if (file.isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				properties.load(in);
+			}
+		}
+		return properties;
+	}
+
+	private static void store(Properties properties, File file, String comment) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, comment);
+		}
+	}
+}
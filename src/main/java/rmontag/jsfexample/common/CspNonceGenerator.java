@@ -0,0 +1,96 @@
+package rmontag.jsfexample.common;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates base64 encoded CSP nonces (18 random bytes, 24 characters without padding).
+ *
+ * To avoid serializing all request threads on one SecureRandom (the default NativePRNG even
+ * synchronizes all of its instances on one global lock), the generator is striped: each stripe
+ * owns an independently seeded SecureRandom and a buffer that is refilled in batches. A thread
+ * always uses the stripe selected by its id, so stripes are only shared between threads whose
+ * ids collide, and the critical section is just the copy of 18 buffered bytes.
+ */
+public final class CspNonceGenerator {
+
+	/**
+	 * Random bytes per nonce, a multiple of 3 so the base64 encoding needs no padding
+	 */
+	static final int NONCE_BYTES = 18;
+	static final int NONCE_LENGTH = NONCE_BYTES / 3 * 4;
+	private static final int NONCES_PER_BATCH = 64;
+	private static final String PRNG_ALGORITHM = "SHA1PRNG";
+
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private final Stripe[] stripes;
+	private final int mask;
+
+	/**
+	 * Creates a generator with four stripes per available processor.
+	 */
+	public CspNonceGenerator() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * @param stripeCount minimum number of stripes, rounded up to a power of two
+	 */
+	public CspNonceGenerator(int stripeCount) {
+		int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+		stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Stripe(newSecureRandom());
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * @return a fresh nonce, usable as 'nonce-&lt;value&gt;' in a policy
+	 */
+	public String nextNonce() {
+		char[] nonce = new char[NONCE_LENGTH];
+		stripes[(int) Thread.currentThread().getId() & mask].next(nonce);
+		return new String(nonce);
+	}
+
+	private static SecureRandom newSecureRandom() {
+		try {
+			return SecureRandom.getInstance(PRNG_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			return new SecureRandom();
+		}
+	}
+
+	private static final class Stripe {
+
+		private final SecureRandom random;
+		private final byte[] buffer = new byte[NONCE_BYTES * NONCES_PER_BATCH];
+		private int position = buffer.length;
+
+		private Stripe(SecureRandom random) {
+			this.random = random;
+		}
+
+		private synchronized void next(char[] nonce) {
+			if (position == buffer.length) {
+				random.nextBytes(buffer);
+				position = 0;
+			}
+			int in = position;
+			for (int out = 0; out < NONCE_LENGTH; out += 4, in += 3) {
+				int bits = (buffer[in] & 0xff) << 16 | (buffer[in + 1] & 0xff) << 8 | (buffer[in + 2] & 0xff);
+				nonce[out] = BASE64[bits >>> 18];
+				nonce[out + 1] = BASE64[(bits >>> 12) & 0x3f];
+				nonce[out + 2] = BASE64[(bits >>> 6) & 0x3f];
+				nonce[out + 3] = BASE64[bits & 0x3f];
+			}
+			// used bytes are not kept around
+			for (int i = position; i < in; i++) {
+				buffer[i] = 0;
+			}
+			position = in;
+		}
+	}
+}
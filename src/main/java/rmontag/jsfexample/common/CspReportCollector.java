@@ -0,0 +1,164 @@
+package rmontag.jsfexample.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects CSP violations from request threads and aggregates them in the background.
+ *
+ * Request threads only {@link #offer(CspViolation)} into a {@link BoundedRingQueue}; if the queue is full,
+ * the violation is dropped and counted, a request thread never blocks. A single daemon thread drains
+ * the queue, merges identical violations (directive, blocked-uri, document-uri) into counted aggregates
+ * and logs them as one batch per flush interval, or earlier once maxAggregates distinct violations
+ * have been collected.
+ */
+public class CspReportCollector {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CspReportCollector.class);
+
+	private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final BoundedRingQueue<CspViolation> queue;
+	private final long flushIntervalNanos;
+	private final int maxAggregates;
+
+	// counters, written by request threads
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	// counters, written by the consumer thread only
+	private final AtomicLong flushedViolations = new AtomicLong();
+	private final AtomicLong flushedAggregates = new AtomicLong();
+
+	// owned by the consumer thread
+	private final Map<CspViolation, long[]> aggregates = new HashMap<CspViolation, long[]>();
+
+	private final Thread consumer;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates and starts the collector.
+	 * @param queueCapacity capacity of the queue between request threads and the consumer
+	 * @param flushIntervalMillis interval the aggregates are flushed in
+	 * @param maxAggregates number of distinct violations that triggers an early flush
+	 */
+	public CspReportCollector(int queueCapacity, long flushIntervalMillis, int maxAggregates) {
+		this.queue = new BoundedRingQueue<CspViolation>(queueCapacity);
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		this.maxAggregates = maxAggregates;
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "csp-report-collector");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Queues a violation without blocking.
+	 * @param violation reported violation
+	 * @return false, if the queue was full and the violation has been dropped
+	 */
+	public boolean offer(CspViolation violation) {
+		received.incrementAndGet();
+		if (queue.offer(violation)) {
+			return true;
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	private void consume() {
+		long nextFlush = System.nanoTime() + flushIntervalNanos;
+		while (running) {
+			drain();
+			if (System.nanoTime() - nextFlush >= 0 || aggregates.size() >= maxAggregates) {
+				flush();
+				nextFlush = System.nanoTime() + flushIntervalNanos;
+			}
+			LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+		}
+		drain();
+		flush();
+	}
+
+	private void drain() {
+		CspViolation violation;
+		while ((violation = queue.poll()) != null) {
+			long[] count = aggregates.get(violation);
+			if (count == null) {
+				aggregates.put(violation, new long[] { 1 });
+				if (aggregates.size() >= maxAggregates) {
+					flush();
+				}
+			} else {
+				count[0]++;
+			}
+		}
+	}
+
+	private void flush() {
+		if (aggregates.isEmpty()) {
+			return;
+		}
+		long violations = 0;
+		StringBuilder batch = new StringBuilder();
+		for (Map.Entry<CspViolation, long[]> aggregate : aggregates.entrySet()) {
+			violations += aggregate.getValue()[0];
+			batch.append("\n  ").append(aggregate.getValue()[0]).append("x ").append(aggregate.getKey());
+		}
+		LOG.warn("CSP violations, " + aggregates.size() + " distinct of " + violations + " reported, "
+				+ dropped.get() + " dropped in total:" + batch);
+		flushedViolations.addAndGet(violations);
+		flushedAggregates.addAndGet(aggregates.size());
+		aggregates.clear();
+	}
+
+	/**
+	 * Stops the consumer thread after a final flush.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(consumer);
+		try {
+			consumer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of violations offered, including dropped ones
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * @return number of violations dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of violations flushed
+	 */
+	public long getFlushedViolationCount() {
+		return flushedViolations.get();
+	}
+
+	/**
+	 * @return number of aggregates flushed, each one covering one or more identical violations
+	 */
+	public long getFlushedAggregateCount() {
+		return flushedAggregates.get();
+	}
+}
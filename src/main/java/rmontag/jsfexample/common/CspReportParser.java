@@ -0,0 +1,221 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for CSP violation reports, without building a document tree.
+ *
+ * Understands both report formats:
+ * <ul>
+ * <li>report-uri: {"csp-report": {"violated-directive": ..., "effective-directive": ..., "blocked-uri": ..., "document-uri": ...}}</li>
+ * <li>report-to: [{"type": "csp-violation", "body": {"effectiveDirective": ..., "blockedURL": ..., "documentURL": ...}}, ...]</li>
+ * </ul>
+ * Every JSON object containing a directive field yields one {@link CspViolation}, all other values are skipped.
+ * Input longer than the given limit or nested deeper than {@link #MAX_DEPTH} is rejected with an IOException.
+ */
+public class CspReportParser {
+
+	static final int MAX_DEPTH = 16;
+
+	private final Reader reader;
+	private int remaining;
+	private int peeked = -2;
+
+	/**
+	 * @param reader report body
+	 * @param maxLength maximum number of characters read
+	 */
+	public CspReportParser(Reader reader, int maxLength) {
+		this.reader = reader;
+		this.remaining = maxLength;
+	}
+
+	/**
+	 * @return the violations of the report, in document order
+	 * @throws IOException on read errors, malformed or oversized input
+	 */
+	public List<CspViolation> parse() throws IOException {
+		List<CspViolation> violations = new ArrayList<CspViolation>(1);
+		parseValue(0, violations);
+		if (nextNonWhitespace() != -1) {
+			throw new IOException("Unexpected content after the report");
+		}
+		return violations;
+	}
+
+	/**
+	 * @return the value, if it is a string, otherwise null
+	 */
+	private String parseValue(int depth, List<CspViolation> violations) throws IOException {
+		if (depth > MAX_DEPTH) {
+			throw new IOException("Report nested too deep");
+		}
+		int c = nextNonWhitespace();
+		switch (c) {
+		case '{':
+			parseObject(depth, violations);
+			return null;
+		case '[':
+			parseArray(depth, violations);
+			return null;
+		case '"':
+			return parseString();
+		case -1:
+			throw new IOException("Unexpected end of report");
+		default:
+			skipLiteral();
+			return null;
+		}
+	}
+
+	private void parseObject(int depth, List<CspViolation> violations) throws IOException {
+		String violatedDirective = null;
+		String effectiveDirective = null;
+		String blockedUri = null;
+		String documentUri = null;
+
+		int c = nextNonWhitespace();
+		if (c == '}') {
+			return;
+		}
+		for (;;) {
+			if (c != '"') {
+				throw new IOException("Expected a field name in the report");
+			}
+			String name = parseString();
+			if (nextNonWhitespace() != ':') {
+				throw new IOException("Expected ':' in the report");
+			}
+			String value = parseValue(depth + 1, violations);
+			if (value != null) {
+				if ("effective-directive".equals(name) || "effectiveDirective".equals(name)) {
+					effectiveDirective = value;
+				} else if ("violated-directive".equals(name)) {
+					violatedDirective = value;
+				} else if ("blocked-uri".equals(name) || "blockedURL".equals(name)) {
+					blockedUri = value;
+				} else if ("document-uri".equals(name) || "documentURL".equals(name)) {
+					documentUri = value;
+				}
+			}
+			c = nextNonWhitespace();
+			if (c == '}') {
+				break;
+			}
+			if (c != ',') {
+				throw new IOException("Expected ',' or '}' in the report");
+			}
+			c = nextNonWhitespace();
+		}
+
+		String directive = effectiveDirective != null ? effectiveDirective : violatedDirective;
+		if (directive != null) {
+			violations.add(new CspViolation(directive, blockedUri, documentUri));
+		}
+	}
+
+	private void parseArray(int depth, List<CspViolation> violations) throws IOException {
+		int c = nextNonWhitespace();
+		if (c == ']') {
+			return;
+		}
+		peeked = c;
+		for (;;) {
+			parseValue(depth + 1, violations);
+			c = nextNonWhitespace();
+			if (c == ']') {
+				return;
+			}
+			if (c != ',') {
+				throw new IOException("Expected ',' or ']' in the report");
+			}
+		}
+	}
+
+	private String parseString() throws IOException {
+		StringBuilder value = new StringBuilder();
+		for (;;) {
+			int c = read();
+			switch (c) {
+			case -1:
+				throw new IOException("Unterminated string in the report");
+			case '"':
+				return value.toString();
+			case '\\':
+				int escaped = read();
+				switch (escaped) {
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					int codePoint = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0) {
+							throw new IOException("Invalid unicode escape in the report");
+						}
+						codePoint = codePoint << 4 | digit;
+					}
+					value.append((char) codePoint);
+					break;
+				case -1:
+					throw new IOException("Unterminated string in the report");
+				default:
+					value.append((char) escaped);
+				}
+				break;
+			default:
+				value.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Skips numbers, true, false and null.
+	 */
+	private void skipLiteral() throws IOException {
+		for (;;) {
+			int c = read();
+			if (c == ',' || c == '}' || c == ']' || c == -1 || Character.isWhitespace(c)) {
+				peeked = c;
+				return;
+			}
+		}
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c != -1 && Character.isWhitespace(c));
+		return c;
+	}
+
+	private int read() throws IOException {
+		if (peeked != -2) {
+			int c = peeked;
+			peeked = -2;
+			return c;
+		}
+		int c = reader.read();
+		if (c != -1 && --remaining < 0) {
+			throw new IOException("Report exceeds the maximum length");
+		}
+		return c;
+	}
+}
@@ -0,0 +1,97 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Endpoint for CSP violation reports (target of 'report-uri' and, named in the header 'Reporting-Endpoints' of the
+ * {@link ContentSecurityPolicyFilter}, of 'report-to').
+ *
+ * Reports are parsed with the streaming {@link CspReportParser}, handed to a {@link CspReportCollector}
+ * and acknowledged at once with 204; aggregation and logging happen in the background.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>queueCapacity - Capacity of the queue to the background thread. If full, reports are dropped and counted (Default: 8192).</li>
+ * <li>flushIntervalSeconds - Interval the aggregated violations are logged in (Default: 60).</li>
+ * <li>maxAggregates - Number of distinct violations that triggers an early flush (Default: 1000).</li>
+ * <li>maxReportLength - Maximum length of a report in characters, longer reports are rejected (Default: 65536).</li>
+ * </ul>
+ * The collector is published as servlet context attribute {@link #COLLECTOR_CONTEXT_ATTRIBUTE}.
+ */
+public class CspReportServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOG = LoggerFactory.getLogger(CspReportServlet.class);
+
+	public static final String COLLECTOR_CONTEXT_ATTRIBUTE = CspReportCollector.class.getName();
+
+	// init params
+	public static final String INIT_PARAM_QUEUE_CAPACITY = "queueCapacity";
+	public static final String INIT_PARAM_FLUSH_INTERVAL_SECONDS = "flushIntervalSeconds";
+	public static final String INIT_PARAM_MAX_AGGREGATES = "maxAggregates";
+	public static final String INIT_PARAM_MAX_REPORT_LENGTH = "maxReportLength";
+
+	// default values
+	private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+	private static final int DEFAULT_FLUSH_INTERVAL_SECONDS = 60;
+	private static final int DEFAULT_MAX_AGGREGATES = 1000;
+	private static final int DEFAULT_MAX_REPORT_LENGTH = 64 * 1024;
+
+	private transient CspReportCollector collector;
+	private int maxReportLength = DEFAULT_MAX_REPORT_LENGTH;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		int queueCapacity = InitParams.intParam(config, INIT_PARAM_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY, 1, Integer.MAX_VALUE);
+		int flushIntervalSeconds = InitParams.intParam(config, INIT_PARAM_FLUSH_INTERVAL_SECONDS, DEFAULT_FLUSH_INTERVAL_SECONDS, 1, Integer.MAX_VALUE);
+		int maxAggregates = InitParams.intParam(config, INIT_PARAM_MAX_AGGREGATES, DEFAULT_MAX_AGGREGATES, 1, Integer.MAX_VALUE);
+		maxReportLength = InitParams.intParam(config, INIT_PARAM_MAX_REPORT_LENGTH, DEFAULT_MAX_REPORT_LENGTH, 1, Integer.MAX_VALUE);
+
+		collector = new CspReportCollector(queueCapacity, flushIntervalSeconds * 1000L, maxAggregates);
+		getServletContext().setAttribute(COLLECTOR_CONTEXT_ATTRIBUTE, collector);
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (request.getContentLength() > maxReportLength) {
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return;
+		}
+		// both report formats are JSON, sent without charset
+		if (request.getCharacterEncoding() == null) {
+			request.setCharacterEncoding("UTF-8");
+		}
+		List<CspViolation> violations;
+		try {
+			violations = new CspReportParser(request.getReader(), maxReportLength).parse();
+		} catch (IOException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("rejected CSP report: " + e.getMessage());
+			}
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		for (CspViolation violation : violations) {
+			collector.offer(violation);
+		}
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+	}
+
+	@Override
+	public void destroy() {
+		getServletContext().removeAttribute(COLLECTOR_CONTEXT_ATTRIBUTE);
+		collector.shutdown();
+	}
+}
@@ -0,0 +1,95 @@
+package rmontag.jsfexample.common;
+
+/**
+ * A reported CSP violation, reduced to the fields identical violations are merged by.
+ *
+ * The fields come from unauthenticated report bodies and end up in the log, so they are sanitized
+ * here: control characters become Unicode escapes and backslashes are doubled, so a report cannot
+ * forge a log line, and each field is truncated to {@link #MAX_FIELD_LENGTH} characters.
+ */
+public final class CspViolation {
+
+	static final int MAX_FIELD_LENGTH = 256;
+
+	private final String directive;
+	private final String blockedUri;
+	private final String documentUri;
+
+	public CspViolation(String directive, String blockedUri, String documentUri) {
+		this.directive = sanitize(directive);
+		this.blockedUri = sanitize(blockedUri);
+		this.documentUri = sanitize(documentUri);
+	}
+
+	/**
+	 * @return the value truncated to {@link #MAX_FIELD_LENGTH} characters with control characters and
+	 *         backslashes escaped, "" for null
+	 */
+	static String sanitize(String value) {
+		if (value == null) {
+			return "";
+		}
+		int length = Math.min(value.length(), MAX_FIELD_LENGTH);
+		int i = 0;
+		while (i < length && !needsEscape(value.charAt(i))) {
+			i++;
+		}
+		if (i == value.length()) {
+			return value;
+		}
+		StringBuilder sanitized = new StringBuilder(length + 16).append(value, 0, i);
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c == '\\') {
+				sanitized.append("\\\\");
+			} else if (Character.isISOControl(c)) {
+				sanitized.append(String.format("\\u%04x", (int) c));
+			} else {
+				sanitized.append(c);
+			}
+		}
+		if (value.length() > length) {
+			sanitized.append("...");
+		}
+		return sanitized.toString();
+	}
+
+	private static boolean needsEscape(char c) {
+		return c == '\\' || Character.isISOControl(c);
+	}
+
+	public String getDirective() {
+		return directive;
+	}
+
+	public String getBlockedUri() {
+		return blockedUri;
+	}
+
+	public String getDocumentUri() {
+		return documentUri;
+	}
+
+	@Override
+	public int hashCode() {
+		return (directive.hashCode() * 31 + blockedUri.hashCode()) * 31 + documentUri.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CspViolation)) {
+			return false;
+		}
+		CspViolation other = (CspViolation) obj;
+		return directive.equals(other.directive) && blockedUri.equals(other.blockedUri)
+				&& documentUri.equals(other.documentUri);
+	}
+
+	@Override
+	public String toString() {
+		return "directive=" + directive + ", blocked-uri=" + blockedUri + ", document-uri=" + documentUri;
+	}
+}
@@ -0,0 +1,77 @@
+package rmontag.jsfexample.common;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.application.Resource;
+import javax.faces.application.ResourceHandler;
+import javax.faces.application.ResourceHandlerWrapper;
+import javax.faces.application.ResourceWrapper;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+
+/**
+ * Renders the URLs of JSF resources (jsf.js, stylesheets, images) as fingerprinted URLs of the
+ * {@link ResourceCacheServlet}, so they are served from the {@link ResourceCache} instead of the
+ * Faces Servlet. Registered in faces-config.xml.
+ *
+ * Resources are left to JSF in the Development stage (they may change while the application is
+ * running), if the servlet is not deployed, or if they do not fit into the cache.
+ */
+public class FingerprintResourceHandler extends ResourceHandlerWrapper {
+
+	private final ResourceHandler wrapped;
+
+	public FingerprintResourceHandler(ResourceHandler wrapped) {
+		this.wrapped = wrapped;
+	}
+
+	@Override
+	public ResourceHandler getWrapped() {
+		return wrapped;
+	}
+
+	@Override
+	public Resource createResource(String resourceName) {
+		return fingerprint(super.createResource(resourceName));
+	}
+
+	@Override
+	public Resource createResource(String resourceName, String libraryName) {
+		return fingerprint(super.createResource(resourceName, libraryName));
+	}
+
+	@Override
+	public Resource createResource(String resourceName, String libraryName, String contentType) {
+		return fingerprint(super.createResource(resourceName, libraryName, contentType));
+	}
+
+	private Resource fingerprint(final Resource resource) {
+		if (resource == null) {
+			return null;
+		}
+		FacesContext context = FacesContext.getCurrentInstance();
+		if (context.isProjectStage(ProjectStage.Development)) {
+			return resource;
+		}
+		ExternalContext externalContext = context.getExternalContext();
+		ResourceCache cache = (ResourceCache) externalContext.getApplicationMap().get(ResourceCache.CONTEXT_ATTRIBUTE);
+		if (cache == null) {
+			return resource;
+		}
+		ResourceCache.Entry entry = cache.get(resource);
+		if (entry == null) {
+			return resource;
+		}
+		final String requestPath = externalContext.getRequestContextPath() + cache.getRequestPath(entry);
+		return new ResourceWrapper() {
+			@Override
+			public Resource getWrapped() {
+				return resource;
+			}
+
+			@Override
+			public String getRequestPath() {
+				return requestPath;
+			}
+		};
+	}
+}
@@ -0,0 +1,199 @@
+package rmontag.jsfexample.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+
+/**
+ * Rendered markup of the &lt;x:cache&gt; fragments (see {@link FragmentCacheHandler}), bounded by the
+ * total number of characters, with per entry time to live and least recently used eviction.
+ *
+ * The cache is split into {@link #SEGMENTS} segments by key hash, each an access ordered
+ * LinkedHashMap with its own lock and an equal share of the size, so concurrent requests rendering
+ * different fragments rarely contend. Expired entries are removed when they are read or when they
+ * are the least recently used entry of their segment.
+ *
+ * The cache of the application is created on first use with the size of the context param
+ * {@link #CONTEXT_PARAM_SIZE} (characters, Default: 1048576).
+ */
+public final class FragmentCache {
+
+	public static final String CONTEXT_ATTRIBUTE = FragmentCache.class.getName();
+	public static final String CONTEXT_PARAM_SIZE = "rmontag.jsfexample.FRAGMENT_CACHE_SIZE";
+
+	static final int SEGMENTS = 16;
+
+	private static final long DEFAULT_SIZE = 1024 * 1024;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * @param maxSize maximum number of characters of all entries
+	 */
+	public FragmentCache(long maxSize) {
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(maxSize / SEGMENTS);
+		}
+	}
+
+	/**
+	 * @return the cache of the application, created on first call
+	 */
+	public static FragmentCache get(FacesContext context) {
+		ExternalContext externalContext = context.getExternalContext();
+		Map<String, Object> applicationMap = externalContext.getApplicationMap();
+		FragmentCache cache = (FragmentCache) applicationMap.get(CONTEXT_ATTRIBUTE);
+		if (cache == null) {
+			synchronized (FragmentCache.class) {
+				cache = (FragmentCache) applicationMap.get(CONTEXT_ATTRIBUTE);
+				if (cache == null) {
+					cache = new FragmentCache(size(externalContext.getInitParameter(CONTEXT_PARAM_SIZE)));
+					applicationMap.put(CONTEXT_ATTRIBUTE, cache);
+				}
+			}
+		}
+		return cache;
+	}
+
+	private static long size(String value) {
+		if (value == null) {
+			return DEFAULT_SIZE;
+		}
+		try {
+			long size = Long.parseLong(value.trim());
+			if (size >= 0) {
+				return size;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("An invalid value [" + value + "] was specified for " + CONTEXT_PARAM_SIZE);
+	}
+
+	/**
+	 * @return the markup, or null if the key is not cached or expired
+	 */
+	public String get(String key) {
+		Segment segment = segment(key);
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.entries.get(key);
+			if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+				segment.remove(key, entry);
+				expirations.increment();
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.markup;
+	}
+
+	/**
+	 * @param ttlMillis time to live in milliseconds
+	 */
+	public void put(String key, String markup, long ttlMillis) {
+		Segment segment = segment(key);
+		Entry entry = new Entry(markup, System.nanoTime() + ttlMillis * 1000000);
+		if (entry.markup.length() > segment.maxSize) {
+			return;
+		}
+		synchronized (segment) {
+			Entry previous = segment.entries.put(key, entry);
+			if (previous != null) {
+				segment.size -= previous.markup.length();
+			}
+			segment.size += markup.length();
+			long now = System.nanoTime();
+			Iterator<Entry> eldest = segment.entries.values().iterator();
+			while (segment.size > segment.maxSize) {
+				Entry evicted = eldest.next();
+				eldest.remove();
+				segment.size -= evicted.markup.length();
+				if (evicted.expiresAt - now <= 0) {
+					expirations.increment();
+				} else {
+					evictions.increment();
+				}
+			}
+		}
+	}
+
+	private Segment segment(String key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return entries removed to make room for others
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return entries removed after their time to live
+	 */
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	/**
+	 * @return characters of all entries
+	 */
+	public long getSize() {
+		long size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	private static final class Segment {
+
+		private final long maxSize;
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		private long size;
+
+		private Segment(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		private void remove(String key, Entry entry) {
+			entries.remove(key);
+			size -= entry.markup.length();
+		}
+	}
+
+	private static final class Entry {
+
+		private final String markup;
+		private final long expiresAt;
+
+		private Entry(String markup, long expiresAt) {
+			this.markup = markup;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
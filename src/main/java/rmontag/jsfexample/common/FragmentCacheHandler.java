@@ -0,0 +1,153 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Iterator;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIComponentBase;
+import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+import javax.faces.view.facelets.FaceletContext;
+import javax.faces.view.facelets.TagAttribute;
+import javax.faces.view.facelets.TagConfig;
+import javax.faces.view.facelets.TagHandler;
+
+/**
+ * Handler of the tag &lt;x:cache key="..." ttl="..."&gt; (namespace "urn:rmontag:jsfexample",
+ * WEB-INF/jsfexample.taglib.xml): renders its children once per key and replays the markup from the
+ * {@link FragmentCache} until it expires, without building the child components again.
+ *
+ * Attributes:
+ * <ul>
+ * <li>key - Required, the fragment is cached per tag and value of key. Must contain every value
+ * the children render per user or request, e.g. key="#{hello.name}".</li>
+ * <li>ttl - Time to live in seconds (Default: 60).</li>
+ * </ul>
+ *
+ * On a miss the children are built below a transient component rendering them into a buffer; on a
+ * hit only a transient component writing the cached markup is added. As the children do not exist
+ * on a hit, the fragment must be output only: no input components, and no per request values like
+ * #{cspNonce}. In the Development stage the children are always built and rendered.
+ */
+public class FragmentCacheHandler extends TagHandler {
+
+	private static final long DEFAULT_TTL_SECONDS = 60;
+
+	private final TagAttribute key;
+	private final TagAttribute ttl;
+	// keys of different tags must not collide
+	private final String keyPrefix;
+
+	public FragmentCacheHandler(TagConfig config) {
+		super(config);
+		key = getRequiredAttribute("key");
+		ttl = getAttribute("ttl");
+		keyPrefix = tag.getLocation().getPath() + ':' + tag.getLocation().getLine() + ':' + tag.getLocation().getColumn() + '#';
+	}
+
+	@Override
+	public void apply(FaceletContext ctx, UIComponent parent) throws IOException {
+		FacesContext context = ctx.getFacesContext();
+		if (context.isProjectStage(ProjectStage.Development)) {
+			nextHandler.apply(ctx, parent);
+			return;
+		}
+		String id = ctx.generateUniqueId(tagId);
+		// the tree may be built again for the same request
+		for (Iterator<UIComponent> children = parent.getChildren().iterator(); children.hasNext();) {
+			if (id.equals(children.next().getId())) {
+				children.remove();
+			}
+		}
+
+		FragmentCache cache = FragmentCache.get(context);
+		String cacheKey = keyPrefix + key.getValue(ctx);
+		String markup = cache.get(cacheKey);
+		UIComponent fragment;
+		if (markup != null) {
+			fragment = new CachedFragment(markup);
+		} else {
+			long ttlSeconds = ttl == null ? DEFAULT_TTL_SECONDS : ttl.getInt(ctx);
+			fragment = new CachingFragment(cache, cacheKey, ttlSeconds * 1000);
+		}
+		fragment.setId(id);
+		fragment.setTransient(true);
+		parent.getChildren().add(fragment);
+		if (markup == null) {
+			nextHandler.apply(ctx, fragment);
+		}
+	}
+
+	/**
+	 * Renders its children into a buffer, stores the markup and writes it.
+	 */
+	static final class CachingFragment extends UIComponentBase {
+
+		private final FragmentCache cache;
+		private final String cacheKey;
+		private final long ttlMillis;
+
+		CachingFragment(FragmentCache cache, String cacheKey, long ttlMillis) {
+			this.cache = cache;
+			this.cacheKey = cacheKey;
+			this.ttlMillis = ttlMillis;
+		}
+
+		@Override
+		public String getFamily() {
+			return FragmentCacheHandler.class.getName();
+		}
+
+		@Override
+		public boolean getRendersChildren() {
+			return true;
+		}
+
+		@Override
+		public void encodeChildren(FacesContext context) throws IOException {
+			ResponseWriter writer = context.getResponseWriter();
+			StringWriter buffer = new StringWriter(1024);
+			context.setResponseWriter(writer.cloneWithWriter(buffer));
+			try {
+				for (UIComponent child : getChildren()) {
+					child.encodeAll(context);
+				}
+				context.getResponseWriter().flush();
+			} finally {
+				context.setResponseWriter(writer);
+			}
+			String markup = buffer.toString();
+			cache.put(cacheKey, markup, ttlMillis);
+			writer.write(markup);
+		}
+	}
+
+	/**
+	 * Writes the cached markup.
+	 */
+	static final class CachedFragment extends UIComponentBase {
+
+		private final String markup;
+
+		CachedFragment(String markup) {
+			this.markup = markup;
+		}
+
+		@Override
+		public String getFamily() {
+			return FragmentCacheHandler.class.getName();
+		}
+
+		@Override
+		public boolean getRendersChildren() {
+			return true;
+		}
+
+		@Override
+		public void encodeBegin(FacesContext context) throws IOException {
+			context.getResponseWriter().write(markup);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Reusable gzip encoder (RFC 1952) of the {@link CompressionFilter}: a raw Deflater with the gzip
+ * header and trailer written around it, plus the buffers of one response. Instances are pooled
+ * and {@link #reset()} between responses, so neither the native zlib state nor the buffers are
+ * allocated per request.
+ */
+final class GzipDeflater {
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+	private static final int TRAILER_LENGTH = 8;
+
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final byte[] output;
+
+	/**
+	 * Holds the first bytes of a response until the compression is decided.
+	 */
+	final byte[] buffer;
+
+	GzipDeflater(int level, int bufferLength, int outputLength) {
+		deflater = new Deflater(level, true);
+		buffer = new byte[bufferLength];
+		output = new byte[outputLength];
+	}
+
+	void start(OutputStream out) throws IOException {
+		out.write(HEADER);
+	}
+
+	void write(byte[] bytes, int offset, int length, OutputStream out) throws IOException {
+		crc.update(bytes, offset, length);
+		deflater.setInput(bytes, offset, length);
+		while (!deflater.needsInput()) {
+			deflate(out, Deflater.NO_FLUSH);
+		}
+	}
+
+	/**
+	 * Writes everything written so far in a complete deflate block, so the client can render it.
+	 */
+	void flush(OutputStream out) throws IOException {
+		while (deflate(out, Deflater.SYNC_FLUSH) == output.length) {
+			// output buffer was full, there may be more
+		}
+	}
+
+	void finish(OutputStream out) throws IOException {
+		deflater.finish();
+		while (!deflater.finished()) {
+			deflate(out, Deflater.NO_FLUSH);
+		}
+		long value = crc.getValue();
+		long length = deflater.getBytesRead();
+		byte[] trailer = output;
+		for (int i = 0; i < 4; i++) {
+			trailer[i] = (byte) (value >>> (i * 8));
+			trailer[i + 4] = (byte) (length >>> (i * 8));
+		}
+		out.write(trailer, 0, TRAILER_LENGTH);
+	}
+
+	private int deflate(OutputStream out, int flush) throws IOException {
+		int length = deflater.deflate(output, 0, output.length, flush);
+		if (length > 0) {
+			out.write(output, 0, length);
+		}
+		return length;
+	}
+
+	/**
+	 * @return uncompressed bytes written since the last reset
+	 */
+	long getBytesRead() {
+		return deflater.getBytesRead();
+	}
+
+	/**
+	 * @return compressed bytes including header and trailer, once finished
+	 */
+	long getBytesWritten() {
+		return HEADER.length + deflater.getBytesWritten() + TRAILER_LENGTH;
+	}
+
+	void reset() {
+		deflater.reset();
+		crc.reset();
+	}
+
+	void end() {
+		deflater.end();
+	}
+}
@@ -4,6 +4,7 @@ import java.io.Serializable;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
+import javax.faces.context.FacesContext;
 import javax.inject.Named;
 
 @Named
@@ -27,6 +28,10 @@ public class Hello implements Serializable {
 
 	@PostConstruct
 	public void reset() {
-		System.out.println("@PostConstruct Hello");
+		FacesContext context = FacesContext.getCurrentInstance();
+		Object auditLog = context == null ? null : context.getExternalContext().getApplicationMap().get(AuditLog.CONTEXT_ATTRIBUTE);
+		if (auditLog instanceof AuditLog) {
+			((AuditLog) auditLog).event(AuditLog.TYPE_BEAN_CREATED, "Hello");
+		}
 	}
 }
\ No newline at end of file
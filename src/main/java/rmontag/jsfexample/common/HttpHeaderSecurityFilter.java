@@ -3,8 +3,14 @@ package rmontag.jsfexample.common;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -44,6 +50,10 @@ import org.slf4j.LoggerFactory;
 * <li>xssProtectionEnabled -
 * Should the header that enables the browser's cross-site scripting filter protection (X-XSS-Protection: 1; mode=block) be set on every response. If already present, the header will be replaced. If not specified, the default value of true will be used.
 * </li>
+* <li>configFile -
+* Optional path of a properties file with the init params above, overriding the values of web.xml. The file is watched
+* and reloaded on change; invalid files are logged and ignored, see {@link ConfigFileWatcher}.
+* </li>
 * </ul>
 * 
  * @author ex532
@@ -64,6 +74,15 @@ public class HttpHeaderSecurityFilter implements Filter {
     private static final String BLOCK_CONTENT_TYPE_SNIFFING_ENABLED_INIT_PARAM = "blockContentTypeSniffingEnabled";
     private static final String XSS_PROTECTION_ENABLED_INIT_PARAM = "xssProtectionEnabled";
 
+    /**
+     * All init params supported by this filter.
+     */
+    static final Set<String> INIT_PARAMS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            HSTS_ENABLED_INIT_PARAM, HSTS_MAX_AGE_SECONDS_INIT_PARAM, HSTS_INCLUDE_SUB_DOMAINS_INIT_PARAM,
+            ANTI_CLICK_JACKING_ENABLED_INIT_PARAM, ANTI_CLICK_JACKING_OPTION_INIT_PARAM, ANTI_CLICK_JACKING_URI_INIT_PARAM,
+            BLOCK_CONTENT_TYPE_SNIFFING_ENABLED_INIT_PARAM, XSS_PROTECTION_ENABLED_INIT_PARAM,
+            ConfigFileWatcher.INIT_PARAM_CONFIG_FILE)));
+
     // HSTS
     private static final String HSTS_HEADER_NAME = "Strict-Transport-Security";
     private boolean hstsEnabled = true;
@@ -88,8 +107,34 @@ public class HttpHeaderSecurityFilter implements Filter {
     private static final String XSS_PROTECTION_HEADER_VALUE = "1; mode=block";
     private boolean xssProtectionEnabled = true;
 
+    // Precompiled header table, replaced as a whole on reload of the config file
+    private final AtomicReference<SecurityHeaders> headers = new AtomicReference<SecurityHeaders>();
+    private ConfigFileWatcher configFileWatcher;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
+        long start = System.nanoTime();
+
+        configure(filterConfig);
+
+        configFileWatcher = ConfigFileWatcher.start(filterConfig, INIT_PARAMS, new ConfigFileWatcher.Reloadable() {
+            @Override
+            public void reload(FilterConfig config) throws ServletException {
+                HttpHeaderSecurityFilter reloaded = new HttpHeaderSecurityFilter();
+                reloaded.configure(config);
+                headers.set(reloaded.getHeaders());
+            }
+        });
+
+        StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+    }
+
+    /**
+     * Reads the init params and compiles the header table, without watching the configFile.
+     * @param filterConfig
+     * @throws ServletException on unknown init params
+     */
+    void configure(FilterConfig filterConfig) throws ServletException {
 
     	doInit(filterConfig);
 
@@ -108,6 +153,39 @@ public class HttpHeaderSecurityFilter implements Filter {
             cjValue.append(antiClickJackingUri);
         }
         antiClickJackingHeaderValue = cjValue.toString();
+
+        SecurityHeaders.Builder builder = SecurityHeaders.builder();
+        addHeaders(builder);
+        headers.set(builder.build());
+    }
+
+    /**
+     * @return the current header table
+     */
+    SecurityHeaders getHeaders() {
+        return headers.get();
+    }
+
+    private void addHeaders(SecurityHeaders.Builder builder) {
+        // HSTS
+        if (hstsEnabled) {
+            builder.addSecure(HSTS_HEADER_NAME, hstsHeaderValue);
+        }
+
+        // anti click-jacking
+        if (antiClickJackingEnabled) {
+            builder.add(ANTI_CLICK_JACKING_HEADER_NAME, antiClickJackingHeaderValue);
+        }
+
+        // Block content type sniffing
+        if (blockContentTypeSniffingEnabled) {
+            builder.add(BLOCK_CONTENT_TYPE_SNIFFING_HEADER_NAME, BLOCK_CONTENT_TYPE_SNIFFING_HEADER_VALUE);
+        }
+
+        // cross-site scripting filter protection
+        if (xssProtectionEnabled) {
+            builder.add(XSS_PROTECTION_HEADER_NAME, XSS_PROTECTION_HEADER_VALUE);
+        }
     }
 
 
@@ -115,33 +193,16 @@ public class HttpHeaderSecurityFilter implements Filter {
     public void doFilter(ServletRequest request, ServletResponse response,
             FilterChain chain) throws IOException, ServletException {
 
-        if (response instanceof HttpServletResponse) {
+        // an ASYNC dispatch continues the response of the request, the headers are already set
+        if (response instanceof HttpServletResponse && request.getDispatcherType() != DispatcherType.ASYNC) {
             HttpServletResponse httpResponse = (HttpServletResponse) response;
 
             if (response.isCommitted()) {
+                RequestMetrics.getInstance().committedResponseError();
                 throw new ServletException("Unable to add HTTP headers since response is already committed on entry to the HTTP header security Filter");
             }
 
-            // HSTS
-            if (hstsEnabled && request.isSecure()) {
-                httpResponse.setHeader(HSTS_HEADER_NAME, hstsHeaderValue);
-            }
-
-            // anti click-jacking
-            if (antiClickJackingEnabled) {
-                httpResponse.setHeader(ANTI_CLICK_JACKING_HEADER_NAME, antiClickJackingHeaderValue);
-            }
-
-            // Block content type sniffing
-            if (blockContentTypeSniffingEnabled) {
-                httpResponse.setHeader(BLOCK_CONTENT_TYPE_SNIFFING_HEADER_NAME,
-                        BLOCK_CONTENT_TYPE_SNIFFING_HEADER_VALUE);
-            }
-
-            // cross-site scripting filter protection
-            if (xssProtectionEnabled) {
-                httpResponse.setHeader(XSS_PROTECTION_HEADER_NAME, XSS_PROTECTION_HEADER_VALUE);
-            }
+            headers.get().apply(httpResponse, request.isSecure());
         }
 
         chain.doFilter(request, response);
@@ -333,6 +394,10 @@ public class HttpHeaderSecurityFilter implements Filter {
             	}
             	break;
             }
+            // configFile, handled by init
+            case ConfigFileWatcher.INIT_PARAM_CONFIG_FILE: {
+            	break;
+            }
             // unknown
             default: {
                 String msg = "The property " + paramName + " is not defined for filters of type " + this.getClass().getName();
@@ -345,6 +410,9 @@ public class HttpHeaderSecurityFilter implements Filter {
 
 	@Override
 	public void destroy() {
+		if (configFileWatcher != null) {
+			configFileWatcher.close();
+		}
 	}
 
 }
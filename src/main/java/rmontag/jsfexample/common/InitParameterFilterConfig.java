@@ -0,0 +1,53 @@
+package rmontag.jsfexample.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * View on a {@link FilterConfig} that only exposes the given init params.
+ * Used to pass the init params of a combined filter on to the filters it is composed of.
+ */
+class InitParameterFilterConfig implements FilterConfig {
+
+	private final FilterConfig delegate;
+	private final Set<String> paramNames;
+
+	InitParameterFilterConfig(FilterConfig delegate, Set<String> paramNames) {
+		this.delegate = delegate;
+		this.paramNames = paramNames;
+	}
+
+	@Override
+	public String getFilterName() {
+		return delegate.getFilterName();
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return delegate.getServletContext();
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return paramNames.contains(name) ? delegate.getInitParameter(name) : null;
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		List<String> names = new ArrayList<String>();
+		Enumeration<String> all = delegate.getInitParameterNames();
+		while (all.hasMoreElements()) {
+			String name = all.nextElement();
+			if (paramNames.contains(name)) {
+				names.add(name);
+			}
+		}
+		return Collections.enumeration(names);
+	}
+}
@@ -0,0 +1,81 @@
+package rmontag.jsfexample.common;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+/**
+ * Range checked numeric and regular expression init params of the filters and servlets and context
+ * params of the listeners. A missing param yields the default, an invalid value is rejected with
+ * "An invalid value [value] was specified for name": as ServletException for filters and servlets,
+ * as IllegalArgumentException for listeners, which cannot throw checked exceptions.
+ */
+final class InitParams {
+
+	private InitParams() {
+	}
+
+	static int intParam(FilterConfig filterConfig, String name, int defaultValue, int min, int max) throws ServletException {
+		return (int) longParam(filterConfig.getInitParameter(name), name, defaultValue, min, max);
+	}
+
+	static int intParam(ServletConfig servletConfig, String name, int defaultValue, int min, int max) throws ServletException {
+		return (int) longParam(servletConfig.getInitParameter(name), name, defaultValue, min, max);
+	}
+
+	static int intParam(ServletContext context, String name, int defaultValue, int min, int max) {
+		return (int) longParam(context, name, defaultValue, min, max);
+	}
+
+	static long longParam(ServletContext context, String name, long defaultValue, long min, long max) {
+		try {
+			return longParam(context.getInitParameter(name), name, defaultValue, min, max);
+		} catch (ServletException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the compiled regular expression, null if the param is missing or empty
+	 */
+	static Pattern patternParam(FilterConfig filterConfig, String name) throws ServletException {
+		return patternParam(filterConfig.getInitParameter(name), name);
+	}
+
+	/**
+	 * @return the compiled regular expression, null if the param is missing or empty
+	 */
+	static Pattern patternParam(ServletConfig servletConfig, String name) throws ServletException {
+		return patternParam(servletConfig.getInitParameter(name), name);
+	}
+
+	private static Pattern patternParam(String value, String name) throws ServletException {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return Pattern.compile(value.trim());
+		} catch (PatternSyntaxException e) {
+			throw new ServletException("An invalid value [" + value + "] was specified for " + name, e);
+		}
+	}
+
+	private static long longParam(String value, String name, long defaultValue, long min, long max) throws ServletException {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			long result = Long.parseLong(value.trim());
+			if (result >= min && result <= max) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new ServletException("An invalid value [" + value + "] was specified for " + name);
+	}
+}
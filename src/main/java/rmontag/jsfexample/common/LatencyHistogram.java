@@ -0,0 +1,100 @@
+package rmontag.jsfexample.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed memory (960 counters, 7.5 KB).
+ *
+ * Values are counted in log-linear buckets: exact below 16 ns, above that 16 sub-buckets per power
+ * of two, so percentiles are accurate to about 6%. Recording is a single atomic increment and
+ * never allocates; reading percentiles takes a snapshot of the counters.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param nanos measured duration, negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		counts.getAndIncrement(index(nanos < 0 ? 0 : nanos));
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return the highest value counted in the bucket
+	 */
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * @return a consistent copy of the counters for reading several values
+	 */
+	public Snapshot snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		return new Snapshot(snapshot, total);
+	}
+
+	/**
+	 * Counters of a histogram at one point in time.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+
+		private Snapshot(long[] counts, long count) {
+			this.counts = counts;
+			this.count = count;
+		}
+
+		/**
+		 * @return number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @param quantile between 0 and 1, e.g. 0.99
+		 * @return upper bound of the bucket containing the quantile in nanoseconds, 0 without values
+		 */
+		public long getValueAtQuantile(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return highestValue(i);
+				}
+			}
+			return highestValue(counts.length - 1);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Records the latency of the rest of the filter chain, including the security header filters and
+ * the servlet, in a {@link LatencyHistogram} per servlet URL pattern. Must be mapped first.
+ *
+ * The URL pattern of a request is resolved like the container does for servlet mappings (exact
+ * match, longest path prefix, extension) from servlet path and path info, without allocating.
+ * Requests matching none of the patterns are recorded as {@link #OTHER}.
+ *
+ * Async-supported: a request continued in async mode is recorded when it completes (see
+ * {@link AsyncCompletionListener}), so the latency includes the wait without a container thread.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>urlPatterns - Comma separated servlet URL patterns to record (Default: /faces/*,*.jsf,*.faces,*.xhtml).</li>
+ * </ul>
+ */
+public class MetricsFilter implements Filter {
+
+	public static final String INIT_PARAM_URL_PATTERNS = "urlPatterns";
+
+	/**
+	 * Histogram name for requests matching none of the URL patterns
+	 */
+	public static final String OTHER = "other";
+
+	private static final String DEFAULT_URL_PATTERNS = "/faces/*,*.jsf,*.faces,*.xhtml";
+
+	private String[] exactPaths;
+	private LatencyHistogram[] exactLatencies;
+	// sorted by length descending, so the first match is the longest
+	private String[] prefixPaths;
+	private LatencyHistogram[] prefixLatencies;
+	private String[] extensions;
+	private LatencyHistogram[] extensionLatencies;
+	private LatencyHistogram otherLatency;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		String urlPatterns = filterConfig.getInitParameter(INIT_PARAM_URL_PATTERNS);
+		if (urlPatterns == null) {
+			urlPatterns = DEFAULT_URL_PATTERNS;
+		}
+		RequestMetrics metrics = RequestMetrics.getInstance();
+		List<String> exact = new ArrayList<String>();
+		List<String> prefixes = new ArrayList<String>();
+		List<String> extensionList = new ArrayList<String>();
+		for (String urlPattern : urlPatterns.split(",")) {
+			urlPattern = urlPattern.trim();
+			if (urlPattern.startsWith("*.") && urlPattern.length() > 2) {
+				extensionList.add(urlPattern);
+			} else if (urlPattern.startsWith("/") && urlPattern.endsWith("/*")) {
+				prefixes.add(urlPattern);
+			} else if (urlPattern.startsWith("/")) {
+				exact.add(urlPattern);
+			} else {
+				throw new ServletException("An invalid value [" + urlPattern + "] was specified for " + INIT_PARAM_URL_PATTERNS);
+			}
+		}
+		Collections.sort(prefixes, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return b.length() - a.length();
+			}
+		});
+
+		exactPaths = exact.toArray(new String[exact.size()]);
+		exactLatencies = new LatencyHistogram[exactPaths.length];
+		for (int i = 0; i < exactPaths.length; i++) {
+			exactLatencies[i] = metrics.latency(exactPaths[i]);
+		}
+		prefixPaths = new String[prefixes.size()];
+		prefixLatencies = new LatencyHistogram[prefixPaths.length];
+		for (int i = 0; i < prefixPaths.length; i++) {
+			// "/faces/*" matches the servlet path "/faces", "/*" the servlet path ""
+			prefixPaths[i] = prefixes.get(i).substring(0, prefixes.get(i).length() - 2);
+			prefixLatencies[i] = metrics.latency(prefixes.get(i));
+		}
+		extensions = new String[extensionList.size()];
+		extensionLatencies = new LatencyHistogram[extensions.length];
+		for (int i = 0; i < extensions.length; i++) {
+			extensions[i] = extensionList.get(i).substring(1);
+			extensionLatencies[i] = metrics.latency(extensionList.get(i));
+		}
+		otherLatency = metrics.latency(OTHER);
+
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		final long start = System.nanoTime();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			final LatencyHistogram latency;
+			if (request instanceof HttpServletRequest) {
+				HttpServletRequest httpRequest = (HttpServletRequest) request;
+				latency = match(httpRequest.getServletPath(), httpRequest.getPathInfo());
+			} else {
+				latency = otherLatency;
+			}
+			if (request.isAsyncStarted()) {
+				new AsyncCompletionListener() {
+					@Override
+					void completed(boolean failed) {
+						latency.record(System.nanoTime() - start);
+					}
+				}.register(request);
+			} else {
+				latency.record(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * @return histogram of the URL pattern matching the path, resolved in the order of the servlet spec
+	 */
+	LatencyHistogram match(String servletPath, String pathInfo) {
+		if (servletPath == null) {
+			return otherLatency;
+		}
+		if (pathInfo == null) {
+			for (int i = 0; i < exactPaths.length; i++) {
+				if (exactPaths[i].equals(servletPath)) {
+					return exactLatencies[i];
+				}
+			}
+		}
+		for (int i = 0; i < prefixPaths.length; i++) {
+			if (prefixPaths[i].equals(servletPath)) {
+				return prefixLatencies[i];
+			}
+		}
+		if (pathInfo == null) {
+			for (int i = 0; i < extensions.length; i++) {
+				if (servletPath.endsWith(extensions[i])) {
+					return extensionLatencies[i];
+				}
+			}
+		}
+		return otherLatency;
+	}
+
+	@Override
+	public void destroy() {
+	}
+}
@@ -0,0 +1,267 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the {@link RequestMetrics} as plain text (one "name{labels} value" line per value, the
+ * Prometheus text format) and registers them as MXBean
+ * "rmontag.jsfexample:type=RequestMetrics,context=&lt;context path&gt;".
+ *
+ * Latencies are in seconds. If a {@link CspReportServlet} is deployed, its counters are included, as
+ * are the per view counters of the {@link CompressionFilter} and the counters of the {@link FragmentCache}
+ * once a fragment was rendered, the counters of the {@link AdmissionControlFilter} and the
+ * {@link AuditLog}, the {@link SessionFootprint} and the durations of the {@link StartupTiming} phases.
+ *
+ * Only clients whose address (getRemoteAddr()) matches allowedAddresses get the metrics, all others 403.
+ * Behind a reverse proxy on the same host, configure Tomcat's RemoteIpValve (or the equivalent of the
+ * container), otherwise every client has the proxy's loopback address.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>allowedAddresses - Regular expression matching the client addresses allowed, e.g. those of the monitoring hosts (Default: loopback addresses).</li>
+ * </ul>
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOG = LoggerFactory.getLogger(MetricsServlet.class);
+
+	public static final String INIT_PARAM_ALLOWED_ADDRESSES = "allowedAddresses";
+
+	private static final Pattern DEFAULT_ALLOWED_ADDRESSES = Pattern.compile("127\\.\\d+\\.\\d+\\.\\d+|::1|0:0:0:0:0:0:0:1");
+
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	private transient Pattern allowedAddresses;
+
+	private transient ObjectName objectName;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		Pattern allowed = InitParams.patternParam(config, INIT_PARAM_ALLOWED_ADDRESSES);
+		allowedAddresses = allowed != null ? allowed : DEFAULT_ALLOWED_ADDRESSES;
+		String contextPath = getServletContext().getContextPath();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			objectName = new ObjectName("rmontag.jsfexample:type=RequestMetrics,context="
+					+ ObjectName.quote(contextPath.isEmpty() ? "/" : contextPath));
+			server.registerMBean(RequestMetrics.getInstance(), objectName);
+		} catch (JMException e) {
+			LOG.warn("Unable to register the request metrics MBean", e);
+			objectName = null;
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String client = request.getRemoteAddr();
+		if (client == null || !allowedAddresses.matcher(client).matches()) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		RequestMetrics metrics = RequestMetrics.getInstance();
+		response.setContentType("text/plain; version=0.0.4");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		PrintWriter out = response.getWriter();
+
+		out.println("# TYPE request_latency_seconds summary");
+		for (Map.Entry<String, LatencyHistogram.Snapshot> latency : metrics.getLatencySnapshots().entrySet()) {
+			String pattern = escape(latency.getKey());
+			LatencyHistogram.Snapshot snapshot = latency.getValue();
+			for (double quantile : QUANTILES) {
+				out.println("request_latency_seconds{pattern=\"" + pattern + "\",quantile=\"" + quantile + "\"} "
+						+ snapshot.getValueAtQuantile(quantile) / 1e9);
+			}
+			out.println("request_latency_seconds_count{pattern=\"" + pattern + "\"} " + snapshot.getCount());
+		}
+
+		out.println("# TYPE security_headers_emitted_total counter");
+		for (Map.Entry<String, Long> headerCount : metrics.getHeaderCounts().entrySet()) {
+			out.println("security_headers_emitted_total{header=\"" + escape(headerCount.getKey()) + "\"} " + headerCount.getValue());
+		}
+
+		out.println("# TYPE security_headers_committed_errors_total counter");
+		out.println("security_headers_committed_errors_total " + metrics.getCommittedResponseErrors());
+
+		Map<String, CompressionCounters> compressions = metrics.getCompressionCounters();
+		out.println("# TYPE response_compression_responses_total counter");
+		for (Map.Entry<String, CompressionCounters> compression : compressions.entrySet()) {
+			String view = escape(compression.getKey());
+			out.println("response_compression_responses_total{view=\"" + view + "\",compressed=\"true\"} " + compression.getValue().getCompressed());
+			out.println("response_compression_responses_total{view=\"" + view + "\",compressed=\"false\"} " + compression.getValue().getUncompressed());
+		}
+		out.println("# TYPE response_compression_bytes_total counter");
+		for (Map.Entry<String, CompressionCounters> compression : compressions.entrySet()) {
+			String view = escape(compression.getKey());
+			out.println("response_compression_bytes_total{view=\"" + view + "\",direction=\"in\"} " + compression.getValue().getBytesIn());
+			out.println("response_compression_bytes_total{view=\"" + view + "\",direction=\"out\"} " + compression.getValue().getBytesOut());
+		}
+		out.println("# TYPE response_compression_cpu_seconds_total counter");
+		for (Map.Entry<String, CompressionCounters> compression : compressions.entrySet()) {
+			out.println("response_compression_cpu_seconds_total{view=\"" + escape(compression.getKey()) + "\"} "
+					+ compression.getValue().getCpuNanos() / 1e9);
+		}
+
+		Object collector = getServletContext().getAttribute(CspReportServlet.COLLECTOR_CONTEXT_ATTRIBUTE);
+		if (collector instanceof CspReportCollector) {
+			CspReportCollector cspReports = (CspReportCollector) collector;
+			out.println("# TYPE csp_reports_received_total counter");
+			out.println("csp_reports_received_total " + cspReports.getReceivedCount());
+			out.println("# TYPE csp_reports_dropped_total counter");
+			out.println("csp_reports_dropped_total " + cspReports.getDroppedCount());
+		}
+
+		Object fragmentCache = getServletContext().getAttribute(FragmentCache.CONTEXT_ATTRIBUTE);
+		if (fragmentCache instanceof FragmentCache) {
+			FragmentCache fragments = (FragmentCache) fragmentCache;
+			out.println("# TYPE fragment_cache_hits_total counter");
+			out.println("fragment_cache_hits_total " + fragments.getHits());
+			out.println("# TYPE fragment_cache_misses_total counter");
+			out.println("fragment_cache_misses_total " + fragments.getMisses());
+			out.println("# TYPE fragment_cache_evictions_total counter");
+			out.println("fragment_cache_evictions_total{cause=\"size\"} " + fragments.getEvictions());
+			out.println("fragment_cache_evictions_total{cause=\"ttl\"} " + fragments.getExpirations());
+			out.println("# TYPE fragment_cache_size_chars gauge");
+			out.println("fragment_cache_size_chars " + fragments.getSize());
+		}
+
+		AdmissionCounters admission = metrics.admission();
+		out.println("# TYPE admission_requests_total counter");
+		out.println("admission_requests_total{decision=\"admitted\"} " + admission.getAdmitted());
+		out.println("admission_requests_total{decision=\"rejected\",reason=\"rate\"} " + admission.getRejectedRate());
+		out.println("admission_requests_total{decision=\"rejected\",reason=\"concurrency\"} " + admission.getRejectedConcurrency());
+
+		Object auditLog = getServletContext().getAttribute(AuditLog.CONTEXT_ATTRIBUTE);
+		if (auditLog instanceof AuditLog) {
+			AuditLog audit = (AuditLog) auditLog;
+			out.println("# TYPE audit_records_total counter");
+			out.println("audit_records_total{result=\"written\"} " + audit.getWrittenCount());
+			out.println("audit_records_total{result=\"dropped\"} " + audit.getDroppedCount());
+		}
+
+		Object sessionFootprint = getServletContext().getAttribute(SessionFootprint.CONTEXT_ATTRIBUTE);
+		if (sessionFootprint instanceof SessionFootprint) {
+			SessionFootprint sessions = (SessionFootprint) sessionFootprint;
+			out.println("# TYPE sessions_live gauge");
+			out.println("sessions_live " + sessions.getSessionCount());
+			out.println("# TYPE sessions_estimated_bytes gauge");
+			for (Map.Entry<String, Long> type : sessions.getBytesByType().entrySet()) {
+				out.println("sessions_estimated_bytes{type=\"" + escape(type.getKey()) + "\"} " + type.getValue());
+			}
+			out.println("# TYPE sessions_heap_pressure_ratio gauge");
+			out.println("sessions_heap_pressure_ratio " + sessions.getHeapPressure());
+			out.println("# TYPE sessions_eviction_decisions_total counter");
+			for (SessionFootprint.Decision decision : SessionFootprint.Decision.values()) {
+				out.println("sessions_eviction_decisions_total{decision=\"" + decision.label() + "\"} " + sessions.getDecisionCount(decision));
+			}
+			out.println("# TYPE sessions_evicted_total counter");
+			out.println("sessions_evicted_total " + sessions.getEvictedCount());
+			out.println("# TYPE sessions_evicted_bytes_total counter");
+			out.println("sessions_evicted_bytes_total " + sessions.getEvictedBytes());
+		}
+
+		Object sessionReplicator = getServletContext().getAttribute(SessionReplicator.CONTEXT_ATTRIBUTE);
+		if (sessionReplicator instanceof SessionReplicator) {
+			SessionReplicator replication = (SessionReplicator) sessionReplicator;
+			out.println("# TYPE session_replication_requests_total counter");
+			out.println("session_replication_requests_total " + replication.getRequestCount());
+			out.println("# TYPE session_replication_delta_bytes_total counter");
+			out.println("session_replication_delta_bytes_total " + replication.getDeltaBytes());
+			long sampled = replication.getSampledRequestCount();
+			out.println("# TYPE session_replication_bytes_per_request gauge");
+			out.println("session_replication_bytes_per_request{encoding=\"delta\"} "
+					+ (sampled == 0 ? 0 : (double) replication.getSampledDeltaBytes() / sampled));
+			out.println("session_replication_bytes_per_request{encoding=\"full\"} "
+					+ (sampled == 0 ? 0 : (double) replication.getSampledFullBytes() / sampled));
+			out.println("# TYPE session_replication_dropped_total counter");
+			out.println("session_replication_dropped_total{reason=\"queue\"} " + replication.getDroppedCount());
+			out.println("session_replication_dropped_total{reason=\"not_replicable\"} " + replication.getNotReplicableCount());
+			out.println("session_replication_dropped_total{reason=\"too_large\"} " + replication.getTooLargeCount());
+			out.println("session_replication_dropped_total{reason=\"replica_limit\"} " + replication.getReplicaLimitCount());
+			out.println("# TYPE session_replication_frames_total counter");
+			out.println("session_replication_frames_total{direction=\"sent\"} " + replication.getFramesSent());
+			out.println("session_replication_frames_total{direction=\"received\"} " + replication.getFramesReceived());
+			out.println("session_replication_frames_total{direction=\"rejected\"} " + replication.getRejectedFrames());
+			out.println("# TYPE session_replication_rejected_connections_total counter");
+			out.println("session_replication_rejected_connections_total " + replication.getRejectedConnections());
+			out.println("# TYPE session_replication_frame_bytes_total counter");
+			out.println("session_replication_frame_bytes_total{direction=\"sent\"} " + replication.getBytesSent());
+			out.println("session_replication_frame_bytes_total{direction=\"received\"} " + replication.getBytesReceived());
+			out.println("# TYPE session_replication_replicas gauge");
+			out.println("session_replication_replicas " + replication.getReplicaCount());
+		}
+
+		Object preloadLinks = getServletContext().getAttribute(PreloadLinks.CONTEXT_ATTRIBUTE);
+		if (preloadLinks instanceof PreloadLinks) {
+			PreloadLinks links = (PreloadLinks) preloadLinks;
+			out.println("# TYPE preload_link_views gauge");
+			out.println("preload_link_views " + links.getViewCount());
+			out.println("# TYPE preload_link_headers_total counter");
+			out.println("preload_link_headers_total " + links.getSentCount());
+		}
+
+		Object viewEntityTags = getServletContext().getAttribute(ViewEntityTags.CONTEXT_ATTRIBUTE);
+		if (viewEntityTags instanceof ViewEntityTags) {
+			ViewEntityTags tags = (ViewEntityTags) viewEntityTags;
+			out.println("# TYPE view_etag_responses_total counter");
+			out.println("view_etag_responses_total{result=\"hashed\"} " + (tags.getHashedCount() - tags.getNotModifiedCount()));
+			out.println("view_etag_responses_total{result=\"not_modified\"} " + tags.getNotModifiedCount());
+			out.println("view_etag_responses_total{result=\"not_modified_before_render\"} " + tags.getNotModifiedBeforeRenderCount());
+			out.println("view_etag_responses_total{result=\"unhashed\"} " + tags.getUnhashedCount());
+			out.println("# TYPE view_etag_cached_paths gauge");
+			out.println("view_etag_cached_paths " + tags.getCachedPathCount());
+		}
+
+		Object backendServlet = getServletContext().getAttribute(BackendServlet.CONTEXT_ATTRIBUTE);
+		if (backendServlet instanceof BackendServlet) {
+			BackendServlet backend = (BackendServlet) backendServlet;
+			out.println("# TYPE backend_requests_total counter");
+			out.println("backend_requests_total{mode=\"blocking\"} " + backend.getRequestCount(false));
+			out.println("backend_requests_total{mode=\"async\"} " + backend.getRequestCount(true));
+			out.println("# TYPE backend_requests_waiting gauge");
+			out.println("backend_requests_waiting{mode=\"blocking\"} " + backend.getWaitingCount(false));
+			out.println("backend_requests_waiting{mode=\"async\"} " + backend.getWaitingCount(true));
+			out.println("# TYPE backend_timeouts_total counter");
+			out.println("backend_timeouts_total " + backend.getTimeoutCount());
+		}
+
+		out.println("# TYPE startup_phase_seconds gauge");
+		for (Map.Entry<String, Long> phase : StartupTiming.getInstance().getPhaseNanos().entrySet()) {
+			out.println("startup_phase_seconds{phase=\"" + escape(phase.getKey()) + "\"} " + phase.getValue() / 1e9);
+		}
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	@Override
+	public void destroy() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOG.warn("Unable to unregister the request metrics MBean", e);
+			}
+		}
+	}
+}
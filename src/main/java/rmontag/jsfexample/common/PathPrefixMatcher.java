@@ -0,0 +1,181 @@
+package rmontag.jsfexample.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix trie mapping context relative path prefixes to values, compiled once at startup.
+ *
+ * Prefixes match whole path segments: a prefix matches a path starting with it, if the prefix ends
+ * with '/' or the path ends after it or continues with '/', so /faces matches /faces and
+ * /faces/hello.xhtml, but not /facesX or /faces-admin.
+ *
+ * The longest matching prefix wins, if no prefix matches the default value is returned. The trie
+ * is stored in flat arrays; a lookup walks the path once (binary search over the sorted child
+ * characters of each node) and does not allocate. The path is passed as servlet path and path
+ * info, exactly as returned by the request, so it never has to be concatenated.
+ *
+ * @param <T> type of the mapped values
+ */
+public final class PathPrefixMatcher<T> {
+
+	// children of node n: childChars/childNodes[childStart[n] .. childStart[n + 1])
+	private final int[] childStart;
+	private final char[] childChars;
+	private final int[] childNodes;
+	// value of each node, null if no prefix ends at the node
+	private final Object[] values;
+	private final T defaultValue;
+
+	private PathPrefixMatcher(Node root, int nodeCount, T defaultValue) {
+		this.defaultValue = defaultValue;
+		childStart = new int[nodeCount + 1];
+		childChars = new char[nodeCount - 1];
+		childNodes = new int[nodeCount - 1];
+		values = new Object[nodeCount];
+
+		// breadth first, so node numbers are assigned in the same order as the child slots
+		List<Node> queue = new ArrayList<Node>(nodeCount);
+		queue.add(root);
+		int slot = 0;
+		for (int n = 0; n < queue.size(); n++) {
+			Node node = queue.get(n);
+			values[n] = node.value;
+			childStart[n] = slot;
+			for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+				childChars[slot] = child.getKey().charValue();
+				childNodes[slot] = queue.size();
+				queue.add(child.getValue());
+				slot++;
+			}
+		}
+		childStart[nodeCount] = slot;
+	}
+
+	/**
+	 * @param servletPath result of request.getServletPath(), may be null
+	 * @param pathInfo result of request.getPathInfo(), may be null
+	 * @return value of the longest prefix matching servletPath + pathInfo, or the default value
+	 */
+	@SuppressWarnings("unchecked")
+	public T match(String servletPath, String pathInfo) {
+		Object best = defaultValue;
+		int node = 0;
+		for (int part = 0; part < 2 && node >= 0; part++) {
+			String path = part == 0 ? servletPath : pathInfo;
+			if (path == null) {
+				continue;
+			}
+			for (int i = 0, length = path.length(); i < length; i++) {
+				char c = path.charAt(i);
+				node = child(node, c);
+				if (node < 0) {
+					break;
+				}
+				if (values[node] != null && (c == '/' || segmentEnds(path, i + 1, part == 0 ? pathInfo : null))) {
+					best = values[node];
+				}
+			}
+		}
+		return (T) best;
+	}
+
+	/**
+	 * @return true if the path ends at index or continues with '/', in path or else in the next part
+	 */
+	private static boolean segmentEnds(String path, int index, String next) {
+		if (index < path.length()) {
+			return path.charAt(index) == '/';
+		}
+		return next == null || next.isEmpty() || next.charAt(0) == '/';
+	}
+
+	/**
+	 * @param prefix path prefix as passed to {@link Builder#add(String, Object)}
+	 * @param path context relative path
+	 * @return true if the prefix matches the path by the rules of this matcher
+	 */
+	public static boolean matches(String prefix, String path) {
+		return path.startsWith(prefix) && (prefix.endsWith("/") || segmentEnds(path, prefix.length(), null));
+	}
+
+	/**
+	 * @return the value returned if no prefix matches
+	 */
+	public T getDefaultValue() {
+		return defaultValue;
+	}
+
+	private int child(int node, char c) {
+		int low = childStart[node];
+		int high = childStart[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midChar = childChars[mid];
+			if (midChar < c) {
+				low = mid + 1;
+			} else if (midChar > c) {
+				high = mid - 1;
+			} else {
+				return childNodes[mid];
+			}
+		}
+		return -1;
+	}
+
+	public static <T> Builder<T> builder() {
+		return new Builder<T>();
+	}
+
+	/**
+	 * Collects the prefixes; adding a prefix twice replaces the earlier value.
+	 */
+	public static final class Builder<T> {
+
+		private final Node root = new Node();
+		private int nodeCount = 1;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param prefix context relative path prefix, must start with '/'
+		 * @param value value for paths starting with the prefix
+		 */
+		public Builder<T> add(String prefix, T value) {
+			if (prefix == null || !prefix.startsWith("/")) {
+				throw new IllegalArgumentException("An invalid path prefix [" + prefix + "] was specified, it must start with '/'");
+			}
+			if (value == null) {
+				throw new IllegalArgumentException("No value was specified for the path prefix [" + prefix + "]");
+			}
+			Node node = root;
+			for (int i = 0; i < prefix.length(); i++) {
+				Character c = Character.valueOf(prefix.charAt(i));
+				Node child = node.children.get(c);
+				if (child == null) {
+					child = new Node();
+					node.children.put(c, child);
+					nodeCount++;
+				}
+				node = child;
+			}
+			node.value = value;
+			return this;
+		}
+
+		/**
+		 * @param defaultValue value for paths without matching prefix
+		 */
+		public PathPrefixMatcher<T> build(T defaultValue) {
+			return new PathPrefixMatcher<T>(root, nodeCount, defaultValue);
+		}
+	}
+
+	private static final class Node {
+		private final TreeMap<Character, Node> children = new TreeMap<Character, Node>();
+		private Object value;
+	}
+}
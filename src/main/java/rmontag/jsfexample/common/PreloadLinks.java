@@ -0,0 +1,212 @@
+package rmontag.jsfexample.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.application.Resource;
+import javax.faces.application.ResourceHandler;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 'Link: &lt;...&gt;; rel=preload' headers for the scripts and stylesheets a view pulls into
+ * &lt;h:head&gt; (e.g. jsf.js), so the browser fetches them without waiting for the HTML to be parsed.
+ *
+ * The header value is recorded once per view id and Faces Servlet mapping (the resource URLs depend
+ * on it), when the view is rendered the first time (see {@link PreloadLinksListener}), together with
+ * the request paths of GET requests rendering the view.
+ * From then on the {@link SecurityHeaderFilter} sends it with the security headers at the start of the
+ * filter chain: two lookups in concurrent maps, nothing is rendered or resolved per request. Responses
+ * the filter could not map to a view (the first request of a path, postbacks rendering another view)
+ * get the header from the listener before the view is rendered.
+ *
+ * In the Development stage the links are recorded on every render and the entry of the view is
+ * replaced when they differ, e.g. after the view or one of its templates has been changed.
+ *
+ * The registry of the application is created on first use, unless the context param
+ * {@link #CONTEXT_PARAM_ENABLED} is false (Default: true).
+ */
+public final class PreloadLinks {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PreloadLinks.class);
+
+	public static final String CONTEXT_ATTRIBUTE = PreloadLinks.class.getName();
+	public static final String CONTEXT_PARAM_ENABLED = "rmontag.jsfexample.PRELOAD_LINKS";
+
+	static final String LINK_HEADER = "Link";
+
+	/**
+	 * Maximum number of request paths mapped to views
+	 */
+	static final int MAX_PATHS = 4096;
+
+	private static final String HEAD = "head";
+	private static final String SCRIPT_RENDERER = "javax.faces.resource.Script";
+	private static final String STYLESHEET_RENDERER = "javax.faces.resource.Stylesheet";
+
+	// key of the view, see key() -> header value, empty if the view has no resources to preload
+	private final ConcurrentMap<String, String> views = new ConcurrentHashMap<String, String>();
+	// request path (servlet path + path info) -> key of the view
+	private final ConcurrentMap<String, String> paths = new ConcurrentHashMap<String, String>();
+	private final LongAdder sent = new LongAdder();
+
+	/**
+	 * @return the registry of the application, created on first call, null if disabled
+	 */
+	public static PreloadLinks get(ServletContext servletContext) {
+		if (servletContext == null || "false".equalsIgnoreCase(servletContext.getInitParameter(CONTEXT_PARAM_ENABLED))) {
+			return null;
+		}
+		PreloadLinks links = (PreloadLinks) servletContext.getAttribute(CONTEXT_ATTRIBUTE);
+		if (links == null) {
+			synchronized (PreloadLinks.class) {
+				links = (PreloadLinks) servletContext.getAttribute(CONTEXT_ATTRIBUTE);
+				if (links == null) {
+					links = new PreloadLinks();
+					servletContext.setAttribute(CONTEXT_ATTRIBUTE, links);
+				}
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Adds the links of the view recorded for the request path, for GET and HEAD requests only.
+	 * @param request current request
+	 * @param response response to add the header to
+	 */
+	public void apply(HttpServletRequest request, HttpServletResponse response) {
+		if (!isGet(request)) {
+			return;
+		}
+		String key = paths.get(path(request));
+		if (key == null) {
+			return;
+		}
+		String links = views.get(key);
+		if (links != null && !links.isEmpty()) {
+			response.addHeader(LINK_HEADER, links);
+			sent.increment();
+		}
+	}
+
+	/**
+	 * Records the links of the view about to be rendered and sets the header, unless the
+	 * {@link SecurityHeaderFilter} has already set the current one.
+	 */
+	void render(FacesContext context) {
+		ExternalContext externalContext = context.getExternalContext();
+		HttpServletRequest request = (HttpServletRequest) externalContext.getRequest();
+		UIViewRoot viewRoot = context.getViewRoot();
+		String key = key(viewRoot.getViewId(), request);
+		String links = views.get(key);
+		boolean changed = false;
+		if (links == null || context.isProjectStage(ProjectStage.Development)) {
+			String rendered = links(context, viewRoot);
+			if (!rendered.equals(links)) {
+				views.put(key, rendered);
+				changed = true;
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("preload links of " + key + ": " + (rendered.isEmpty() ? "none" : rendered));
+				}
+			}
+			links = rendered;
+		}
+
+		if (isGet(request) && !context.isPostback()) {
+			String path = path(request);
+			if (!key.equals(paths.get(path)) && paths.size() < MAX_PATHS) {
+				paths.put(path, key);
+			}
+		}
+
+		HttpServletResponse response = (HttpServletResponse) externalContext.getResponse();
+		if (!links.isEmpty() && !response.isCommitted() && (changed || !response.containsHeader(LINK_HEADER))) {
+			response.setHeader(LINK_HEADER, links);
+			sent.increment();
+		}
+	}
+
+	/**
+	 * @return the header value for the scripts and stylesheets in the head of the view, e.g.
+	 * "&lt;/JavaServerFaces/javax.faces.resource/jsf.js.xhtml?ln=javax.faces&gt;; rel=preload; as=script"
+	 */
+	private static String links(FacesContext context, UIViewRoot viewRoot) {
+		ResourceHandler resourceHandler = context.getApplication().getResourceHandler();
+		StringBuilder links = new StringBuilder();
+		for (UIComponent component : viewRoot.getComponentResources(context, HEAD)) {
+			String as;
+			if (SCRIPT_RENDERER.equals(component.getRendererType())) {
+				as = "script";
+			} else if (STYLESHEET_RENDERER.equals(component.getRendererType())) {
+				as = "style";
+			} else {
+				continue;
+			}
+			Map<String, Object> attributes = component.getAttributes();
+			Object name = attributes.get("name");
+			Object library = attributes.get("library");
+			if (name == null) {
+				continue;
+			}
+			Resource resource = library == null ? resourceHandler.createResource(name.toString())
+					: resourceHandler.createResource(name.toString(), library.toString());
+			if (resource == null) {
+				continue;
+			}
+			if (links.length() > 0) {
+				links.append(", ");
+			}
+			links.append('<').append(resource.getRequestPath()).append(">; rel=preload; as=").append(as);
+		}
+		return links.toString();
+	}
+
+	/**
+	 * @return the view id qualified by the Faces Servlet mapping of the request, e.g. "/faces/* /hello.xhtml"
+	 * or "*.jsf /hello.xhtml"
+	 */
+	private static String key(String viewId, HttpServletRequest request) {
+		String servletPath = request.getServletPath();
+		if (request.getPathInfo() != null) {
+			return servletPath + "/* " + viewId;
+		}
+		int extension = servletPath.lastIndexOf('.');
+		return (extension < 0 ? "" : "*" + servletPath.substring(extension)) + " " + viewId;
+	}
+
+	private static boolean isGet(HttpServletRequest request) {
+		String method = request.getMethod();
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private static String path(HttpServletRequest request) {
+		String pathInfo = request.getPathInfo();
+		return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+	}
+
+	/**
+	 * @return number of views with recorded links, counted per Faces Servlet mapping
+	 */
+	public int getViewCount() {
+		return views.size();
+	}
+
+	/**
+	 * @return number of Link headers sent
+	 */
+	public long getSentCount() {
+		return sent.sum();
+	}
+}
@@ -0,0 +1,32 @@
+package rmontag.jsfexample.common;
+
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
+import javax.faces.event.AbortProcessingException;
+import javax.faces.event.PreRenderViewEvent;
+import javax.faces.event.SystemEvent;
+import javax.faces.event.SystemEventListener;
+import javax.servlet.ServletContext;
+
+/**
+ * Records the {@link PreloadLinks} of a view with the PreRenderViewEvent (system-event-listener in
+ * faces-config.xml), when its component resources are known and the response is not yet committed.
+ */
+public class PreloadLinksListener implements SystemEventListener {
+
+	@Override
+	public void processEvent(SystemEvent event) throws AbortProcessingException {
+		if (event instanceof PreRenderViewEvent) {
+			FacesContext context = FacesContext.getCurrentInstance();
+			PreloadLinks links = PreloadLinks.get((ServletContext) context.getExternalContext().getContext());
+			if (links != null) {
+				links.render(context);
+			}
+		}
+	}
+
+	@Override
+	public boolean isListenerForSource(Object source) {
+		return source instanceof UIViewRoot;
+	}
+}
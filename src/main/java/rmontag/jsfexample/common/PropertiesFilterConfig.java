@@ -0,0 +1,47 @@
+package rmontag.jsfexample.common;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * {@link FilterConfig} whose init params are the ones of web.xml, overridden by the given properties.
+ */
+class PropertiesFilterConfig implements FilterConfig {
+
+	private final FilterConfig delegate;
+	private final Properties properties;
+
+	PropertiesFilterConfig(FilterConfig delegate, Properties properties) {
+		this.delegate = delegate;
+		this.properties = properties;
+	}
+
+	@Override
+	public String getFilterName() {
+		return delegate.getFilterName();
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return delegate.getServletContext();
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		String value = properties.getProperty(name);
+		return value != null ? value : delegate.getInitParameter(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		Set<String> names = new LinkedHashSet<String>(Collections.list(delegate.getInitParameterNames()));
+		names.addAll(properties.stringPropertyNames());
+		return Collections.enumeration(names);
+	}
+}
@@ -0,0 +1,195 @@
+package rmontag.jsfexample.common;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics of the web application: latency histograms per URL pattern (recorded by
+ * {@link MetricsFilter}), counts of each security header emitted (recorded by {@link SecurityHeaders}),
+ * counts of the "response already committed" errors of the security filters, the compression
+ * counters per view (recorded by {@link CompressionFilter}) and the admitted and rejected requests
+ * (recorded by {@link AdmissionControlFilter}).
+ *
+ * All recording methods are lock-free and do not allocate; histograms and header counters are
+ * created when a filter is initialized, never on the request path. Compression counters are created
+ * on the first response of a view, for at most {@link #MAX_COMPRESSION_VIEWS} views.
+ */
+public final class RequestMetrics implements RequestMetricsMXBean {
+
+	/**
+	 * Maximum number of views with their own compression counters, further views are counted as {@link MetricsFilter#OTHER}
+	 */
+	public static final int MAX_COMPRESSION_VIEWS = 256;
+
+	private static final RequestMetrics INSTANCE = new RequestMetrics();
+
+	private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, LongAdder> headerCounts = new ConcurrentHashMap<String, LongAdder>();
+	private final LongAdder committedResponseErrors = new LongAdder();
+	private final ConcurrentMap<String, CompressionCounters> compressions = new ConcurrentHashMap<String, CompressionCounters>();
+	private final AdmissionCounters admission = new AdmissionCounters();
+
+	private RequestMetrics() {
+	}
+
+	public static RequestMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param urlPattern URL pattern, e.g. "/faces/*"
+	 * @return the histogram of the pattern, created on first call
+	 */
+	public LatencyHistogram latency(String urlPattern) {
+		LatencyHistogram histogram = latencies.get(urlPattern);
+		if (histogram == null) {
+			latencies.putIfAbsent(urlPattern, new LatencyHistogram());
+			histogram = latencies.get(urlPattern);
+		}
+		return histogram;
+	}
+
+	/**
+	 * @param headerName name of a response header
+	 * @return the counter of the header, created on first call
+	 */
+	public LongAdder headerCounter(String headerName) {
+		LongAdder counter = headerCounts.get(headerName);
+		if (counter == null) {
+			headerCounts.putIfAbsent(headerName, new LongAdder());
+			counter = headerCounts.get(headerName);
+		}
+		return counter;
+	}
+
+	/**
+	 * Counts a "response already committed" ServletException of a security filter.
+	 */
+	public void committedResponseError() {
+		committedResponseErrors.increment();
+	}
+
+	/**
+	 * @param view servlet path and path info of the request, e.g. "/faces/hello.xhtml"
+	 * @return the compression counters of the view, created on first call
+	 */
+	public CompressionCounters compression(String view) {
+		CompressionCounters counters = compressions.get(view);
+		if (counters == null) {
+			if (compressions.size() >= MAX_COMPRESSION_VIEWS && !MetricsFilter.OTHER.equals(view)) {
+				return compression(MetricsFilter.OTHER);
+			}
+			compressions.putIfAbsent(view, new CompressionCounters());
+			counters = compressions.get(view);
+		}
+		return counters;
+	}
+
+	/**
+	 * @return the compression counters of all views, sorted by view
+	 */
+	public Map<String, CompressionCounters> getCompressionCounters() {
+		return Collections.unmodifiableMap(new TreeMap<String, CompressionCounters>(compressions));
+	}
+
+	/**
+	 * @return the counters of the admission control
+	 */
+	public AdmissionCounters admission() {
+		return admission;
+	}
+
+	/**
+	 * @return snapshots of all histograms, sorted by URL pattern
+	 */
+	public Map<String, LatencyHistogram.Snapshot> getLatencySnapshots() {
+		Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+		for (Map.Entry<String, LatencyHistogram> latency : latencies.entrySet()) {
+			snapshots.put(latency.getKey(), latency.getValue().snapshot());
+		}
+		return snapshots;
+	}
+
+	@Override
+	public Map<String, Long> getRequestCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, LatencyHistogram.Snapshot> snapshot : getLatencySnapshots().entrySet()) {
+			counts.put(snapshot.getKey(), snapshot.getValue().getCount());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP50Micros() {
+		return getLatencyMicros(0.5);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP99Micros() {
+		return getLatencyMicros(0.99);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP999Micros() {
+		return getLatencyMicros(0.999);
+	}
+
+	private Map<String, Long> getLatencyMicros(double quantile) {
+		Map<String, Long> values = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, LatencyHistogram.Snapshot> snapshot : getLatencySnapshots().entrySet()) {
+			values.put(snapshot.getKey(), TimeUnit.NANOSECONDS.toMicros(snapshot.getValue().getValueAtQuantile(quantile)));
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getHeaderCounts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> headerCount : headerCounts.entrySet()) {
+			counts.put(headerCount.getKey(), headerCount.getValue().sum());
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public long getCommittedResponseErrors() {
+		return committedResponseErrors.sum();
+	}
+
+	@Override
+	public Map<String, Long> getCompressionBytesSaved() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, CompressionCounters> compression : compressions.entrySet()) {
+			values.put(compression.getKey(), compression.getValue().getBytesSaved());
+		}
+		return Collections.unmodifiableMap(values);
+	}
+
+	@Override
+	public Map<String, Long> getCompressionCpuMicros() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, CompressionCounters> compression : compressions.entrySet()) {
+			values.put(compression.getKey(), TimeUnit.NANOSECONDS.toMicros(compression.getValue().getCpuNanos()));
+		}
+		return Collections.unmodifiableMap(values);
+	}
+
+	@Override
+	public long getAdmittedRequests() {
+		return admission.getAdmitted();
+	}
+
+	@Override
+	public Map<String, Long> getRejectedRequests() {
+		Map<String, Long> values = new LinkedHashMap<String, Long>();
+		values.put("rate", admission.getRejectedRate());
+		values.put("concurrency", admission.getRejectedConcurrency());
+		return Collections.unmodifiableMap(values);
+	}
+}
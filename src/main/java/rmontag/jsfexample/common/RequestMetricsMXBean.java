@@ -0,0 +1,30 @@
+package rmontag.jsfexample.common;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link RequestMetrics}. Latencies are in microseconds, keyed by URL pattern;
+ * compression values are keyed by view, rejected requests by reason ("rate" or "concurrency").
+ */
+public interface RequestMetricsMXBean {
+
+	Map<String, Long> getRequestCounts();
+
+	Map<String, Long> getLatencyP50Micros();
+
+	Map<String, Long> getLatencyP99Micros();
+
+	Map<String, Long> getLatencyP999Micros();
+
+	Map<String, Long> getHeaderCounts();
+
+	long getCommittedResponseErrors();
+
+	Map<String, Long> getCompressionBytesSaved();
+
+	Map<String, Long> getCompressionCpuMicros();
+
+	long getAdmittedRequests();
+
+	Map<String, Long> getRejectedRequests();
+}
@@ -0,0 +1,229 @@
+package rmontag.jsfexample.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.faces.application.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory cache of fingerprinted JSF resources, filled by the {@link FingerprintResourceHandler}
+ * and served by the {@link ResourceCacheServlet}.
+ *
+ * The first time a resource is rendered, its content is read once, hashed (SHA-256, the first 12
+ * bytes base64url encoded) and stored together with a gzip copy and, if the resource comes with a
+ * precompressed ".br" file next to it, a brotli copy. The hash becomes part of the URL, so the URL
+ * changes with the content and the resource can be cached by browsers forever.
+ *
+ * The cache is bounded by maxBytes (all copies together). Resources not fitting any more are not
+ * fingerprinted and keep their regular JSF URL; nothing is evicted, so a fingerprinted URL rendered
+ * into a page stays valid until the application is stopped.
+ */
+public final class ResourceCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ResourceCache.class);
+
+	public static final String CONTEXT_ATTRIBUTE = ResourceCache.class.getName();
+
+	static final int HASH_BYTES = 12;
+	// below this size gzip does not save a packet
+	private static final int MIN_COMPRESS_LENGTH = 256;
+
+	private static final Entry NOT_CACHED = new Entry(null, "", null, new byte[0], null, null);
+
+	private final String pathPrefix;
+	private final long maxBytes;
+	private final AtomicLong usedBytes = new AtomicLong();
+	// library + '/' + name -> entry, NOT_CACHED if the resource is served by JSF
+	private final ConcurrentMap<String, Entry> byResource = new ConcurrentHashMap<String, Entry>();
+	// "/" + hash + "/" + library + "/" + name -> entry
+	private final ConcurrentMap<String, Entry> byPath = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * @param pathPrefix context relative path the {@link ResourceCacheServlet} is mapped to, e.g. "/resources-cache"
+	 * @param maxBytes maximum size of all cached copies
+	 */
+	public ResourceCache(String pathPrefix, long maxBytes) {
+		this.pathPrefix = pathPrefix;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param resource resource created by JSF, read on the first call
+	 * @return the cached entry, or null if the resource is not cached
+	 */
+	Entry get(Resource resource) {
+		String key = resource.getLibraryName() + '/' + resource.getResourceName();
+		Entry entry = byResource.get(key);
+		if (entry == null) {
+			entry = load(resource);
+			// served under its path before its URL can be rendered, so no request gets a 404 for it
+			if (entry != NOT_CACHED) {
+				Entry samePath = byPath.putIfAbsent(entry.path, entry);
+				if (samePath != null) {
+					release(entry);
+					entry = samePath;
+				}
+			}
+			Entry previous = byResource.putIfAbsent(key, entry);
+			if (previous != null) {
+				if (previous != entry && (entry == NOT_CACHED || byPath.remove(entry.path, entry))) {
+					release(entry);
+				}
+				entry = previous;
+			}
+		}
+		return entry == NOT_CACHED ? null : entry;
+	}
+
+	/**
+	 * @param pathInfo path info of a request to the {@link ResourceCacheServlet}
+	 * @return the entry, or null if the path is unknown (e.g. an outdated fingerprint)
+	 */
+	Entry get(String pathInfo) {
+		return pathInfo == null ? null : byPath.get(pathInfo);
+	}
+
+	/**
+	 * @return context relative path the entry is served at
+	 */
+	String getRequestPath(Entry entry) {
+		return pathPrefix + entry.path;
+	}
+
+	private Entry load(Resource resource) {
+		try {
+			byte[] identity = read(resource.getInputStream());
+			String hash = hash(identity);
+			byte[] gzip = identity.length >= MIN_COMPRESS_LENGTH ? gzip(identity) : null;
+			if (gzip != null && gzip.length >= identity.length) {
+				gzip = null;
+			}
+			byte[] brotli = readBrotli(resource.getURL(), hash);
+
+			long size = identity.length + (gzip == null ? 0 : gzip.length) + (brotli == null ? 0 : brotli.length);
+			if (usedBytes.addAndGet(size) > maxBytes) {
+				usedBytes.addAndGet(-size);
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("resource cache full, not caching " + resource);
+				}
+				return NOT_CACHED;
+			}
+			String library = resource.getLibraryName() == null ? "-" : resource.getLibraryName();
+			String path = "/" + hash + "/" + library + "/" + resource.getResourceName();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("cached " + path + ": " + identity.length + " bytes, gzip " + (gzip == null ? "-" : gzip.length)
+						+ ", brotli " + (brotli == null ? "-" : brotli.length));
+			}
+			return new Entry(path, hash, resource.getContentType(), identity, gzip, brotli);
+		} catch (IOException e) {
+			LOG.warn("Unable to cache resource " + resource + ", it is served by JSF", e);
+			return NOT_CACHED;
+		}
+	}
+
+	private void release(Entry entry) {
+		if (entry != NOT_CACHED) {
+			usedBytes.addAndGet(-entry.size());
+		}
+	}
+
+	/**
+	 * @return the precompressed brotli copy, if there is a ".br" file next to the resource and the
+	 * resource is served unchanged (not e.g. a stylesheet with evaluated EL expressions)
+	 */
+	private static byte[] readBrotli(URL url, String hash) throws IOException {
+		if (url == null) {
+			return null;
+		}
+		InputStream brotli;
+		try {
+			brotli = new URL(url, url.getPath().substring(url.getPath().lastIndexOf('/') + 1) + ".br").openStream();
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		byte[] bytes = read(brotli);
+		byte[] raw = read(url.openStream());
+		return hash(raw).equals(hash) ? bytes : null;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(out) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		};
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	static String hash(byte[] bytes) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, HASH_BYTES));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * A cached resource with its precomputed copies and validators.
+	 */
+	static final class Entry {
+
+		final String path;
+		final String contentType;
+		final byte[] identity;
+		final byte[] gzip;
+		final byte[] brotli;
+		final String etag;
+		final String gzipEtag;
+		final String brotliEtag;
+
+		private Entry(String path, String hash, String contentType, byte[] identity, byte[] gzip, byte[] brotli) {
+			this.path = path;
+			this.contentType = contentType;
+			this.identity = identity;
+			this.gzip = gzip;
+			this.brotli = brotli;
+			// strong validators differ per content coding
+			this.etag = "\"" + hash + "\"";
+			this.gzipEtag = "\"" + hash + "-gzip\"";
+			this.brotliEtag = "\"" + hash + "-br\"";
+		}
+
+		private long size() {
+			return identity.length + (gzip == null ? 0 : gzip.length) + (brotli == null ? 0 : brotli.length);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the fingerprinted resources of the {@link ResourceCache}, bypassing the Faces Servlet.
+ *
+ * The URL contains the content hash, so responses are cacheable forever
+ * ("Cache-Control: public, max-age=31536000, immutable"). The brotli or gzip copy is chosen by
+ * Accept-Encoding, every copy has its own strong ETag, If-None-Match is answered with 304.
+ * Security headers are set by the {@link SecurityHeaderFilter} in front of the servlet from its
+ * precompiled table, like for every other response.
+ *
+ * Supported init params:
+ * <ul>
+ * <li>maxCacheBytes - Maximum size of all cached copies in bytes (Default: 16777216).</li>
+ * </ul>
+ * The servlet must be mapped to a path pattern, e.g. /resources-cache/*, and loaded on startup.
+ */
+public class ResourceCacheServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String INIT_PARAM_MAX_CACHE_BYTES = "maxCacheBytes";
+
+	private static final long DEFAULT_MAX_CACHE_BYTES = 16 * 1024 * 1024;
+
+	private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		long maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+		String value = getInitParameter(INIT_PARAM_MAX_CACHE_BYTES);
+		if (value != null) {
+			try {
+				maxCacheBytes = Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				maxCacheBytes = -1;
+			}
+			if (maxCacheBytes < 0) {
+				throw new ServletException("An invalid value [" + value + "] was specified for " + INIT_PARAM_MAX_CACHE_BYTES);
+			}
+		}
+		String pathPrefix = null;
+		for (String mapping : getServletContext().getServletRegistration(getServletName()).getMappings()) {
+			if (mapping.startsWith("/") && mapping.endsWith("/*")) {
+				pathPrefix = mapping.substring(0, mapping.length() - 2);
+				break;
+			}
+		}
+		if (pathPrefix == null) {
+			throw new ServletException(getClass().getName() + " must be mapped to a path pattern like /resources-cache/*");
+		}
+		getServletContext().setAttribute(ResourceCache.CONTEXT_ATTRIBUTE, new ResourceCache(pathPrefix, maxCacheBytes));
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		ResourceCache cache = (ResourceCache) getServletContext().getAttribute(ResourceCache.CONTEXT_ATTRIBUTE);
+		ResourceCache.Entry entry = cache.get(request.getPathInfo());
+		if (entry == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		byte[] body = entry.identity;
+		String etag = entry.etag;
+		String contentEncoding = null;
+		if (entry.brotli != null && accepts(acceptEncoding, "br")) {
+			body = entry.brotli;
+			etag = entry.brotliEtag;
+			contentEncoding = "br";
+		} else if (entry.gzip != null && accepts(acceptEncoding, "gzip")) {
+			body = entry.gzip;
+			etag = entry.gzipEtag;
+			contentEncoding = "gzip";
+		}
+
+		response.setHeader("Cache-Control", CACHE_CONTROL);
+		response.setHeader("ETag", etag);
+		if (entry.gzip != null || entry.brotli != null) {
+			// added, the security headers may vary by User-Agent
+			response.addHeader("Vary", "Accept-Encoding");
+		}
+		if (matches(request.getHeader("If-None-Match"), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		if (entry.contentType != null) {
+			response.setContentType(entry.contentType);
+		}
+		if (contentEncoding != null) {
+			response.setHeader("Content-Encoding", contentEncoding);
+		}
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	/**
+	 * @return true, if the Accept-Encoding header lists the coding without q=0
+	 */
+	static boolean accepts(String acceptEncoding, String coding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String part : acceptEncoding.split(",")) {
+			int semicolon = part.indexOf(';');
+			String name = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+			if (name.equalsIgnoreCase(coding)) {
+				if (semicolon < 0) {
+					return true;
+				}
+				String parameter = part.substring(semicolon + 1).trim();
+				if (!parameter.startsWith("q=")) {
+					return true;
+				}
+				try {
+					return Double.parseDouble(parameter.substring(2)) > 0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true, if the If-None-Match header contains the ETag or "*"
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals(etag) || candidate.equals("*")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void destroy() {
+		getServletContext().removeAttribute(ResourceCache.CONTEXT_ATTRIBUTE);
+	}
+}
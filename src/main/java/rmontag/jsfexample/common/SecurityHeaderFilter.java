@@ -0,0 +1,128 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single-pass security header filter, replacing {@link HttpHeaderSecurityFilter} and
+ * {@link ContentSecurityPolicyFilter} in one filter declaration.
+ *
+ * Supports all init params of both filters with unchanged names and semantics. At init the
+ * headers of both are compiled into one immutable {@link SecurityHeaders} table (one variant for
+ * secure requests and one for plain HTTP) per path prefix of contentSecurityPolicyPaths, so each
+ * request costs one committed check, one prefix lookup, one loop of setHeader calls and one chain hop.
+ *
+ * Unknown init params are rejected with a ServletException, as in {@link HttpHeaderSecurityFilter}.
+ *
+ * With the init param configFile the settings are loaded from a watched properties file (see
+ * {@link ConfigFileWatcher}); every valid change is compiled into a new snapshot and published
+ * atomically, so request threads never take a lock or see a half-applied configuration.
+ *
+ * The {@link PreloadLinks} recorded for the view of the request path are sent with the security headers.
+ *
+ * Async-supported: the headers are set before the servlet may start async processing. An ASYNC dispatch
+ * (AsyncContext.dispatch()) continues the same response and passes through, it neither sets the headers
+ * again nor issues a new nonce.
+ */
+public class SecurityHeaderFilter implements Filter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SecurityHeaderFilter.class);
+
+	private static final Set<String> INIT_PARAMS = new HashSet<String>();
+	static {
+		INIT_PARAMS.addAll(HttpHeaderSecurityFilter.INIT_PARAMS);
+		INIT_PARAMS.addAll(ContentSecurityPolicyFilter.INIT_PARAMS);
+	}
+
+	// shared by all snapshots, so nonce stripes and the User-Agent cache survive a reload
+	private final CspNonceGenerator nonceGenerator = new CspNonceGenerator();
+	private final UserAgentClassifier userAgentClassifier = new UserAgentClassifier();
+
+	private final AtomicReference<CompiledSecurityHeaders> headers = new AtomicReference<CompiledSecurityHeaders>();
+	private ConfigFileWatcher configFileWatcher;
+	private PreloadLinks preloadLinks;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+
+		headers.set(compile(filterConfig));
+		preloadLinks = PreloadLinks.get(filterConfig.getServletContext());
+
+		configFileWatcher = ConfigFileWatcher.start(filterConfig, INIT_PARAMS, new ConfigFileWatcher.Reloadable() {
+			@Override
+			public void reload(FilterConfig config) throws ServletException {
+				headers.set(compile(config));
+			}
+		});
+
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	private CompiledSecurityHeaders compile(FilterConfig filterConfig) throws ServletException {
+		Enumeration<String> paramNames = filterConfig.getInitParameterNames();
+		while (paramNames.hasMoreElements()) {
+			String paramName = paramNames.nextElement();
+			if (!INIT_PARAMS.contains(paramName)) {
+				String msg = "The property " + paramName + " is not defined for filters of type " + this.getClass().getName();
+				throw new ServletException(msg);
+			}
+		}
+
+		HttpHeaderSecurityFilter httpHeaderSecurityFilter = new HttpHeaderSecurityFilter();
+		httpHeaderSecurityFilter.configure(new InitParameterFilterConfig(filterConfig, HttpHeaderSecurityFilter.INIT_PARAMS));
+		ContentSecurityPolicyFilter contentSecurityPolicyFilter = new ContentSecurityPolicyFilter(nonceGenerator, userAgentClassifier);
+		contentSecurityPolicyFilter.configure(new InitParameterFilterConfig(filterConfig, ContentSecurityPolicyFilter.INIT_PARAMS));
+
+		CompiledSecurityHeaders compiled = contentSecurityPolicyFilter.compileHeaders(httpHeaderSecurityFilter.getHeaders());
+
+		if (LOG.isDebugEnabled()) {
+			SecurityHeaders defaultHeaders = compiled.getDefaultHeaders();
+			LOG.debug("compiled " + defaultHeaders.size(true) + " headers for secure and " + defaultHeaders.size(false)
+					+ " headers for plain requests");
+		}
+		return compiled;
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		if (response instanceof HttpServletResponse && request.getDispatcherType() != DispatcherType.ASYNC) {
+			if (response.isCommitted()) {
+				RequestMetrics.getInstance().committedResponseError();
+				throw new ServletException("Unable to add HTTP headers since response is already committed on entry to the security header Filter");
+			}
+			headers.get().apply((HttpServletRequest) request, (HttpServletResponse) response);
+			if (preloadLinks != null) {
+				preloadLinks.apply((HttpServletRequest) request, (HttpServletResponse) response);
+			}
+		}
+
+		chain.doFilter(request, response);
+	}
+
+	@Override
+	public void destroy() {
+		if (configFileWatcher != null) {
+			configFileWatcher.close();
+		}
+	}
+
+}
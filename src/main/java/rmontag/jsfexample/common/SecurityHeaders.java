@@ -0,0 +1,213 @@
+package rmontag.jsfexample.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Immutable, precompiled table of response headers.
+ *
+ * The table is built once at filter init and holds two variants: one for secure requests
+ * (request.isSecure() == true, e.g. including 'Strict-Transport-Security') and one for plain HTTP.
+ * Applying the table is a single loop of setHeader calls without any per-request checks.
+ *
+ * Header values containing {@link #NONCE_PLACEHOLDER} are templates: they are split around the
+ * placeholder at build time, and the per-request nonce is spliced into the parts when applied.
+ *
+ * Each header set is counted in the {@link RequestMetrics}; the counters are looked up at build time.
+ */
+public final class SecurityHeaders {
+
+	/**
+	 * Placeholder for the per-request nonce in header values, e.g. "script-src 'self' 'nonce-{nonce}'"
+	 */
+	public static final String NONCE_PLACEHOLDER = "{nonce}";
+
+	private final String[] secureNames;
+	private final String[] secureValues;
+	private final String[][] secureTemplates;
+	private final String[] plainNames;
+	private final String[] plainValues;
+	private final String[][] plainTemplates;
+	private final LongAdder[] secureCounters;
+	private final LongAdder[] plainCounters;
+	private final boolean nonceRequired;
+
+	private SecurityHeaders(Map<String, String> secure, Map<String, String> plain) {
+		secureNames = secure.keySet().toArray(new String[secure.size()]);
+		secureValues = secure.values().toArray(new String[secure.size()]);
+		secureTemplates = compileTemplates(secureValues);
+		plainNames = plain.keySet().toArray(new String[plain.size()]);
+		plainValues = plain.values().toArray(new String[plain.size()]);
+		plainTemplates = compileTemplates(plainValues);
+		secureCounters = counters(secureNames);
+		plainCounters = counters(plainNames);
+		nonceRequired = secureTemplates != null || plainTemplates != null;
+	}
+
+	private static LongAdder[] counters(String[] names) {
+		LongAdder[] counters = new LongAdder[names.length];
+		for (int i = 0; i < names.length; i++) {
+			counters[i] = RequestMetrics.getInstance().headerCounter(names[i]);
+		}
+		return counters;
+	}
+
+	/**
+	 * @return the template parts of each value (null for values without placeholder), or null if no value has a placeholder
+	 */
+	private static String[][] compileTemplates(String[] values) {
+		String[][] templates = null;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].contains(NONCE_PLACEHOLDER)) {
+				if (templates == null) {
+					templates = new String[values.length][];
+				}
+				List<String> parts = new ArrayList<String>();
+				int start = 0;
+				int index;
+				while ((index = values[i].indexOf(NONCE_PLACEHOLDER, start)) >= 0) {
+					parts.add(values[i].substring(start, index));
+					start = index + NONCE_PLACEHOLDER.length();
+				}
+				parts.add(values[i].substring(start));
+				templates[i] = parts.toArray(new String[parts.size()]);
+			}
+		}
+		return templates;
+	}
+
+	/**
+	 * Sets all headers of the table variant matching the request on the response.
+	 * Only for tables without nonce, see {@link #isNonceRequired()}.
+	 * @param response the response to set the headers on
+	 * @param secure result of request.isSecure()
+	 */
+	public void apply(HttpServletResponse response, boolean secure) {
+		apply(response, secure, null);
+	}
+
+	/**
+	 * Sets all headers of the table variant matching the request on the response.
+	 * @param response the response to set the headers on
+	 * @param secure result of request.isSecure()
+	 * @param nonce nonce of the request, spliced into the values containing the placeholder;
+	 * must not be null if {@link #isNonceRequired()}
+	 */
+	public void apply(HttpServletResponse response, boolean secure, String nonce) {
+		String[] names = secure ? secureNames : plainNames;
+		String[] values = secure ? secureValues : plainValues;
+		String[][] templates = secure ? secureTemplates : plainTemplates;
+		LongAdder[] counters = secure ? secureCounters : plainCounters;
+		for (int i = 0; i < names.length; i++) {
+			if (templates != null && templates[i] != null) {
+				response.setHeader(names[i], splice(templates[i], nonce));
+			} else {
+				response.setHeader(names[i], values[i]);
+			}
+			counters[i].increment();
+		}
+	}
+
+	private static String splice(String[] parts, String nonce) {
+		int length = (parts.length - 1) * nonce.length();
+		for (String part : parts) {
+			length += part.length();
+		}
+		StringBuilder value = new StringBuilder(length).append(parts[0]);
+		for (int i = 1; i < parts.length; i++) {
+			value.append(nonce).append(parts[i]);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * @return true, if at least one header value contains {@link #NONCE_PLACEHOLDER}
+	 */
+	public boolean isNonceRequired() {
+		return nonceRequired;
+	}
+
+	/**
+	 * @param secure table variant
+	 * @return number of headers set by {@link #apply(HttpServletResponse, boolean)}
+	 */
+	public int size(boolean secure) {
+		return secure ? secureNames.length : plainNames.length;
+	}
+
+	/**
+	 * @param secure table variant
+	 * @param index header index, 0 &lt;= index &lt; size(secure)
+	 * @return header name at the given index
+	 */
+	public String getName(boolean secure, int index) {
+		return secure ? secureNames[index] : plainNames[index];
+	}
+
+	/**
+	 * @param secure table variant
+	 * @param index header index, 0 &lt;= index &lt; size(secure)
+	 * @return header value at the given index, templates with the placeholder
+	 */
+	public String getValue(boolean secure, int index) {
+		return secure ? secureValues[index] : plainValues[index];
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @param base table whose headers are copied into the new builder
+	 * @return builder starting with all headers of base
+	 */
+	public static Builder builder(SecurityHeaders base) {
+		Builder builder = new Builder();
+		for (int i = 0; i < base.secureNames.length; i++) {
+			builder.secure.put(base.secureNames[i], base.secureValues[i]);
+		}
+		for (int i = 0; i < base.plainNames.length; i++) {
+			builder.plain.put(base.plainNames[i], base.plainValues[i]);
+		}
+		return builder;
+	}
+
+	/**
+	 * Collects headers in insertion order. Adding a header name twice replaces the earlier value,
+	 * just like a second setHeader call would.
+	 */
+	public static final class Builder {
+
+		private final Map<String, String> secure = new LinkedHashMap<String, String>();
+		private final Map<String, String> plain = new LinkedHashMap<String, String>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds a header for secure and plain HTTP requests.
+		 */
+		public Builder add(String name, String value) {
+			secure.put(name, value);
+			plain.put(name, value);
+			return this;
+		}
+
+		/**
+		 * Adds a header for secure requests only.
+		 */
+		public Builder addSecure(String name, String value) {
+			secure.put(name, value);
+			return this;
+		}
+
+		public SecurityHeaders build() {
+			return new SecurityHeaders(secure, plain);
+		}
+	}
+}
@@ -0,0 +1,530 @@
+package rmontag.jsfexample.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact binary encoding of the session deltas of the {@link SessionReplicator}, without Java
+ * serialization for the common values.
+ *
+ * A value is a tag byte followed by its payload: nothing for null and booleans, zigzag varints for
+ * the integral types, IEEE bits for floats, UTF-8 with a varint length for strings, class and
+ * constant name for enums. Other values are written with Java serialization behind the tag
+ * {@link #SERIALIZED}. Every value is self-delimiting, so encoded values can be compared as bytes
+ * and copied into a frame as they are.
+ *
+ * Beans (serializable application classes without custom serialization) are encoded field by
+ * field, in the order of {@link #fields(Class)}, so a delta can carry only the changed fields.
+ *
+ * Names (session ids, attribute and class names) are written through the string table of a
+ * {@link Buffer}: the first occurrence in a frame as literal, later ones as index.
+ */
+final class SessionDeltaCodec {
+
+	static final byte NULL = 0;
+	static final byte FALSE = 1;
+	static final byte TRUE = 2;
+	static final byte BYTE = 3;
+	static final byte SHORT = 4;
+	static final byte CHAR = 5;
+	static final byte INT = 6;
+	static final byte LONG = 7;
+	static final byte FLOAT = 8;
+	static final byte DOUBLE = 9;
+	static final byte STRING = 10;
+	static final byte ENUM = 11;
+	static final byte SERIALIZED = 12;
+
+	// fields of the bean classes, an empty array for classes that are not beans
+	private static final ConcurrentMap<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<Class<?>, Field[]>();
+	private static final Field[] NOT_A_BEAN = new Field[0];
+	private static final List<String> CUSTOM_SERIALIZATION = Arrays.asList("writeObject", "readObject", "writeReplace",
+			"readResolve");
+
+	private SessionDeltaCodec() {
+	}
+
+	/**
+	 * @return the encoded value
+	 * @throws IOException if the value is neither a simple value nor serializable
+	 */
+	static byte[] encodeValue(Object value) throws IOException {
+		Buffer buffer = new Buffer(16);
+		writeValue(buffer, value);
+		return buffer.toByteArray();
+	}
+
+	private static void writeValue(Buffer buffer, Object value) throws IOException {
+		if (value == null) {
+			buffer.write(NULL);
+		} else if (value instanceof String) {
+			buffer.write(STRING);
+			buffer.writeUtf8((String) value);
+		} else if (value instanceof Boolean) {
+			buffer.write(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		} else if (value instanceof Integer) {
+			buffer.write(INT);
+			buffer.writeVarLong(zigzag((Integer) value));
+		} else if (value instanceof Long) {
+			buffer.write(LONG);
+			buffer.writeVarLong(zigzag((Long) value));
+		} else if (value instanceof Byte) {
+			buffer.write(BYTE);
+			buffer.write((Byte) value);
+		} else if (value instanceof Short) {
+			buffer.write(SHORT);
+			buffer.writeVarLong(zigzag((Short) value));
+		} else if (value instanceof Character) {
+			buffer.write(CHAR);
+			buffer.writeVarLong((Character) value);
+		} else if (value instanceof Float) {
+			buffer.write(FLOAT);
+			buffer.writeInt(Float.floatToIntBits((Float) value));
+		} else if (value instanceof Double) {
+			buffer.write(DOUBLE);
+			buffer.writeLong(Double.doubleToLongBits((Double) value));
+		} else if (value instanceof Enum) {
+			buffer.write(ENUM);
+			buffer.writeUtf8(((Enum<?>) value).getDeclaringClass().getName());
+			buffer.writeUtf8(((Enum<?>) value).name());
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(value);
+			out.close();
+			buffer.write(SERIALIZED);
+			buffer.writeVarLong(bytes.size());
+			buffer.write(bytes.toByteArray(), 0, bytes.size());
+		}
+	}
+
+	/**
+	 * The inverse of {@link #encodeValue(Object)}, for values of this node only: the
+	 * {@link SessionReplicator} skips the values it receives and never decodes them.
+	 * @return the value encoded at offset 0
+	 */
+	static Object decodeValue(byte[] encoded, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+		Reader reader = new Reader(encoded, 0, encoded.length);
+		byte tag = reader.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case FALSE:
+			return Boolean.FALSE;
+		case TRUE:
+			return Boolean.TRUE;
+		case BYTE:
+			return reader.readByte();
+		case SHORT:
+			return (short) unzigzag(reader.readVarLong());
+		case CHAR:
+			return (char) reader.readVarLong();
+		case INT:
+			return (int) unzigzag(reader.readVarLong());
+		case LONG:
+			return unzigzag(reader.readVarLong());
+		case FLOAT:
+			return Float.intBitsToFloat(reader.readInt());
+		case DOUBLE:
+			return Double.longBitsToDouble(reader.readLong());
+		case STRING:
+			return reader.readUtf8();
+		case ENUM:
+			return enumConstant(Class.forName(reader.readUtf8(), false, classLoader), reader.readUtf8());
+		case SERIALIZED:
+			int length = reader.readLength();
+			ObjectInputStream in = new ClassLoaderObjectInputStream(
+					new ByteArrayInputStream(encoded, reader.position, length), classLoader);
+			try {
+				return in.readObject();
+			} finally {
+				in.close();
+			}
+		default:
+			throw new IOException("Unknown value tag " + tag);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object enumConstant(Class<?> type, String name) {
+		return Enum.valueOf((Class<? extends Enum>) type, name);
+	}
+
+	/**
+	 * @return the length of the value encoded at the position of the reader
+	 */
+	static int valueLength(Reader reader) throws IOException {
+		int start = reader.position;
+		byte tag = reader.readByte();
+		switch (tag) {
+		case NULL:
+		case FALSE:
+		case TRUE:
+			break;
+		case BYTE:
+			reader.skip(1);
+			break;
+		case SHORT:
+		case CHAR:
+		case INT:
+		case LONG:
+			reader.readVarLong();
+			break;
+		case FLOAT:
+			reader.skip(4);
+			break;
+		case DOUBLE:
+			reader.skip(8);
+			break;
+		case STRING:
+			reader.skip(reader.readLength());
+			break;
+		case ENUM:
+			reader.skip(reader.readLength());
+			reader.skip(reader.readLength());
+			break;
+		case SERIALIZED:
+			reader.skip(reader.readLength());
+			break;
+		default:
+			throw new IOException("Unknown value tag " + tag);
+		}
+		int length = reader.position - start;
+		reader.position = start;
+		return length;
+	}
+
+	/**
+	 * @return the persistent fields of a bean, ordered by declaring class (superclass first) and
+	 *         name, so all nodes agree on the field indexes; an empty array if the class is not a
+	 *         bean: not serializable, from the JDK, an array, or with custom serialization
+	 */
+	static Field[] fields(Class<?> type) {
+		Field[] fields = FIELDS.get(type);
+		if (fields == null) {
+			fields = isBean(type) ? beanFields(type) : NOT_A_BEAN;
+			FIELDS.putIfAbsent(type, fields);
+		}
+		return fields;
+	}
+
+	private static boolean isBean(Class<?> type) {
+		if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type) || type.isArray()
+				|| type.isEnum() || type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+			return false;
+		}
+		for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+			for (Method method : current.getDeclaredMethods()) {
+				if (CUSTOM_SERIALIZATION.contains(method.getName())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Field[] beanFields(Class<?> type) {
+		List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+		for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+			hierarchy.add(current);
+		}
+		Collections.reverse(hierarchy);
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> current : hierarchy) {
+			List<Field> declared = new ArrayList<Field>();
+			for (Field field : current.getDeclaredFields()) {
+				if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) == 0) {
+					field.setAccessible(true);
+					declared.add(field);
+				}
+			}
+			Collections.sort(declared, new Comparator<Field>() {
+				@Override
+				public int compare(Field a, Field b) {
+					return a.getName().compareTo(b.getName());
+				}
+			});
+			fields.addAll(declared);
+		}
+		return fields.toArray(new Field[fields.size()]);
+	}
+
+	/**
+	 * @return the encoded value of each field of the bean
+	 */
+	static byte[][] encodeFields(Object bean, Field[] fields) throws IOException {
+		byte[][] encoded = new byte[fields.length][];
+		for (int i = 0; i < fields.length; i++) {
+			try {
+				encoded[i] = encodeValue(fields[i].get(bean));
+			} catch (IllegalAccessException e) {
+				throw new IOException("Unable to read " + fields[i], e);
+			}
+		}
+		return encoded;
+	}
+
+	/**
+	 * @return the encoded key (as ISO-8859-1 string, usable as map key) and value of each entry
+	 */
+	static Map<String, byte[]> encodeEntries(Map<?, ?> map) throws IOException {
+		Map<String, byte[]> entries = new HashMap<String, byte[]>(map.size() * 2);
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			entries.put(new String(encodeValue(entry.getKey()), StandardCharsets.ISO_8859_1), encodeValue(entry.getValue()));
+		}
+		return entries;
+	}
+
+	static long zigzag(long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+	static long unzigzag(long value) {
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	/**
+	 * Growable output buffer with varints and the string table of a frame.
+	 */
+	static final class Buffer {
+
+		private byte[] bytes;
+		private int position;
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		Buffer(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void write(int b) {
+			ensure(1);
+			bytes[position++] = (byte) b;
+		}
+
+		void write(byte[] b, int offset, int length) {
+			ensure(length);
+			System.arraycopy(b, offset, bytes, position, length);
+			position += length;
+		}
+
+		void write(byte[] b) {
+			write(b, 0, b.length);
+		}
+
+		void writeInt(int value) {
+			ensure(4);
+			bytes[position++] = (byte) (value >>> 24);
+			bytes[position++] = (byte) (value >>> 16);
+			bytes[position++] = (byte) (value >>> 8);
+			bytes[position++] = (byte) value;
+		}
+
+		void writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				bytes[position++] = (byte) (value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			bytes[position++] = (byte) value;
+		}
+
+		void writeUtf8(String value) {
+			byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(utf8.length);
+			write(utf8);
+		}
+
+		/**
+		 * Writes a name through the string table: index &lt;&lt; 1 | 1 if it has been written
+		 * before, else length &lt;&lt; 1 and the UTF-8 bytes.
+		 */
+		void writeName(String name) {
+			Integer index = strings.get(name);
+			if (index != null) {
+				writeVarLong((long) index << 1 | 1);
+				return;
+			}
+			strings.put(name, strings.size());
+			byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+			writeVarLong((long) utf8.length << 1);
+			write(utf8);
+		}
+
+		void setInt(int offset, int value) {
+			bytes[offset] = (byte) (value >>> 24);
+			bytes[offset + 1] = (byte) (value >>> 16);
+			bytes[offset + 2] = (byte) (value >>> 8);
+			bytes[offset + 3] = (byte) value;
+		}
+
+		int position() {
+			return position;
+		}
+
+		byte[] array() {
+			return bytes;
+		}
+
+		/**
+		 * Empties the buffer and its string table for the next frame.
+		 */
+		void reset() {
+			position = 0;
+			strings.clear();
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, position);
+		}
+
+		private void ensure(int length) {
+			if (position + length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+			}
+		}
+	}
+
+	/**
+	 * Reader of a frame, with the string table of the frame.
+	 */
+	static final class Reader {
+
+		private final byte[] bytes;
+		private int position;
+		private final int limit;
+		private final List<String> strings = new ArrayList<String>();
+
+		Reader(byte[] bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.position = offset;
+			this.limit = offset + length;
+		}
+
+		boolean hasRemaining() {
+			return position < limit;
+		}
+
+		byte readByte() throws IOException {
+			if (position >= limit) {
+				throw new IOException("Unexpected end of frame");
+			}
+			return bytes[position++];
+		}
+
+		int readInt() throws IOException {
+			return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | readByte() & 0xFF;
+		}
+
+		long readLong() throws IOException {
+			return (long) readInt() << 32 | readInt() & 0xFFFFFFFFL;
+		}
+
+		long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		/**
+		 * @return a varint length, not beyond the end of the frame
+		 */
+		int readLength() throws IOException {
+			long length = readVarLong();
+			if (length < 0 || length > limit - position) {
+				throw new IOException("Unexpected end of frame");
+			}
+			return (int) length;
+		}
+
+		String readUtf8() throws IOException {
+			int length = readLength();
+			skip(length);
+			return new String(bytes, position - length, length, StandardCharsets.UTF_8);
+		}
+
+		String readName() throws IOException {
+			long value = readVarLong();
+			if ((value & 1) != 0) {
+				long index = value >>> 1;
+				if (index >= strings.size()) {
+					throw new IOException("Unknown string index " + index);
+				}
+				return strings.get((int) index);
+			}
+			if (value >>> 1 > limit - position) {
+				throw new IOException("Unexpected end of frame");
+			}
+			int length = (int) (value >>> 1);
+			skip(length);
+			String name = new String(bytes, position - length, length, StandardCharsets.UTF_8);
+			strings.add(name);
+			return name;
+		}
+
+		/**
+		 * Skips the value at the current position.
+		 */
+		void skipValue() throws IOException {
+			skip(valueLength(this));
+		}
+
+		void skip(int length) throws IOException {
+			if (length < 0 || position + length > limit) {
+				throw new IOException("Unexpected end of frame");
+			}
+			position += length;
+		}
+	}
+
+	/**
+	 * Resolves the classes of serialized values with the class loader of the web application.
+	 */
+	private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+		private final ClassLoader classLoader;
+
+		ClassLoaderObjectInputStream(ByteArrayInputStream in, ClassLoader classLoader) throws IOException {
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+			try {
+				return Class.forName(description.getName(), false, classLoader);
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(description);
+			}
+		}
+	}
+}
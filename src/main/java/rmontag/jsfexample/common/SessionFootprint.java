@@ -0,0 +1,482 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionEvent;
+
+import org.jboss.weld.context.api.ContextualInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accounts the memory held by the live sessions and evicts idle sessions under heap pressure.
+ *
+ * Sessions are registered by the {@link SessionFootprintListener} when created. Each gets the
+ * attribute {@link #TRACKER_ATTRIBUTE}, an {@link HttpSessionActivationListener}, so sessions
+ * passivated by the container (swapped out by the PersistentManager, saved on shutdown) are dropped
+ * and sessions activated (swapped back in, restored at startup) are registered again; they are
+ * measured and evicted like the others. A daemon thread samples them every
+ * sample interval: each attribute is serialized into a counting stream, and its size is summed per
+ * type, e.g. "Hello" for the CDI bean or "ViewState" for the JSF views kept in the session. Request
+ * threads are not involved; an attribute modified while it is serialized is skipped for that sample.
+ *
+ * After the sample, the heap pressure is the used share of the old generation after the last garbage
+ * collection, i.e. the live data. Above evictionHeapPercent, the sessions idle for at least
+ * minIdleSeconds are invalidated, longest idle first, until their estimated sizes cover the excess
+ * or maxEvictionsPerRun are invalidated. Invalidated sessions are freed by the next collection only,
+ * so no further sessions are evicted before it. Every decision is counted (see {@link Decision}),
+ * logged and, if configured, recorded in the {@link AuditLog}.
+ */
+public final class SessionFootprint {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SessionFootprint.class);
+
+	public static final String CONTEXT_ATTRIBUTE = SessionFootprint.class.getName();
+
+	/**
+	 * Type of the attributes of unknown size, because they could not be serialized
+	 */
+	public static final String NOT_SERIALIZABLE = "not serializable";
+
+	static final String VIEW_STATE = "ViewState";
+
+	/**
+	 * Session attribute registering the session again when the container activates it
+	 */
+	public static final String TRACKER_ATTRIBUTE = SessionFootprint.class.getName() + ".tracker";
+
+	// Mojarra's server side view state, see com.sun.faces.renderkit.ServerSideStateHelper
+	private static final String VIEW_STATE_ATTRIBUTE_PREFIX = "com.sun.faces.renderkit.ServerSideStateHelper";
+
+	/**
+	 * Outcome of an eviction check after a sample.
+	 */
+	public enum Decision {
+
+		/**
+		 * Heap pressure below the threshold, nothing evicted
+		 */
+		BELOW_THRESHOLD,
+
+		/**
+		 * Above the threshold, idle sessions evicted
+		 */
+		EVICTED,
+
+		/**
+		 * Above the threshold, but no session idle long enough
+		 */
+		NONE_IDLE,
+
+		/**
+		 * Above the threshold, but sessions were evicted and no garbage collection has run since
+		 */
+		AWAITING_GC;
+
+		public String label() {
+			return name().toLowerCase();
+		}
+	}
+
+	// sessions are identified by the instance, their id may change
+	private final Set<HttpSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<HttpSession, Boolean>());
+	private final long sampleIntervalNanos;
+	private final int evictionHeapPercent;
+	private final long minIdleMillis;
+	private final int maxEvictionsPerRun;
+	private final AuditLog auditLog;
+
+	private final MemoryPoolMXBean oldGeneration = oldGeneration();
+	private final List<GarbageCollectorMXBean> oldCollectors = collectors(oldGeneration);
+
+	// published by the sampler thread
+	private volatile Map<String, Long> bytesByType = Collections.emptyMap();
+	private volatile long sampledBytes;
+	private volatile double heapPressure;
+	private final AtomicLong[] decisions = new AtomicLong[Decision.values().length];
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong evictedBytes = new AtomicLong();
+
+	// owned by the sampler thread
+	private long collectionsAtEviction = -1;
+
+	private final Thread sampler;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates the footprint and starts its sampler thread.
+	 * @param sampleIntervalSeconds interval the sessions are sampled in
+	 * @param evictionHeapPercent heap pressure in percent above which idle sessions are evicted, 0 for never
+	 * @param minIdleSeconds time since the last request before a session may be evicted
+	 * @param maxEvictionsPerRun maximum number of sessions evicted after one sample
+	 * @param auditLog log eviction events are recorded in, or null
+	 */
+	public SessionFootprint(int sampleIntervalSeconds, int evictionHeapPercent, int minIdleSeconds, int maxEvictionsPerRun,
+			AuditLog auditLog) {
+		this.sampleIntervalNanos = TimeUnit.SECONDS.toNanos(sampleIntervalSeconds);
+		this.evictionHeapPercent = evictionHeapPercent;
+		this.minIdleMillis = TimeUnit.SECONDS.toMillis(minIdleSeconds);
+		this.maxEvictionsPerRun = maxEvictionsPerRun;
+		this.auditLog = auditLog;
+		for (int i = 0; i < decisions.length; i++) {
+			decisions[i] = new AtomicLong();
+		}
+		if (oldGeneration == null && evictionHeapPercent > 0) {
+			LOG.warn("No old generation memory pool found, idle sessions are not evicted");
+		}
+		sampler = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sampleLoop();
+			}
+		}, "session-footprint-sampler");
+		sampler.setDaemon(true);
+		sampler.start();
+	}
+
+	void sessionCreated(HttpSession session) {
+		sessions.add(session);
+		session.setAttribute(TRACKER_ATTRIBUTE, new ActivationTracker());
+	}
+
+	void sessionDestroyed(HttpSession session) {
+		sessions.remove(session);
+	}
+
+	private void sampleLoop() {
+		long nextSample = System.nanoTime() + sampleIntervalNanos;
+		while (running) {
+			LockSupport.parkNanos(this, nextSample - System.nanoTime());
+			if (!running || System.nanoTime() - nextSample < 0) {
+				continue;
+			}
+			try {
+				sample();
+			} catch (RuntimeException e) {
+				LOG.warn("Sampling the sessions failed", e);
+			}
+			nextSample = System.nanoTime() + sampleIntervalNanos;
+		}
+	}
+
+	/**
+	 * Measures all sessions and evicts idle ones if the heap pressure is above the threshold.
+	 */
+	void sample() {
+		CountingOutputStream counter = new CountingOutputStream();
+		Map<String, Long> bytes = new HashMap<String, Long>();
+		List<SessionSize> sizes = new ArrayList<SessionSize>(sessions.size());
+		long total = 0;
+		for (HttpSession session : sessions) {
+			try {
+				long sessionBytes = 0;
+				for (Enumeration<String> names = session.getAttributeNames(); names.hasMoreElements();) {
+					String name = names.nextElement();
+					Object value = session.getAttribute(name);
+					if (value == null || value instanceof ActivationTracker) {
+						continue;
+					}
+					long size = counter.serializedSize(value);
+					if (size == CountingOutputStream.MODIFIED) {
+						continue;
+					}
+					String type = size == CountingOutputStream.NOT_SERIALIZABLE ? NOT_SERIALIZABLE : type(name, value);
+					Long sum = bytes.get(type);
+					bytes.put(type, (sum == null ? 0 : sum) + Math.max(0, size));
+					sessionBytes += Math.max(0, size);
+				}
+				sizes.add(new SessionSize(session, session.getLastAccessedTime(), sessionBytes));
+				total += sessionBytes;
+			} catch (IllegalStateException e) {
+				// invalidated while sampled
+				sessions.remove(session);
+			}
+		}
+		bytesByType = Collections.unmodifiableMap(new TreeMap<String, Long>(bytes));
+		sampledBytes = total;
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("sampled " + sizes.size() + " sessions, " + total + " bytes: " + bytesByType);
+		}
+
+		if (oldGeneration != null) {
+			MemoryUsage usage = oldGeneration.getCollectionUsage();
+			long max = usage.getMax() > 0 ? usage.getMax() : Runtime.getRuntime().maxMemory();
+			heapPressure = (double) usage.getUsed() / max;
+			if (evictionHeapPercent > 0) {
+				evictIfNeeded(sizes, usage.getUsed(), max);
+			}
+		}
+	}
+
+	private void evictIfNeeded(List<SessionSize> sizes, long used, long max) {
+		long excess = used - max / 100 * evictionHeapPercent;
+		if (excess <= 0) {
+			decide(Decision.BELOW_THRESHOLD);
+			return;
+		}
+		long collections = collectionCount();
+		if (collections == collectionsAtEviction) {
+			decide(Decision.AWAITING_GC);
+			return;
+		}
+
+		Collections.sort(sizes, new Comparator<SessionSize>() {
+			@Override
+			public int compare(SessionSize a, SessionSize b) {
+				return Long.compare(a.lastAccessedTime, b.lastAccessedTime);
+			}
+		});
+		long idleBefore = System.currentTimeMillis() - minIdleMillis;
+		int count = 0;
+		long freed = 0;
+		for (SessionSize size : sizes) {
+			if (size.lastAccessedTime > idleBefore || count >= maxEvictionsPerRun || freed >= excess) {
+				break;
+			}
+			try {
+				size.session.invalidate();
+			} catch (IllegalStateException e) {
+				// invalidated meanwhile
+				continue;
+			}
+			count++;
+			freed += size.bytes;
+		}
+		if (count == 0) {
+			decide(Decision.NONE_IDLE);
+			LOG.warn("Heap pressure " + percent(heapPressure) + " above " + evictionHeapPercent + "%, but no session idle for "
+					+ TimeUnit.MILLISECONDS.toSeconds(minIdleMillis) + " s of " + sizes.size());
+			return;
+		}
+		collectionsAtEviction = collections;
+		evicted.addAndGet(count);
+		evictedBytes.addAndGet(freed);
+		decide(Decision.EVICTED);
+		String detail = count + " sessions, " + freed + " bytes, heap pressure " + percent(heapPressure);
+		LOG.warn("Evicted the longest idle " + detail);
+		if (auditLog != null) {
+			auditLog.event(AuditLog.TYPE_SESSIONS_EVICTED, detail);
+		}
+	}
+
+	private void decide(Decision decision) {
+		decisions[decision.ordinal()].incrementAndGet();
+	}
+
+	private static String percent(double ratio) {
+		return Math.round(ratio * 1000) / 10.0 + "%";
+	}
+
+	/**
+	 * @return the type an attribute is accounted for: the simple class name of the value or of the
+	 *         CDI bean it holds, {@link #VIEW_STATE} for the JSF view state
+	 */
+	static String type(String name, Object value) {
+		if (name.startsWith(VIEW_STATE_ATTRIBUTE_PREFIX)) {
+			return VIEW_STATE;
+		}
+		Object instance = value instanceof ContextualInstance ? ((ContextualInstance<?>) value).getInstance() : value;
+		String type = instance == null ? value.getClass().getName() : instance.getClass().getName();
+		// nested classes, Weld's proxies and subclasses are accounted for their outer class
+		int dollar = type.indexOf('$');
+		return type.substring(type.lastIndexOf('.') + 1, dollar < 0 ? type.length() : dollar);
+	}
+
+	private static MemoryPoolMXBean oldGeneration() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			// of the heap pools, only the old generation supports usage thresholds
+			if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported()) {
+				return pool;
+			}
+		}
+		return null;
+	}
+
+	private static List<GarbageCollectorMXBean> collectors(MemoryPoolMXBean pool) {
+		List<GarbageCollectorMXBean> collectors = new ArrayList<GarbageCollectorMXBean>();
+		if (pool != null) {
+			for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+				if (Arrays.asList(collector.getMemoryPoolNames()).contains(pool.getName())) {
+					collectors.add(collector);
+				}
+			}
+		}
+		return collectors;
+	}
+
+	private long collectionCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : oldCollectors) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * Stops the sampler thread.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(sampler);
+		try {
+			sampler.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of sessions on heap, without those passivated by the container
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return estimated serialized bytes per attribute type of the last sample, sorted by type
+	 */
+	public Map<String, Long> getBytesByType() {
+		return bytesByType;
+	}
+
+	/**
+	 * @return estimated serialized bytes of all sessions of the last sample
+	 */
+	public long getSampledBytes() {
+		return sampledBytes;
+	}
+
+	/**
+	 * @return used share of the old generation after the last collection, 0 to 1, as of the last sample
+	 */
+	public double getHeapPressure() {
+		return heapPressure;
+	}
+
+	/**
+	 * @return number of eviction checks with the decision
+	 */
+	public long getDecisionCount(Decision decision) {
+		return decisions[decision.ordinal()].get();
+	}
+
+	/**
+	 * @return number of sessions evicted
+	 */
+	public long getEvictedCount() {
+		return evicted.get();
+	}
+
+	/**
+	 * @return estimated serialized bytes of the sessions evicted
+	 */
+	public long getEvictedBytes() {
+		return evictedBytes.get();
+	}
+
+	/**
+	 * Registers its session with the footprint of the servlet context when the container activates
+	 * it and drops it when it is passivated. Stateless, so it survives any serialization.
+	 */
+	static final class ActivationTracker implements HttpSessionActivationListener, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void sessionDidActivate(HttpSessionEvent event) {
+			SessionFootprint footprint = footprint(event.getSession());
+			if (footprint != null) {
+				footprint.sessions.add(event.getSession());
+			}
+		}
+
+		@Override
+		public void sessionWillPassivate(HttpSessionEvent event) {
+			SessionFootprint footprint = footprint(event.getSession());
+			if (footprint != null) {
+				footprint.sessions.remove(event.getSession());
+			}
+		}
+
+		private static SessionFootprint footprint(HttpSession session) {
+			Object footprint = session.getServletContext().getAttribute(CONTEXT_ATTRIBUTE);
+			return footprint instanceof SessionFootprint ? (SessionFootprint) footprint : null;
+		}
+	}
+
+	private static final class SessionSize {
+
+		final HttpSession session;
+		final long lastAccessedTime;
+		final long bytes;
+
+		SessionSize(HttpSession session, long lastAccessedTime, long bytes) {
+			this.session = session;
+			this.lastAccessedTime = lastAccessedTime;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Discards what is written and counts the bytes.
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+
+		static final long NOT_SERIALIZABLE = -1;
+		static final long MODIFIED = -2;
+
+		private long count;
+
+		/**
+		 * @return serialized size of the value, {@link #NOT_SERIALIZABLE} or {@link #MODIFIED} if it
+		 *         was modified by a request while serialized
+		 */
+		long serializedSize(Object value) {
+			count = 0;
+			try {
+				ObjectOutputStream out = new ObjectOutputStream(this);
+				out.writeObject(value);
+				out.flush();
+				return count;
+			} catch (IOException e) {
+				return NOT_SERIALIZABLE;
+			} catch (RuntimeException e) {
+				return MODIFIED;
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package rmontag.jsfexample.common;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * Creates the {@link SessionFootprint} from the context params below, publishes it as context
+ * attribute {@link SessionFootprint#CONTEXT_ATTRIBUTE} for the {@link MetricsServlet} and registers
+ * the sessions with it. Must be declared after the {@link AuditLogListener} to record evictions in
+ * the audit log.
+ *
+ * Supported context params:
+ * <ul>
+ * <li>rmontag.jsfexample.SESSION_SAMPLE_INTERVAL_SECONDS - Interval the sessions are measured in, 0 to disable (Default: 30).</li>
+ * <li>rmontag.jsfexample.SESSION_EVICTION_HEAP_PERCENT - Used share of the old generation after a collection above which idle sessions are evicted, 0 for never (Default: 85).</li>
+ * <li>rmontag.jsfexample.SESSION_EVICTION_MIN_IDLE_SECONDS - Time since its last request before a session may be evicted (Default: 60).</li>
+ * <li>rmontag.jsfexample.SESSION_EVICTION_MAX_PER_RUN - Maximum number of sessions evicted after one sample (Default: 1000).</li>
+ * </ul>
+ */
+public class SessionFootprintListener implements ServletContextListener, HttpSessionListener {
+
+	public static final String CONTEXT_PARAM_SAMPLE_INTERVAL_SECONDS = "rmontag.jsfexample.SESSION_SAMPLE_INTERVAL_SECONDS";
+	public static final String CONTEXT_PARAM_EVICTION_HEAP_PERCENT = "rmontag.jsfexample.SESSION_EVICTION_HEAP_PERCENT";
+	public static final String CONTEXT_PARAM_EVICTION_MIN_IDLE_SECONDS = "rmontag.jsfexample.SESSION_EVICTION_MIN_IDLE_SECONDS";
+	public static final String CONTEXT_PARAM_EVICTION_MAX_PER_RUN = "rmontag.jsfexample.SESSION_EVICTION_MAX_PER_RUN";
+
+	private static final int DEFAULT_SAMPLE_INTERVAL_SECONDS = 30;
+	private static final int DEFAULT_EVICTION_HEAP_PERCENT = 85;
+	private static final int DEFAULT_EVICTION_MIN_IDLE_SECONDS = 60;
+	private static final int DEFAULT_EVICTION_MAX_PER_RUN = 1000;
+
+	private volatile SessionFootprint footprint;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		long start = System.nanoTime();
+		ServletContext context = event.getServletContext();
+		int sampleIntervalSeconds = InitParams.intParam(context, CONTEXT_PARAM_SAMPLE_INTERVAL_SECONDS, DEFAULT_SAMPLE_INTERVAL_SECONDS, 0, 86400);
+		int evictionHeapPercent = InitParams.intParam(context, CONTEXT_PARAM_EVICTION_HEAP_PERCENT, DEFAULT_EVICTION_HEAP_PERCENT, 0, 100);
+		int minIdleSeconds = InitParams.intParam(context, CONTEXT_PARAM_EVICTION_MIN_IDLE_SECONDS, DEFAULT_EVICTION_MIN_IDLE_SECONDS, 0, Integer.MAX_VALUE);
+		int maxPerRun = InitParams.intParam(context, CONTEXT_PARAM_EVICTION_MAX_PER_RUN, DEFAULT_EVICTION_MAX_PER_RUN, 1, Integer.MAX_VALUE);
+		if (sampleIntervalSeconds == 0) {
+			return;
+		}
+		Object auditLog = context.getAttribute(AuditLog.CONTEXT_ATTRIBUTE);
+		footprint = new SessionFootprint(sampleIntervalSeconds, evictionHeapPercent, minIdleSeconds, maxPerRun,
+				auditLog instanceof AuditLog ? (AuditLog) auditLog : null);
+		context.setAttribute(SessionFootprint.CONTEXT_ATTRIBUTE, footprint);
+		StartupTiming.getInstance().record("session footprint init", start);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		SessionFootprint current = footprint;
+		if (current != null) {
+			event.getServletContext().removeAttribute(SessionFootprint.CONTEXT_ATTRIBUTE);
+			current.shutdown();
+		}
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+		SessionFootprint current = footprint;
+		if (current != null) {
+			current.sessionCreated(event.getSession());
+		}
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+		SessionFootprint current = footprint;
+		if (current != null) {
+			current.sessionDestroyed(event.getSession());
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Hands the session of every request to the {@link SessionReplicator} published by the
+ * {@link SessionReplicationListener} once the rest of the filter chain has completed, so the delta
+ * contains all changes of the request. Passes requests through unchanged if sessions are not
+ * replicated.
+ *
+ * The request thread only encodes and compares the attributes; the delta is sent by the sender
+ * thread of the replicator.
+ */
+public class SessionReplicationFilter implements Filter {
+
+	private SessionReplicator replicator;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		Object attribute = filterConfig.getServletContext().getAttribute(SessionReplicator.CONTEXT_ATTRIBUTE);
+		replicator = attribute instanceof SessionReplicator ? (SessionReplicator) attribute : null;
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		if (replicator == null || !(request instanceof HttpServletRequest)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			HttpSession session = ((HttpServletRequest) request).getSession(false);
+			if (session != null) {
+				replicator.requestCompleted(session);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+}
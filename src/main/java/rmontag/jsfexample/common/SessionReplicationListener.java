@@ -0,0 +1,169 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.http.HttpSessionAttributeListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link SessionReplicator} from the context params below, publishes it as context
+ * attribute {@link SessionReplicator#CONTEXT_ATTRIBUTE} for the {@link SessionReplicationFilter} and
+ * the {@link MetricsServlet}, marks set and removed attributes and replicates invalidations.
+ *
+ * Supported context params:
+ * <ul>
+ * <li>rmontag.jsfexample.SESSION_REPLICATION_LISTEN - "host:port" the replicas of the peers are received on, sessions are not replicated without it (Default: none).</li>
+ * <li>rmontag.jsfexample.SESSION_REPLICATION_PEERS - Comma separated "host:port" of the peers the sessions are replicated to (Default: none).</li>
+ * <li>rmontag.jsfexample.SESSION_REPLICATION_BATCH_MILLIS - Interval the deltas are sent in (Default: 20).</li>
+ * <li>rmontag.jsfexample.SESSION_REPLICATION_QUEUE_CAPACITY - Maximum number of deltas waiting to be sent (Default: 16384).</li>
+ * <li>rmontag.jsfexample.SESSION_REPLICATION_COMPARE_EVERY - Average number of requests per measurement of the full session size, 0 for never (Default: 16).</li>
+ * <li>rmontag.jsfexample.SESSION_REPLICATION_MAX_REPLICAS - Maximum number of sessions of the peers tracked (Default: 100000).</li>
+ * </ul>
+ * The frames are authenticated with the env-entry {@link #KEY_ENV_ENTRY} (base64, at least 16 bytes, the
+ * same on all nodes), replication does not start without it.
+ *
+ * Replication only measures its cost (see {@link SessionReplicator}), so the application's web.xml
+ * registers neither this listener nor the filter; the load test adds both with loadtest.nodes &gt; 1.
+ */
+public class SessionReplicationListener implements ServletContextListener, HttpSessionListener, HttpSessionAttributeListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SessionReplicationListener.class);
+
+	public static final String CONTEXT_PARAM_LISTEN = "rmontag.jsfexample.SESSION_REPLICATION_LISTEN";
+	public static final String CONTEXT_PARAM_PEERS = "rmontag.jsfexample.SESSION_REPLICATION_PEERS";
+	public static final String CONTEXT_PARAM_BATCH_MILLIS = "rmontag.jsfexample.SESSION_REPLICATION_BATCH_MILLIS";
+	public static final String CONTEXT_PARAM_QUEUE_CAPACITY = "rmontag.jsfexample.SESSION_REPLICATION_QUEUE_CAPACITY";
+	public static final String CONTEXT_PARAM_COMPARE_EVERY = "rmontag.jsfexample.SESSION_REPLICATION_COMPARE_EVERY";
+	public static final String CONTEXT_PARAM_MAX_REPLICAS = "rmontag.jsfexample.SESSION_REPLICATION_MAX_REPLICAS";
+
+	public static final String KEY_ENV_ENTRY = "java:comp/env/rmontag.jsfexample/SessionReplicationKey";
+
+	private static final int DEFAULT_BATCH_MILLIS = 20;
+	private static final int DEFAULT_QUEUE_CAPACITY = 16384;
+	private static final int DEFAULT_COMPARE_EVERY = 16;
+	private static final int DEFAULT_MAX_REPLICAS = 100000;
+
+	private volatile SessionReplicator replicator;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		long start = System.nanoTime();
+		ServletContext context = event.getServletContext();
+		String listen = context.getInitParameter(CONTEXT_PARAM_LISTEN);
+		if (listen == null || listen.trim().isEmpty()) {
+			return;
+		}
+		InetSocketAddress listenAddress = address(listen.trim(), CONTEXT_PARAM_LISTEN);
+		List<InetSocketAddress> peers = new ArrayList<InetSocketAddress>();
+		String peersValue = context.getInitParameter(CONTEXT_PARAM_PEERS);
+		if (peersValue != null) {
+			for (String peer : peersValue.split(",")) {
+				if (!peer.trim().isEmpty()) {
+					peers.add(address(peer.trim(), CONTEXT_PARAM_PEERS));
+				}
+			}
+		}
+		int batchMillis = InitParams.intParam(context, CONTEXT_PARAM_BATCH_MILLIS, DEFAULT_BATCH_MILLIS, 1, 60000);
+		int queueCapacity = InitParams.intParam(context, CONTEXT_PARAM_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY, 1, 1 << 24);
+		int compareEvery = InitParams.intParam(context, CONTEXT_PARAM_COMPARE_EVERY, DEFAULT_COMPARE_EVERY, 0, Integer.MAX_VALUE);
+		int maxReplicas = InitParams.intParam(context, CONTEXT_PARAM_MAX_REPLICAS, DEFAULT_MAX_REPLICAS, 0, Integer.MAX_VALUE);
+
+		try {
+			replicator = new SessionReplicator(listenAddress, peers, batchMillis, queueCapacity, compareEvery, maxReplicas,
+					lookupKey());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to listen for session replicas on " + listenAddress, e);
+		}
+		context.setAttribute(SessionReplicator.CONTEXT_ATTRIBUTE, replicator);
+		LOG.info("Receiving session replicas on " + replicator.getListenAddress() + ", replicating to " + peers);
+		StartupTiming.getInstance().record("session replication init", start);
+	}
+
+	private static SecretKey lookupKey() {
+		Object value;
+		try {
+			value = new InitialContext().lookup(KEY_ENV_ENTRY);
+		} catch (NamingException e) {
+			value = null;
+		}
+		if (value == null) {
+			throw new IllegalStateException("No key found at " + KEY_ENV_ENTRY + ", session replication requires a key shared by all nodes");
+		}
+		return SessionReplicator.key(Base64.getDecoder().decode(value.toString().trim()));
+	}
+
+	private static InetSocketAddress address(String value, String name) {
+		int colon = value.lastIndexOf(':');
+		try {
+			if (colon > 0) {
+				int port = Integer.parseInt(value.substring(colon + 1));
+				if (port >= 0 && port <= 65535) {
+					return new InetSocketAddress(value.substring(0, colon), port);
+				}
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("An invalid value [" + value + "] was specified for " + name);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		SessionReplicator current = replicator;
+		if (current != null) {
+			event.getServletContext().removeAttribute(SessionReplicator.CONTEXT_ATTRIBUTE);
+			current.shutdown();
+			LOG.info("Session replication stopped, " + current.getRequestCount() + " requests, " + current.getDeltaBytes()
+					+ " delta bytes, " + current.getDroppedCount() + " deltas dropped");
+		}
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+		SessionReplicator current = replicator;
+		if (current != null) {
+			current.sessionDestroyed(event.getSession());
+		}
+	}
+
+	@Override
+	public void attributeAdded(HttpSessionBindingEvent event) {
+		attributeChanged(event);
+	}
+
+	@Override
+	public void attributeRemoved(HttpSessionBindingEvent event) {
+		attributeChanged(event);
+	}
+
+	@Override
+	public void attributeReplaced(HttpSessionBindingEvent event) {
+		attributeChanged(event);
+	}
+
+	private void attributeChanged(HttpSessionBindingEvent event) {
+		SessionReplicator current = replicator;
+		if (current != null) {
+			current.attributeChanged(event.getSession(), event.getName());
+		}
+	}
+}
@@ -0,0 +1,1105 @@
+package rmontag.jsfexample.common;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpSession;
+
+import org.jboss.weld.context.api.ContextualInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replicates the sessions of this node to its peers as deltas and keeps the replicas of the
+ * sessions of the peers.
+ *
+ * After each request the {@link SessionReplicationFilter} hands the session to
+ * {@link #requestCompleted(HttpSession)}, which compares its attributes with a shadow of what has
+ * been replicated so far, encoded with the {@link SessionDeltaCodec}:
+ * <ul>
+ * <li>Beans, also the instances of @SessionScoped CDI beans such as {@link Hello}, are compared
+ * field by field, only changed fields are replicated.</li>
+ * <li>Maps, e.g. the logical views of the JSF server state, are compared entry by entry.</li>
+ * <li>Other values are replicated as a whole.</li>
+ * </ul>
+ * Maps and other values are only compared if they have been set since their last replication
+ * (see {@link SessionReplicationListener}), as they may be expensive to encode; a bean is compared
+ * after every request, as its fields change without a call of setAttribute.
+ *
+ * The deltas are queued without blocking (a full queue drops the delta and replicates the whole
+ * session with its next request) and sent by one daemon thread in frames of the deltas queued
+ * within the batch interval, one write per peer and frame, over TCP. A peer that (re)connects only
+ * receives the sessions changed from then on, each replicated as a whole with its next change.
+ *
+ * A frame is an int length, the HMAC-SHA256 under the key shared by all nodes, a version byte and
+ * the deltas: session id, type (update, full, invalidate), max inactive interval and the attribute
+ * operations. Names go through the string table of the frame, so the attribute names repeated in a
+ * batch are written once. The receiver starts each connection with a random nonce of
+ * {@link #NONCE_LENGTH} bytes; the MAC covers the nonce, the sequence number of the frame on the
+ * connection (not sent) and the rest of the frame, so a frame captured on one connection is not
+ * accepted again, neither on that nor on another one. A sender starts each connection with a frame
+ * without deltas, so the receiver can tell a peer from any other client right away.
+ *
+ * The peers' sessions are received by one thread per connection, at most {@link #MAX_CONNECTIONS}.
+ * A frame is authenticated before anything of it is parsed; a frame longer than
+ * {@link #MAX_FRAME_BYTES}, failing authentication or malformed closes the connection, as does a
+ * connection without an authenticated frame within {@link #AUTHENTICATION_TIMEOUT_MILLIS}.
+ *
+ * This is a measurement tool for the cost of keeping peers up to date, not a replication layer with
+ * fail-over: the deltas received are validated and skipped, a replica is only the id of a session
+ * of a peer with its expiry (max inactive interval without an update), and at most maxReplicas of
+ * them are tracked. No value received is ever decoded, in particular nothing is deserialized or
+ * loaded by class name. As the shadows of all sessions stay on heap, the application's web.xml does
+ * not register it; the load test adds the {@link SessionReplicationListener} and the
+ * {@link SessionReplicationFilter} to its nodes with loadtest.nodes &gt; 1.
+ *
+ * For the comparison with full-session replication, the Java serialized size of the whole session
+ * (as sent by Tomcat's DeltaManager or BackupManager) is measured for every compareEvery-th request
+ * on average, together with the bytes of its delta. The sender thread measures it, not the request
+ * thread; a session invalidated or modified meanwhile may not be measured.
+ */
+public final class SessionReplicator {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SessionReplicator.class);
+
+	public static final String CONTEXT_ATTRIBUTE = SessionReplicator.class.getName();
+
+	static final byte VERSION = 1;
+
+	static final byte SESSION_UPDATE = 1;
+	static final byte SESSION_FULL = 2;
+	static final byte SESSION_INVALIDATE = 3;
+	// queued for the measurement of the full session size only, not sent
+	private static final byte SESSION_MEASURE = 0;
+
+	static final byte OP_REMOVE = 0;
+	static final byte OP_FIELDS = 1;
+	static final byte OP_MAP = 2;
+	static final byte OP_VALUE = 3;
+
+	// a frame is sent once it exceeds this size, even within the batch interval
+	static final int FRAME_BYTES = 64 * 1024;
+	// longest frame accepted, a delta that would make a frame longer is not replicated
+	static final int MAX_FRAME_BYTES = 4 * 1024 * 1024;
+	private static final int MAX_DELTA_BYTES = MAX_FRAME_BYTES - FRAME_BYTES - 1024;
+	static final int MAX_CONNECTIONS = 16;
+	static final int AUTHENTICATION_TIMEOUT_MILLIS = 10000;
+
+	static final String MAC_ALGORITHM = "HmacSHA256";
+	static final int MAC_LENGTH = 32;
+	static final int NONCE_LENGTH = 16;
+	// length and MAC, followed by the authenticated part starting with the version
+	private static final int HEADER_BYTES = 4 + MAC_LENGTH;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+	private static final long RECONNECT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final long EXPIRY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final ConcurrentMap<String, Shadow> shadows = new ConcurrentHashMap<String, Shadow>();
+	private final BoundedRingQueue<Delta> queue;
+	private final List<Peer> peers = new ArrayList<Peer>();
+	// bumped when a peer connects, a shadow of an older epoch is replicated as a whole
+	private volatile int epoch;
+	private final long batchNanos;
+	private final int compareEvery;
+
+	private final SecretKey key;
+	private final SecureRandom random = new SecureRandom();
+	private final ServerSocket serverSocket;
+	private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+	private final ConcurrentMap<String, Replica> replicas = new ConcurrentHashMap<String, Replica>();
+	private final int maxReplicas;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder deltaBytes = new LongAdder();
+	private final LongAdder sampledRequests = new LongAdder();
+	private final LongAdder sampledDeltaBytes = new LongAdder();
+	private final LongAdder sampledFullBytes = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder notReplicable = new LongAdder();
+	private final LongAdder tooLarge = new LongAdder();
+	private final LongAdder replicaLimit = new LongAdder();
+	private final LongAdder rejectedFrames = new LongAdder();
+	private final LongAdder rejectedConnections = new LongAdder();
+	private final LongAdder framesSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder framesReceived = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+
+	private final Thread sender;
+	private final Thread acceptor;
+	private volatile boolean running = true;
+
+	/**
+	 * Starts listening for peers and the sender thread.
+	 * @param listen address the replicas of the peers are received on
+	 * @param peerAddresses addresses of the peers the sessions of this node are replicated to
+	 * @param batchMillis interval the queued deltas are sent in
+	 * @param queueCapacity maximum number of queued deltas, rounded up to a power of two
+	 * @param compareEvery average number of requests per measurement of the full session size, 0 for never
+	 * @param maxReplicas maximum number of sessions of the peers tracked, updates of further sessions are skipped
+	 * @param key key shared by all nodes authenticating the frames, see {@link #key(byte[])}
+	 */
+	public SessionReplicator(InetSocketAddress listen, List<InetSocketAddress> peerAddresses, int batchMillis,
+			int queueCapacity, int compareEvery, int maxReplicas, SecretKey key) throws IOException {
+		if (batchMillis < 1) {
+			throw new IllegalArgumentException("An invalid value [" + batchMillis + "] was specified for batchMillis");
+		}
+		if (compareEvery < 0) {
+			throw new IllegalArgumentException("An invalid value [" + compareEvery + "] was specified for compareEvery");
+		}
+		if (maxReplicas < 0) {
+			throw new IllegalArgumentException("An invalid value [" + maxReplicas + "] was specified for maxReplicas");
+		}
+		this.queue = new BoundedRingQueue<Delta>(queueCapacity);
+		for (InetSocketAddress address : peerAddresses) {
+			peers.add(new Peer(address));
+		}
+		this.batchNanos = TimeUnit.MILLISECONDS.toNanos(batchMillis);
+		this.compareEvery = compareEvery;
+		this.maxReplicas = maxReplicas;
+		this.key = key;
+		// fails here rather than in the threads if the key does not fit
+		mac();
+
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(listen);
+		acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "session-replication-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				send();
+			}
+		}, "session-replication-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * @param bytes at least 16 bytes, e.g. shared by all nodes of a cluster
+	 * @return HMAC-SHA256 key of the given bytes
+	 */
+	public static SecretKey key(byte[] bytes) {
+		if (bytes.length < 16) {
+			throw new IllegalArgumentException("An invalid key length [" + bytes.length + "] was specified, at least 16 bytes are required");
+		}
+		return new SecretKeySpec(bytes, MAC_ALGORITHM);
+	}
+
+	/**
+	 * @return a new Mac with the key, one per thread
+	 */
+	private Mac mac() {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalArgumentException("Unable to authenticate frames with the key", e);
+		}
+	}
+
+	/**
+	 * Marks an attribute as set or removed, so its value is compared after the request.
+	 */
+	public void attributeChanged(HttpSession session, String name) {
+		// without shadow, all attributes are compared anyway
+		Shadow shadow = shadows.get(session.getId());
+		if (shadow != null) {
+			synchronized (shadow) {
+				shadow.dirty.add(name);
+			}
+		}
+	}
+
+	/**
+	 * Queues the delta of the session since its last replication.
+	 * @param session session used by the request, not invalidated
+	 */
+	public void requestCompleted(HttpSession session) {
+		String id = session.getId();
+		Shadow shadow = shadow(id);
+		boolean measure = compareEvery > 0 && ThreadLocalRandom.current().nextInt(compareEvery) == 0;
+		Delta delta;
+		try {
+			synchronized (shadow) {
+				delta = delta(id, shadow, session);
+			}
+		} catch (IllegalStateException e) {
+			// invalidated meanwhile, replicated by sessionDestroyed
+			return;
+		}
+		requests.increment();
+		if (delta == null) {
+			if (measure) {
+				// a full queue skips the measurement
+				queue.offer(new Delta(id, SESSION_MEASURE, 0, Collections.<Op> emptyList()).measure(session));
+			}
+			return;
+		}
+		if (measure) {
+			delta.measure(session);
+		}
+		if (delta.size() > MAX_DELTA_BYTES) {
+			// tried again as a whole with the next request
+			tooLarge.increment();
+			synchronized (shadow) {
+				shadow.epoch = -1;
+			}
+			return;
+		}
+		if (!queue.offer(delta)) {
+			dropped.increment();
+			synchronized (shadow) {
+				shadow.epoch = -1;
+			}
+		}
+	}
+
+	/**
+	 * Queues the invalidation of the replicas of the session.
+	 */
+	public void sessionDestroyed(HttpSession session) {
+		String id = session.getId();
+		shadows.remove(id);
+		if (!queue.offer(new Delta(id, SESSION_INVALIDATE, 0, Collections.<Op> emptyList()))) {
+			dropped.increment();
+		}
+	}
+
+	private Shadow shadow(String id) {
+		Shadow shadow = shadows.get(id);
+		if (shadow == null) {
+			shadow = new Shadow();
+			Shadow existing = shadows.putIfAbsent(id, shadow);
+			if (existing != null) {
+				shadow = existing;
+			}
+		}
+		return shadow;
+	}
+
+	/**
+	 * @return the delta of the session, null if nothing changed
+	 */
+	private Delta delta(String id, Shadow shadow, HttpSession session) {
+		int currentEpoch = epoch;
+		boolean full = shadow.epoch != currentEpoch;
+		if (full) {
+			shadow.attributes.clear();
+			shadow.epoch = currentEpoch;
+		}
+		List<Op> ops = new ArrayList<Op>();
+		Set<String> names = new HashSet<String>();
+		Enumeration<String> attributeNames = session.getAttributeNames();
+		while (attributeNames.hasMoreElements()) {
+			String name = attributeNames.nextElement();
+			names.add(name);
+			Object value = session.getAttribute(name);
+			try {
+				Op op = diff(shadow, name, value, full || shadow.dirty.contains(name));
+				if (op != null) {
+					ops.add(op);
+				}
+			} catch (IOException | RuntimeException e) {
+				// not serializable, or modified by a concurrent request while encoded
+				shadow.attributes.remove(name);
+				notReplicable.increment();
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("attribute " + name + " of a session not replicated: " + e);
+				}
+			}
+		}
+		for (Iterator<String> replicated = shadow.attributes.keySet().iterator(); replicated.hasNext();) {
+			String name = replicated.next();
+			if (!names.contains(name)) {
+				ops.add(new Op(OP_REMOVE, name, null, null));
+				replicated.remove();
+			}
+		}
+		shadow.dirty.clear();
+		if (!full && ops.isEmpty()) {
+			return null;
+		}
+		return new Delta(id, full ? SESSION_FULL : SESSION_UPDATE, session.getMaxInactiveInterval(), ops);
+	}
+
+	/**
+	 * @return the operation replicating the attribute, null if it has not changed
+	 */
+	private static Op diff(Shadow shadow, String name, Object value, boolean set) throws IOException {
+		EncodedAttribute previous = shadow.attributes.get(name);
+		Object bean = value instanceof ContextualInstance ? ((ContextualInstance<?>) value).getInstance() : value;
+		Field[] fields = bean == null ? null : SessionDeltaCodec.fields(bean.getClass());
+		if (fields != null && fields.length > 0) {
+			String className = bean.getClass().getName();
+			byte[][] encoded = SessionDeltaCodec.encodeFields(bean, fields);
+			boolean all = previous == null || previous.kind != OP_FIELDS || !className.equals(previous.className);
+			SessionDeltaCodec.Buffer changes = new SessionDeltaCodec.Buffer(64);
+			int changed = 0;
+			for (int i = 0; i < encoded.length; i++) {
+				if (all || !Arrays.equals(previous.fields[i], encoded[i])) {
+					changes.writeVarLong(i);
+					changes.write(encoded[i]);
+					changed++;
+				}
+			}
+			if (changed == 0) {
+				return null;
+			}
+			shadow.attributes.put(name, EncodedAttribute.fields(className, encoded));
+			SessionDeltaCodec.Buffer payload = new SessionDeltaCodec.Buffer(changes.position() + 8);
+			payload.writeVarLong(encoded.length);
+			payload.writeVarLong(changed);
+			payload.write(changes.array(), 0, changes.position());
+			return new Op(OP_FIELDS, name, className, payload.toByteArray());
+		}
+		if (previous != null && !set) {
+			return null;
+		}
+		if (value instanceof Map) {
+			String className = value.getClass().getName();
+			Map<String, byte[]> entries = SessionDeltaCodec.encodeEntries((Map<?, ?>) value);
+			boolean all = previous == null || previous.kind != OP_MAP || !className.equals(previous.className);
+			SessionDeltaCodec.Buffer puts = new SessionDeltaCodec.Buffer(256);
+			int putCount = 0;
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				if (all || !Arrays.equals(previous.entries.get(entry.getKey()), entry.getValue())) {
+					puts.write(EncodedAttribute.keyBytes(entry.getKey()));
+					puts.write(entry.getValue());
+					putCount++;
+				}
+			}
+			SessionDeltaCodec.Buffer removes = new SessionDeltaCodec.Buffer(16);
+			int removeCount = 0;
+			if (!all) {
+				for (String key : previous.entries.keySet()) {
+					if (!entries.containsKey(key)) {
+						removes.write(EncodedAttribute.keyBytes(key));
+						removeCount++;
+					}
+				}
+			}
+			if (!all && putCount == 0 && removeCount == 0) {
+				return null;
+			}
+			shadow.attributes.put(name, EncodedAttribute.entries(className, entries));
+			SessionDeltaCodec.Buffer payload = new SessionDeltaCodec.Buffer(puts.position() + removes.position() + 16);
+			payload.write(all ? 1 : 0);
+			payload.writeVarLong(putCount);
+			payload.write(puts.array(), 0, puts.position());
+			payload.writeVarLong(removeCount);
+			payload.write(removes.array(), 0, removes.position());
+			return new Op(OP_MAP, name, className, payload.toByteArray());
+		}
+		byte[] encoded = SessionDeltaCodec.encodeValue(value);
+		if (previous != null && previous.kind == OP_VALUE && Arrays.equals(previous.value, encoded)) {
+			return null;
+		}
+		shadow.attributes.put(name, EncodedAttribute.value(encoded));
+		return new Op(OP_VALUE, name, null, encoded);
+	}
+
+	/**
+	 * @return the Java serialized size of all attributes, as written by full-session replication, -1 if
+	 *         the session cannot be serialized, has been invalidated or was modified while serialized
+	 */
+	private static long fullSize(HttpSession session) {
+		CountingOutputStream counter = new CountingOutputStream();
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(counter);
+			Enumeration<String> names = session.getAttributeNames();
+			while (names.hasMoreElements()) {
+				String name = names.nextElement();
+				out.writeObject(name);
+				out.writeObject(session.getAttribute(name));
+			}
+			out.flush();
+			return counter.count;
+		} catch (IOException | RuntimeException e) {
+			return -1;
+		}
+	}
+
+	private void send() {
+		Mac mac = mac();
+		SessionDeltaCodec.Buffer frame = new SessionDeltaCodec.Buffer(FRAME_BYTES + 1024);
+		SessionDeltaCodec.Buffer hello = new SessionDeltaCodec.Buffer(HEADER_BYTES + 1);
+		startFrame(hello);
+		for (Peer peer : peers) {
+			peer.hello = hello;
+		}
+		long nextExpiry = System.nanoTime() + EXPIRY_INTERVAL_NANOS;
+		while (running) {
+			long start = System.nanoTime();
+			drain(frame, mac);
+			if (start - nextExpiry > 0) {
+				expireReplicas();
+				nextExpiry = start + EXPIRY_INTERVAL_NANOS;
+			}
+			LockSupport.parkNanos(this, batchNanos - (System.nanoTime() - start));
+		}
+		drain(frame, mac);
+		for (Peer peer : peers) {
+			peer.close();
+		}
+	}
+
+	private static void startFrame(SessionDeltaCodec.Buffer frame) {
+		frame.reset();
+		frame.writeInt(0);
+		frame.write(new byte[MAC_LENGTH]);
+		frame.write(VERSION);
+	}
+
+	/**
+	 * Sets the length and the MAC of the frame.
+	 * @param nonce nonce the receiver started the connection with
+	 * @param sequence number of the frame on the connection, 0 for the first
+	 */
+	static void seal(SessionDeltaCodec.Buffer frame, Mac mac, byte[] nonce, long sequence) {
+		frame.setInt(0, frame.position() - 4);
+		updateMac(mac, nonce, sequence);
+		mac.update(frame.array(), HEADER_BYTES, frame.position() - HEADER_BYTES);
+		try {
+			mac.doFinal(frame.array(), 4);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("The MAC does not fit into the frame", e);
+		}
+	}
+
+	private static void updateMac(Mac mac, byte[] nonce, long sequence) {
+		mac.update(nonce);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			mac.update((byte) (sequence >>> shift));
+		}
+	}
+
+	/**
+	 * Sends the queued deltas in frames of up to about {@link #FRAME_BYTES}.
+	 */
+	private void drain(SessionDeltaCodec.Buffer frame, Mac mac) {
+		boolean started = false;
+		for (Delta delta = queue.poll(); delta != null; delta = queue.poll()) {
+			long fullBytes = delta.session == null ? -1 : fullSize(delta.session);
+			if (delta.type == SESSION_MEASURE) {
+				if (fullBytes >= 0) {
+					sampledRequests.increment();
+					sampledFullBytes.add(fullBytes);
+				}
+				continue;
+			}
+			if (!started) {
+				startFrame(frame);
+				started = true;
+			}
+			int start = frame.position();
+			write(frame, delta);
+			int length = frame.position() - start;
+			deltaBytes.add(length);
+			if (fullBytes >= 0) {
+				sampledRequests.increment();
+				sampledDeltaBytes.add(length);
+				sampledFullBytes.add(fullBytes);
+			}
+			if (frame.position() >= FRAME_BYTES) {
+				sendFrame(frame, mac);
+				started = false;
+			}
+		}
+		if (started) {
+			sendFrame(frame, mac);
+		}
+	}
+
+	private void sendFrame(SessionDeltaCodec.Buffer frame, Mac mac) {
+		for (Peer peer : peers) {
+			if (peer.write(frame, mac)) {
+				framesSent.increment();
+				bytesSent.add(frame.position());
+			}
+		}
+	}
+
+	private static void write(SessionDeltaCodec.Buffer frame, Delta delta) {
+		frame.writeName(delta.sessionId);
+		frame.write(delta.type);
+		if (delta.type == SESSION_INVALIDATE) {
+			return;
+		}
+		frame.writeVarLong(SessionDeltaCodec.zigzag(delta.maxInactiveInterval));
+		frame.writeVarLong(delta.ops.size());
+		for (Op op : delta.ops) {
+			frame.write(op.kind);
+			frame.writeName(op.name);
+			if (op.className != null) {
+				frame.writeName(op.className);
+			}
+			if (op.payload != null) {
+				frame.write(op.payload);
+			}
+		}
+	}
+
+	private void accept() {
+		while (running) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (running) {
+					LOG.warn("Accepting a replication connection failed", e);
+				}
+				continue;
+			}
+			if (connections.size() >= MAX_CONNECTIONS) {
+				rejectedConnections.increment();
+				LOG.warn("Replication connection from " + socket.getRemoteSocketAddress() + " rejected, " + MAX_CONNECTIONS
+						+ " connections open");
+				close(socket);
+				continue;
+			}
+			connections.add(socket);
+			Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					receive(socket);
+				}
+			}, "session-replication-reader-" + socket.getRemoteSocketAddress());
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	private void receive(Socket socket) {
+		Mac mac = mac();
+		byte[] expected = new byte[MAC_LENGTH];
+		byte[] nonce = new byte[NONCE_LENGTH];
+		random.nextBytes(nonce);
+		try {
+			socket.setSoTimeout(AUTHENTICATION_TIMEOUT_MILLIS);
+			socket.getOutputStream().write(nonce);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), FRAME_BYTES));
+			for (long sequence = 0;; sequence++) {
+				int length = in.readInt();
+				if (length <= MAC_LENGTH || length > MAX_FRAME_BYTES - 4) {
+					rejectedFrames.increment();
+					throw new IOException("An invalid frame length [" + length + "] was received");
+				}
+				byte[] frame = new byte[length];
+				in.readFully(frame);
+				updateMac(mac, nonce, sequence);
+				mac.update(frame, MAC_LENGTH, length - MAC_LENGTH);
+				mac.doFinal(expected, 0);
+				if (!MessageDigest.isEqual(expected, Arrays.copyOf(frame, MAC_LENGTH))) {
+					rejectedFrames.increment();
+					throw new IOException("A frame failing authentication was received");
+				}
+				if (sequence == 0) {
+					socket.setSoTimeout(0);
+				}
+				framesReceived.increment();
+				bytesReceived.add(length + 4);
+				try {
+					apply(frame, MAC_LENGTH, length - MAC_LENGTH);
+				} catch (IOException e) {
+					rejectedFrames.increment();
+					throw e;
+				}
+			}
+		} catch (SocketTimeoutException e) {
+			LOG.warn("Replication connection from " + socket.getRemoteSocketAddress() + " closed, no authenticated frame within "
+					+ AUTHENTICATION_TIMEOUT_MILLIS + " ms");
+		} catch (EOFException | SocketException e) {
+			// closed by the peer or by shutdown
+		} catch (IOException | GeneralSecurityException e) {
+			LOG.warn("Receiving replicas from " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+		} finally {
+			connections.remove(socket);
+			close(socket);
+		}
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Validates the deltas of an authenticated frame and tracks the sessions they name: a replica
+	 * is created, refreshed or removed per delta, the attribute operations are skipped undecoded.
+	 * @param offset start of the version byte
+	 * @throws IOException if the frame is malformed, the deltas before the error are tracked
+	 */
+	void apply(byte[] frame, int offset, int length) throws IOException {
+		SessionDeltaCodec.Reader reader = new SessionDeltaCodec.Reader(frame, offset, length);
+		byte version = reader.readByte();
+		if (version != VERSION) {
+			throw new IOException("An invalid frame version [" + version + "] was received");
+		}
+		while (reader.hasRemaining()) {
+			String id = reader.readName();
+			byte type = reader.readByte();
+			if (type == SESSION_INVALIDATE) {
+				replicas.remove(id);
+				continue;
+			}
+			if (type != SESSION_UPDATE && type != SESSION_FULL) {
+				throw new IOException("An invalid session delta type [" + type + "] was received");
+			}
+			int maxInactiveInterval = (int) SessionDeltaCodec.unzigzag(reader.readVarLong());
+			for (long count = reader.readVarLong(); count > 0; count--) {
+				skip(reader);
+			}
+			Replica replica = replicas.get(id);
+			if (replica == null) {
+				if (replicas.size() >= maxReplicas) {
+					replicaLimit.increment();
+					continue;
+				}
+				replica = new Replica();
+				Replica existing = replicas.putIfAbsent(id, replica);
+				if (existing != null) {
+					replica = existing;
+				}
+			}
+			synchronized (replica) {
+				replica.maxInactiveInterval = maxInactiveInterval;
+				replica.updated = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Validates and skips an attribute operation, without decoding its values.
+	 */
+	private static void skip(SessionDeltaCodec.Reader reader) throws IOException {
+		byte kind = reader.readByte();
+		reader.readName();
+		switch (kind) {
+		case OP_REMOVE:
+			break;
+		case OP_FIELDS: {
+			reader.readName();
+			long fieldCount = reader.readVarLong();
+			for (long changed = reader.readVarLong(); changed > 0; changed--) {
+				long index = reader.readVarLong();
+				if (index < 0 || index >= fieldCount) {
+					throw new IOException("An invalid field index [" + index + "] was received");
+				}
+				reader.skipValue();
+			}
+			break;
+		}
+		case OP_MAP: {
+			reader.readName();
+			reader.readByte();
+			for (long puts = reader.readVarLong(); puts > 0; puts--) {
+				reader.skipValue();
+				reader.skipValue();
+			}
+			for (long removes = reader.readVarLong(); removes > 0; removes--) {
+				reader.skipValue();
+			}
+			break;
+		}
+		case OP_VALUE:
+			reader.skipValue();
+			break;
+		default:
+			throw new IOException("An invalid operation [" + kind + "] was received");
+		}
+	}
+
+	private void expireReplicas() {
+		long now = System.nanoTime();
+		for (Iterator<Replica> iterator = replicas.values().iterator(); iterator.hasNext();) {
+			Replica replica = iterator.next();
+			synchronized (replica) {
+				if (replica.maxInactiveInterval > 0
+						&& now - replica.updated > TimeUnit.SECONDS.toNanos(replica.maxInactiveInterval)) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the queued deltas and stops the threads.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(sender);
+		try {
+			sender.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			LOG.warn("Closing the replication listener failed", e);
+		}
+		for (Socket socket : connections) {
+			close(socket);
+		}
+	}
+
+	/**
+	 * @return the address the replicas are received on
+	 */
+	public InetSocketAddress getListenAddress() {
+		return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+	}
+
+	/**
+	 * @return number of requests whose session has been compared with its shadow
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return bytes of all deltas sent, once per frame regardless of the number of peers
+	 */
+	public long getDeltaBytes() {
+		return deltaBytes.sum();
+	}
+
+	/**
+	 * @return number of requests the full session size has been measured for
+	 */
+	public long getSampledRequestCount() {
+		return sampledRequests.sum();
+	}
+
+	/**
+	 * @return bytes of the deltas of the sampled requests
+	 */
+	public long getSampledDeltaBytes() {
+		return sampledDeltaBytes.sum();
+	}
+
+	/**
+	 * @return Java serialized bytes of the whole sessions of the sampled requests
+	 */
+	public long getSampledFullBytes() {
+		return sampledFullBytes.sum();
+	}
+
+	/**
+	 * @return number of deltas dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return number of attribute values that could not be encoded
+	 */
+	public long getNotReplicableCount() {
+		return notReplicable.sum();
+	}
+
+	/**
+	 * @return number of deltas not replicated because they exceed the frame size limit
+	 */
+	public long getTooLargeCount() {
+		return tooLarge.sum();
+	}
+
+	/**
+	 * @return number of session updates of the peers skipped because maxReplicas sessions are tracked
+	 */
+	public long getReplicaLimitCount() {
+		return replicaLimit.sum();
+	}
+
+	/**
+	 * @return number of frames received that were too long, failed authentication or were malformed
+	 */
+	public long getRejectedFrames() {
+		return rejectedFrames.sum();
+	}
+
+	/**
+	 * @return number of connections closed right away because MAX_CONNECTIONS were open
+	 */
+	public long getRejectedConnections() {
+		return rejectedConnections.sum();
+	}
+
+	public long getFramesSent() {
+		return framesSent.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getFramesReceived() {
+		return framesReceived.sum();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	/**
+	 * @return number of sessions of the peers replicated to this node, known by id only
+	 */
+	public int getReplicaCount() {
+		return replicas.size();
+	}
+
+	/**
+	 * Connection to a peer, used by the sender thread only.
+	 */
+	private final class Peer {
+
+		private final InetSocketAddress address;
+		// frame without deltas, sent first on each connection
+		SessionDeltaCodec.Buffer hello;
+		private Socket socket;
+		private OutputStream out;
+		private final byte[] nonce = new byte[NONCE_LENGTH];
+		private long sequence;
+		private long nextConnect = System.nanoTime();
+
+		Peer(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		/**
+		 * Seals the frame for the connection and writes it.
+		 * @return false if the peer is not connected
+		 */
+		boolean write(SessionDeltaCodec.Buffer frame, Mac mac) {
+			if (out == null) {
+				if (System.nanoTime() - nextConnect < 0) {
+					return false;
+				}
+				try {
+					socket = new Socket();
+					socket.setTcpNoDelay(true);
+					socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+					socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+					new DataInputStream(socket.getInputStream()).readFully(nonce);
+					out = socket.getOutputStream();
+					sequence = 0;
+					seal(hello, mac, nonce, sequence++);
+					out.write(hello.array(), 0, hello.position());
+					epoch++;
+					LOG.info("Replicating sessions to " + address);
+				} catch (IOException e) {
+					close();
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("connecting to " + address + " failed: " + e);
+					}
+					return false;
+				}
+			}
+			try {
+				seal(frame, mac, nonce, sequence++);
+				out.write(frame.array(), 0, frame.position());
+				return true;
+			} catch (IOException e) {
+				LOG.warn("Replicating sessions to " + address + " failed: " + e);
+				close();
+				return false;
+			}
+		}
+
+		void close() {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// nothing to do
+				}
+			}
+			socket = null;
+			out = null;
+			nextConnect = System.nanoTime() + RECONNECT_INTERVAL_NANOS;
+		}
+	}
+
+	/**
+	 * What has been replicated of a session, guarded by itself.
+	 */
+	private static final class Shadow {
+
+		final Map<String, EncodedAttribute> attributes = new HashMap<String, EncodedAttribute>();
+		// attributes set or removed since the last delta
+		final Set<String> dirty = new HashSet<String>();
+		int epoch = -1;
+	}
+
+	/**
+	 * A session of a peer, guarded by itself.
+	 */
+	private static final class Replica {
+
+		int maxInactiveInterval;
+		long updated;
+	}
+
+	/**
+	 * An attribute as replicated: the encoded fields of a bean, entries of a map or a value.
+	 */
+	private static final class EncodedAttribute {
+
+		final byte kind;
+		final String className;
+		final byte[][] fields;
+		final Map<String, byte[]> entries;
+		final byte[] value;
+
+		private EncodedAttribute(byte kind, String className, byte[][] fields, Map<String, byte[]> entries, byte[] value) {
+			this.kind = kind;
+			this.className = className;
+			this.fields = fields;
+			this.entries = entries;
+			this.value = value;
+		}
+
+		static EncodedAttribute fields(String className, byte[][] fields) {
+			return new EncodedAttribute(OP_FIELDS, className, fields, null, null);
+		}
+
+		static EncodedAttribute entries(String className, Map<String, byte[]> entries) {
+			return new EncodedAttribute(OP_MAP, className, null, entries, null);
+		}
+
+		static EncodedAttribute value(byte[] value) {
+			return new EncodedAttribute(OP_VALUE, null, null, null, value);
+		}
+
+		static byte[] keyBytes(String key) {
+			return key.getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	/**
+	 * The changes of a session after a request, queued for the sender thread.
+	 */
+	private static final class Delta {
+
+		final String sessionId;
+		final byte type;
+		final int maxInactiveInterval;
+		final List<Op> ops;
+		// session whose Java serialized size the sender thread measures, null if not sampled
+		HttpSession session;
+
+		Delta(String sessionId, byte type, int maxInactiveInterval, List<Op> ops) {
+			this.sessionId = sessionId;
+			this.type = type;
+			this.maxInactiveInterval = maxInactiveInterval;
+			this.ops = ops;
+		}
+
+		Delta measure(HttpSession session) {
+			this.session = session;
+			return this;
+		}
+
+		/**
+		 * @return upper bound of the encoded size, names written as literals
+		 */
+		long size() {
+			long size = sessionId.length() * 3L + 16;
+			for (Op op : ops) {
+				size += op.name.length() * 3L + 10;
+				if (op.className != null) {
+					size += op.className.length() * 3L + 5;
+				}
+				if (op.payload != null) {
+					size += op.payload.length;
+				}
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * An attribute operation: kind, attribute name, class name (beans and maps) and the encoded
+	 * payload written after the names.
+	 */
+	private static final class Op {
+
+		final byte kind;
+		final String name;
+		final String className;
+		final byte[] payload;
+
+		Op(byte kind, String name, String className, byte[] payload) {
+			this.kind = kind;
+			this.name = name;
+			this.className = className;
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * Discards what is written and counts the bytes.
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package rmontag.jsfexample.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durations of the startup phases of the web application, each logged when it ends and published
+ * by the {@link MetricsServlet}, so the startup budget can be tracked, e.g. in CI.
+ *
+ * Phases:
+ * <ul>
+ * <li>weld discovery - bean archive discovery (Jandex index or scanning), see {@link StartupTimingExtension}</li>
+ * <li>weld deployment - bean deployment and validation, see {@link StartupTimingExtension}</li>
+ * <li>jsf init - from the first context listener to the configured JSF application, see {@link StartupTimingListener}</li>
+ * <li>filter &lt;name&gt; init - init of each filter of this application</li>
+ * </ul>
+ */
+public final class StartupTiming {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StartupTiming.class);
+
+	private static final StartupTiming INSTANCE = new StartupTiming();
+
+	private final ConcurrentMap<String, Long> started = new ConcurrentHashMap<String, Long>();
+	// in the order the phases ended
+	private final Map<String, Long> durations = new LinkedHashMap<String, Long>();
+
+	private StartupTiming() {
+	}
+
+	public static StartupTiming getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts the phase, if it has not been started before.
+	 */
+	public void start(String phase) {
+		started.putIfAbsent(phase, Long.valueOf(System.nanoTime()));
+	}
+
+	/**
+	 * Ends and logs the phase, if it has been started and not ended before.
+	 */
+	public void end(String phase) {
+		Long start = started.get(phase);
+		if (start != null) {
+			record(phase, start.longValue());
+		}
+	}
+
+	/**
+	 * Records and logs the phase, if it has not been recorded before.
+	 * @param startNanos System.nanoTime() at the start of the phase
+	 */
+	public void record(String phase, long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		synchronized (durations) {
+			if (durations.containsKey(phase)) {
+				return;
+			}
+			durations.put(phase, Long.valueOf(nanos));
+		}
+		LOG.info("startup phase " + phase + ": " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, "
+				+ getMillisSinceJvmStart() + " ms after JVM start");
+	}
+
+	/**
+	 * @return the durations in nanoseconds of the ended phases, in the order they ended
+	 */
+	public Map<String, Long> getPhaseNanos() {
+		synchronized (durations) {
+			return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(durations));
+		}
+	}
+
+	public long getMillisSinceJvmStart() {
+		return ManagementFactory.getRuntimeMXBean().getUptime();
+	}
+}
@@ -0,0 +1,34 @@
+package rmontag.jsfexample.common;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.BeforeBeanDiscovery;
+import javax.enterprise.inject.spi.Extension;
+
+/**
+ * Times the Weld bootstrap for the {@link StartupTiming}, registered in
+ * META-INF/services/javax.enterprise.inject.spi.Extension.
+ *
+ * Weld loads the extensions before it discovers the bean archives and fires
+ * BeforeBeanDiscovery after, so the phase "weld discovery" covers reading the Jandex index (or
+ * scanning the classes) and "weld deployment" everything up to the validated deployment.
+ */
+public class StartupTimingExtension implements Extension {
+
+	static final String DISCOVERY = "weld discovery";
+	static final String DEPLOYMENT = "weld deployment";
+
+	public StartupTimingExtension() {
+		StartupTiming.getInstance().start(DISCOVERY);
+	}
+
+	void beforeBeanDiscovery(@Observes BeforeBeanDiscovery event) {
+		StartupTiming timing = StartupTiming.getInstance();
+		timing.end(DISCOVERY);
+		timing.start(DEPLOYMENT);
+	}
+
+	void afterDeploymentValidation(@Observes AfterDeploymentValidation event) {
+		StartupTiming.getInstance().end(DEPLOYMENT);
+	}
+}
@@ -0,0 +1,39 @@
+package rmontag.jsfexample.common;
+
+import javax.faces.event.AbortProcessingException;
+import javax.faces.event.PostConstructApplicationEvent;
+import javax.faces.event.SystemEvent;
+import javax.faces.event.SystemEventListener;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Times the JSF initialization for the {@link StartupTiming}: starts the phase "jsf init" as the
+ * first listener in web.xml (before the JSF ConfigureListener) and ends it with the
+ * PostConstructApplicationEvent (system-event-listener in faces-config.xml).
+ */
+public class StartupTimingListener implements ServletContextListener, SystemEventListener {
+
+	static final String JSF_INIT = "jsf init";
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		StartupTiming.getInstance().start(JSF_INIT);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+	}
+
+	@Override
+	public void processEvent(SystemEvent event) throws AbortProcessingException {
+		if (event instanceof PostConstructApplicationEvent) {
+			StartupTiming.getInstance().end(JSF_INIT);
+		}
+	}
+
+	@Override
+	public boolean isListenerForSource(Object source) {
+		return true;
+	}
+}
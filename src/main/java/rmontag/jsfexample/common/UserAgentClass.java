@@ -0,0 +1,22 @@
+package rmontag.jsfexample.common;
+
+/**
+ * Browser classes that need different CSP headers.
+ */
+public enum UserAgentClass {
+
+	/**
+	 * Browsers supporting the standard 'Content-Security-Policy' header only
+	 */
+	MODERN,
+
+	/**
+	 * Internet Explorer 10/11, understanding 'X-Content-Security-Policy'
+	 */
+	LEGACY_IE,
+
+	/**
+	 * Safari 5.1/6 and Chrome 14-24, understanding 'X-Webkit-CSP'
+	 */
+	LEGACY_WEBKIT
+}
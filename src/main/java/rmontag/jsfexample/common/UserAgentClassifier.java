@@ -0,0 +1,128 @@
+package rmontag.jsfexample.common;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifies User-Agent header values into {@link UserAgentClass}es.
+ *
+ * Results are kept in a bounded, direct-mapped cache keyed by the User-Agent string: the slot is
+ * chosen by the hash of the string and a newer entry simply replaces an older one. A hit costs one
+ * hash and one equals and does not allocate; only a miss parses the string and allocates one entry.
+ * Hits and misses are counted.
+ */
+public class UserAgentClassifier {
+
+	private static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private final AtomicReferenceArray<Entry> cache;
+	private final int mask;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public UserAgentClassifier() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param cacheSize minimum number of cached User-Agents, rounded up to a power of two
+	 */
+	public UserAgentClassifier(int cacheSize) {
+		int size = cacheSize <= 1 ? 1 : Integer.highestOneBit(cacheSize - 1) << 1;
+		cache = new AtomicReferenceArray<Entry>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * @param userAgent value of the User-Agent header, may be null
+	 * @return class of the browser
+	 */
+	public UserAgentClass classify(String userAgent) {
+		if (userAgent == null) {
+			return UserAgentClass.MODERN;
+		}
+		int hash = userAgent.hashCode();
+		int index = (hash ^ (hash >>> 16)) & mask;
+		Entry entry = cache.get(index);
+		if (entry != null && entry.userAgent.equals(userAgent)) {
+			hits.increment();
+			return entry.userAgentClass;
+		}
+		misses.increment();
+		UserAgentClass userAgentClass = parse(userAgent);
+		cache.lazySet(index, new Entry(userAgent, userAgentClass));
+		return userAgentClass;
+	}
+
+	/**
+	 * Parses the User-Agent without cache.
+	 * @param userAgent value of the User-Agent header, not null
+	 * @return class of the browser
+	 */
+	static UserAgentClass parse(String userAgent) {
+		// IE 10 ("MSIE 10.0") and IE 11 ("Trident/7.0; rv:11.0"), but not Edge
+		if (userAgent.contains("MSIE 10.") || (userAgent.contains("Trident/") && userAgent.contains("rv:11."))) {
+			return userAgent.contains("Edge/") ? UserAgentClass.MODERN : UserAgentClass.LEGACY_IE;
+		}
+		int chrome = userAgent.indexOf("Chrome/");
+		if (chrome >= 0) {
+			int major = parseMajorVersion(userAgent, chrome + "Chrome/".length());
+			return major >= 14 && major <= 24 ? UserAgentClass.LEGACY_WEBKIT : UserAgentClass.MODERN;
+		}
+		// Safari 5.1 and 6 ("Version/6.0 ... Safari/")
+		int version = userAgent.indexOf("Version/");
+		if (version >= 0 && userAgent.contains("Safari/")) {
+			int start = version + "Version/".length();
+			int major = parseMajorVersion(userAgent, start);
+			if (major == 6 || (major == 5 && userAgent.startsWith("5.1", start))) {
+				return UserAgentClass.LEGACY_WEBKIT;
+			}
+		}
+		return UserAgentClass.MODERN;
+	}
+
+	private static int parseMajorVersion(String userAgent, int start) {
+		int major = 0;
+		for (int i = start; i < userAgent.length() && i < start + 4; i++) {
+			char c = userAgent.charAt(i);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			major = major * 10 + (c - '0');
+		}
+		return major;
+	}
+
+	/**
+	 * @return number of classifications answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of classifications that parsed the User-Agent
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return hits / (hits + misses), 0 without classifications
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	private static final class Entry {
+		private final String userAgent;
+		private final UserAgentClass userAgentClass;
+
+		private Entry(String userAgent, UserAgentClass userAgentClass) {
+			this.userAgent = userAgent;
+			this.userAgentClass = userAgentClass;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Conditional GET for the rendered Facelets views: the body of a GET or HEAD answered with 200 is
+ * hashed while it is rendered (see {@link ViewEntityTagResponseWrapper}) and sent with the hash as
+ * strong ETag, a matching If-None-Match is answered with 304 and no body. The headers set before,
+ * like the security headers of the {@link SecurityHeaderFilter}, are sent with the 304 as well.
+ *
+ * Mapped behind the {@link CompressionFilter}, so the hash is the one of the identity body; the
+ * compression appends "-gzip" to the ETag of a compressed response and both forms are accepted.
+ *
+ * The view is still rendered for a 304, unless it is listed in cachedViews: these views render
+ * the same bytes for every request to the same path, so the last ETag of the path is recorded in
+ * {@link ViewEntityTags} and a matching If-None-Match is answered with 304 before the JSF
+ * lifecycle runs, until the view renders a different ETag. Nothing is recorded in the Development
+ * stage (see {@link ViewEntityTagListener}).
+ *
+ * Supported init params:
+ * <ul>
+ * <li>maxLength - Maximum body length in bytes held back and hashed, larger bodies are sent without ETag (Default: 262144).</li>
+ * <li>cachedViews - Comma separated view ids answered with 304 before the lifecycle, e.g. /hello.xhtml (Default: none).</li>
+ * </ul>
+ */
+public class ViewEntityTagFilter implements Filter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ViewEntityTagFilter.class);
+
+	public static final String INIT_PARAM_MAX_LENGTH = "maxLength";
+	public static final String INIT_PARAM_CACHED_VIEWS = "cachedViews";
+
+	private static final int DEFAULT_MAX_LENGTH = 262144;
+	private static final String CACHE_CONTROL = "private, no-cache";
+
+	private FilterConfig filterConfig;
+	private int maxLength;
+	private ViewEntityTags tags;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		long start = System.nanoTime();
+		this.filterConfig = filterConfig;
+		maxLength = InitParams.intParam(filterConfig, INIT_PARAM_MAX_LENGTH, DEFAULT_MAX_LENGTH, 0, Integer.MAX_VALUE - 8);
+
+		Set<String> cachedViews = new HashSet<String>();
+		String views = filterConfig.getInitParameter(INIT_PARAM_CACHED_VIEWS);
+		if (views != null) {
+			for (String view : views.split(",")) {
+				view = view.trim();
+				if (view.isEmpty()) {
+					continue;
+				}
+				if (!view.startsWith("/")) {
+					throw new ServletException("An invalid value [" + view + "] was specified for " + INIT_PARAM_CACHED_VIEWS);
+				}
+				cachedViews.add(view);
+			}
+		}
+		tags = new ViewEntityTags(Collections.unmodifiableSet(cachedViews));
+		filterConfig.getServletContext().setAttribute(ViewEntityTags.CONTEXT_ATTRIBUTE, tags);
+
+		StartupTiming.getInstance().record("filter " + filterConfig.getFilterName() + " init", start);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse) || response.isCommitted()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+		String method = httpRequest.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		String path = path(httpRequest);
+		String ifNoneMatch = httpRequest.getHeader("If-None-Match");
+		String cached = ifNoneMatch == null ? null : tags.get(path);
+		if (cached != null) {
+			String matched = match(ifNoneMatch, cached);
+			if (matched != null) {
+				httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				httpResponse.setHeader("ETag", matched);
+				setCacheControl(httpResponse);
+				tags.countNotModifiedBeforeRender();
+				return;
+			}
+		}
+
+		ViewEntityTagResponseWrapper wrapper = new ViewEntityTagResponseWrapper(httpResponse, maxLength);
+		if (!httpResponse.containsHeader("ETag")) {
+			// before the chain, a body passed through may have committed the headers by the end
+			setCacheControl(httpResponse);
+		}
+		chain.doFilter(request, wrapper);
+		String etag = wrapper.finish(ifNoneMatch);
+		if (etag == null) {
+			tags.countUnhashed();
+			return;
+		}
+		tags.countHashed(wrapper.isNotModified());
+		tags.record(path, (String) request.getAttribute(ViewEntityTags.VIEW_ID_ATTRIBUTE), etag);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(path + ": ETag " + etag + (wrapper.isNotModified() ? ", not modified" : ""));
+		}
+	}
+
+	private static void setCacheControl(HttpServletResponse response) {
+		if (!response.containsHeader("Cache-Control")) {
+			// revalidated on every use, so the ETag is sent
+			response.setHeader("Cache-Control", CACHE_CONTROL);
+		}
+	}
+
+	/**
+	 * @return the ETag of the identity or of the gzip encoded body (see {@link CompressionResponseWrapper})
+	 * contained in the If-None-Match header, null if none matches
+	 */
+	static String match(String ifNoneMatch, String etag) {
+		if (ResourceCacheServlet.matches(ifNoneMatch, etag)) {
+			return etag;
+		}
+		String gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+		return ResourceCacheServlet.matches(ifNoneMatch, gzipEtag) ? gzipEtag : null;
+	}
+
+	private static String path(HttpServletRequest request) {
+		String pathInfo = request.getPathInfo();
+		return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+	}
+
+	@Override
+	public void destroy() {
+		filterConfig.getServletContext().removeAttribute(ViewEntityTags.CONTEXT_ATTRIBUTE);
+		LOG.info("ETags of rendered views: " + tags.getHashedCount() + " hashed, " + tags.getNotModifiedCount()
+				+ " not modified after and " + tags.getNotModifiedBeforeRenderCount() + " before rendering, "
+				+ tags.getUnhashedCount() + " sent without ETag");
+	}
+}
@@ -0,0 +1,33 @@
+package rmontag.jsfexample.common;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
+import javax.faces.event.AbortProcessingException;
+import javax.faces.event.PreRenderViewEvent;
+import javax.faces.event.SystemEvent;
+import javax.faces.event.SystemEventListener;
+
+/**
+ * Tells the {@link ViewEntityTagFilter} which view a response renders with the PreRenderViewEvent
+ * (system-event-listener in faces-config.xml), so it can record the ETag of opted in views. Nothing
+ * is recorded in the Development stage, where views and templates change without a redeployment.
+ */
+public class ViewEntityTagListener implements SystemEventListener {
+
+	@Override
+	public void processEvent(SystemEvent event) throws AbortProcessingException {
+		if (event instanceof PreRenderViewEvent) {
+			FacesContext context = FacesContext.getCurrentInstance();
+			if (!context.isProjectStage(ProjectStage.Development)) {
+				context.getExternalContext().getRequestMap().put(ViewEntityTags.VIEW_ID_ATTRIBUTE,
+						context.getViewRoot().getViewId());
+			}
+		}
+	}
+
+	@Override
+	public boolean isListenerForSource(Object source) {
+		return source instanceof UIViewRoot;
+	}
+}
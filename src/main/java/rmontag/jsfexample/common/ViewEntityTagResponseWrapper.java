@@ -0,0 +1,282 @@
+package rmontag.jsfexample.common;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response of the {@link ViewEntityTagFilter}, hashing the body (SHA-256) while it is written.
+ *
+ * The headers precede the body, so the body is held back until the response is complete: it is
+ * kept once, in the array it is hashed from, and written to the wrapped response in one piece with
+ * its Content-Length after the ETag is set, or dropped for a 304. A body growing beyond maxLength
+ * or flushed with {@link #flushBuffer()} is passed through without ETag from then on; a flush of
+ * the stream or writer while it is held back is ignored.
+ */
+final class ViewEntityTagResponseWrapper extends HttpServletResponseWrapper {
+
+	private enum State {
+		HASHING, PASS_THROUGH, FINISHED
+	}
+
+	private static final int INITIAL_LENGTH = 8192;
+
+	private final int maxLength;
+	private final MessageDigest digest;
+
+	private State state = State.HASHING;
+	private byte[] body = new byte[INITIAL_LENGTH];
+	private int length;
+	private boolean finishing;
+
+	private EntityTagOutputStream stream;
+	private PrintWriter writer;
+
+	ViewEntityTagResponseWrapper(HttpServletResponse response, int maxLength) {
+		super(response);
+		this.maxLength = maxLength;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (writer != null) {
+			throw new IllegalStateException("getWriter() has already been called for this response");
+		}
+		if (stream == null) {
+			stream = new EntityTagOutputStream();
+		}
+		return stream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			if (stream != null) {
+				throw new IllegalStateException("getOutputStream() has already been called for this response");
+			}
+			stream = new EntityTagOutputStream();
+			writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+		}
+		return writer;
+	}
+
+	/**
+	 * The Content-Length of the held back body is set by {@link #finish(String)}.
+	 */
+	@Override
+	public void setContentLength(int length) {
+		if (state != State.HASHING) {
+			super.setContentLength(length);
+		}
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if (state != State.HASHING || !"Content-Length".equalsIgnoreCase(name)) {
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if (state != State.HASHING || !"Content-Length".equalsIgnoreCase(name)) {
+			super.addHeader(name, value);
+		}
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		if (state != State.HASHING || !"Content-Length".equalsIgnoreCase(name)) {
+			super.setIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		if (state != State.HASHING || !"Content-Length".equalsIgnoreCase(name)) {
+			super.addIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		if (state == State.HASHING) {
+			// committing sends the headers, too late for an ETag
+			passThrough();
+		}
+		super.flushBuffer();
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		restart();
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		restart();
+	}
+
+	/**
+	 * After a reset of the wrapped response (which throws if it is committed) the body starts over.
+	 */
+	private void restart() {
+		if (state != State.FINISHED) {
+			state = State.HASHING;
+			if (body == null) {
+				body = new byte[INITIAL_LENGTH];
+			}
+			length = 0;
+			digest.reset();
+		}
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		state = State.FINISHED;
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		state = State.FINISHED;
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		state = State.FINISHED;
+		super.sendRedirect(location);
+	}
+
+	/**
+	 * Completes the response after the filter chain returned normally: a 200 with a body held back
+	 * gets its ETag and is answered with 304 if the ETag matches the If-None-Match header, any other
+	 * held back body is sent as it is.
+	 * @param ifNoneMatch If-None-Match header of the request
+	 * @return the ETag of the body, null if the response was not hashed
+	 */
+	String finish(String ifNoneMatch) throws IOException {
+		finishing = true;
+		if (writer != null) {
+			writer.flush();
+		}
+		if (state != State.HASHING) {
+			state = State.FINISHED;
+			return null;
+		}
+		state = State.FINISHED;
+		if (getStatus() != SC_OK || containsHeader("ETag")) {
+			sendBody();
+			return null;
+		}
+		String etag = "\"" + Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(Arrays.copyOf(digest.digest(), ResourceCache.HASH_BYTES)) + "\"";
+		String matched = ViewEntityTagFilter.match(ifNoneMatch, etag);
+		if (matched != null) {
+			setStatus(SC_NOT_MODIFIED);
+			super.setHeader("ETag", matched);
+		} else {
+			super.setHeader("ETag", etag);
+			sendBody();
+		}
+		return etag;
+	}
+
+	/**
+	 * @return true, if the response was answered with 304 by {@link #finish(String)}
+	 */
+	boolean isNotModified() {
+		return getStatus() == SC_NOT_MODIFIED;
+	}
+
+	private void sendBody() throws IOException {
+		super.setContentLength(length);
+		if (length > 0) {
+			getResponse().getOutputStream().write(body, 0, length);
+		}
+	}
+
+	/**
+	 * Sends the body held back so far, the rest is written through.
+	 */
+	private void passThrough() throws IOException {
+		state = State.PASS_THROUGH;
+		if (length > 0) {
+			getResponse().getOutputStream().write(body, 0, length);
+		}
+		body = null;
+	}
+
+	private void write(byte[] bytes, int offset, int count) throws IOException {
+		switch (state) {
+		case HASHING:
+			if (length + count > maxLength) {
+				passThrough();
+				write(bytes, offset, count);
+				return;
+			}
+			if (length + count > body.length) {
+				body = Arrays.copyOf(body, Math.min(Math.max(2 * body.length, length + count), maxLength));
+			}
+			System.arraycopy(bytes, offset, body, length, count);
+			length += count;
+			digest.update(bytes, offset, count);
+			break;
+		case PASS_THROUGH:
+			getResponse().getOutputStream().write(bytes, offset, count);
+			break;
+		default:
+			// after sendError or finish, like a closed container stream
+			break;
+		}
+	}
+
+	private final class EntityTagOutputStream extends ServletOutputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(int b) throws IOException {
+			single[0] = (byte) b;
+			ViewEntityTagResponseWrapper.this.write(single, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			ViewEntityTagResponseWrapper.this.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!finishing && state == State.PASS_THROUGH) {
+				getResponse().getOutputStream().flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!finishing && state == State.PASS_THROUGH) {
+				getResponse().getOutputStream().close();
+			}
+		}
+	}
+}
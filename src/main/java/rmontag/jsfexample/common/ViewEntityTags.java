@@ -0,0 +1,109 @@
+package rmontag.jsfexample.common;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Last ETag of the views opted in by the {@link ViewEntityTagFilter} (init param cachedViews) and
+ * the counters of the filter, published as context attribute {@link #CONTEXT_ATTRIBUTE} for the
+ * {@link MetricsServlet}.
+ *
+ * The ETags are recorded per request path rather than per view id alone, since the rendered form
+ * actions and resource URLs depend on the Faces Servlet mapping. The view id of a response is
+ * set as request attribute {@link #VIEW_ID_ATTRIBUTE} by the {@link ViewEntityTagListener}.
+ */
+public final class ViewEntityTags {
+
+	public static final String CONTEXT_ATTRIBUTE = ViewEntityTags.class.getName();
+	public static final String VIEW_ID_ATTRIBUTE = ViewEntityTags.class.getName() + ".viewId";
+
+	/**
+	 * Maximum number of request paths with a recorded ETag
+	 */
+	static final int MAX_PATHS = 4096;
+
+	private final Set<String> cachedViews;
+	// request path (servlet path + path info) -> last ETag of an opted in view
+	private final ConcurrentMap<String, String> etags = new ConcurrentHashMap<String, String>();
+
+	private final LongAdder hashed = new LongAdder();
+	private final LongAdder notModified = new LongAdder();
+	private final LongAdder notModifiedBeforeRender = new LongAdder();
+	private final LongAdder unhashed = new LongAdder();
+
+	ViewEntityTags(Set<String> cachedViews) {
+		this.cachedViews = cachedViews;
+	}
+
+	/**
+	 * @return the last ETag of the opted in view rendered for the request path, null if none is known
+	 */
+	String get(String path) {
+		return etags.isEmpty() ? null : etags.get(path);
+	}
+
+	/**
+	 * Records the ETag of a rendered response, if the view is opted in.
+	 * @param viewId view id of the rendered view, null if the response was not rendered by JSF
+	 */
+	void record(String path, String viewId, String etag) {
+		if (viewId == null || !cachedViews.contains(viewId)) {
+			return;
+		}
+		if (!etag.equals(etags.get(path)) && (etags.size() < MAX_PATHS || etags.containsKey(path))) {
+			etags.put(path, etag);
+		}
+	}
+
+	void countHashed(boolean wasNotModified) {
+		hashed.increment();
+		if (wasNotModified) {
+			notModified.increment();
+		}
+	}
+
+	void countNotModifiedBeforeRender() {
+		notModifiedBeforeRender.increment();
+	}
+
+	void countUnhashed() {
+		unhashed.increment();
+	}
+
+	/**
+	 * @return number of rendered responses with a content hash ETag, including those answered with 304
+	 */
+	public long getHashedCount() {
+		return hashed.sum();
+	}
+
+	/**
+	 * @return number of rendered responses answered with 304, the body was discarded
+	 */
+	public long getNotModifiedCount() {
+		return notModified.sum();
+	}
+
+	/**
+	 * @return number of requests answered with 304 from the recorded ETags, without running the lifecycle
+	 */
+	public long getNotModifiedBeforeRenderCount() {
+		return notModifiedBeforeRender.sum();
+	}
+
+	/**
+	 * @return number of responses sent without ETag: not 200, already with an ETag, larger than maxLength or flushed
+	 */
+	public long getUnhashedCount() {
+		return unhashed.sum();
+	}
+
+	/**
+	 * @return number of request paths with a recorded ETag
+	 */
+	public int getCachedPathCount() {
+		return etags.size();
+	}
+}
@@ -0,0 +1,74 @@
+package rmontag.jsfexample.common;
+
+import java.util.Map;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.application.StateManager;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+
+/**
+ * Where the JSF view state is kept, selected by the context param {@link #CONTEXT_PARAM}.
+ *
+ * Values of the context param:
+ * <ul>
+ * <li>server - JSF default, the state of the last views is kept in the session.</li>
+ * <li>client - The state is written into the page, compressed, encrypted and signed by the {@link ClientStateCodec}.</li>
+ * <li>stateless - Views declaring transient="#{viewState.stateless}" (hello, welcome) keep no state at all, others use client.</li>
+ * <li>auto - server in the Development stage (state readable in the debugger), otherwise client if
+ * javax.faces.STATE_SAVING_METHOD is "client", else stateless (Default).</li>
+ * </ul>
+ */
+public enum ViewStateMode {
+
+	SERVER, CLIENT, STATELESS;
+
+	public static final String CONTEXT_PARAM = "rmontag.jsfexample.VIEW_STATE_MODE";
+
+	private static final String AUTO = "auto";
+
+	/**
+	 * @return the mode of the application, resolved once and cached in the application map
+	 */
+	public static ViewStateMode get(FacesContext context) {
+		Map<String, Object> applicationMap = context.getExternalContext().getApplicationMap();
+		ViewStateMode mode = (ViewStateMode) applicationMap.get(ViewStateMode.class.getName());
+		if (mode == null) {
+			mode = resolve(context);
+			applicationMap.put(ViewStateMode.class.getName(), mode);
+		}
+		return mode;
+	}
+
+	private static ViewStateMode resolve(FacesContext context) {
+		ExternalContext externalContext = context.getExternalContext();
+		String value = externalContext.getInitParameter(CONTEXT_PARAM);
+		if (value == null || AUTO.equalsIgnoreCase(value.trim())) {
+			if (context.getApplication().getProjectStage() == ProjectStage.Development) {
+				return SERVER;
+			}
+			String stateSavingMethod = externalContext.getInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME);
+			return StateManager.STATE_SAVING_METHOD_CLIENT.equalsIgnoreCase(stateSavingMethod) ? CLIENT : STATELESS;
+		}
+		for (ViewStateMode mode : values()) {
+			if (mode.name().equalsIgnoreCase(value.trim())) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("An invalid value [" + value + "] was specified for " + CONTEXT_PARAM);
+	}
+
+	/**
+	 * @return true, if views supporting it should be transient
+	 */
+	public boolean isTransientViews() {
+		return this == STATELESS;
+	}
+
+	/**
+	 * @return true, if the state of non-transient views is kept in the page
+	 */
+	public boolean isClientState() {
+		return this != SERVER;
+	}
+}
@@ -0,0 +1,22 @@
+package rmontag.jsfexample.common;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.faces.context.FacesContext;
+import javax.inject.Named;
+
+/**
+ * Exposes the {@link ViewStateMode} to the views, e.g. &lt;f:view transient="#{viewState.stateless}"&gt;
+ * for views that work without state. "transient" is a reserved word, not allowed as EL identifier.
+ */
+@Named("viewState")
+@ApplicationScoped
+public class ViewStateSettings {
+
+	public boolean isStateless() {
+		return ViewStateMode.get(FacesContext.getCurrentInstance()).isTransientViews();
+	}
+
+	public ViewStateMode getMode() {
+		return ViewStateMode.get(FacesContext.getCurrentInstance());
+	}
+}
@@ -0,0 +1,56 @@
+package rmontag.jsfexample.common;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.http.HttpServletRequest;
+
+import org.jboss.weld.environment.servlet.Listener;
+import org.jboss.weld.servlet.spi.HttpContextActivationFilter;
+import org.jboss.weld.servlet.spi.helpers.RegexHttpContextActivationFilter;
+
+/**
+ * The Weld listener for request notifications, declared in web.xml, so the listener Weld registers
+ * itself leaves them to this one. Weld 2.2 keeps a guard for nested invocations in a thread local of
+ * the thread starting the request; an async request ends on another thread, which Weld logs twice
+ * (WELD-000714 and WELD-000715) and leaves the guard behind. Requests outside the CDI context mapping
+ * (context param org.jboss.weld.context.mapping) and async dispatches are therefore not passed to Weld,
+ * it activates no contexts for them anyway. Endpoints going async must be excluded by the mapping.
+ */
+public class WeldRequestListener extends Listener {
+
+	public static final String CONTEXT_PARAM_MAPPING = "org.jboss.weld.context.mapping";
+
+	private volatile HttpContextActivationFilter mapping;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		String pattern = event.getServletContext().getInitParameter(CONTEXT_PARAM_MAPPING);
+		if (pattern != null) {
+			mapping = new RegexHttpContextActivationFilter(pattern);
+		}
+		super.contextInitialized(event);
+	}
+
+	@Override
+	public void requestInitialized(ServletRequestEvent event) {
+		if (handles(event.getServletRequest())) {
+			super.requestInitialized(event);
+		}
+	}
+
+	@Override
+	public void requestDestroyed(ServletRequestEvent event) {
+		if (handles(event.getServletRequest())) {
+			super.requestDestroyed(event);
+		}
+	}
+
+	private boolean handles(ServletRequest request) {
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			return false;
+		}
+		return mapping == null || !(request instanceof HttpServletRequest) || mapping.accepts((HttpServletRequest) request);
+	}
+}
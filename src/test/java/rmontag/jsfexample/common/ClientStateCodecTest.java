@@ -0,0 +1,105 @@
+package rmontag.jsfexample.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link ClientStateCodec} restores a state tree and rejects states that were tampered
+ * with, written for another view or with another key.
+ */
+public class ClientStateCodecTest {
+
+	private static final String VIEW_ID = "/hello.xhtml";
+
+	private final ClientStateCodec codec = new ClientStateCodec(ClientStateCodec.key(new byte[16]));
+
+	@Test
+	public void roundTrip() throws Exception {
+		Object[] state = state();
+		String encoded = codec.encode(state, VIEW_ID);
+		assertArrayEquals(state, (Object[]) codec.decode(encoded, VIEW_ID));
+	}
+
+	@Test
+	public void encodesEachStateWithAnotherIv() throws Exception {
+		Object[] state = state();
+		String first = codec.encode(state, VIEW_ID);
+		String second = codec.encode(state, VIEW_ID);
+		assertNotEquals(first, second);
+		assertArrayEquals(state, (Object[]) codec.decode(second, VIEW_ID));
+	}
+
+	@Test
+	public void rejectsTamperedState() throws Exception {
+		byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(state(), VIEW_ID));
+		// version, IV, ciphertext and the GCM tag at the end
+		for (int position : new int[] { 1, 13, bytes.length / 2, bytes.length - 1 }) {
+			byte[] tampered = bytes.clone();
+			tampered[position] ^= 1;
+			assertRejected(codec, Base64.getUrlEncoder().withoutPadding().encodeToString(tampered), VIEW_ID);
+		}
+		assertRejected(codec, Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, bytes.length - 1)),
+				VIEW_ID);
+	}
+
+	@Test
+	public void rejectsMalformedState() throws Exception {
+		assertRejected(codec, "not base64!", VIEW_ID);
+		assertRejected(codec, "", VIEW_ID);
+		byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(state(), VIEW_ID));
+		bytes[0]++;
+		assertRejected(codec, Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), VIEW_ID);
+	}
+
+	@Test
+	public void rejectsStateOfOtherView() throws Exception {
+		String encoded = codec.encode(state(), VIEW_ID);
+		assertRejected(codec, encoded, "/welcome.xhtml");
+		assertRejected(codec, encoded, null);
+	}
+
+	@Test
+	public void rejectsStateOfOtherKey() throws Exception {
+		byte[] otherKey = new byte[16];
+		otherKey[0] = 1;
+		String encoded = new ClientStateCodec(ClientStateCodec.key(otherKey)).encode(state(), VIEW_ID);
+		assertRejected(codec, encoded, VIEW_ID);
+	}
+
+	/**
+	 * @return a state tree like the one of JSF: arrays, maps, lists, repeated strings and a serialized value
+	 */
+	private static Object[] state() {
+		Map<Object, Object> attributes = new HashMap<Object, Object>();
+		attributes.put("value", "j_id1:name");
+		attributes.put("rendered", Boolean.TRUE);
+		attributes.put("maxlength", Integer.valueOf(-40));
+		List<Object> list = new ArrayList<Object>();
+		list.add("j_id1:name");
+		list.add(null);
+		list.add(new BigDecimal("12.50"));
+		return new Object[] { "j_id1", new Object[] { attributes, list, Boolean.FALSE }, "j_id1", Integer.valueOf(300000) };
+	}
+
+	private static void assertRejected(ClientStateCodec codec, String encoded, String viewId) {
+		try {
+			codec.decode(encoded, viewId);
+			fail("state accepted for " + viewId + ": " + encoded);
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package rmontag.jsfexample.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.servlet.http.HttpSession;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SessionDeltaCodec} and the frames of the {@link SessionReplicator}: values and
+ * the string table round-trip, malformed and replayed frames are rejected, and nodes in this
+ * process replicate to each other over loopback only with the same key.
+ */
+public class SessionReplicatorTest {
+
+	private static final SecretKey KEY = SessionReplicator.key("0123456789abcdef0123456789abcdef".getBytes());
+	private static final SecretKey OTHER_KEY = SessionReplicator.key("fedcba9876543210fedcba9876543210".getBytes());
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private final List<SessionReplicator> replicators = new ArrayList<SessionReplicator>();
+
+	@After
+	public void shutdown() {
+		for (SessionReplicator replicator : replicators) {
+			replicator.shutdown();
+		}
+	}
+
+	@Test
+	public void valuesRoundTrip() throws Exception {
+		Object[] values = { null, Boolean.TRUE, Boolean.FALSE, (byte) -7, (short) -300, 'x', 42, -1, Integer.MIN_VALUE,
+				Long.MAX_VALUE, -5L, 1.5f, -2.25d, "", "Gr\u00fc\u00dfe \u20ac", TimeUnit.SECONDS,
+				new ArrayList<String>(Arrays.asList("a", "b")) };
+		for (Object value : values) {
+			byte[] encoded = SessionDeltaCodec.encodeValue(value);
+			assertEquals(value, SessionDeltaCodec.decodeValue(encoded, getClass().getClassLoader()));
+			SessionDeltaCodec.Reader reader = new SessionDeltaCodec.Reader(encoded, 0, encoded.length);
+			assertEquals(encoded.length, SessionDeltaCodec.valueLength(reader));
+			reader.skipValue();
+			assertFalse(reader.hasRemaining());
+		}
+	}
+
+	@Test
+	public void stringTableWritesRepeatedNamesOnce() throws Exception {
+		SessionDeltaCodec.Buffer buffer = new SessionDeltaCodec.Buffer(16);
+		buffer.writeName("javax.faces.view");
+		int first = buffer.position();
+		buffer.writeName("hello");
+		buffer.writeName("javax.faces.view");
+		assertEquals(first + 6 + 1, buffer.position());
+
+		SessionDeltaCodec.Reader reader = new SessionDeltaCodec.Reader(buffer.array(), 0, buffer.position());
+		assertEquals("javax.faces.view", reader.readName());
+		assertEquals("hello", reader.readName());
+		assertEquals("javax.faces.view", reader.readName());
+		assertFalse(reader.hasRemaining());
+
+		buffer.reset();
+		buffer.writeName("hello");
+		assertEquals(6, buffer.position());
+	}
+
+	@Test
+	public void appliesValidFrame() throws Exception {
+		SessionReplicator replicator = replicator(KEY);
+		byte[] frame = frame("s1", SessionDeltaCodec.encodeValue("value"));
+		replicator.apply(frame, 0, frame.length);
+		assertEquals(1, replicator.getReplicaCount());
+
+		SessionDeltaCodec.Buffer invalidate = new SessionDeltaCodec.Buffer(16);
+		invalidate.write(SessionReplicator.VERSION);
+		invalidate.writeName("s1");
+		invalidate.write(SessionReplicator.SESSION_INVALIDATE);
+		replicator.apply(invalidate.array(), 0, invalidate.position());
+		assertEquals(0, replicator.getReplicaCount());
+	}
+
+	@Test
+	public void rejectsTruncatedFrames() throws Exception {
+		SessionReplicator replicator = replicator(KEY);
+		byte[] frame = frame("s1", SessionDeltaCodec.encodeValue("value"));
+		// every cut within the delta, the version byte alone is an empty frame
+		for (int length = 2; length < frame.length; length++) {
+			assertRejected(replicator, frame, length);
+		}
+		assertEquals(0, replicator.getReplicaCount());
+	}
+
+	@Test
+	public void rejectsLengthBeyondFrame() throws Exception {
+		SessionDeltaCodec.Buffer value = new SessionDeltaCodec.Buffer(16);
+		value.write(SessionDeltaCodec.STRING);
+		value.writeVarLong(Integer.MAX_VALUE);
+		byte[] frame = frame("s1", value.toByteArray());
+		assertRejected(replicator(KEY), frame, frame.length);
+	}
+
+	@Test
+	public void rejectsUnknownValueTag() throws Exception {
+		byte[] frame = frame("s1", new byte[] { 99 });
+		assertRejected(replicator(KEY), frame, frame.length);
+	}
+
+	@Test
+	public void rejectsUnknownStringIndex() throws Exception {
+		SessionDeltaCodec.Buffer buffer = new SessionDeltaCodec.Buffer(16);
+		buffer.write(SessionReplicator.VERSION);
+		buffer.writeVarLong(5 << 1 | 1);
+		buffer.write(SessionReplicator.SESSION_INVALIDATE);
+		assertRejected(replicator(KEY), buffer.toByteArray(), buffer.position());
+	}
+
+	@Test
+	public void rejectsInvalidVersionTypeAndOperation() throws Exception {
+		SessionReplicator replicator = replicator(KEY);
+		byte[] frame = frame("s1", SessionDeltaCodec.encodeValue("value"));
+
+		byte[] version = frame.clone();
+		version[0] = SessionReplicator.VERSION + 1;
+		assertRejected(replicator, version, version.length);
+
+		// version, id length, "s1", type
+		byte[] type = frame.clone();
+		type[4] = 9;
+		assertRejected(replicator, type, type.length);
+
+		// type, max inactive interval (2 bytes), operation count, kind
+		byte[] kind = frame.clone();
+		kind[8] = 9;
+		assertRejected(replicator, kind, kind.length);
+		assertEquals(0, replicator.getReplicaCount());
+	}
+
+	@Test
+	public void replicatesOverLoopback() throws Exception {
+		SessionReplicator receiver = replicator(KEY);
+		SessionReplicator sender = replicator(KEY, receiver.getListenAddress());
+		HttpSession session = session("s1");
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		for (int i = 0; receiver.getReplicaCount() == 0; i++) {
+			assertTrue("no replica within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+			// a change per round, the first frames may be sent before the connection is up
+			session.setAttribute("counter", i);
+			sender.requestCompleted(session);
+			Thread.sleep(20);
+		}
+		assertTrue(sender.getFramesSent() > 0);
+		assertTrue(receiver.getFramesReceived() > 0);
+
+		sender.sessionDestroyed(session);
+		while (receiver.getReplicaCount() > 0) {
+			assertTrue("replica not invalidated within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+		assertEquals(0, receiver.getRejectedFrames());
+	}
+
+	@Test
+	public void rejectsPeerWithOtherKey() throws Exception {
+		SessionReplicator receiver = replicator(KEY);
+		SessionReplicator sender = replicator(OTHER_KEY, receiver.getListenAddress());
+		HttpSession session = session("s1");
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (receiver.getRejectedFrames() == 0) {
+			assertTrue("no frame rejected within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+			session.setAttribute("counter", System.nanoTime());
+			sender.requestCompleted(session);
+			Thread.sleep(20);
+		}
+		assertEquals(0, receiver.getReplicaCount());
+		assertEquals(0, receiver.getFramesReceived());
+	}
+
+	@Test
+	public void sealsFrameWithLengthAndMac() throws Exception {
+		Mac mac = mac(KEY);
+		byte[] nonce = new byte[SessionReplicator.NONCE_LENGTH];
+		nonce[0] = 7;
+		byte[] bytes = sealed(new byte[] { SessionReplicator.VERSION }, mac, nonce, 258);
+
+		SessionDeltaCodec.Reader reader = new SessionDeltaCodec.Reader(bytes, 0, bytes.length);
+		assertEquals(bytes.length - 4, reader.readInt());
+		mac.update(nonce);
+		mac.update(new byte[] { 0, 0, 0, 0, 0, 0, 1, 2 });
+		assertArrayEquals(mac.doFinal(new byte[] { SessionReplicator.VERSION }),
+				Arrays.copyOfRange(bytes, 4, 4 + SessionReplicator.MAC_LENGTH));
+	}
+
+	@Test
+	public void rejectsReplayedFrames() throws Exception {
+		SessionReplicator receiver = replicator(KEY);
+		Mac mac = mac(KEY);
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		byte[] hello;
+		try (Socket socket = connect(receiver)) {
+			byte[] nonce = readNonce(socket);
+			OutputStream out = socket.getOutputStream();
+			hello = sealed(new byte[] { SessionReplicator.VERSION }, mac, nonce, 0);
+			out.write(hello);
+			byte[] delta = sealed(frame("s1", SessionDeltaCodec.encodeValue("value")), mac, nonce, 1);
+			out.write(delta);
+			while (receiver.getReplicaCount() == 0) {
+				assertTrue("no replica within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+			// the same frame again on the same connection
+			out.write(delta);
+			while (receiver.getRejectedFrames() == 0) {
+				assertTrue("replayed frame not rejected within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+		}
+		// the first frame of the connection on another one
+		try (Socket socket = connect(receiver)) {
+			readNonce(socket);
+			socket.getOutputStream().write(hello);
+			while (receiver.getRejectedFrames() == 1) {
+				assertTrue("replayed frame not rejected within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+		}
+		assertEquals(2, receiver.getFramesReceived());
+	}
+
+	@Test
+	public void measuresFullSizeOnSenderThread() throws Exception {
+		SessionReplicator replicator = new SessionReplicator(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				Collections.<InetSocketAddress> emptyList(), 5, 1024, 1, 1000, KEY);
+		replicators.add(replicator);
+		HttpSession session = session("s1");
+		session.setAttribute("name", "value");
+		// a delta, then a request without changes
+		replicator.requestCompleted(session);
+		replicator.requestCompleted(session);
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (replicator.getSampledRequestCount() < 2) {
+			assertTrue("not measured within " + TIMEOUT_MILLIS + " ms", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		assertTrue(replicator.getSampledFullBytes() > 0);
+		assertTrue(replicator.getSampledDeltaBytes() > 0);
+		assertEquals(2, replicator.getRequestCount());
+	}
+
+	private SessionReplicator replicator(SecretKey key, InetSocketAddress... peers) throws IOException {
+		SessionReplicator replicator = new SessionReplicator(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				Arrays.asList(peers), 5, 1024, 0, 1000, key);
+		replicators.add(replicator);
+		return replicator;
+	}
+
+	private static Mac mac(SecretKey key) throws Exception {
+		Mac mac = Mac.getInstance(SessionReplicator.MAC_ALGORITHM);
+		mac.init(key);
+		return mac;
+	}
+
+	/**
+	 * @param body version and deltas
+	 * @return the frame with length and MAC
+	 */
+	private static byte[] sealed(byte[] body, Mac mac, byte[] nonce, long sequence) {
+		SessionDeltaCodec.Buffer frame = new SessionDeltaCodec.Buffer(64);
+		frame.writeInt(0);
+		frame.write(new byte[SessionReplicator.MAC_LENGTH]);
+		frame.write(body);
+		SessionReplicator.seal(frame, mac, nonce, sequence);
+		return frame.toByteArray();
+	}
+
+	private static Socket connect(SessionReplicator receiver) throws IOException {
+		Socket socket = new Socket();
+		socket.connect(receiver.getListenAddress(), (int) TIMEOUT_MILLIS);
+		socket.setSoTimeout((int) TIMEOUT_MILLIS);
+		return socket;
+	}
+
+	private static byte[] readNonce(Socket socket) throws IOException {
+		byte[] nonce = new byte[SessionReplicator.NONCE_LENGTH];
+		new DataInputStream(socket.getInputStream()).readFully(nonce);
+		return nonce;
+	}
+
+	/**
+	 * @return a frame without length and MAC, with a full delta of the session setting one attribute
+	 */
+	private static byte[] frame(String sessionId, byte[] value) {
+		SessionDeltaCodec.Buffer buffer = new SessionDeltaCodec.Buffer(64);
+		buffer.write(SessionReplicator.VERSION);
+		buffer.writeName(sessionId);
+		buffer.write(SessionReplicator.SESSION_FULL);
+		buffer.writeVarLong(SessionDeltaCodec.zigzag(1800));
+		buffer.writeVarLong(1);
+		buffer.write(SessionReplicator.OP_VALUE);
+		buffer.writeName("attribute");
+		buffer.write(value);
+		return buffer.toByteArray();
+	}
+
+	private static void assertRejected(SessionReplicator replicator, byte[] frame, int length) {
+		try {
+			replicator.apply(frame, 0, length);
+			fail("frame of " + length + " bytes accepted: " + Arrays.toString(Arrays.copyOf(frame, length)));
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @return a session with attributes, id and max inactive interval, other methods are not supported
+	 */
+	private static HttpSession session(final String id) {
+		final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		return (HttpSession) Proxy.newProxyInstance(SessionReplicatorTest.class.getClassLoader(),
+				new Class<?>[] { HttpSession.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if (name.equals("getId")) {
+							return id;
+						} else if (name.equals("getMaxInactiveInterval")) {
+							return 1800;
+						} else if (name.equals("getAttributeNames")) {
+							return Collections.enumeration(attributes.keySet());
+						} else if (name.equals("getAttribute")) {
+							return attributes.get(args[0]);
+						} else if (name.equals("setAttribute")) {
+							attributes.put((String) args[0], args[1]);
+							return null;
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+}